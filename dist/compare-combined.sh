@@ -0,0 +1,77 @@
+#!/bin/bash 
+#
+# Verifies the simulation purposes of an experiment both one at a time and 
+# in a single search (i.e., with the -combine-purposes option), and compares 
+# the verdicts obtained. Transitions are not randomized, since otherwise 
+# certainty verdicts need not be the same.
+
+
+
+###############################################################################
+# Script parameters
+###############################################################################
+
+# Where the output of each way of verifying is written
+LOG_DIR=${LOG_DIR:-.}
+
+
+
+###############################################################################
+# Script functions
+###############################################################################
+
+print_usage()
+{
+  echo "Usage: ./compare-combined.sh SCENARIO EXPERIMENT [OPTIONS]"
+  echo ""
+  echo "Verifies the simulation purposes of the given scenario and experiment"
+  echo "separately and then combined, and tells whether the verdicts are the"
+  echo "same. OPTIONS are given to both verifications (e.g., -max-depth 100)."
+  echo "The outputs are written to $LOG_DIR/separate.log and"
+  echo "$LOG_DIR/combined.log (set LOG_DIR to change it)."
+  echo ""
+  echo "Example:"
+  echo "  ./compare-combined.sh \"examples/EMMAS Dog/dog.emmas.scenario.xml\" \\"
+  echo "    \"examples/EMMAS Dog/dog.combined.experiment.xml\" \\"
+  echo "    -max-depth 100 -state-space exact"
+  echo ""
+}
+
+# Prints the verdicts found in the given output, one per line
+verdicts()
+{
+  grep "Result =" "$1"
+}
+
+
+
+###############################################################################
+# Main body of the script
+###############################################################################
+
+if [[ $# -lt 2 ]]; then
+  print_usage
+  exit 1
+fi
+
+scenario="$1"
+experiment="$2"
+shift 2
+
+./fgs.sh -s "$scenario" -e "$experiment" -dont-randomize "$@" > "$LOG_DIR/separate.log" 2>&1
+./fgs.sh -s "$scenario" -e "$experiment" -dont-randomize -combine-purposes "$@" > "$LOG_DIR/combined.log" 2>&1
+
+echo "Separate verifications:"
+verdicts "$LOG_DIR/separate.log"
+echo ""
+echo "Combined verification:"
+verdicts "$LOG_DIR/combined.log"
+echo ""
+
+if diff <(verdicts "$LOG_DIR/separate.log") <(verdicts "$LOG_DIR/combined.log") > /dev/null; then
+  echo "The verdicts are the same."
+  exit 0
+else
+  echo "The verdicts differ."
+  exit 2
+fi
@@ -0,0 +1,73 @@
+#!/bin/bash 
+#
+# Runs a certainty verification distributed among several worker processes 
+# in this machine, which is a convenient way of trying distributed 
+# verifications before spreading the workers among other machines.
+
+
+
+###############################################################################
+# Script parameters
+###############################################################################
+
+# The port on which the coordinator waits for the workers
+PORT=${PORT:-7411}
+
+# Where the output of each worker is written
+LOG_DIR=${LOG_DIR:-.}
+
+
+
+###############################################################################
+# Script functions
+###############################################################################
+
+print_usage()
+{
+  echo "Usage: ./distributed.sh SCENARIO EXPERIMENT WORKERS [OPTIONS]"
+  echo ""
+  echo "Starts a coordinator and WORKERS workers for the given scenario and"
+  echo "experiment, which must contain certainty verifications. OPTIONS are"
+  echo "given to the coordinator (e.g., -max-depth 100 -work-units 16). The"
+  echo "coordinator waits on port $PORT of the loopback address (set PORT to"
+  echo "change it), and the output of worker N is written to"
+  echo "$LOG_DIR/worker-N.log (set LOG_DIR to change it)."
+  echo ""
+  echo "Example:"
+  echo "  ./distributed.sh \"examples/EMMAS Factory/factory.emmas.scenario.xml\" \\"
+  echo "    \"examples/EMMAS Factory/factory.simpurpverif.certainty.experiment.xml\" 4 \\"
+  echo "    -verbose 2 -max-depth 100 -max-synch-steps 300 -work-units 16"
+  echo ""
+}
+
+
+
+###############################################################################
+# Main body of the script
+###############################################################################
+
+if [[ $# -lt 3 ]]; then
+  print_usage
+  exit 1
+fi
+
+scenario="$1"
+experiment="$2"
+workers="$3"
+shift 3
+
+./fgs.sh -s "$scenario" -e "$experiment" -coordinator $PORT "$@" &
+coordinator=$!
+
+# Workers keep trying to connect for a while, so they may start at any time
+for i in $(seq 1 $workers); do
+  ./fgs.sh -s "$scenario" -e "$experiment" -worker localhost:$PORT > "$LOG_DIR/worker-$i.log" 2>&1 &
+done
+
+wait $coordinator
+status=$?
+
+# Workers give up once they can no longer find the coordinator
+wait
+
+exit $status
@@ -36,6 +36,7 @@ import java.util.List;
 
 import simulator.agent.stimuli.EnvironmentStimulus;
 import simulator.analysis.PropertyBearerWrapper;
+import simulator.engine.SimulationStateSpace;
 import simulator.engine.strategy.ALEVOSRandomExploration;
 import simulator.engine.strategy.SimulationPurposeVerification;
 import simulator.engine.strategy.SimulationStrategy;
@@ -99,8 +100,12 @@ public class Experiment {
    
   
   public void addStandardSimulationStrategy(int runs, int iterationsPerRun){
+    addStandardSimulationStrategy(runs, iterationsPerRun, 1);
+  }
+  
+  public void addStandardSimulationStrategy(int runs, int iterationsPerRun, int threads){
 
-    SimulationStrategy ss = new StandardSimulation(runs, iterationsPerRun);
+    SimulationStrategy ss = new StandardSimulation(runs, iterationsPerRun, threads);
     strategies.add(ss);
   }
   
@@ -109,8 +114,8 @@ public class Experiment {
     strategies.add(spv);
   }
   
-  public void addALEVOSRandomExplorationStrategy(int runs, int iterationsPerRun, String group){
-    ALEVOSRandomExploration are = new ALEVOSRandomExploration(runs, iterationsPerRun, group);
+  public void addALEVOSRandomExplorationStrategy(int runs, int iterationsPerRun, String group, SimulationStateSpace stateSpace){
+    ALEVOSRandomExploration are = new ALEVOSRandomExploration(runs, iterationsPerRun, group, stateSpace);
     strategies.add(are);
   }
 
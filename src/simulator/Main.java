@@ -35,16 +35,24 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.HashSet;
 
 import javax.swing.JFrame;
 
 import simulator.analysis.UndefinedPropertyException;
 import simulator.components.ComponentInstantiationException;
+import simulator.engine.CompactSnapshotCodec;
+import simulator.engine.SerializationSnapshotCodec;
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.runner.SimulationRun.StorageMode;
 import simulator.engine.runner.SimulationRunException;
+import simulator.engine.runner.WindowedTrace;
 import simulator.environment.InvalidEnvironmentException;
 import simulator.io.ExperimentLoadingException;
 import simulator.io.ScenarioLoadingException;
+import simulator.ui.AsyncMessenger;
 import simulator.ui.CLMessenger;
 import simulator.ui.Messenger;
 import simulator.ui.SimulatorUI;
@@ -81,9 +89,38 @@ public class Main {
       possibleParameters.add("gui");
       possibleParameters.add("verbose");
       possibleParameters.add("debug");
+      possibleParameters.add("async-output");
+      possibleParameters.add("output-overflow");
       possibleParameters.add("max-depth");
       possibleParameters.add("dont-randomize");
       possibleParameters.add("max-synch-steps");
+      possibleParameters.add("state-space");
+      possibleParameters.add("bitstate-size");
+      possibleParameters.add("bitstate-hashes");
+      possibleParameters.add("state-space-memory");
+      possibleParameters.add("state-space-dir");
+      possibleParameters.add("seed");
+      possibleParameters.add("threads");
+      possibleParameters.add("agent-threads");
+      possibleParameters.add("verification-threads");
+      possibleParameters.add("concurrent-groups");
+      possibleParameters.add("coordinator");
+      possibleParameters.add("work-units");
+      possibleParameters.add("worker");
+      possibleParameters.add("combine-purposes");
+      possibleParameters.add("snapshot-codec");
+      possibleParameters.add("full-snapshots");
+      possibleParameters.add("trace-storage");
+      possibleParameters.add("keyframe-interval");
+      possibleParameters.add("trace-window");
+      possibleParameters.add("trace-window-overflow");
+      possibleParameters.add("trace-heap-budget");
+      possibleParameters.add("sample-storage");
+      possibleParameters.add("sample-interval");
+      possibleParameters.add("sample-capacity");
+      possibleParameters.add("trace-dir");
+      possibleParameters.add("trace-file");
+      possibleParameters.add("trace-sampling");
       possibleParameters.add("help");
       possibleParameters.add("version");
       
@@ -110,8 +147,33 @@ public class Main {
       ap.enforceParameterAndValuePresence("e");
       ap.enforceParameterAndValuePresence("s");
       ap.enforceValuePresence("verbose");
+      ap.enforceValuePresence("output-overflow");
       ap.enforceValuePresence("max-depth");
       ap.enforceValuePresence("max-synch-steps");
+      ap.enforceValuePresence("state-space");
+      ap.enforceValuePresence("bitstate-size");
+      ap.enforceValuePresence("bitstate-hashes");
+      ap.enforceValuePresence("state-space-memory");
+      ap.enforceValuePresence("state-space-dir");
+      ap.enforceValuePresence("seed");
+      ap.enforceValuePresence("threads");
+      ap.enforceValuePresence("agent-threads");
+      ap.enforceValuePresence("verification-threads");
+      ap.enforceValuePresence("coordinator");
+      ap.enforceValuePresence("work-units");
+      ap.enforceValuePresence("worker");
+      ap.enforceValuePresence("snapshot-codec");
+      ap.enforceValuePresence("trace-storage");
+      ap.enforceValuePresence("keyframe-interval");
+      ap.enforceValuePresence("trace-window");
+      ap.enforceValuePresence("trace-window-overflow");
+      ap.enforceValuePresence("trace-heap-budget");
+      ap.enforceValuePresence("sample-storage");
+      ap.enforceValuePresence("sample-interval");
+      ap.enforceValuePresence("sample-capacity");
+      ap.enforceValuePresence("trace-dir");
+      ap.enforceValuePresence("trace-file");
+      ap.enforceValuePresence("trace-sampling");
 
       
          
@@ -124,6 +186,27 @@ public class Main {
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
       }
       // ... else, stay with the command line
+      else if(ap.isParameterSet("async-output")){
+        AsyncMessenger.OverflowPolicy policy = AsyncMessenger.OverflowPolicy.BLOCK;
+        
+        if(ap.isParameterSet("output-overflow")){
+          String overflow = ap.getParameterValue("output-overflow");
+          if(overflow.equals("block")){
+            policy = AsyncMessenger.OverflowPolicy.BLOCK;
+          }
+          else if(overflow.equals("drop")){
+            policy = AsyncMessenger.OverflowPolicy.DROP;
+          }
+          else if(overflow.equals("sample")){
+            policy = AsyncMessenger.OverflowPolicy.SAMPLE;
+          }
+          else{
+            throw new InvalidArgumentException("Unknown output overflow policy: " + overflow);
+          }
+        }
+        
+        SimulatorUI.initialize(new AsyncMessenger(policy));
+      }
       else{
         SimulatorUI.initialize(new CLMessenger());
       }
@@ -170,6 +253,230 @@ public class Main {
         Simulator.instance().setMaxSynchSteps(null);
       }
       SimulatorUI.instance().getMessenger().printMsg("Max. Synch. Steps: " + Simulator.instance().getMaxSynchSteps(), Messenger.NORMAL_MSG);
+      
+      // Set how search algorithms keep track of the configurations visited
+      if(ap.isParameterSet("state-space")){
+        String stateSpace = ap.getParameterValue("state-space");
+        
+        if(stateSpace.equals("exact")){
+          Simulator.instance().setStateSpaceMode(SimulationStateSpace.Mode.EXACT);
+        }
+        else if(stateSpace.equals("bitstate")){
+          Simulator.instance().setStateSpaceMode(SimulationStateSpace.Mode.BITSTATE);
+        }
+        else if(stateSpace.equals("hybrid")){
+          Simulator.instance().setStateSpaceMode(SimulationStateSpace.Mode.HYBRID);
+        }
+        else if(stateSpace.equals("none")){
+          Simulator.instance().setStateSpaceMode(SimulationStateSpace.Mode.NONE);
+        }
+        else{
+          throw new InvalidArgumentException("Unknown state space: " + stateSpace);
+        }
+      }
+      if(ap.isParameterSet("bitstate-size")){
+        Simulator.instance().setBitstateSize(Long.parseLong(ap.getParameterValue("bitstate-size")) * 1024 * 1024 * 8);
+      }
+      if(ap.isParameterSet("bitstate-hashes")){
+        Simulator.instance().setBitstateHashes(Integer.parseInt(ap.getParameterValue("bitstate-hashes")));
+      }
+      if(ap.isParameterSet("state-space-memory")){
+        Simulator.instance().setStateSpaceMemory(Long.parseLong(ap.getParameterValue("state-space-memory")) * 1024 * 1024);
+      }
+      if(ap.isParameterSet("state-space-dir")){
+        File dir = new File(ap.getParameterValue("state-space-dir"));
+        if(!dir.isDirectory()){
+          throw new InvalidArgumentException("Not a directory: " + dir);
+        }
+        Simulator.instance().setStateSpaceDirectory(dir);
+      }
+      if(ap.isParameterSet("seed")){
+        Simulator.instance().setSeed(Long.parseLong(ap.getParameterValue("seed")));
+      }
+      SimulatorUI.instance().getMessenger().printMsg("Seed: " + Simulator.instance().getSeed(), Messenger.NORMAL_MSG);
+      if(ap.isParameterSet("threads")){
+        int threads = Integer.parseInt(ap.getParameterValue("threads"));
+        if(threads <= 0){
+          throw new InvalidArgumentException("The number of threads must be positive.");
+        }
+        Simulator.instance().setThreads(threads);
+      }
+      if(ap.isParameterSet("agent-threads")){
+        int threads = Integer.parseInt(ap.getParameterValue("agent-threads"));
+        if(threads <= 0){
+          throw new InvalidArgumentException("The number of agent threads must be positive.");
+        }
+        Simulator.instance().setAgentThreads(threads);
+      }
+      if(ap.isParameterSet("verification-threads")){
+        int threads = Integer.parseInt(ap.getParameterValue("verification-threads"));
+        if(threads <= 0){
+          throw new InvalidArgumentException("The number of verification threads must be positive.");
+        }
+        Simulator.instance().setVerificationThreads(threads);
+      }
+      if(ap.isParameterSet("concurrent-groups")){
+        Simulator.instance().setConcurrentGroups(true);
+      }
+      if(ap.isParameterSet("coordinator")){
+        // Unless told otherwise, only workers in this machine may connect
+        String address = ap.getParameterValue("coordinator");
+        int colon = address.lastIndexOf(':');
+        if(colon < 0){
+          Simulator.instance().setCoordinatorAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+        }
+        else if(colon > 0){
+          Simulator.instance().setCoordinatorAddress(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        else{
+          throw new InvalidArgumentException("The coordinator must be given as PORT or ADDRESS:PORT.");
+        }
+      }
+      if(ap.isParameterSet("work-units")){
+        int units = Integer.parseInt(ap.getParameterValue("work-units"));
+        if(units <= 0){
+          throw new InvalidArgumentException("The number of work units must be positive.");
+        }
+        Simulator.instance().setWorkUnits(units);
+      }
+      if(ap.isParameterSet("worker")){
+        String address = ap.getParameterValue("worker");
+        int colon = address.lastIndexOf(':');
+        if(colon <= 0){
+          throw new InvalidArgumentException("The coordinator must be given as HOST:PORT.");
+        }
+        Simulator.instance().setCoordinator(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+      }
+      if(ap.isParameterSet("combine-purposes")){
+        Simulator.instance().setCombinePurposes(true);
+      }
+      if(Simulator.instance().getStateSpaceMode() == SimulationStateSpace.Mode.BITSTATE){
+        SimulatorUI.instance().getMessenger().printMsg("State Space: " + Simulator.instance().getStateSpaceMode() + " (" + 
+            Simulator.instance().getBitstateSize() + " bits, " + Simulator.instance().getBitstateHashes() + " hash functions)", Messenger.NORMAL_MSG);
+      }
+      else{
+        SimulatorUI.instance().getMessenger().printMsg("State Space: " + Simulator.instance().getStateSpaceMode(), Messenger.NORMAL_MSG);
+      }
+      
+      // Set how snapshots of simulation states are taken
+      if(ap.isParameterSet("snapshot-codec")){
+        String codec = ap.getParameterValue("snapshot-codec");
+        
+        if(codec.equals(CompactSnapshotCodec.NAME)){
+          Simulator.instance().setSnapshotCodec(new CompactSnapshotCodec());
+        }
+        else if(codec.equals(SerializationSnapshotCodec.NAME)){
+          Simulator.instance().setSnapshotCodec(new SerializationSnapshotCodec());
+        }
+        else{
+          throw new InvalidArgumentException("Unknown snapshot codec: " + codec);
+        }
+      }
+      SimulatorUI.instance().getMessenger().printMsg("Snapshot Codec: " + Simulator.instance().getSnapshotCodec().getName(), Messenger.NORMAL_MSG);
+      
+      // Set whether snapshots may share unchanged components
+      if(ap.isParameterSet("full-snapshots")){
+        Simulator.instance().setIncrementalSnapshots(false);
+      }
+      else{
+        Simulator.instance().setIncrementalSnapshots(true);
+      }
+      SimulatorUI.instance().getMessenger().printMsg("Incremental Snapshots: " + Simulator.instance().getIncrementalSnapshots(), Messenger.NORMAL_MSG);
+      
+      // Set how traces of simulation states are stored
+      if(ap.isParameterSet("trace-storage")){
+        String storage = ap.getParameterValue("trace-storage");
+        
+        if(storage.equals("full")){
+          Simulator.instance().setTraceStorageMode(StorageMode.FULL);
+        }
+        else if(storage.equals("delta")){
+          Simulator.instance().setTraceStorageMode(StorageMode.DELTA);
+        }
+        else if(storage.equals("mapped")){
+          Simulator.instance().setTraceStorageMode(StorageMode.MAPPED);
+        }
+        else if(storage.equals("windowed")){
+          Simulator.instance().setTraceStorageMode(StorageMode.WINDOWED);
+        }
+        else{
+          throw new InvalidArgumentException("Unknown trace storage: " + storage);
+        }
+      }
+      if(ap.isParameterSet("keyframe-interval")){
+        Simulator.instance().setKeyframeInterval(Integer.parseInt(ap.getParameterValue("keyframe-interval")));
+      }
+      if(ap.isParameterSet("trace-window")){
+        Simulator.instance().setTraceWindow(Integer.parseInt(ap.getParameterValue("trace-window")));
+      }
+      if(ap.isParameterSet("trace-window-overflow")){
+        String overflow = ap.getParameterValue("trace-window-overflow");
+        
+        if(overflow.equals("evict")){
+          Simulator.instance().setTraceWindowOverflow(WindowedTrace.OverflowPolicy.EVICT);
+        }
+        else if(overflow.equals("spill")){
+          Simulator.instance().setTraceWindowOverflow(WindowedTrace.OverflowPolicy.SPILL);
+        }
+        else{
+          throw new InvalidArgumentException("Unknown trace window overflow policy: " + overflow);
+        }
+      }
+      if(ap.isParameterSet("trace-heap-budget")){
+        Simulator.instance().setTraceHeapBudget(Long.parseLong(ap.getParameterValue("trace-heap-budget")) * 1024 * 1024);
+      }
+      
+      // Set how standard simulations sample the states of their runs
+      if(ap.isParameterSet("sample-storage")){
+        String storage = ap.getParameterValue("sample-storage");
+        
+        if(storage.equals("interval")){
+          Simulator.instance().setSampleStorageMode(StorageMode.SAMPLED);
+        }
+        else if(storage.equals("interval-fossilized")){
+          Simulator.instance().setSampleStorageMode(StorageMode.SAMPLED_FOSSILIZED);
+        }
+        else if(storage.equals("reservoir")){
+          Simulator.instance().setSampleStorageMode(StorageMode.RESERVOIR);
+        }
+        else if(storage.equals("reservoir-fossilized")){
+          Simulator.instance().setSampleStorageMode(StorageMode.RESERVOIR_FOSSILIZED);
+        }
+        else if(storage.equals("changes")){
+          Simulator.instance().setSampleStorageMode(StorageMode.CHANGES);
+        }
+        else if(storage.equals("changes-fossilized")){
+          Simulator.instance().setSampleStorageMode(StorageMode.CHANGES_FOSSILIZED);
+        }
+        else{
+          throw new InvalidArgumentException("Unknown sample storage: " + storage);
+        }
+      }
+      if(ap.isParameterSet("sample-interval")){
+        Simulator.instance().setSampleInterval(Integer.parseInt(ap.getParameterValue("sample-interval")));
+      }
+      if(ap.isParameterSet("sample-capacity")){
+        Simulator.instance().setSampleCapacity(Integer.parseInt(ap.getParameterValue("sample-capacity")));
+      }
+      if(ap.isParameterSet("trace-dir")){
+        File dir = new File(ap.getParameterValue("trace-dir"));
+        if(!dir.isDirectory()){
+          throw new InvalidArgumentException("Not a directory: " + dir);
+        }
+        Simulator.instance().setTraceDirectory(dir);
+      }
+      SimulatorUI.instance().getMessenger().printMsg("Trace Storage: " + Simulator.instance().getTraceStorageMode(), Messenger.NORMAL_MSG);
+      
+      // Set whether the states reached are recorded in a file
+      if(ap.isParameterSet("trace-file")){
+        Simulator.instance().setTraceFile(new File(ap.getParameterValue("trace-file")));
+        
+        if(ap.isParameterSet("trace-sampling")){
+          Simulator.instance().setTraceSampling(Integer.parseInt(ap.getParameterValue("trace-sampling")));
+        }
+        
+        SimulatorUI.instance().getMessenger().printMsg("Trace File: " + Simulator.instance().getTraceFile() + " (one of every " + Simulator.instance().getTraceSampling() + " states)", Messenger.NORMAL_MSG);
+      }
         
 
       
@@ -185,10 +492,12 @@ public class Main {
       System.out.println("Error: Invalid parameters. " + e.getMessage());  
       printUsage();
     } catch (Exception e){
-      
       // TODO provide a more friendly error treatment
       e.printStackTrace();
     }
+    finally{
+      closeMessenger();
+    }
     
 
 
@@ -196,6 +505,19 @@ public class Main {
 	}
 
 
+	/**
+	 * Makes sure that every message has been shown, if the UI has been initialized.
+	 */
+	private static void closeMessenger(){
+		try{
+			SimulatorUI.instance().getMessenger().close();
+		}
+		catch(RuntimeException e){
+			// The UI was not initialized, so there is nothing to close
+		}
+	}
+
+
 	/**
 	 * Prints instructions on how to use the program.
 	 *
@@ -216,7 +538,134 @@ public class Main {
     		               "                      in algorithms based on synchronous products.\n" +
     		               "                      S is a positive integer. By default, there is\n" +
     		               "                      no such maximum limit.                        (Optional)");
+    System.out.println("  -state-space M      Defines how search algorithms keep track of\n" +
+                       "                      the configurations they have visited, so\n" +
+                       "                      that revisits are pruned. M is either\n" +
+                       "                      'exact', 'bitstate', which keeps only a few\n" +
+                       "                      bits per configuration at the risk of\n" +
+                       "                      omitting some, 'hybrid', which resorts to\n" +
+                       "                      disk once memory fills up, or 'none', the\n" +
+                       "                      default, in which case nothing is pruned.     (Optional)");
+    System.out.println("  -bitstate-size M    Defines, for 'bitstate' state spaces, the\n" +
+                       "                      size of the bit array in megabytes. By\n" +
+                       "                      default, M is 64.                             (Optional)");
+    System.out.println("  -bitstate-hashes K  Defines, for 'bitstate' state spaces, how\n" +
+                       "                      many bits are set per configuration. By\n" +
+                       "                      default, K is 3.                              (Optional)");
+    System.out.println("  -state-space-memory M  Defines, for 'hybrid' state spaces, how\n" +
+                       "                      many megabytes of memory are used before\n" +
+                       "                      resorting to disk. By default, M is 64.       (Optional)");
+    System.out.println("  -state-space-dir D  Defines the directory where 'hybrid' state\n" +
+                       "                      spaces keep their files. By default, the\n" +
+                       "                      temporary directory of the system is used.    (Optional)");
+    System.out.println("  -seed S             Defines the seed from which all random\n" +
+                       "                      choices are derived, so that a previous\n" +
+                       "                      execution can be reproduced. By default,\n" +
+                       "                      a new seed is used every time.                (Optional)");
+    System.out.println("  -threads N          Defines how many simulation runs may be\n" +
+                       "                      executed at the same time by standard\n" +
+                       "                      simulations. By default, N is 1.              (Optional)");
+    System.out.println("  -agent-threads N    Defines how many threads may be used, in\n" +
+                       "                      each simulation step, to update agents\n" +
+                       "                      that support synchronous stepping. By\n" +
+                       "                      default, N is 1 and agents are updated\n" +
+                       "                      one at a time.                                (Optional)");
+    System.out.println("  -verification-threads N\n" +
+                       "                      Defines how many workers may be used by\n" +
+                       "                      simulation purpose verifications. For\n" +
+                       "                      certainty, they split the search among\n" +
+                       "                      them; for feasibility, they race searches\n" +
+                       "                      that consider transitions in different\n" +
+                       "                      orders. By default, N is 1.                   (Optional)");
+    System.out.println("  -concurrent-groups  Executes the strategies of each group at the\n" +
+                       "                      same time, each with its own simulator, and\n" +
+                       "                      stops the others once one of them answers\n" +
+                       "                      the question of the group. ALEVOS strategies\n" +
+                       "                      run in parallel only if they keep a state\n" +
+                       "                      space (see -state-space).                     (Optional)");
+    System.out.println("  -coordinator [A:]P  Distributes certainty verifications among\n" +
+                       "                      workers in other processes, which are\n" +
+                       "                      waited for on port P of the address A. By\n" +
+                       "                      default, A is the loopback address, so\n" +
+                       "                      that only workers in this machine may\n" +
+                       "                      connect. Use 0.0.0.0 to accept any, but\n" +
+                       "                      only within a trusted network.                (Optional)");
+    System.out.println("  -work-units N       Defines how many units distributed certainty\n" +
+                       "                      verifications are split into. By default,\n" +
+                       "                      N is 64.                                      (Optional)");
+    System.out.println("  -worker H:P         Instead of performing the experiment, helps\n" +
+                       "                      the coordinator on host H and port P with\n" +
+                       "                      its certainty verifications. The same\n" +
+                       "                      scenario and experiment must be given.        (Optional)");
+    System.out.println("  -combine-purposes   Verifies all the simulation purposes of the\n" +
+                       "                      experiment in a single search, so that the\n" +
+                       "                      simulations they have in common are only\n" +
+                       "                      performed once. Verification threads and\n" +
+                       "                      coordinators are then not used. Certainty\n" +
+                       "                      verdicts are the same as those of separate\n" +
+                       "                      verifications only if -dont-randomize is also\n" +
+                       "                      given.                                        (Optional)");
+    System.out.println("  -snapshot-codec C   Defines how snapshots of simulation states\n" +
+                       "                      are taken. C is either 'compact', the \n" +
+                       "                      default, or 'serialization', which relies\n" +
+                       "                      solely on Java serialization.                 (Optional)");
+    System.out.println("  -full-snapshots     Copies every component in every snapshot,\n" +
+                       "                      instead of sharing with previous snapshots\n" +
+                       "                      the ones known not to have changed.           (Optional)");
+    System.out.println("  -trace-storage T    Defines how the states of simulation traces\n" +
+                       "                      are kept. T is either 'full', the default,\n" +
+                       "                      'delta', which keeps only keyframes and\n" +
+                       "                      binary deltas between successive states, or\n" +
+                       "                      'mapped', which keeps encoded states in a\n" +
+                       "                      memory-mapped file, or 'windowed', which\n" +
+                       "                      keeps only the most recent states.            (Optional)");
+    System.out.println("  -keyframe-interval K  Defines, for 'delta' trace storage, how many\n" +
+                       "                      states there are from one keyframe to the\n" +
+                       "                      next. K is a positive integer. By default,\n" +
+                       "                      K is 32.                                      (Optional)");
+    System.out.println("  -trace-window N     Defines, for 'windowed' trace storage, how\n" +
+                       "                      many of the most recent states are kept.\n" +
+                       "                      Searches cannot go back further than that,\n" +
+                       "                      unless older states are spilled. By default,\n" +
+                       "                      N is 256.                                     (Optional)");
+    System.out.println("  -trace-window-overflow P  Defines, for 'windowed' trace storage,\n" +
+                       "                      what happens to the states that leave the\n" +
+                       "                      window. P is either 'evict', the default,\n" +
+                       "                      or 'spill', which moves them to a\n" +
+                       "                      memory-mapped file.                           (Optional)");
+    System.out.println("  -trace-heap-budget M  Moves 'full' and 'delta' traces to a\n" +
+                       "                      memory-mapped file once they are estimated\n" +
+                       "                      to take more than M megabytes.                (Optional)");
+    System.out.println("  -sample-storage S   Makes standard simulations keep a bounded,\n" +
+                       "                      representative subset of the states of their\n" +
+                       "                      runs. S is either 'interval', which keeps\n" +
+                       "                      evenly spaced states, 'reservoir', which\n" +
+                       "                      keeps a random state of each period of the\n" +
+                       "                      run, or 'changes', which keeps the states\n" +
+                       "                      whose properties changed. Adding the suffix\n" +
+                       "                      '-fossilized' keeps only the properties.      (Optional)");
+    System.out.println("  -sample-interval N  Defines, for 'interval' and 'changes' sample\n" +
+                       "                      storage, how many states or changes there\n" +
+                       "                      initially are between samples. By default,\n" +
+                       "                      N is 16.                                      (Optional)");
+    System.out.println("  -sample-capacity K  Defines how many states sample storage may\n" +
+                       "                      keep. Samples are thinned whenever there are\n" +
+                       "                      more. By default, K is 1024.                  (Optional)");
+    System.out.println("  -trace-dir D        Defines the directory where memory-mapped\n" +
+                       "                      traces are kept. By default, the temporary\n" +
+                       "                      directory of the system is used.              (Optional)");
+    System.out.println("  -trace-file F       Records the properties of the states reached\n" +
+                       "                      in the text file F.                           (Optional)");
+    System.out.println("  -trace-sampling N   Records only one of every N states in the\n" +
+                       "                      trace file. N is a positive integer.          (Optional)");
     System.out.println("  -debug              Allows debug information to be shown.         (Optional)");
+    System.out.println("  -async-output       Shows messages from a background thread, so\n" +
+                       "                      that the simulation does not wait for them.   (Optional)");
+    System.out.println("  -output-overflow P  Defines, for asynchronous output, what to do\n" +
+                       "                      when messages are produced faster than they\n" +
+                       "                      can be shown. P is either 'block', the\n" +
+                       "                      default, 'drop' or 'sample', which keeps only\n" +
+                       "                      some of them.                                 (Optional)");
     System.out.println("  -version            Displays the version of this software and \n" +
     		               "                      related information.                          (Optional)");
     System.out.println("  -help               Displays this message.                        (Optional)");
@@ -257,7 +706,12 @@ public class Main {
 			sim.loadScenario(scenario);
       sim.loadExperiment(experiment);
 			
-			sim.runExperiment();
+      if(sim.getCoordinator() != null){
+        sim.runWorker();
+      }
+      else{
+        sim.runExperiment();
+      }
 
 
 	}
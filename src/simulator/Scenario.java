@@ -31,7 +31,11 @@
  ******************************************************************************/
 package simulator;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,21 +43,20 @@ import java.util.Map;
 
 import org.jdom.Element;
 
-import simulator.agent.AgentProxy;
 import simulator.agent.IAgent;
 import simulator.agent.IAgentControl;
 import simulator.agent.relation.IRelation;
 import simulator.agent.relation.Relation;
-import simulator.agent.relation.RelationProxy;
 import simulator.analysis.IProperty;
 import simulator.analysis.PropertyBearerWrapper;
 import simulator.components.ComponentInstantiationException;
 import simulator.components.ComponentParameters;
 import simulator.components.ComponentsRegistry;
+import simulator.engine.IndexRegistry;
 import simulator.engine.SimulationState;
 import simulator.engine.alevos.EMMASTransitionSystem;
+import simulator.environment.AbstractEnvironment;
 import simulator.environment.EMMASEnvironment;
-import simulator.environment.IEnvironment;
 import simulator.environment.SocialNetworkEnvironment;
 import simulator.ui.Messenger;
 import simulator.ui.SimulatorUI;
@@ -67,6 +70,10 @@ import simulator.util.Assert;
  * As an additional benefit, it allows the same scenario to be used with different 
  * sets of components.
  * 
+ * A scenario does not change while simulations take place, so it is shared by all 
+ * simulation states built from it. In particular, snapshots of such states refer to 
+ * the scenario merely by a token, instead of carrying a copy of it.
+ * 
  * @author  Paulo Salem
  */
 public class Scenario implements Serializable{
@@ -106,7 +113,8 @@ public class Scenario implements Serializable{
   
   
   /**
-   * A map from relations' IDs to relations.
+   * A map from relations' IDs to relations. These relations have no ties and serve 
+   * only as definitions, since each initial state gets its own relations.
    */
   private Map<Integer, IRelation<IAgent>> relationsMap = new HashMap<Integer, IRelation<IAgent>>();
   
@@ -137,87 +145,134 @@ public class Scenario implements Serializable{
   
   
   /////////////////////////////////////////////////////////////////////////////
-  // Proxies support
+  // Sharing support
   /////////////////////////////////////////////////////////////////////////////
   
   /**
-   * A map from agents' IDs to proxies.
+   * All the scenarios created so far, indexed by their tokens.
+   */
+  private static final Map<Integer, Registration> scenarios = new HashMap<Integer, Registration>();
+  
+  /**
+   * Where the registrations of scenarios already collected are enqueued, so
+   * that they can be removed from <code>scenarios</code>.
    */
-  private Map<Integer, AgentProxy> agentProxies = new HashMap<Integer, AgentProxy>();
+  private static final ReferenceQueue<Scenario> collected = new ReferenceQueue<Scenario>();
   
   /**
-   * A map from relations' IDs to proxies.
+   * The token to be assigned to the next scenario.
    */
-  private Map<Integer, RelationProxy> relationProxies = new HashMap<Integer, RelationProxy>();
+  private static int nextToken = 1;
+  
+  /**
+   * Identifies the scenario within the simulator.
+   */
+  private final int token;
 
 
   
   public Scenario(String name, String description){
     this.name = name;
     this.description = description;
+    
+    synchronized(scenarios){
+      purge();
+      
+      this.token = nextToken++;
+      scenarios.put(token, new Registration(this));
+    }
   }
   
   /**
-   * Creates a proxy associated with the specified agent. If such a proxy
-   * already exists, the existing instance is returned.
    * 
-   * @param agent The agent for whom a proxy is to be built.
-   * 
-   * @return A new <code>AgentProxy</code> associated with the specified simulator.agent, if
-   *         none exist; the existing <code>AgentProxy</code> otherwise.
+   * @return The token that identifies this scenario within the simulator.
    */
-  public AgentProxy createAgentProxy(IAgent agent){
-    // If there is already a proxy for the specified agent
-    if(agentProxies.containsKey(agent.getId())){
-      return agentProxies.get(agent.getId());
-    }
-
-    AgentProxy proxy = new AgentProxy(agent);
-    
-    // Save the proxy
-    agentProxies.put(agent.getId(), proxy);
-    
-    return proxy;
+  public int getToken(){
+    return token;
   }
   
   /**
-   * Creates a proxy associated with the specified agent relation. If such a proxy
-   * already exists, the existing instance is returned.
+   * Retrieves the scenario identified by the specified token.
    * 
-   * @param relation The relation for whom a proxy is to be built.
+   * @param token The token of the desired scenario.
    * 
-   * @return A new <code>RelationProxy</code> associated with the specified relation, if
-   *         none exist; the existing <code>RelationProxy</code> otherwise.
-   */  
-  public RelationProxy createRelationProxy(IRelation<IAgent> relation){
-    // If there is already a proxy for the specified relation
-    if(relationProxies.containsKey(relation.getId())){
-      return relationProxies.get(relation.getId());
+   * @return The appropriate scenario, if it is still available;
+   *         <code>null</code> otherwise.
+   */
+  public static Scenario forToken(int token){
+    synchronized(scenarios){
+      Registration ref = scenarios.get(token);
+      
+      if(ref != null){
+        return ref.get();
+      }
+      
+      return null;
     }
-
-    RelationProxy proxy = new RelationProxy(relation, this);
-    
-    // Save the proxy
-    relationProxies.put(relation.getId(), proxy);
-    
-    return proxy;  
   }
   
-  public List<IAgent> getAgentProxies(){
-    return new LinkedList<IAgent>(agentProxies.values());
+  /**
+   * Removes the registrations of the scenarios that have been collected. 
+   * Must be called while holding the lock of <code>scenarios</code>.
+   */
+  private static void purge(){
+    Registration r;
+    while((r = (Registration) collected.poll()) != null){
+      scenarios.remove(r.token);
+    }
   }
+  
+  /**
+   * Serializes only a reference to the scenario, which is resolved to the shared
+   * instance upon deserialization.
+   */
+  private Object writeReplace() throws ObjectStreamException{
+    return new ScenarioReference(token);
+  }
+  
+  /**
+   * What is actually serialized in place of a scenario.
+   */
+  private static class ScenarioReference implements Serializable{
 
-  public List<IRelation> getRelationProxies(){
-    return new LinkedList<IRelation>(relationProxies.values());
+    private static final long serialVersionUID = 1L;
+    
+    private final int token;
+    
+    public ScenarioReference(int token){
+      this.token = token;
+    }
+    
+    private Object readResolve() throws ObjectStreamException{
+      Scenario scenario = forToken(token);
+      
+      if(scenario == null){
+        throw new InvalidObjectException("There is no scenario with token " + token + ".");
+      }
+      
+      return scenario;
+    }
   }
   
+  /**
+   * The registration of a scenario, which remembers its token so that it can 
+   * be removed once the scenario is collected.
+   */
+  private static class Registration extends WeakReference<Scenario>{
+    
+    private final int token;
+    
+    public Registration(Scenario scenario){
+      super(scenario, collected);
+      this.token = scenario.token;
+    }
+  }
   
   
   /**
    * Creates an initial state for the simulation. This initial state consists
-   * of new instances of all simulation components. However, all proxies
-   * already associated with this scenario are updated, so that they
-   * refer to the new instances of the components they serve. 
+   * of new instances of all simulation components, as well as of new proxies
+   * and relations. The scenario itself is not modified.
    *  
    * 
    * @param cr Where the components to instatiate are located.
@@ -228,7 +283,7 @@ public class Scenario implements Serializable{
     Assert.notNull(cr);
     
     //  Create a new environment according to the available information 
-    IEnvironment environment;
+    AbstractEnvironment environment;
     if(emmasTS != null){
       // If there is an EMMAS transition system, this is the environment we need
       environment = new EMMASEnvironment(this, emmasTS);
@@ -253,69 +308,43 @@ public class Scenario implements Serializable{
       SimulatorUI.instance().getMessenger().printDebugMsg("Created the following agent while building an initial state:", Messenger.NORMAL_MSG);
       SimulatorUI.instance().getMessenger().printDebugMsg("  " + ac.toString(), Messenger.NORMAL_MSG);
       
-      // If there is no proxy for the agent
-      if(!agentProxies.containsKey(i)){
-
-        // Setup proxy
-        ac.setAgentProxy(createAgentProxy(ac.getAgent()));  
-      }
-      
-      // Else, if there is already a proxy (i.e., because this scenario has  
-      // already generated an initial state before)
-      else{
-        
-        // Use the existing proxies, but inform them that
-        // the underlying agent instance has changed
-        agentProxies.get(i).setAgent(ac.getAgent());
-        ac.setAgentProxy(agentProxies.get(i));
-        
-      }
+      // Setup proxy
+      ac.setAgentProxy(environment.createAgentProxy(ac.getAgent()));  
     }
 
     
-    // Configure relationsMap
+    // Create the state's relations according to their definitions
+    Map<Integer, IRelation<IAgent>> ids2Relations = new HashMap<Integer, IRelation<IAgent>>();
+    for(IRelation<IAgent> d: relationsMap.values()){
+      ids2Relations.put(d.getId(), new Relation<IAgent>(d.getId(), d.getName(), d.getDescription()));
+    }
+    
+    // Configure relations
     for(Integer[] t: relationsPairs){
-      IRelation<IAgent> r = relationsMap.get(t[0]);
+      IRelation<IAgent> r = ids2Relations.get(t[0]);
       
       IAgent a1 = null;
       IAgent a2 = null;
       
-      // Locate the agents the form the pair
-      for(IAgentControl ac: agents){
-        if(ac.getId() == t[1]){
-          a1 = ac.getAgent(); 
-        }
-        
-        // Note that the two agents can be the same
-        
-        if(ac.getId() == t[2]){
-          a2 = ac.getAgent();
-        }
+      // Locate the agents the form the pair. Note that the two agents can be the same.
+      if(ids2Agents.containsKey(t[1])){
+        a1 = ids2Agents.get(t[1]).getAgent();
+      }
+      
+      if(ids2Agents.containsKey(t[2])){
+        a2 = ids2Agents.get(t[2]).getAgent();
       }
       
      
       r.add(a1, a2);
     }
     
-    List<IRelation<IAgent>> relations = new LinkedList<IRelation<IAgent>>(relationsMap.values());
+    List<IRelation<IAgent>> relations = new LinkedList<IRelation<IAgent>>(ids2Relations.values());
     
     
     // Setup relation proxies 
     for(IRelation<IAgent> r: relations){
-      
-      // If there is no proxy yet we create it
-      if(!relationProxies.containsKey(r.getId())){
-        createRelationProxy(r);  
-      }
-      
-      
-      // Else, if a proxy has already been put in place, we use it
-      else{
-        RelationProxy rp = relationProxies.get(r.getId());
-        rp.setRelation(r);
-      }
-      
-      
+      environment.createRelationProxy(r);  
     }
 
 
@@ -362,8 +391,11 @@ public class Scenario implements Serializable{
 	pbWrappers.add(ew);
     
     
+    // Index the components, so that states may locate them quickly
+    IndexRegistry registry = new IndexRegistry(ids2Agents.keySet(), ids2Properties.keySet(), ids2Relations.keySet());
+    
     // Instantiate and configure the initial state
-    SimulationState s = new SimulationState(0, environment, relations, agents, properties, pbWrappers);
+    SimulationState s = new SimulationState(0, environment, relations, agents, properties, pbWrappers, registry);
     
     return s;
   }
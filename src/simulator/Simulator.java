@@ -35,16 +35,36 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
 import simulator.analysis.UndefinedPropertyException;
 import simulator.components.ComponentInstantiationException;
 import simulator.components.ComponentsRegistry;
+import simulator.engine.BitstateVisitedStateStore;
+import simulator.engine.HybridVisitedStateStore;
 import simulator.engine.SimulationEngine;
+import simulator.engine.SimulationState;
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.SnapshotCodec;
+import simulator.engine.alevos.CertaintyWorker;
+import simulator.engine.alevos.EMMASSimulatorConnector;
+import simulator.engine.runner.ExecutionMode;
+import simulator.engine.runner.FileTraceSink;
+import simulator.engine.runner.SamplingTraceSink;
+import simulator.engine.runner.SimulationRun;
+import simulator.engine.runner.SimulationRun.StorageMode;
 import simulator.engine.runner.SimulationRunException;
+import simulator.engine.runner.SimulationRunner;
+import simulator.engine.runner.TraceSink;
+import simulator.engine.runner.WindowedTrace;
+import simulator.engine.strategy.SimulationPurposeVerification;
 import simulator.engine.strategy.SimulationStrategy;
 import simulator.engine.strategy.StandardSimulation;
+import simulator.environment.IALEVOSEnvironment;
+import simulator.environment.IEnvironment;
 import simulator.environment.InvalidEnvironmentException;
 import simulator.io.ComponentsLoader;
 import simulator.io.ExperimentLoadingException;
@@ -54,6 +74,10 @@ import simulator.io.XMLScenarioLoader;
 import simulator.ui.Messenger;
 import simulator.ui.SimulatorUI;
 import simulator.util.Assert;
+import simulator.util.RandomStream;
+import alevos.IllegalSemanticsException;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.ts.sp.SimulationPurpose;
 
 
 /**
@@ -108,6 +132,96 @@ public class Simulator {
    */
   private Integer maxSynchSteps = null;
   
+  /**
+   * How search algorithms keep track of the configurations they have visited. By
+   * default, they do not, and the original algorithms of ALEVOS are used.
+   */
+  private SimulationStateSpace.Mode stateSpaceMode = SimulationStateSpace.Mode.NONE;
+  
+  /**
+   * The size, in bits, of the bit array used by bitstate state spaces.
+   */
+  private long bitstateSize = BitstateVisitedStateStore.DEFAULT_BITS;
+  
+  /**
+   * The number of hash functions used by bitstate state spaces.
+   */
+  private int bitstateHashes = BitstateVisitedStateStore.DEFAULT_HASHES;
+  
+  /**
+   * How many bytes of memory hybrid state spaces may use before resorting to disk.
+   */
+  private long stateSpaceMemory = HybridVisitedStateStore.DEFAULT_MEMORY;
+  
+  /**
+   * The directory where hybrid state spaces keep their files, or <code>null</code>
+   * for the default temporary directory.
+   */
+  private File stateSpaceDirectory = null;
+  
+  /**
+   * The hybrid state spaces created so far, whose files must be deleted once 
+   * the experiment is over.
+   */
+  private List<SimulationStateSpace> hybridStateSpaces = new ArrayList<SimulationStateSpace>();
+  
+  /**
+   * How many worker threads strategies may use to execute independent
+   * simulation runs at the same time.
+   */
+  private int threads = 1;
+  
+  /**
+   * How many workers simulation purpose verifications may use at the same 
+   * time, either to split a search or to race several.
+   */
+  private int verificationThreads = 1;
+  
+  /**
+   * Whether the strategies of each group are to be executed at the same time.
+   */
+  private boolean concurrentGroups = false;
+  
+  /**
+   * The address and port on which certainty verifications wait for workers in 
+   * other processes, or <code>null</code> if they are not to be distributed.
+   */
+  private InetSocketAddress coordinatorAddress = null;
+  
+  /**
+   * How many units distributed certainty verifications are split into.
+   */
+  private int workUnits = 64;
+  
+  /**
+   * Where the coordinator is, if this simulator is to act as one of its workers 
+   * instead of performing the experiment.
+   */
+  private InetSocketAddress coordinator = null;
+  
+  /**
+   * Whether the simulation purposes of an experiment are to be verified together, 
+   * in a single search, rather than one at a time.
+   */
+  private boolean combinePurposes = false;
+  
+  /**
+   * The seed from which all the randomness of the simulation is derived. Unless
+   * one is given, a different seed is used every time.
+   */
+  private long seed = System.nanoTime();
+  
+  /**
+   * The file where the states reached are to be recorded, or <code>null</code> if 
+   * they should not be recorded.
+   */
+  private File traceFile = null;
+  
+  /**
+   * Only one of every so many states is recorded in the trace file.
+   */
+  private int traceSampling = 1;
+  
   
   /**
    * The simulation scenario.
@@ -120,6 +234,11 @@ public class Simulator {
    */
   private Experiment experiment = null;
   
+  /**
+   * The name of the file from which the experiment was loaded, if any.
+   */
+  private String experimentFileName = null;
+  
   
   private Simulator() throws FileNotFoundException, 
                             IOException, 
@@ -160,21 +279,110 @@ public class Simulator {
 
     List<SimulationStrategy> strategies = experiment.getSimulationStrategies();
     
-    SimulationEngine se = new SimulationEngine(scenario, strategies, cr);
+    SimulationEngine se = new SimulationEngine(scenario, strategies, cr, new RandomStream(seed));
+    se.setConcurrentGroups(concurrentGroups);
     
+    // Record the states reached, if requested
+    TraceSink traceSink = null;
+    if(traceFile != null){
+      try {
+        traceSink = new FileTraceSink(traceFile);
+      } catch (IOException e) {
+        throw new SimulationRunException("Could not create the trace file " + traceFile + ".", e);
+      }
+      
+      if(traceSampling > 1){
+        traceSink = new SamplingTraceSink(traceSink, traceSampling);
+      }
+      
+      se.addTraceSink(traceSink);
+    }
     
     // Run the simulator.engine
-    se.executeStrategies();
-    
-    // Print strategies results
-    for(SimulationStrategy ss: strategies){
-      SimulatorUI.instance().getMessenger().printMsg("\n"+ss.toString(), Messenger.CRUCIAL_MSG);
+    try{
+      try{
+        se.executeStrategies();
+      
+      } finally {
+        if(traceSink != null){
+          traceSink.dispose();
+        }
+      }
+      
+      // Print strategies results
+      for(SimulationStrategy ss: strategies){
+        SimulatorUI.instance().getMessenger().printMsg("\n"+ss.toString(), Messenger.CRUCIAL_MSG);
+      }
+      
+    } finally {
+      se.close();
+      clearHybridStateSpaces();
     }
     
   }
  
 
   
+  /**
+   * Instead of performing the experiment loaded, explores the units of its 
+   * certainty verifications distributed by the coordinator (see 
+   * <code>CertaintyWorker</code>), until no coordinator can be found.
+   * 
+   * @throws ComponentInstantiationException In case the necessary components
+   * cannot be instantiated.
+   * @throws InvalidEnvironmentException If the environment is not ALEVOS-enabled.
+   * @throws SimulationRunException If a unit cannot be explored.
+   */
+  public void runWorker() throws ComponentInstantiationException, UndefinedPropertyException, InvalidEnvironmentException, SimulationRunException{
+    
+    Assert.notNull(experiment, "An experiment must be loaded in order to proceed.");
+    Assert.notNull(coordinator, "The coordinator must be known in order to proceed.");
+    
+    // Units identify simulation purposes by their positions
+    List<SimulationPurpose> purposes = new ArrayList<SimulationPurpose>();
+    for(SimulationStrategy ss: experiment.getSimulationStrategies()){
+      if(ss instanceof SimulationPurposeVerification){
+        purposes.add(((SimulationPurposeVerification) ss).getSimulationPurpose());
+      }
+    }
+    
+    SimulationRunner runner = new SimulationRunner(scenario.createInitialState(cr));
+    runner.setRandomStream(new RandomStream(seed));
+    runner.setupRun(StorageMode.NONE, ExecutionMode.VERIFICATION);
+    
+    IEnvironment environment = runner.getInitialEnvironment();
+    if(!(environment instanceof IALEVOSEnvironment)){
+      throw new InvalidEnvironmentException("Workers require an ALEVOS-enabled environment.");
+    }
+    
+    CertaintyWorker worker = new CertaintyWorker(coordinator, purposes, ((IALEVOSEnvironment) environment).getATS(), new EMMASSimulatorConnector(runner), getExperimentIdentity());
+    
+    try {
+      worker.run();
+      
+    } catch (IllegalSemanticsException e) {
+      throw new SimulationRunException("The underlying transition systems used for the simulation are incorrect.", e);
+      
+    } catch (InvalidSimulatorRequest e) {
+      throw new SimulationRunException("A unit could not be explored.", e);
+      
+    } finally {
+      runner.close();
+      clearHybridStateSpaces();
+    }
+  }
+  
+  /**
+   * Clears the hybrid state spaces created so far, thereby deleting their files.
+   * They may still be used afterwards.
+   */
+  private void clearHybridStateSpaces(){
+    for(SimulationStateSpace stateSpace: hybridStateSpaces){
+      stateSpace.clear();
+    }
+  }
+
+  
   /**
    * Loads a scenario description from the specified XML file.
    * 
@@ -203,11 +411,28 @@ public class Simulator {
   public void loadExperiment(File f) throws ExperimentLoadingException, ComponentInstantiationException{
     Assert.notNull(f);
     
+    // Known before loading, since the strategies may need it (see getExperimentIdentity())
+    experimentFileName = f.getName();
+    
     XMLExperimentLoader loader = new XMLExperimentLoader(scenario.createInitialState(cr).getEnvironment());
     
     experiment = loader.loadExperiment(f);
   }
   
+  /**
+   * Identifies the experiment loaded in a way that does not depend on the 
+   * machine in which it was loaded, so that other processes (e.g., the workers
+   * of distributed verifications) can tell whether they have loaded the same one.
+   * 
+   * @return The name of the experiment file (without its directory) and the 
+   *         name of the scenario.
+   */
+  public String getExperimentIdentity(){
+    Assert.notNull(scenario, "A scenario must be loaded in order to proceed.");
+    
+    return experimentFileName + " @ " + scenario.getName();
+  }
+  
   
   public void setScenario(Scenario scenario){
 	Assert.notNull(scenario);
@@ -247,6 +472,266 @@ public class Simulator {
   public void setMaxSynchSteps(Integer maxSynchSteps) {
     this.maxSynchSteps = maxSynchSteps;
   }
+  
+  public SimulationStateSpace.Mode getStateSpaceMode() {
+    return stateSpaceMode;
+  }
+
+  public void setStateSpaceMode(SimulationStateSpace.Mode stateSpaceMode) {
+    Assert.notNull(stateSpaceMode);
+    
+    this.stateSpaceMode = stateSpaceMode;
+  }
+  
+  /**
+   * 
+   * @return A new state space, as defined by the current settings, or <code>null</code>
+   *         if search algorithms should not keep track of the configurations visited.
+   */
+  public SimulationStateSpace createStateSpace() {
+    if(stateSpaceMode == SimulationStateSpace.Mode.NONE){
+      return null;
+    }
+    else if(stateSpaceMode == SimulationStateSpace.Mode.BITSTATE){
+      return new SimulationStateSpace(new BitstateVisitedStateStore(bitstateSize, bitstateHashes));
+    }
+    else if(stateSpaceMode == SimulationStateSpace.Mode.HYBRID){
+      SimulationStateSpace stateSpace = new SimulationStateSpace(new HybridVisitedStateStore(stateSpaceDirectory, stateSpaceMemory, HybridVisitedStateStore.DEFAULT_MERGE_THRESHOLD));
+      hybridStateSpaces.add(stateSpace);
+      
+      return stateSpace;
+    }
+    
+    return new SimulationStateSpace();
+  }
+  
+  public long getBitstateSize() {
+    return bitstateSize;
+  }
+
+  public void setBitstateSize(long bits) {
+    Assert.nonNegativeNonZero(bits);
+    
+    this.bitstateSize = bits;
+  }
+
+  public long getStateSpaceMemory() {
+    return stateSpaceMemory;
+  }
+
+  public void setStateSpaceMemory(long bytes) {
+    Assert.nonNegativeNonZero(bytes);
+    
+    this.stateSpaceMemory = bytes;
+  }
+
+  public File getStateSpaceDirectory() {
+    return stateSpaceDirectory;
+  }
+
+  public void setStateSpaceDirectory(File directory) {
+    this.stateSpaceDirectory = directory;
+  }
+
+  public int getBitstateHashes() {
+    return bitstateHashes;
+  }
+
+  public void setBitstateHashes(int hashes) {
+    Assert.nonNegativeNonZero(hashes);
+    
+    this.bitstateHashes = hashes;
+  }
+  
+  public int getThreads() {
+    return threads;
+  }
+
+  public void setThreads(int threads) {
+    Assert.nonNegativeNonZero(threads);
+    
+    this.threads = threads;
+  }
+  
+  public long getSeed() {
+    return seed;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+  
+  public int getVerificationThreads() {
+    return verificationThreads;
+  }
+
+  public void setVerificationThreads(int verificationThreads) {
+    Assert.nonNegativeNonZero(verificationThreads);
+    
+    this.verificationThreads = verificationThreads;
+  }
+  
+  public boolean getConcurrentGroups() {
+    return concurrentGroups;
+  }
+
+  public void setConcurrentGroups(boolean concurrentGroups) {
+    this.concurrentGroups = concurrentGroups;
+  }
+  
+  public InetSocketAddress getCoordinatorAddress() {
+    return coordinatorAddress;
+  }
+
+  /**
+   * Defines where certainty verifications wait for workers in other processes.
+   * 
+   * @param address The address and port, or <code>null</code> if they are not 
+   *                to be distributed.
+   */
+  public void setCoordinatorAddress(InetSocketAddress address) {
+    this.coordinatorAddress = address;
+  }
+  
+  public int getWorkUnits() {
+    return workUnits;
+  }
+
+  public void setWorkUnits(int units) {
+    Assert.nonNegativeNonZero(units);
+    
+    this.workUnits = units;
+  }
+  
+  public InetSocketAddress getCoordinator() {
+    return coordinator;
+  }
+
+  public void setCoordinator(InetSocketAddress coordinator) {
+    this.coordinator = coordinator;
+  }
+  
+  public boolean getCombinePurposes() {
+    return combinePurposes;
+  }
+
+  public void setCombinePurposes(boolean combinePurposes) {
+    this.combinePurposes = combinePurposes;
+  }
+  
+  public int getAgentThreads() {
+    return SimulationRunner.getAgentThreads();
+  }
+
+  public void setAgentThreads(int threads) {
+    SimulationRunner.setAgentThreads(threads);
+  }
+  
+  public SnapshotCodec getSnapshotCodec() {
+    return SimulationState.getSnapshotCodec();
+  }
+
+  public void setSnapshotCodec(SnapshotCodec codec) {
+    SimulationState.setSnapshotCodec(codec);
+  }
+  
+  public boolean getIncrementalSnapshots() {
+    return SimulationState.isIncrementalSnapshots();
+  }
+
+  public void setIncrementalSnapshots(boolean incremental) {
+    SimulationState.setIncrementalSnapshots(incremental);
+  }
+  
+  public StorageMode getTraceStorageMode() {
+    return SimulationRun.getTraceStorageMode();
+  }
+
+  public void setTraceStorageMode(StorageMode mode) {
+    SimulationRun.setTraceStorageMode(mode);
+  }
+  
+  public int getKeyframeInterval() {
+    return SimulationRun.getKeyframeInterval();
+  }
+
+  public void setKeyframeInterval(int interval) {
+    SimulationRun.setKeyframeInterval(interval);
+  }
+  
+  public StorageMode getSampleStorageMode() {
+    return SimulationRun.getSampleStorageMode();
+  }
+
+  public void setSampleStorageMode(StorageMode mode) {
+    SimulationRun.setSampleStorageMode(mode);
+  }
+  
+  public int getSampleInterval() {
+    return SimulationRun.getSampleInterval();
+  }
+
+  public void setSampleInterval(int interval) {
+    SimulationRun.setSampleInterval(interval);
+  }
+  
+  public int getSampleCapacity() {
+    return SimulationRun.getSampleCapacity();
+  }
+
+  public void setSampleCapacity(int states) {
+    SimulationRun.setSampleCapacity(states);
+  }
+  
+  public int getTraceWindow() {
+    return SimulationRun.getWindow();
+  }
+
+  public void setTraceWindow(int states) {
+    SimulationRun.setWindow(states);
+  }
+  
+  public WindowedTrace.OverflowPolicy getTraceWindowOverflow() {
+    return SimulationRun.getWindowOverflowPolicy();
+  }
+
+  public void setTraceWindowOverflow(WindowedTrace.OverflowPolicy policy) {
+    SimulationRun.setWindowOverflowPolicy(policy);
+  }
+  
+  public File getTraceFile() {
+    return traceFile;
+  }
+
+  public void setTraceFile(File traceFile) {
+    this.traceFile = traceFile;
+  }
+
+  public int getTraceSampling() {
+    return traceSampling;
+  }
+
+  public void setTraceSampling(int traceSampling) {
+    Assert.nonNegativeNonZero(traceSampling);
+    
+    this.traceSampling = traceSampling;
+  }
+  
+  public long getTraceHeapBudget() {
+    return SimulationRun.getHeapBudget();
+  }
+
+  public void setTraceHeapBudget(long bytes) {
+    SimulationRun.setHeapBudget(bytes);
+  }
+  
+  public File getTraceDirectory() {
+    return SimulationRun.getTraceDirectory();
+  }
+
+  public void setTraceDirectory(File directory) {
+    SimulationRun.setTraceDirectory(directory);
+  }
 
   /**
    * Loads the simulator preferences.
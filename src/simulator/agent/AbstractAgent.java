@@ -31,6 +31,8 @@
  ******************************************************************************/
 package simulator.agent;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import simulator.components.AComponentInfo;
@@ -52,7 +54,7 @@ import simulator.environment.IEnvironment;
    description = "A base and abstract implementation of an agent.",
    type = AComponentInfo.ComponentType.AGENT
 )
-abstract public class AbstractAgent implements IAgent, IAgentControl, Serializable{
+abstract public class AbstractAgent implements IAgent, IAgentControl, IChangeTracking, Serializable{
 
 
   /**
@@ -82,6 +84,13 @@ abstract public class AbstractAgent implements IAgent, IAgentControl, Serializab
    */
   protected IEnvironment environment = null;
   
+  /**
+   * Whether the agent might have changed since the last snapshot. It is not 
+   * part of the agent's state, so that it does not tell apart agents that are
+   * otherwise equal.
+   */
+  private transient boolean changed = true;
+  
   
   public AbstractAgent(){
 
@@ -97,12 +106,44 @@ abstract public class AbstractAgent implements IAgent, IAgentControl, Serializab
   @Override
   abstract public String toString();
 
+  /////////////////////////////////////////////////////////////////////////////
+  // IChangeTracking methods.
+  /////////////////////////////////////////////////////////////////////////////
+  
+  public boolean hasChangedSinceSnapshot(){
+    return changed;
+  }
+  
+  public void snapshotTaken(){
+    changed = false;
+  }
+  
+  /**
+   * Informs that the agent might have changed, so that the next snapshot copies it.
+   * The simulator calls this method whenever it steps or stimulates the agent, 
+   * which is how agents usually change. Subclasses that change in other ways
+   * (e.g., when asked for the status of their actions) must call it themselves.
+   */
+  public void markChanged(){
+    changed = true;
+  }
+  
+  /**
+   * Agents that were just read know nothing about the snapshots taken of them.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+    in.defaultReadObject();
+    
+    changed = true;
+  }
+
   /**
    * @param id  the id to set
    */
   @Override
   public void setId(int id){
     this.id = id;
+    changed = true;
   }
   
   /**
@@ -111,6 +152,7 @@ abstract public class AbstractAgent implements IAgent, IAgentControl, Serializab
   @Override
   public void setName(String name){
     this.name = name;
+    changed = true;
   }
   
   /**
@@ -119,6 +161,7 @@ abstract public class AbstractAgent implements IAgent, IAgentControl, Serializab
   @Override
   public void setEnvironment(IEnvironment environment){
     this.environment = environment;
+    changed = true;
   }
 
   @Override
@@ -134,6 +177,7 @@ abstract public class AbstractAgent implements IAgent, IAgentControl, Serializab
   @Override
   public void setAgentProxy(AgentProxy proxy) {
     this.proxy = proxy;
+    changed = true;
   }  
 
     
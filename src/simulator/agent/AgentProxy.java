@@ -55,6 +55,11 @@ public class AgentProxy implements IAgent, IBehavioralAgent, Serializable{
    */
   private IAgent agent = null;
   
+  /**
+   * Who must be informed of the stimuli delivered through this proxy, if anyone.
+   */
+  private transient IStimulationListener stimulationListener = null;
+  
 
 
   
@@ -76,8 +81,24 @@ public class AgentProxy implements IAgent, IBehavioralAgent, Serializable{
     return agent.getName();
   }
 
-  public void receiveStimulus(EnvironmentStimulus environmentStimulus){
+  public void receiveStimulus(final EnvironmentStimulus environmentStimulus){
+    
+    // Sent while some agent prepares its step, so it must wait for the commit
+    if(StimulationBuffer.isOpen()){
+      StimulationBuffer.defer(new Runnable() {
+        public void run() {
+          receiveStimulus(environmentStimulus);
+        }
+      });
+      return;
+    }
+    
     agent.receiveStimulus(environmentStimulus);
+    markChanged();
+    
+    if(stimulationListener != null){
+      stimulationListener.stimulated(this);
+    }
   }
 
   
@@ -102,6 +123,25 @@ public class AgentProxy implements IAgent, IBehavioralAgent, Serializable{
     
     this.agent = agent; 
   }
+  
+  /**
+   * Informs the agent that it has been stimulated, if it keeps track of its changes
+   * (see <code>AbstractAgent.markChanged()</code>).
+   */
+  private void markChanged(){
+    if(agent instanceof AbstractAgent){
+      ((AbstractAgent) agent).markChanged();
+    }
+  }
+  
+  /**
+   * Defines who must be informed of the stimuli delivered through this proxy.
+   * 
+   * @param listener The listener, or <code>null</code> if no one is to be informed.
+   */
+  public void setStimulationListener(IStimulationListener listener){
+    this.stimulationListener = listener;
+  }
 
   
 
@@ -124,11 +164,25 @@ public class AgentProxy implements IAgent, IBehavioralAgent, Serializable{
   /////////////////////////////////////////////////////////////////////////////
   
   @Override
-  public void receiveStimulus(EnvironmentStimulus environmentStimulus,
-      StimulationStatus status) {
+  public void receiveStimulus(final EnvironmentStimulus environmentStimulus,
+      final StimulationStatus status) {
+    
+      // Sent while some agent prepares its step, so it must wait for the commit
+      if(StimulationBuffer.isOpen()){
+        StimulationBuffer.defer(new Runnable() {
+          public void run() {
+            receiveStimulus(environmentStimulus, status);
+          }
+        });
+        return;
+      }
     
       ((IBehavioralAgent) agent).receiveStimulus(environmentStimulus, status);
+      markChanged();
     
+      if(stimulationListener != null){
+        stimulationListener.stimulated(this);
+      }
   }
 
   @Override
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.agent;
+
+/**
+ * An optional interface for agents (that is, <code>IAgentControl</code>s) which 
+ * are able to tell when they next have something to do. Such agents are only 
+ * stepped at the positions they ask for and whenever they receive a stimulus, 
+ * instead of at every step of the simulation. Agents that do not implement this 
+ * interface are stepped at every step, so it is only worth implementing by agents
+ * that may actually be left alone at some of them (the base classes of agents
+ * do not implement it, since the simulator would then schedule every agent for 
+ * nothing).
+ * 
+ * Whenever no agent is due and the environment is quiescent (see 
+ * <code>IEnvironment.isQuiescent()</code>), the simulator skips directly to the
+ * next activation: the positions in between are reached with the state unchanged,
+ * and neither the environment nor any agent is stepped at them.
+ * 
+ * @author Paulo Salem
+ */
+public interface IActivityScheduling {
+  
+  /**
+   * Denotes that the agent has nothing to do until it is stimulated.
+   */
+  public static final int NEVER = Integer.MAX_VALUE;
+  
+  /**
+   * Informs when the agent must be stepped again, even if it receives no stimulus 
+   * in the meantime. The answer must depend only on the agent's state. 
+   * 
+   * @param position The position of the last step given, or of the current state 
+   *                 if the agent is being asked for the first time.
+   * 
+   * @return A position greater than <code>position</code>, or <code>NEVER</code>.
+   */
+  public int nextActivation(int position);
+
+}
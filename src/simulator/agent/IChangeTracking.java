@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.agent;
+
+/**
+ * An optional interface for simulation components (typically agents, that is,
+ * <code>IAgentControl</code>s) which are able to tell whether their internal state 
+ * has changed since the last snapshot of the simulation state was taken. Components 
+ * that report no change are shared, rather than copied, by the next snapshot. 
+ * Components that do not implement this interface are always copied.
+ * 
+ * @author Paulo Salem
+ */
+public interface IChangeTracking {
+  
+  /**
+   * 
+   * @return <code>true</code> if the component might have changed since the last 
+   *         call to <code>snapshotTaken()</code>;
+   *         <code>false</code> otherwise.
+   */
+  public boolean hasChangedSinceSnapshot();
+  
+  /**
+   * Informs the component that a snapshot reflecting its current state has been taken.
+   */
+  public void snapshotTaken();
+
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.agent;
+
+/**
+ * Listens to the stimuli delivered to agents.
+ * 
+ * @author Paulo Salem
+ */
+public interface IStimulationListener {
+  
+  /**
+   * Informs that the specified agent has just received a stimulus.
+   * 
+   * @param agent The agent.
+   */
+  public void stimulated(IAgent agent);
+
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.agent;
+
+/**
+ * An optional interface for agents (that is, <code>IAgentControl</code>s) whose
+ * step may be computed in isolation from the other agents, and therefore in parallel
+ * with them, when the simulator is configured to do so. Such a step is divided
+ * in two phases:
+ * 
+ *   (i)  <code>prepareStep()</code>, which computes the agent's next state 
+ *        reading only the state reached in the previous step. It must neither
+ *        make the new state visible to other agents nor modify anything outside 
+ *        the agent, except by sending stimuli through an <code>AgentProxy</code> 
+ *        or the environment. These are held back by the simulator (see
+ *        <code>StimulationBuffer</code>);
+ *   (ii) <code>commitStep()</code>, which makes the new state visible and applies 
+ *        whatever other effects the agent has buffered by itself. Agents are 
+ *        committed one at a time, in the order in which they appear in the 
+ *        simulation state, and the stimuli each one sent while preparing its 
+ *        step are delivered right after it is committed, in the order in which
+ *        they were sent.
+ * 
+ * Agents that do not implement this interface are stepped as usual, during the 
+ * second phase, by means of <code>IAgentControl.step()</code>, unless their
+ * classes were audited (see <code>SynchronousStepping</code>). Implementing it 
+ * is a claim about the agent's own step, so the base classes of agents do not; 
+ * each concrete agent must declare it for itself.
+ * 
+ * @author Paulo Salem
+ */
+public interface ISynchronousStepping {
+  
+  /**
+   * Computes the next state of the agent, without making it visible. It may be 
+   * called concurrently with the same method of other agents.
+   */
+  public void prepareStep();
+  
+  /**
+   * Makes the state computed by the last call to <code>prepareStep()</code> visible,
+   * and applies whatever effects the agent has buffered.
+   */
+  public void commitStep();
+
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds back the stimuli sent while an agent prepares its step (see 
+ * <code>ISynchronousStepping</code>), so that they can be delivered later, one
+ * agent at a time and in a fixed order, by the thread that steps the simulation.
+ * A buffer is opened for the thread that is about to prepare the step of an agent,
+ * and whoever delivers stimuli (e.g., <code>AgentProxy</code> or the environment) 
+ * must check whether there is one before actually delivering anything.
+ * 
+ * @author Paulo Salem
+ */
+public class StimulationBuffer {
+  
+  /**
+   * The buffer open for each thread, if any.
+   */
+  private static final ThreadLocal<StimulationBuffer> current = new ThreadLocal<StimulationBuffer>();
+  
+  /**
+   * The deliveries held back, in the order in which they were requested.
+   */
+  private List<Runnable> deliveries = new ArrayList<Runnable>();
+  
+  
+  private StimulationBuffer(){
+    
+  }
+  
+  /**
+   * Opens a buffer for the calling thread, which will hold back every delivery 
+   * requested from now on, until it is closed.
+   */
+  public static void open(){
+    current.set(new StimulationBuffer());
+  }
+  
+  /**
+   * Closes the buffer of the calling thread.
+   * 
+   * @return The buffer closed, or <code>null</code> if none was open.
+   */
+  public static StimulationBuffer close(){
+    StimulationBuffer buffer = current.get();
+    current.remove();
+    
+    return buffer;
+  }
+  
+  /**
+   * 
+   * @return <code>true</code> if the calling thread has a buffer open, in which 
+   *         case deliveries must be given to <code>defer()</code>; 
+   *         <code>false</code> otherwise.
+   */
+  public static boolean isOpen(){
+    return current.get() != null;
+  }
+  
+  /**
+   * Holds back a delivery in the buffer of the calling thread.
+   * 
+   * @param delivery Delivers the stimulus when run.
+   */
+  public static void defer(Runnable delivery){
+    current.get().deliveries.add(delivery);
+  }
+  
+  /**
+   * Performs the deliveries held back, in the order in which they were requested.
+   * Must be called with no buffer open, so that they actually take place.
+   */
+  public void flush(){
+    for(Runnable delivery: deliveries){
+      delivery.run();
+    }
+    
+    deliveries.clear();
+  }
+
+}
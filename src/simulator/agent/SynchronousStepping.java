@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.agent;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells which agents may be stepped in parallel (see <code>ISynchronousStepping</code>).
+ * Besides those that implement that interface, some agents distributed only in
+ * compiled form have been audited and found to change nothing but themselves 
+ * in their steps, reading nothing that other agents change. These are stepped
+ * in parallel by means of <code>IAgentControl.step()</code>, with no commit. 
+ * Only the very classes audited are accepted, since their subclasses may well 
+ * do otherwise.
+ * 
+ * @author Paulo Salem
+ */
+public class SynchronousStepping {
+  
+  /**
+   * The names of the classes audited.
+   */
+  private static final Set<String> AUDITED = new HashSet<String>();
+  
+  static{
+    // Each step only changes the agent's own organism
+    AUDITED.add("organism.OrganismComponent");
+  }
+  
+  private SynchronousStepping(){
+    
+  }
+  
+  /**
+   * 
+   * @param ac The agent.
+   * 
+   * @return The agent itself, if it implements <code>ISynchronousStepping</code>; 
+   *         a view of it that prepares its steps by means of <code>step()</code>, 
+   *         if its class was audited; or <code>null</code>, if it must be stepped
+   *         sequentially.
+   */
+  public static ISynchronousStepping of(final IAgentControl ac){
+    if(ac instanceof ISynchronousStepping){
+      return (ISynchronousStepping) ac;
+    }
+    
+    if(AUDITED.contains(ac.getClass().getName())){
+      return new ISynchronousStepping() {
+        public void prepareStep() {
+          ac.step();
+        }
+        
+        public void commitStep() {
+          
+        }
+      };
+    }
+    
+    return null;
+  }
+
+}
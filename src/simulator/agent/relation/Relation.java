@@ -38,12 +38,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import simulator.agent.IChangeTracking;
 import simulator.util.Assert;
 
 /**
  * @author  user
  */
-public class Relation<T> implements IRelation<T>{
+public class Relation<T> implements IRelation<T>, IChangeTracking{
 
   /**
    * @uml.property  name="id"
@@ -67,6 +68,11 @@ public class Relation<T> implements IRelation<T>{
    */
   private Map<T, List<T>> ties = new HashMap<T, List<T>>();
   
+  /**
+   * Whether ties have been added since the last snapshot.
+   */
+  private boolean changed = true;
+  
   
   public Relation(int id, String name, String description){
 
@@ -98,6 +104,7 @@ public class Relation<T> implements IRelation<T>{
       ss = new LinkedList<T>();
       ss.add(b);
       ties.put(a, ss);
+      changed = true;
     }
     
     // If the list exist and it does not already contain the desired
@@ -105,6 +112,7 @@ public class Relation<T> implements IRelation<T>{
     else{
       if(!ss.contains(b)){
         ss.add(b);
+        changed = true;
       }
     }
     
@@ -203,6 +211,19 @@ public String getDescription(){
   public String toString(){
     return "[Relation " + name + ": id = " + id + "]";
   }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // IChangeTracking methods
+  /////////////////////////////////////////////////////////////////////////////
+
+  public boolean hasChangedSinceSnapshot(){
+    return changed;
+  }
+  
+  public void snapshotTaken(){
+    changed = false;
+  }
 
 
 
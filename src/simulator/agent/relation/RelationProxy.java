@@ -35,8 +35,8 @@ import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 
-import simulator.Scenario;
 import simulator.agent.IAgent;
+import simulator.environment.AbstractEnvironment;
 import simulator.util.Assert;
 
 /**
@@ -57,16 +57,16 @@ public class RelationProxy implements IRelation<IAgent>, Serializable{
   private IRelation<IAgent> relation = null;
   
   /**
-   * The scenario that the relation refers to.
+   * The environment that provides proxies for the related agents.
    */
-  private Scenario scenario;
+  private AbstractEnvironment environment;
 
-  public RelationProxy(IRelation<IAgent> relation, Scenario scenario){
+  public RelationProxy(IRelation<IAgent> relation, AbstractEnvironment environment){
     Assert.notNull(relation);
-    Assert.notNull(scenario);
+    Assert.notNull(environment);
     
     this.relation = relation;   
-    this.scenario = scenario;
+    this.environment = environment;
   }
   
   public void add(IAgent a, IAgent b) {
@@ -84,7 +84,7 @@ public class RelationProxy implements IRelation<IAgent>, Serializable{
     List<IAgent> image = new LinkedList<IAgent>();
     
     for(IAgent b: relation.relationalImage(a)){
-      b = scenario.createAgentProxy(b);
+      b = environment.createAgentProxy(b);
       image.add(b);
     }
 
@@ -98,7 +98,7 @@ public class RelationProxy implements IRelation<IAgent>, Serializable{
     List<IAgent> image = new LinkedList<IAgent>();
     
     for(IAgent b: relation.inverseRelationalImage(a)){
-      b = scenario.createAgentProxy(b);
+      b = environment.createAgentProxy(b);
       image.add(b);
     }
 
@@ -117,8 +117,8 @@ public class RelationProxy implements IRelation<IAgent>, Serializable{
     List<ITie<IAgent>> members = new LinkedList<ITie<IAgent>>();
     
     for(ITie<IAgent> t: relation.ties()){
-      IAgent a = scenario.createAgentProxy(t.first());
-      IAgent b = scenario.createAgentProxy(t.second());
+      IAgent a = environment.createAgentProxy(t.first());
+      IAgent b = environment.createAgentProxy(t.second());
       
       ITie<IAgent> u = new Tie<IAgent>(a, b);
       members.add(u);
@@ -134,7 +134,7 @@ public class RelationProxy implements IRelation<IAgent>, Serializable{
     List<IAgent> members = new LinkedList<IAgent>();
     
     for(IAgent x: relation.members()){
-      IAgent a = scenario.createAgentProxy(x);
+      IAgent a = environment.createAgentProxy(x);
       members.add(a);
     }
     
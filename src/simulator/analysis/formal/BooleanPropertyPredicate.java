@@ -33,6 +33,7 @@ package simulator.analysis.formal;
 
 import simulator.analysis.IProperty;
 import simulator.analysis.PropertyBearerWrapper;
+import simulator.engine.PropertyValueCache;
 import simulator.util.Assert;
 
 
@@ -52,6 +53,11 @@ public class BooleanPropertyPredicate extends Predicate {
    */
   private PropertyBearerWrapper pbw;
   
+  /**
+   * Where the value of the property is looked up, if available.
+   */
+  private PropertyValueCache values = null;
+  
   
   public BooleanPropertyPredicate(IProperty p, PropertyBearerWrapper pbw){
     Assert.notNull(p);
@@ -61,12 +67,30 @@ public class BooleanPropertyPredicate extends Predicate {
     this.pbw = pbw;
   }
   
+  /**
+   * 
+   * @param values The values of the properties of the state that <code>pbw</code>
+   *               belongs to, so that the property is not evaluated again if it
+   *               already was in the current step.
+   */
+  public BooleanPropertyPredicate(IProperty p, PropertyBearerWrapper pbw, PropertyValueCache values){
+    this(p, pbw);
+    Assert.notNull(values);
+    
+    this.values = values;
+  }
+  
   @Override
   public boolean isTrue() {
     boolean b = false;
     
     try{
-      b = Boolean.parseBoolean(p.getValueAsString(pbw));
+      if(values != null){
+        b = values.isTrue(p, pbw);
+      }
+      else{
+        b = PropertyValueCache.calculateBoolean(p, pbw);
+      }
     }
     catch(Exception e){
       b = false;
@@ -34,6 +34,7 @@ package simulator.analysis.formal;
 import simulator.analysis.IProperty;
 import simulator.analysis.PropertyBearerWrapper;
 import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.PropertyValueCache;
 import simulator.util.Assert;
 
 // TODO: Not only properties, but also values must be comparable
@@ -64,6 +65,11 @@ public class GreaterThan extends Predicate {
    */  
   private PropertyBearerWrapper pbw2;
   
+  /**
+   * Where the values of the properties are looked up, if available.
+   */
+  private PropertyValueCache values = null;
+  
   /**
    * Builds a new instance so that it is true if, and only if,
    * <code>p1</code> > <code>p2<code> and they are both
@@ -86,14 +92,35 @@ public class GreaterThan extends Predicate {
     this.pbw2 = pbw2;
   }
   
+  /**
+   * Builds a new instance as above, whose properties are evaluated at most once 
+   * per step.
+   * 
+   * @param values The values of the properties of the state that the bearers belong to.
+   */
+  public GreaterThan(IProperty p1, PropertyBearerWrapper pbw1, IProperty p2, PropertyBearerWrapper pbw2, PropertyValueCache values){
+    this(p1, pbw1, p2, pbw2);
+    Assert.notNull(values);
+    
+    this.values = values;
+  }
+  
   
   @Override
   public boolean isTrue() throws UndefinedPropertyException{
     
     try{
       // Convert both properties' values to a number.
-      double v1 = Double.valueOf(p1.getValueAsString(pbw1));
-      double v2 = Double.valueOf(p2.getValueAsString(pbw2));
+      double v1;
+      double v2;
+      if(values != null){
+        v1 = values.getDouble(p1, pbw1);
+        v2 = values.getDouble(p2, pbw2);
+      }
+      else{
+        v1 = PropertyValueCache.calculateDouble(p1, pbw1);
+        v2 = PropertyValueCache.calculateDouble(p2, pbw2);
+      }
       
       // Apply the desired semantics
       if(v1 > v2){
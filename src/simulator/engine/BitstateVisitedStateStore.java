@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+import simulator.util.Assert;
+
+/**
+ * Keeps only a few bits per configuration visited, in the style of SPIN's 
+ * bitstate hashing (supertrace). Each fingerprint sets <code>k</code> bits of a 
+ * large bit array, chosen by <code>k</code> hash functions, and a configuration 
+ * whose bits are all set is taken as visited. Far more configurations fit in 
+ * a given amount of memory than with <code>ExactVisitedStateStore</code>, at the 
+ * price of occasionally omitting (i.e., pruning) a configuration that was never 
+ * visited. The probability of such omissions is estimated as the search goes, 
+ * so that the coverage achieved can be judged.
+ * 
+ * Depths are not kept, so a configuration found again at a shallower depth is
+ * taken as a revisit.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class BitstateVisitedStateStore implements VisitedStateStore {
+  
+  /**
+   * The default size of the bit array, 64 MB.
+   */
+  public static final long DEFAULT_BITS = 1L << 29;
+  
+  /**
+   * The default number of hash functions.
+   */
+  public static final int DEFAULT_HASHES = 3;
+  
+  /**
+   * The bit array. It is allocated only when needed, since it may be large.
+   */
+  private long[] words = null;
+  
+  /**
+   * The size of the bit array.
+   */
+  private long bits;
+  
+  /**
+   * How many bits each configuration sets.
+   */
+  private int hashes;
+  
+  /**
+   * How many bits are set.
+   */
+  private long bitsSet = 0;
+  
+  /**
+   * How many configurations have been stored.
+   */
+  private long size = 0;
+  
+  /**
+   * The sum, over every configuration stored, of the probability that it would 
+   * have been omitted, which estimates how many configurations were omitted.
+   */
+  private double expectedOmissions = 0;
+  
+  
+  public BitstateVisitedStateStore(){
+    this(DEFAULT_BITS, DEFAULT_HASHES);
+  }
+  
+  /**
+   * 
+   * @param bits The size of the bit array. It is rounded up to a multiple of 64.
+   * @param hashes The number of hash functions, i.e., how many bits each 
+   *               configuration sets.
+   */
+  public BitstateVisitedStateStore(long bits, int hashes){
+    Assert.nonNegativeNonZero(bits);
+    Assert.nonNegativeNonZero(hashes);
+    
+    long n = (bits + 63) / 64;
+    if(n > Integer.MAX_VALUE){
+      throw new IllegalArgumentException("The bit array cannot have more than " + (64L * Integer.MAX_VALUE) + " bits.");
+    }
+    
+    this.bits = 64 * n;
+    this.hashes = hashes;
+  }
+  
+  @Override
+  public boolean visit(long high, long low, int depth){
+    
+    if(words == null){
+      words = new long[(int) (bits / 64)];
+    }
+    
+    // The probability of omitting a new configuration, given the bits already set
+    double omission = getOmissionProbability();
+    
+    boolean allSet = true;
+    for(int i = 0; i < hashes; i++){
+      long bit = bit(high, low, i);
+      int w = (int) (bit >>> 6);
+      long mask = 1L << (bit & 63);
+      
+      if((words[w] & mask) == 0){
+        words[w] |= mask;
+        bitsSet++;
+        allSet = false;
+      }
+    }
+    
+    if(allSet){
+      return false;
+    }
+    
+    size++;
+    expectedOmissions += omission;
+    
+    return true;
+  }
+  
+  @Override
+  public boolean contains(long high, long low){
+    if(words == null){
+      return false;
+    }
+    
+    for(int i = 0; i < hashes; i++){
+      long bit = bit(high, low, i);
+      
+      if((words[(int) (bit >>> 6)] & (1L << (bit & 63))) == 0){
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  @Override
+  public long size(){
+    return size;
+  }
+  
+  @Override
+  public long getMemoryUsage(){
+    return words == null ? 0 : 8L * words.length;
+  }
+  
+  @Override
+  public void clear(){
+    words = null;
+    bitsSet = 0;
+    size = 0;
+    expectedOmissions = 0;
+  }
+  
+  /**
+   * 
+   * @return The probability that a configuration never visited would now be 
+   *         taken as visited, given the fraction of bits already set.
+   */
+  public double getOmissionProbability(){
+    return Math.pow((double) bitsSet / bits, hashes);
+  }
+  
+  /**
+   * 
+   * @return An estimate of how many configurations have been omitted so far.
+   */
+  public double getExpectedOmissions(){
+    return expectedOmissions;
+  }
+  
+  /**
+   * 
+   * @return The size of the bit array.
+   */
+  public long getBits(){
+    return bits;
+  }
+  
+  /**
+   * 
+   * @return The number of hash functions.
+   */
+  public int getHashes(){
+    return hashes;
+  }
+  
+  @Override
+  public String toString(){
+    String s = "bitstate, " + bits + " bits, " + hashes + " hash functions, " + size + " configurations stored, " +
+               "omission probability " + String.format("%.3g", getOmissionProbability()) + 
+               " (about " + String.format("%.3g", expectedOmissions) + " configurations omitted so far)";
+    
+    return s;
+  }
+  
+  /**
+   * Calculates the bit set by the i-th hash function, combining the two halves of 
+   * the fingerprint (i.e., double hashing).
+   */
+  private long bit(long high, long low, int i){
+    long h = high + i * low;
+    
+    return (h & Long.MAX_VALUE) % bits;
+  }
+  
+}
@@ -0,0 +1,809 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import simulator.agent.AgentProxy;
+import simulator.agent.IAgent;
+import simulator.agent.IAgentControl;
+import simulator.agent.IChangeTracking;
+import simulator.agent.relation.IRelation;
+import simulator.agent.relation.ITie;
+import simulator.agent.relation.Relation;
+import simulator.agent.stimuli.EnvironmentStimulus;
+import simulator.analysis.IProperty;
+import simulator.analysis.PropertyBearerWrapper;
+import simulator.environment.IEnvironment;
+
+/**
+ * A fast and compact <code>SnapshotCodec</code>. The simulator's own structures 
+ * (i.e., the state itself, agent proxies, property bearer wrappers and relations) 
+ * are written by hand, and Java serialization is employed only for objects whose 
+ * classes are unknown to the simulator, such as the agents and properties provided 
+ * by components (as well as the environment, which writes its own mutable data). 
+ * References that such objects hold to the simulator's structures are replaced by
+ * small handles, which are resolved when the state is decoded. 
+ * 
+ * Moreover, class descriptors are written merely by name, since snapshots are only 
+ * decoded by simulators that have the very same components loaded.
+ * 
+ * Snapshots may also be taken incrementally, in which case components that implement 
+ * <code>IChangeTracking</code> and report no change are not copied at all, but shared 
+ * with the previous snapshot. 
+ * 
+ * @author Paulo Salem
+ */
+public class CompactSnapshotCodec implements SnapshotCodec {
+  
+  public static final String NAME = "compact";
+  
+  /**
+   * Marks the beginning of every snapshot, so that foreign data is promptly rejected.
+   */
+  private static final int MAGIC = 0x46475331;
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Tags used to write references to agents and other members
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final byte TAG_NULL = 0;
+  
+  private static final byte TAG_AGENT_CONTROL = 1;
+  
+  private static final byte TAG_AGENT = 2;
+  
+  private static final byte TAG_PROXY = 3;
+  
+  private static final byte TAG_ENVIRONMENT = 4;
+  
+  private static final byte TAG_OBJECT = 5;
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // How relations are written
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private static final byte RELATION_HAND_WRITTEN = 0;
+  
+  private static final byte RELATION_SERIALIZED = 1;
+  
+  private static final byte RELATION_SHARED = 2;
+  
+  
+  /**
+   * The size of the last snapshot, used as a hint to allocate buffers.
+   */
+  private volatile int sizeHint = 4096;
+  
+  
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] encode(SimulationState state) throws SnapshotException {
+    SnapshotBuffer buffer = new SnapshotBuffer(sizeHint);
+    write(state, null, buffer, true);
+    
+    return buffer.toByteArray();
+  }
+
+  /**
+   * Encodes the specified state as <code>encode()</code> does, except for its 
+   * position, so that states that differ only on it have the same encoding. 
+   * 
+   * @param state The state to encode.
+   * 
+   * @return The binary representation of the state, which is not meant to be decoded.
+   * 
+   * @throws SnapshotException If the state contains something that cannot be encoded.
+   */
+  byte[] encodeContents(SimulationState state) throws SnapshotException {
+    SnapshotBuffer buffer = new SnapshotBuffer(sizeHint);
+    write(state, null, buffer, false);
+    
+    return buffer.toByteArray();
+  }
+
+  @Override
+  public SimulationState decode(byte[] data) throws SnapshotException {
+    return read(new ByteArrayInputStream(data), null, null);
+  }
+
+  @Override
+  public SimulationState copy(SimulationState state) throws SnapshotException {
+    return snapshot(state, null);
+  }
+  
+  @Override
+  public SimulationState snapshot(SimulationState state, SimulationState previous) throws SnapshotException {
+    SnapshotBuffer buffer = new SnapshotBuffer(sizeHint);
+    write(state, previous, buffer, true);
+    
+    // Read directly from the buffer, without copying it
+    return read(buffer.toInputStream(), previous, state.getIndexRegistry());
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Writing
+  /////////////////////////////////////////////////////////////////////////////
+
+  private void write(SimulationState state, SimulationState previous, SnapshotBuffer buffer, boolean includePosition) throws SnapshotException{
+    
+    try{
+      SnapshotOutputStream out = new SnapshotOutputStream(buffer, state);
+      
+      // Find out what can be shared with the previous snapshot
+      if(previous != null){
+        for(IAgentControl ac: state.getAgentControls()){
+          int id = ac.getAgent().getId();
+          if(isUnchanged(ac) && previous.getAgentControl(id) != null){
+            out.share(ac, Handle.SHARED_AGENT_CONTROL, id);
+            out.share(ac.getAgent(), Handle.SHARED_AGENT, id);
+          }
+        }
+        
+        for(IProperty p: state.getProperties()){
+          if(isUnchanged(p) && previous.getProperty(p.getId()) != null){
+            out.share(p, Handle.SHARED_PROPERTY, p.getId());
+          }
+        }
+        
+        for(IRelation<IAgent> r: state.getRelations()){
+          if(isUnchanged(r) && previous.getRelation(r.getId()) != null){
+            out.share(r, Handle.SHARED_RELATION, r.getId());
+          }
+        }
+      }
+      
+      out.writeInt(MAGIC);
+      out.writeInt(includePosition ? state.getPosition() : 0);
+      
+      // The components shared with the previous snapshot
+      out.writeInt(out.sharedKinds.size());
+      for(int i = 0; i < out.sharedKinds.size(); i++){
+        out.writeByte(out.sharedKinds.get(i));
+        out.writeInt(out.sharedIds.get(i));
+      }
+      
+      // The IDs of the agents, so that proxies can be prepared in advance
+      out.writeInt(state.getAgentControls().size());
+      for(IAgentControl ac: state.getAgentControls()){
+        out.writeInt(ac.getAgent().getId());
+      }
+      
+      // The identification of the relations. Ties of the relations we know how to 
+      // write are written later, since they refer to agents.
+      out.writeInt(state.getRelations().size());
+      for(IRelation<IAgent> r: state.getRelations()){
+        if(out.shared.containsKey(r)){
+          out.writeByte(RELATION_SHARED);
+          out.writeInt(out.shared.get(r).key);
+        }
+        else if(isHandWritten(r)){
+          out.writeByte(RELATION_HAND_WRITTEN);
+          out.writeInt(r.getId());
+          out.writeUTF(r.getName());
+          out.writeUTF(r.getDescription());
+        }
+        else{
+          out.writeByte(RELATION_SERIALIZED);
+        }
+      }
+      
+      // The environment and, through it, whatever it refers to
+      out.writeObject(state.getEnvironment());
+      
+      // Agents
+      for(IAgentControl ac: state.getAgentControls()){
+        out.writeShareable(ac);
+      }
+      
+      // Properties
+      Map<IProperty, Integer> propertiesIndexes = new IdentityHashMap<IProperty, Integer>();
+      out.writeInt(state.getProperties().size());
+      for(IProperty p: state.getProperties()){
+        propertiesIndexes.put(p, propertiesIndexes.size());
+        out.writeShareable(p);
+      }
+      
+      // Relations' ties
+      for(IRelation<IAgent> r: state.getRelations()){
+        if(out.shared.containsKey(r)){
+          // Nothing to write
+        }
+        else if(isHandWritten(r)){
+          List<ITie<IAgent>> ties = r.ties();
+          out.writeInt(ties.size());
+          for(ITie<IAgent> t: ties){
+            out.writeMember(t.first());
+            out.writeMember(t.second());
+          }
+        }
+        else{
+          out.writeObject(r);
+        }
+      }
+      
+      // Property bearer wrappers
+      out.writeInt(state.getPropertyBearerWrappers().size());
+      for(PropertyBearerWrapper pbw: state.getPropertyBearerWrappers()){
+        out.writeObject(pbw.getName());
+        out.writeMember(pbw.getTarget());
+        
+        out.writeInt(pbw.getProperties().size());
+        for(IProperty p: pbw.getProperties()){
+          Integer i = propertiesIndexes.get(p);
+          if(i != null){
+            out.writeInt(i);
+          }
+          else{
+            out.writeInt(-1);
+            out.writeObject(p);
+          }
+        }
+      }
+      
+      out.flush();
+      
+    } catch(IOException e){
+      throw new SnapshotException("Could not encode the simulation state.", e);
+    }
+    
+    sizeHint = buffer.size();
+  }
+  
+  /**
+   * Only plain relations are written by hand. Others are considered to be
+   * component-specific.
+   */
+  private boolean isHandWritten(IRelation<IAgent> r){
+    return r.getClass() == Relation.class;
+  }
+  
+  /**
+   * Checks whether the specified component is known not to have changed since
+   * the last snapshot.
+   */
+  private boolean isUnchanged(Object o){
+    return (o instanceof IChangeTracking) && !((IChangeTracking) o).hasChangedSinceSnapshot();
+  }
+  
+
+  /////////////////////////////////////////////////////////////////////////////
+  // Reading
+  /////////////////////////////////////////////////////////////////////////////
+
+  private SimulationState read(InputStream is, SimulationState previous, IndexRegistry indexRegistry) throws SnapshotException{
+    
+    try{
+      SnapshotInputStream in = new SnapshotInputStream(is);
+      
+      if(in.readInt() != MAGIC){
+        throw new SnapshotException("The data does not contain a snapshot in the expected format.");
+      }
+      
+      int position = in.readInt();
+      
+      // Components shared with the previous snapshot
+      int sharedCount = in.readInt();
+      for(int i = 0; i < sharedCount; i++){
+        in.shared.add(findShared(previous, in.readByte(), in.readInt()));
+      }
+      
+      // Proxies are created before anything else, with placeholder agents
+      int[] agentIds = new int[in.readInt()];
+      for(int i = 0; i < agentIds.length; i++){
+        agentIds[i] = in.readInt();
+        in.proxies.put(agentIds[i], new AgentProxy(new UnresolvedAgent(agentIds[i])));
+      }
+      
+      // Relations. Those written by hand are created empty and filled later.
+      int relationsCount = in.readInt();
+      byte[] relationsKinds = new byte[relationsCount];
+      for(int i = 0; i < relationsCount; i++){
+        relationsKinds[i] = in.readByte();
+        
+        switch(relationsKinds[i]){
+          case RELATION_SHARED:
+            in.relations.add(in.shared.get(in.readInt()));
+            break;
+          case RELATION_HAND_WRITTEN:
+            in.relations.add(new Relation<IAgent>(in.readInt(), in.readUTF(), in.readUTF()));
+            break;
+          default:
+            in.relations.add(null);
+        }
+      }
+      
+      // Environment
+      in.environment = (IEnvironment) in.readObject();
+      
+      // Agents
+      List<IAgentControl> agents = new LinkedList<IAgentControl>();
+      for(int i = 0; i < agentIds.length; i++){
+        IAgentControl ac = (IAgentControl) in.readShareable(); 
+        agents.add(ac);
+        in.agents.put(agentIds[i], ac);
+        
+        // Now that the agent exists, its proxy can refer to it
+        in.proxies.get(agentIds[i]).setAgent(ac.getAgent());
+      }
+      
+      // Properties
+      List<IProperty> properties = new LinkedList<IProperty>();
+      int propertiesCount = in.readInt();
+      for(int i = 0; i < propertiesCount; i++){
+        properties.add((IProperty) in.readShareable());
+      }
+      
+      // Relations
+      List<IRelation<IAgent>> relations = new LinkedList<IRelation<IAgent>>();
+      for(int i = 0; i < relationsCount; i++){
+        switch(relationsKinds[i]){
+          case RELATION_SHARED:
+            relations.add(agentRelation(in.relations.get(i)));
+            break;
+          case RELATION_HAND_WRITTEN:
+            Relation<IAgent> r = (Relation<IAgent>) agentRelation(in.relations.get(i));
+            int tiesCount = in.readInt();
+            for(int j = 0; j < tiesCount; j++){
+              IAgent a = (IAgent) in.readMember();
+              IAgent b = (IAgent) in.readMember();
+              r.add(a, b);
+            }
+            relations.add(r);
+            break;
+          default:
+            relations.add(agentRelation(in.readObject()));
+        }
+      }
+      
+      // Property bearer wrappers
+      List<PropertyBearerWrapper> pbws = new LinkedList<PropertyBearerWrapper>();
+      int pbwsCount = in.readInt();
+      for(int i = 0; i < pbwsCount; i++){
+        String name = (String) in.readObject();
+        PropertyBearerWrapper pbw = new PropertyBearerWrapper(in.readMember(), name);
+        
+        int attachedCount = in.readInt();
+        for(int j = 0; j < attachedCount; j++){
+          int k = in.readInt();
+          if(k >= 0){
+            pbw.getProperties().add(properties.get(k));
+          }
+          else{
+            pbw.getProperties().add((IProperty) in.readObject());
+          }
+        }
+        
+        pbws.add(pbw);
+      }
+      
+      return new SimulationState(position, in.environment, relations, agents, properties, pbws, indexRegistry);
+    
+    } catch(IOException e){
+      throw new SnapshotException("Could not decode the simulation state.", e);
+    } catch (ClassNotFoundException e) {
+      throw new SnapshotException("Could not decode the simulation state.", e);
+    } catch (ClassCastException e) {
+      throw new SnapshotException("Could not decode the simulation state.", e);
+    }
+  }
+  
+  /**
+   * Relations are decoded without their type arguments, which are always agents.
+   */
+  @SuppressWarnings("unchecked")
+  private static IRelation<IAgent> agentRelation(Object relation){
+    return (IRelation<IAgent>) relation;
+  }
+  
+  /**
+   * Retrieves a component of the previous snapshot.
+   */
+  private Object findShared(SimulationState previous, byte kind, int id) throws SnapshotException{
+    
+    Object o = null;
+    
+    if(previous != null){
+      switch(kind){
+        case Handle.SHARED_AGENT_CONTROL:
+          o = previous.getAgentControl(id);
+          break;
+        case Handle.SHARED_AGENT:
+          IAgentControl ac = previous.getAgentControl(id);
+          o = (ac != null) ? ac.getAgent() : null;
+          break;
+        case Handle.SHARED_PROPERTY:
+          o = previous.getProperty(id);
+          break;
+        case Handle.SHARED_RELATION:
+          o = previous.getRelation(id);
+          break;
+      }
+    }
+    
+    if(o == null){
+      throw new SnapshotException("The snapshot refers to a component of a previous snapshot which is not available.");
+    }
+    
+    return o;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * Stands for one of the simulator's structures in the serialized part of a snapshot.
+   */
+  private static final class Handle implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+    
+    static final byte PROXY = 0;
+    
+    static final byte RELATION = 1;
+    
+    static final byte ENVIRONMENT = 2;
+    
+    static final byte SHARED = 3;
+    
+    // Kinds of shared components
+    
+    static final byte SHARED_AGENT_CONTROL = 0;
+    
+    static final byte SHARED_AGENT = 1;
+    
+    static final byte SHARED_PROPERTY = 2;
+    
+    static final byte SHARED_RELATION = 3;
+
+    private final byte kind;
+    
+    private final int key;
+    
+    Handle(byte kind, int key){
+      this.kind = kind;
+      this.key = key;
+    }
+  }
+  
+  
+  /**
+   * An output stream that writes the simulator's structures by hand and 
+   * replaces references to them by handles.
+   */
+  private static final class SnapshotOutputStream extends ObjectOutputStream{
+    
+    /**
+     * The environment of the state being written.
+     */
+    private final IEnvironment environment;
+    
+    /**
+     * A map from agents' IDs to agents.
+     */
+    private final Map<Integer, IAgentControl> agents = new HashMap<Integer, IAgentControl>();
+    
+    /**
+     * The indexes of the relations written by hand.
+     */
+    private final Map<Object, Integer> relations = new IdentityHashMap<Object, Integer>();
+    
+    /**
+     * The handles of the components shared with the previous snapshot.
+     */
+    private final Map<Object, Handle> shared = new IdentityHashMap<Object, Handle>();
+    
+    /**
+     * The kinds of the shared components, in the order of their handles.
+     */
+    private final List<Byte> sharedKinds = new ArrayList<Byte>();
+    
+    /**
+     * The IDs of the shared components, in the order of their handles.
+     */
+    private final List<Integer> sharedIds = new ArrayList<Integer>();
+
+    SnapshotOutputStream(OutputStream out, SimulationState state) throws IOException {
+      super(out);
+      
+      this.environment = state.getEnvironment();
+      
+      for(IAgentControl ac: state.getAgentControls()){
+        agents.put(ac.getAgent().getId(), ac);
+      }
+      
+      int i = 0;
+      for(IRelation<IAgent> r: state.getRelations()){
+        if(r.getClass() == Relation.class){
+          relations.put(r, i);
+        }
+        i++;
+      }
+      
+      enableReplaceObject(true);
+    }
+    
+    /**
+     * Defines that the specified component is to be shared with the previous snapshot.
+     */
+    void share(Object o, byte kind, int id){
+      if(!shared.containsKey(o)){
+        shared.put(o, new Handle(Handle.SHARED, sharedKinds.size()));
+        sharedKinds.add(kind);
+        sharedIds.add(id);
+      }
+    }
+    
+    @Override
+    protected Object replaceObject(Object obj) throws IOException {
+      
+      Handle h = shared.get(obj);
+      if(h != null){
+        return h;
+      }
+      
+      if(obj instanceof AgentProxy){
+        int id = ((AgentProxy) obj).getId();
+        if(agents.containsKey(id)){
+          return new Handle(Handle.PROXY, id);
+        }
+      }
+      else if(obj instanceof Relation){
+        Integer i = relations.get(obj);
+        if(i != null){
+          return new Handle(Handle.RELATION, i);
+        }
+      }
+      else if(obj instanceof IEnvironment && obj != environment){
+        // An environment from another snapshot. In this one it can only mean ours.
+        return new Handle(Handle.ENVIRONMENT, 0);
+      }
+      
+      return obj;
+    }
+    
+    @Override
+    protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+      writeUTF(desc.getName());
+    }
+    
+    /**
+     * Writes a component that might be shared with the previous snapshot.
+     */
+    void writeShareable(Object o) throws IOException{
+      Handle h = shared.get(o);
+      
+      if(h != null){
+        writeInt(h.key);
+      }
+      else{
+        writeInt(-1);
+        writeObject(o);
+      }
+    }
+    
+    /**
+     * Writes a reference to a member of a relation or to the target of a
+     * property bearer wrapper.
+     */
+    void writeMember(Object o) throws IOException{
+      
+      if(o == null){
+        writeByte(TAG_NULL);
+      }
+      else if(o instanceof AgentProxy && agents.containsKey(((AgentProxy) o).getId())){
+        writeByte(TAG_PROXY);
+        writeInt(((AgentProxy) o).getId());
+      }
+      else if(o instanceof IAgentControl && agents.containsKey(((IAgentControl) o).getAgent().getId())){
+        writeByte(TAG_AGENT_CONTROL);
+        writeInt(((IAgentControl) o).getAgent().getId());
+      }
+      else if(o instanceof IAgent && agents.containsKey(((IAgent) o).getId())){
+        writeByte(TAG_AGENT);
+        writeInt(((IAgent) o).getId());
+      }
+      else if(o instanceof IEnvironment){
+        writeByte(TAG_ENVIRONMENT);
+      }
+      else{
+        writeByte(TAG_OBJECT);
+        writeObject(o);
+      }
+    }
+  }
+  
+  
+  /**
+   * An input stream that resolves the handles written by <code>SnapshotOutputStream</code>.
+   */
+  private static final class SnapshotInputStream extends SimulatorObjectInputStream{
+    
+    private final Map<Integer, AgentProxy> proxies = new HashMap<Integer, AgentProxy>();
+    
+    private final Map<Integer, IAgentControl> agents = new HashMap<Integer, IAgentControl>();
+    
+    private final List<Object> relations = new ArrayList<Object>();
+    
+    private final List<Object> shared = new ArrayList<Object>();
+    
+    private IEnvironment environment = null;
+
+    SnapshotInputStream(InputStream in) throws IOException {
+      super(in);
+      
+      enableResolveObject(true);
+    }
+    
+    @Override
+    protected Object resolveObject(Object obj) throws IOException {
+      
+      if(obj instanceof Handle){
+        Handle h = (Handle) obj;
+        
+        switch(h.kind){
+          case Handle.PROXY: 
+            return proxies.get(h.key);
+          case Handle.RELATION: 
+            return relations.get(h.key);
+          case Handle.ENVIRONMENT:
+            if(environment == null){
+              throw new IOException("Environment referenced before being available.");
+            }
+            return environment;
+          case Handle.SHARED:
+            return shared.get(h.key);
+          default:
+            throw new IOException("Unknown snapshot handle.");
+        }
+      }
+      
+      return obj;
+    }
+    
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+      String name = readUTF();
+      
+      Class<?> c = Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+      
+      return ObjectStreamClass.lookupAny(c);
+    }
+    
+    Object readShareable() throws IOException, ClassNotFoundException{
+      int k = readInt();
+      
+      if(k >= 0){
+        return shared.get(k);
+      }
+      
+      return readObject();
+    }
+    
+    Object readMember() throws IOException, ClassNotFoundException{
+      
+      byte tag = readByte();
+      
+      switch(tag){
+        case TAG_NULL:
+          return null;
+        case TAG_PROXY:
+          return proxies.get(readInt());
+        case TAG_AGENT_CONTROL:
+          return agents.get(readInt());
+        case TAG_AGENT:
+          return agents.get(readInt()).getAgent();
+        case TAG_ENVIRONMENT:
+          return environment;
+        case TAG_OBJECT:
+          return readObject();
+        default:
+          throw new IOException("Unknown snapshot tag.");
+      }
+    }
+  }
+  
+  
+  /**
+   * Temporarily stands for an agent whose proxy has been decoded before the agent itself. 
+   * It behaves as the agent would with respect to identification, so that 
+   * collections that contain the proxy may be rebuilt meanwhile.
+   */
+  private static final class UnresolvedAgent implements IAgent{
+    
+    private final int id;
+    
+    UnresolvedAgent(int id){
+      this.id = id;
+    }
+
+    @Override
+    public int getId() {
+      return id;
+    }
+
+    @Override
+    public String getName() {
+      return null;
+    }
+
+    @Override
+    public void receiveStimulus(EnvironmentStimulus environmentStimulus) {
+      throw new IllegalStateException("The agent has not been decoded yet.");
+    }
+    
+    public boolean equals(Object o){
+      return (o instanceof IAgent) && ((IAgent) o).getId() == id;
+    }
+    
+    public int hashCode(){
+      return id;
+    }
+  }
+  
+  
+  /**
+   * A byte buffer whose contents can be read back without being copied.
+   */
+  private static final class SnapshotBuffer extends ByteArrayOutputStream{
+    
+    SnapshotBuffer(int size){
+      super(size);
+    }
+    
+    InputStream toInputStream(){
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+
+}
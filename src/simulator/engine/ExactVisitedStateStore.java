@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+import simulator.util.Assert;
+
+/**
+ * Keeps the complete fingerprints of the configurations visited in an 
+ * open-addressing table of <code>long</code>s, so that each configuration costs a 
+ * few bytes regardless of the size of the simulation.
+ * 
+ * Since the search may be depth-bounded, the shallowest depth at which each 
+ * configuration was found is kept as well. A configuration found again at a 
+ * shallower depth is not considered a revisit, for the remaining depth allows 
+ * more to be explored from it.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class ExactVisitedStateStore implements VisitedStateStore {
+  
+  /**
+   * The initial number of slots in the table.
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 12;
+  
+  /**
+   * The maximum fraction of the slots that may be in use before the table grows.
+   */
+  private static final double MAX_LOAD = 0.5;
+  
+  /**
+   * The fingerprints stored, two <code>long</code>s per slot. An empty slot is 
+   * marked by zeros in both positions.
+   */
+  private long[] fingerprints;
+  
+  /**
+   * The shallowest depth at which the fingerprint in the corresponding slot was found.
+   */
+  private int[] depths;
+  
+  /**
+   * Number of slots in use.
+   */
+  private int size = 0;
+  
+  
+  public ExactVisitedStateStore(){
+    this(DEFAULT_CAPACITY);
+  }
+  
+  /**
+   * 
+   * @param capacity The initial number of slots in the table. It is rounded up to a power of two.
+   */
+  public ExactVisitedStateStore(int capacity){
+    Assert.nonNegativeNonZero(capacity);
+    
+    allocate(roundUp(capacity));
+  }
+  
+  @Override
+  public boolean visit(long high, long low, int depth){
+    int slot = find(high, low);
+    
+    if(fingerprints[2 * slot] == 0 && fingerprints[2 * slot + 1] == 0){
+      fingerprints[2 * slot] = high;
+      fingerprints[2 * slot + 1] = low;
+      depths[slot] = depth;
+      size++;
+      
+      if(size > depths.length * MAX_LOAD){
+        grow();
+      }
+      
+      return true;
+    }
+    else if(depth < depths[slot]){
+      depths[slot] = depth;
+      
+      return true;
+    }
+    
+    return false;
+  }
+  
+  @Override
+  public boolean contains(long high, long low){
+    int slot = find(high, low);
+    
+    return fingerprints[2 * slot] != 0 || fingerprints[2 * slot + 1] != 0;
+  }
+  
+  @Override
+  public long size(){
+    return size;
+  }
+  
+  @Override
+  public long getMemoryUsage(){
+    return 8L * fingerprints.length + 4L * depths.length;
+  }
+  
+  @Override
+  public void clear(){
+    allocate(depths.length);
+    size = 0;
+  }
+  
+  @Override
+  public String toString(){
+    return "exact, " + size + " configurations stored";
+  }
+  
+  /**
+   * Copies every fingerprint stored, and the corresponding depth, to the 
+   * specified arrays, in no particular order.
+   * 
+   * @param highs Where to put the high halves of the fingerprints.
+   * @param lows Where to put the low halves of the fingerprints.
+   * @param depths Where to put the depths.
+   * 
+   * @return How many fingerprints were copied (i.e., <code>size()</code>).
+   */
+  int export(long[] highs, long[] lows, int[] depths){
+    int n = 0;
+    
+    for(int i = 0; i < this.depths.length; i++){
+      long h = fingerprints[2 * i];
+      long l = fingerprints[2 * i + 1];
+      
+      if(h != 0 || l != 0){
+        highs[n] = h;
+        lows[n] = l;
+        depths[n] = this.depths[i];
+        n++;
+      }
+    }
+    
+    return n;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary methods
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * Finds either the slot that holds the specified fingerprint or the empty slot
+   * where it should be placed.
+   */
+  private int find(long high, long low){
+    int mask = depths.length - 1;
+    int slot = (int) (high ^ (high >>> 32)) & mask;
+    
+    while(true){
+      long h = fingerprints[2 * slot];
+      long l = fingerprints[2 * slot + 1];
+      
+      if((h == high && l == low) || (h == 0 && l == 0)){
+        return slot;
+      }
+      
+      // Linear probing
+      slot = (slot + 1) & mask;
+    }
+  }
+  
+  private void grow(){
+    long[] oldFingerprints = fingerprints;
+    int[] oldDepths = depths;
+    
+    allocate(oldDepths.length * 2);
+    
+    for(int i = 0; i < oldDepths.length; i++){
+      long h = oldFingerprints[2 * i];
+      long l = oldFingerprints[2 * i + 1];
+      
+      if(h != 0 || l != 0){
+        int slot = find(h, l);
+        fingerprints[2 * slot] = h;
+        fingerprints[2 * slot + 1] = l;
+        depths[slot] = oldDepths[i];
+      }
+    }
+  }
+  
+  private void allocate(int capacity){
+    fingerprints = new long[2 * capacity];
+    depths = new int[capacity];
+  }
+  
+  private static int roundUp(int capacity){
+    int c = 1;
+    while(c < capacity){
+      c = c << 1;
+    }
+    
+    return c;
+  }
+
+}
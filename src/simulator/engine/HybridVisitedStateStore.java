@@ -0,0 +1,578 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import simulator.util.Assert;
+import simulator.util.MappedBuffers;
+
+/**
+ * Keeps the complete fingerprints of the configurations visited both in memory 
+ * and on disk, so that exact searches are not limited by the size of the heap. 
+ * New fingerprints go to a hot in-memory table (an <code>ExactVisitedStateStore</code>). 
+ * When it is full, its contents are sorted and written to a new run, i.e., a file 
+ * which is then memory-mapped and searched by bisection. Each run is guarded by 
+ * a Bloom filter, so that most lookups of fingerprints it does not contain never 
+ * touch the disk.
+ * 
+ * A configuration found again at a shallower depth is stored again, and thus the 
+ * same fingerprint may end up in more than one run. Such duplicates are detected 
+ * later, when the runs are periodically merged into a single one, keeping only the 
+ * shallowest depth. Merging also keeps the number of runs, and thus of lookups, 
+ * small.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class HybridVisitedStateStore implements VisitedStateStore {
+  
+  /**
+   * The default amount of memory used by the hot table, 64 MB.
+   */
+  public static final long DEFAULT_MEMORY = 64L * 1024 * 1024;
+  
+  /**
+   * The default number of runs that triggers a merge.
+   */
+  public static final int DEFAULT_MERGE_THRESHOLD = 8;
+  
+  /**
+   * The size of each record in a run: the two halves of the fingerprint and the depth.
+   */
+  private static final int RECORD_SIZE = 8 + 8 + 4;
+  
+  /**
+   * How many records fit in each mapped segment of a run.
+   */
+  private static final int RECORDS_PER_SEGMENT = 1 << 22;
+  
+  /**
+   * How many bits of Bloom filter are used per fingerprint in a run.
+   */
+  private static final int BLOOM_BITS_PER_ENTRY = 10;
+  
+  /**
+   * How many bits each fingerprint sets in a Bloom filter.
+   */
+  private static final int BLOOM_HASHES = 7;
+  
+  
+  /**
+   * The directory where runs are kept, or <code>null</code> for the default 
+   * temporary directory.
+   */
+  private File directory;
+  
+  /**
+   * The fingerprints not written to disk yet.
+   */
+  private ExactVisitedStateStore hot;
+  
+  /**
+   * How many fingerprints the hot table may hold before it is written to disk.
+   */
+  private int hotLimit;
+  
+  /**
+   * How many runs trigger a merge.
+   */
+  private int mergeThreshold;
+  
+  /**
+   * The runs, from the oldest to the newest.
+   */
+  private List<Run> runs = new ArrayList<Run>();
+  
+  /**
+   * How many distinct configurations have been stored.
+   */
+  private long size = 0;
+  
+  /**
+   * How many merges took place.
+   */
+  private int merges = 0;
+  
+  
+  public HybridVisitedStateStore(File directory){
+    this(directory, DEFAULT_MEMORY, DEFAULT_MERGE_THRESHOLD);
+  }
+  
+  /**
+   * 
+   * @param directory The directory where runs are to be kept, or <code>null</code> 
+   *                  for the default temporary directory.
+   * @param memory How many bytes the hot table may use.
+   * @param mergeThreshold How many runs trigger a merge. It must be at least 2.
+   */
+  public HybridVisitedStateStore(File directory, long memory, int mergeThreshold){
+    Assert.nonNegativeNonZero(memory);
+    Assert.isInInterval(mergeThreshold, 2, Integer.MAX_VALUE);
+    
+    this.directory = directory;
+    this.mergeThreshold = mergeThreshold;
+    
+    // The hot table uses 20 bytes per slot and is kept at most half full
+    long slots = Long.highestOneBit(Math.max(2, memory / RECORD_SIZE));
+    slots = Math.min(slots, 1 << 28);
+    
+    this.hotLimit = (int) (slots / 2);
+    this.hot = new ExactVisitedStateStore((int) slots);
+  }
+  
+  @Override
+  public boolean visit(long high, long low, int depth){
+    
+    if(hot.contains(high, low)){
+      return hot.visit(high, low, depth);
+    }
+    
+    // The newest runs have the shallowest depths, so they are searched first
+    for(int i = runs.size() - 1; i >= 0; i--){
+      Run run = runs.get(i);
+      long index = run.find(high, low);
+      
+      if(index >= 0){
+        if(depth < run.depth(index)){
+          // Explore again, and remember the shallower depth
+          store(high, low, depth);
+          return true;
+        }
+        
+        return false;
+      }
+    }
+    
+    store(high, low, depth);
+    size++;
+    
+    return true;
+  }
+  
+  @Override
+  public boolean contains(long high, long low){
+    if(hot.contains(high, low)){
+      return true;
+    }
+    
+    for(Run run: runs){
+      if(run.find(high, low) >= 0){
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  @Override
+  public long size(){
+    return size;
+  }
+  
+  @Override
+  public long getMemoryUsage(){
+    long bytes = hot.getMemoryUsage();
+    
+    for(Run run: runs){
+      bytes += 8L * run.bloom.length;
+    }
+    
+    return bytes;
+  }
+  
+  /**
+   * 
+   * @return How many bytes the runs take on disk.
+   */
+  public long getDiskUsage(){
+    long bytes = 0;
+    
+    for(Run run: runs){
+      bytes += run.count * RECORD_SIZE;
+    }
+    
+    return bytes;
+  }
+  
+  /**
+   * 
+   * @return How many runs there are on disk.
+   */
+  public int getRunCount(){
+    return runs.size();
+  }
+  
+  @Override
+  public void clear(){
+    hot.clear();
+    
+    for(Run run: runs){
+      run.close();
+    }
+    runs.clear();
+    
+    size = 0;
+    merges = 0;
+  }
+  
+  @Override
+  public String toString(){
+    return "hybrid, " + size + " configurations stored, " + hot.size() + " in memory, " + 
+           runs.size() + " runs taking " + (getDiskUsage() / 1024) + " KB on disk, " + merges + " merges";
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary methods
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private void store(long high, long low, int depth){
+    hot.visit(high, low, depth);
+    
+    if(hot.size() >= hotLimit){
+      try {
+        flush();
+        
+        if(runs.size() >= mergeThreshold){
+          merge();
+        }
+        
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not write the visited configurations to disk.", e);
+      }
+    }
+  }
+  
+  /**
+   * Writes the contents of the hot table to a new run.
+   */
+  private void flush() throws IOException{
+    int n = (int) hot.size();
+    long[] highs = new long[n];
+    long[] lows = new long[n];
+    int[] depths = new int[n];
+    
+    hot.export(highs, lows, depths);
+    sort(highs, lows, depths, 0, n - 1);
+    
+    File file = File.createTempFile("fgs-visited-", ".bin", directory);
+    
+    Run run;
+    try{
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      try{
+        for(int i = 0; i < n; i++){
+          out.writeLong(highs[i]);
+          out.writeLong(lows[i]);
+          out.writeInt(depths[i]);
+        }
+      }
+      finally{
+        out.close();
+      }
+      
+      run = new Run(file, n);
+    }
+    catch (IOException e) {
+      // Otherwise, nobody would delete it
+      file.delete();
+      throw e;
+    }
+    for(int i = 0; i < n; i++){
+      run.addToBloom(highs[i], lows[i]);
+    }
+    
+    runs.add(run);
+    hot.clear();
+  }
+  
+  /**
+   * Merges every run into a single one, eliminating the duplicates among them. 
+   */
+  private void merge() throws IOException{
+    int k = runs.size();
+    long[] positions = new long[k];
+    
+    File file = File.createTempFile("fgs-visited-", ".bin", directory);
+    
+    long n = 0;
+    
+    Run merged;
+    try{
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      try{
+        while(true){
+          
+          // Find the smallest fingerprint not merged yet
+          int min = -1;
+          for(int i = 0; i < k; i++){
+            Run run = runs.get(i);
+            if(positions[i] < run.count && 
+               (min < 0 || compare(run.high(positions[i]), run.low(positions[i]), runs.get(min).high(positions[min]), runs.get(min).low(positions[min])) < 0)){
+              min = i;
+            }
+          }
+          
+          if(min < 0){
+            break;
+          }
+          
+          long high = runs.get(min).high(positions[min]);
+          long low = runs.get(min).low(positions[min]);
+          int depth = Integer.MAX_VALUE;
+          
+          // Consume every copy of it, keeping the shallowest depth
+          for(int i = 0; i < k; i++){
+            Run run = runs.get(i);
+            if(positions[i] < run.count && run.high(positions[i]) == high && run.low(positions[i]) == low){
+              depth = Math.min(depth, run.depth(positions[i]));
+              positions[i]++;
+            }
+          }
+          
+          out.writeLong(high);
+          out.writeLong(low);
+          out.writeInt(depth);
+          n++;
+        }
+      }
+      finally{
+        out.close();
+      }
+      
+      merged = new Run(file, n);
+    }
+    catch (IOException e) {
+      // Otherwise, nobody would delete it
+      file.delete();
+      throw e;
+    }
+    
+    for(long i = 0; i < n; i++){
+      merged.addToBloom(merged.high(i), merged.low(i));
+    }
+    
+    for(Run run: runs){
+      run.close();
+    }
+    runs.clear();
+    runs.add(merged);
+    
+    merges++;
+  }
+  
+  private static int compare(long high1, long low1, long high2, long low2){
+    if(high1 != high2){
+      return high1 < high2 ? -1 : 1;
+    }
+    if(low1 != low2){
+      return low1 < low2 ? -1 : 1;
+    }
+    
+    return 0;
+  }
+  
+  /**
+   * Sorts the fingerprints (and their depths) between the specified indexes, inclusive.
+   */
+  private static void sort(long[] highs, long[] lows, int[] depths, int from, int to){
+    while(from < to){
+      int mid = (from + to) >>> 1;
+      long ph = highs[mid];
+      long pl = lows[mid];
+      
+      int i = from;
+      int j = to;
+      while(i <= j){
+        while(compare(highs[i], lows[i], ph, pl) < 0) i++;
+        while(compare(highs[j], lows[j], ph, pl) > 0) j--;
+        
+        if(i <= j){
+          long h = highs[i]; highs[i] = highs[j]; highs[j] = h;
+          long l = lows[i]; lows[i] = lows[j]; lows[j] = l;
+          int d = depths[i]; depths[i] = depths[j]; depths[j] = d;
+          i++;
+          j--;
+        }
+      }
+      
+      // Recurse into the smaller part, so that the stack stays shallow
+      if(j - from < to - i){
+        sort(highs, lows, depths, from, j);
+        from = i;
+      }
+      else{
+        sort(highs, lows, depths, i, to);
+        to = j;
+      }
+    }
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * A sorted file of fingerprints, memory-mapped for reading.
+   */
+  private static class Run {
+    
+    private File file;
+    
+    private long count;
+    
+    private MappedByteBuffer[] segments;
+    
+    private long[] bloom;
+    
+    private long bloomBits;
+    
+    Run(File file, long count) throws IOException{
+      this.file = file;
+      this.count = count;
+      
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try{
+        FileChannel channel = raf.getChannel();
+        
+        int n = (int) ((count + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+        segments = new MappedByteBuffer[n];
+        for(int i = 0; i < n; i++){
+          long start = (long) i * RECORDS_PER_SEGMENT * RECORD_SIZE;
+          long length = Math.min((long) RECORDS_PER_SEGMENT * RECORD_SIZE, count * RECORD_SIZE - start);
+          segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+      }
+      finally{
+        // The mappings remain valid after the channel is closed
+        raf.close();
+      }
+      
+      long words = Math.max(1, (count * BLOOM_BITS_PER_ENTRY + 63) / 64);
+      bloom = new long[(int) Math.min(words, Integer.MAX_VALUE)];
+      bloomBits = 64L * bloom.length;
+    }
+    
+    long high(long index){
+      return segments[(int) (index / RECORDS_PER_SEGMENT)].getLong((int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE);
+    }
+    
+    long low(long index){
+      return segments[(int) (index / RECORDS_PER_SEGMENT)].getLong((int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE + 8);
+    }
+    
+    int depth(long index){
+      return segments[(int) (index / RECORDS_PER_SEGMENT)].getInt((int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE + 16);
+    }
+    
+    /**
+     * 
+     * @return The index of the specified fingerprint, or -1 if it is not in the run.
+     */
+    long find(long high, long low){
+      if(!mayContain(high, low)){
+        return -1;
+      }
+      
+      long from = 0;
+      long to = count - 1;
+      while(from <= to){
+        long mid = (from + to) >>> 1;
+        int c = compare(high(mid), low(mid), high, low);
+        
+        if(c < 0){
+          from = mid + 1;
+        }
+        else if(c > 0){
+          to = mid - 1;
+        }
+        else{
+          return mid;
+        }
+      }
+      
+      return -1;
+    }
+    
+    void addToBloom(long high, long low){
+      for(int i = 0; i < BLOOM_HASHES; i++){
+        long bit = bloomBit(high, low, i);
+        bloom[(int) (bit >>> 6)] |= 1L << (bit & 63);
+      }
+    }
+    
+    boolean mayContain(long high, long low){
+      for(int i = 0; i < BLOOM_HASHES; i++){
+        long bit = bloomBit(high, low, i);
+        if((bloom[(int) (bit >>> 6)] & (1L << (bit & 63))) == 0){
+          return false;
+        }
+      }
+      
+      return true;
+    }
+    
+    /**
+     * The halves are combined in the opposite order of <code>BitstateVisitedStateStore</code>
+     * and of the hot table, which rely mostly on the high half.
+     */
+    private long bloomBit(long high, long low, int i){
+      long h = low + i * (high | 1);
+      
+      return (h & Long.MAX_VALUE) % bloomBits;
+    }
+    
+    /**
+     * Unmaps the segments and deletes the file. Lookups are serialized by the 
+     * state space, so no one can be reading the segments at this point.
+     */
+    void close(){
+      for(MappedByteBuffer segment: segments){
+        MappedBuffers.unmap(segment);
+      }
+      segments = null;
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * Assigns to each agent, property and relation of a scenario a dense index
+ * (i.e., an integer between 0 and the number of such components), so that they
+ * may be kept in arrays and located by their IDs in constant time, without 
+ * allocating anything. A registry is built when an initial state is created and 
+ * does not change afterwards, so it is shared by all the states derived from it.
+ * 
+ * @author Paulo Salem
+ */
+public class IndexRegistry implements Serializable {
+
+  /**
+   * 
+   */
+  private static final long serialVersionUID = 1L;
+  
+  /**
+   * Returned when an ID has no index.
+   */
+  public static final int NONE = -1;
+
+  private final IdIndex agents;
+  
+  private final IdIndex properties;
+  
+  private final IdIndex relations;
+  
+  
+  /**
+   * 
+   * @param agentIds The IDs of the agents, in the order in which they should be indexed.
+   * @param propertyIds The IDs of the properties, in the order in which they should be indexed.
+   * @param relationIds The IDs of the relations, in the order in which they should be indexed.
+   */
+  public IndexRegistry(Collection<Integer> agentIds, Collection<Integer> propertyIds, Collection<Integer> relationIds){
+    this.agents = new IdIndex(agentIds);
+    this.properties = new IdIndex(propertyIds);
+    this.relations = new IdIndex(relationIds);
+  }
+  
+  /**
+   * 
+   * @param id The ID of an agent.
+   * 
+   * @return The index of the agent, or <code>NONE</code> if it is not registered.
+   */
+  public int agentIndex(int id){
+    return agents.indexOf(id);
+  }
+  
+  /**
+   * 
+   * @param id The ID of a property.
+   * 
+   * @return The index of the property, or <code>NONE</code> if it is not registered.
+   */
+  public int propertyIndex(int id){
+    return properties.indexOf(id);
+  }
+  
+  /**
+   * 
+   * @param id The ID of a relation.
+   * 
+   * @return The index of the relation, or <code>NONE</code> if it is not registered.
+   */
+  public int relationIndex(int id){
+    return relations.indexOf(id);
+  }
+  
+  public int getAgentCount(){
+    return agents.size();
+  }
+  
+  public int getPropertyCount(){
+    return properties.size();
+  }
+  
+  public int getRelationCount(){
+    return relations.size();
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * An open addressing hash table from IDs to indexes. It is at most half full,
+   * so lookups seldom probe more than a couple of slots.
+   */
+  private static final class IdIndex implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+
+    private final int[] keys;
+    
+    private final int[] indexes;
+    
+    private final int mask;
+    
+    private final int size;
+    
+    
+    public IdIndex(Collection<Integer> ids){
+      int capacity = 2;
+      while(capacity < 2 * ids.size()){
+        capacity = capacity << 1;
+      }
+      
+      keys = new int[capacity];
+      indexes = new int[capacity];
+      mask = capacity - 1;
+      
+      for(int i = 0; i < capacity; i++){
+        indexes[i] = NONE;
+      }
+      
+      int next = 0;
+      for(Integer id: ids){
+        int slot = slot(id);
+        
+        // Repeated IDs keep their first index
+        if(indexes[slot] == NONE){
+          keys[slot] = id;
+          indexes[slot] = next;
+          next++;
+        }
+      }
+      
+      size = next;
+    }
+    
+    /**
+     * Finds either the slot of the specified ID or the empty slot where it should be.
+     */
+    private int slot(int id){
+      // Spread consecutive IDs, which are the usual case, over the table
+      int h = id * 0x9E3779B9;
+      int slot = (h ^ (h >>> 16)) & mask;
+      
+      while(indexes[slot] != NONE && keys[slot] != id){
+        slot = (slot + 1) & mask;
+      }
+      
+      return slot;
+    }
+    
+    public int indexOf(int id){
+      return indexes[slot(id)];
+    }
+    
+    public int size(){
+      return size;
+    }
+  }
+
+}
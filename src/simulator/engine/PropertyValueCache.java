@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import simulator.analysis.IBooleanProperty;
+import simulator.analysis.INumericProperty;
+import simulator.analysis.IProperty;
+import simulator.analysis.PropertyBearerWrapper;
+import simulator.analysis.UndefinedPropertyException;
+import simulator.util.Assert;
+
+/**
+ * Remembers the values that properties take in a simulation state, so that each 
+ * property is calculated at most once per bearer and per step, no matter how many 
+ * times it is consulted (e.g., to show it, to fossilize the state and to evaluate 
+ * the literals of the state). Values are kept in the form in which they are requested,
+ * so that boolean and numeric properties need not be converted to text and back.
+ * 
+ * The cache must be invalidated whenever the state changes. Changing the position 
+ * of the state does so automatically, and <code>SimulationRunner</code> does it 
+ * explicitly after stepping the agents. It is meant to be used by a single thread.
+ * 
+ * @author Paulo Salem
+ */
+public class PropertyValueCache {
+
+  /**
+   * The indexes of the properties of the state.
+   */
+  private final IndexRegistry indexRegistry;
+  
+  /**
+   * The values calculated for each bearer, placed according to the indexes of the
+   * properties. Entries are reused from one step to the next.
+   */
+  private final Map<PropertyBearerWrapper, Entry[]> bearers = new IdentityHashMap<PropertyBearerWrapper, Entry[]>();
+  
+  /**
+   * Entries calculated in other generations are no longer valid.
+   */
+  private int generation = 1;
+  
+  
+  public PropertyValueCache(IndexRegistry indexRegistry){
+    Assert.notNull(indexRegistry);
+    
+    this.indexRegistry = indexRegistry;
+  }
+  
+  /**
+   * Discards every value calculated so far.
+   */
+  public void invalidate(){
+    generation++;
+  }
+  
+  /**
+   * 
+   * @param p The property to evaluate.
+   * @param pbw The bearer to evaluate the property on.
+   * 
+   * @return The value of the property, as returned by <code>getValueAsString()</code>.
+   * 
+   * @throws UndefinedPropertyException If the property is not defined for the bearer.
+   */
+  public String getString(IProperty p, PropertyBearerWrapper pbw) throws UndefinedPropertyException{
+    Entry e = entry(p, pbw);
+    
+    if(e == null){
+      return p.getValueAsString(pbw);
+    }
+    
+    if(!e.hasString){
+      try{
+        e.string = p.getValueAsString(pbw);
+      } catch(UndefinedPropertyException ex){
+        e.undefined = ex;
+      }
+      
+      e.hasString = true;
+    }
+    
+    if(e.undefined != null){
+      throw e.undefined;
+    }
+    
+    return e.string;
+  }
+  
+  /**
+   * 
+   * @param p The property to evaluate. If it is an <code>IBooleanProperty</code>,
+   *          it is asked directly; otherwise its textual value is parsed.
+   * @param pbw The bearer to evaluate the property on.
+   * 
+   * @return Whether the property holds.
+   * 
+   * @throws UndefinedPropertyException If the property is not defined for the bearer.
+   */
+  public boolean isTrue(IProperty p, PropertyBearerWrapper pbw) throws UndefinedPropertyException{
+    Entry e = entry(p, pbw);
+    
+    if(e == null){
+      return calculateBoolean(p, pbw);
+    }
+    
+    if(!e.hasBoolean){
+      if(p instanceof IBooleanProperty){
+        e.bool = ((IBooleanProperty) p).isTrue(pbw);
+      }
+      else{
+        e.bool = Boolean.parseBoolean(getString(p, pbw));
+      }
+      
+      e.hasBoolean = true;
+    }
+    
+    return e.bool;
+  }
+  
+  /**
+   * 
+   * @param p The property to evaluate. If it is an <code>INumericProperty</code>,
+   *          it is asked directly; otherwise its textual value is parsed.
+   * @param pbw The bearer to evaluate the property on.
+   * 
+   * @return The numeric value of the property.
+   * 
+   * @throws UndefinedPropertyException If the property is not defined for the bearer.
+   * @throws NumberFormatException If the value of the property is not a number.
+   */
+  public double getDouble(IProperty p, PropertyBearerWrapper pbw) throws UndefinedPropertyException{
+    Entry e = entry(p, pbw);
+    
+    if(e == null){
+      return calculateDouble(p, pbw);
+    }
+    
+    if(!e.hasNumber){
+      try{
+        if(p instanceof INumericProperty){
+          e.number = ((INumericProperty) p).getValueAsDouble(pbw);
+        }
+        else{
+          e.number = Double.parseDouble(getString(p, pbw));
+        }
+        
+        e.notANumber = false;
+        
+      } catch(UndefinedPropertyException ex){
+        e.undefined = ex;
+      } catch(NumberFormatException ex){
+        e.notANumber = true;
+      }
+      
+      e.hasNumber = true;
+    }
+    
+    if(e.undefined != null){
+      throw e.undefined;
+    }
+    
+    if(e.notANumber){
+      throw new NumberFormatException("The value of property " + p.getName() + " is not a number.");
+    }
+    
+    return e.number;
+  }
+  
+  /**
+   * Evaluates a property as <code>isTrue()</code> does, but without any cache.
+   */
+  public static boolean calculateBoolean(IProperty p, PropertyBearerWrapper pbw) throws UndefinedPropertyException{
+    if(p instanceof IBooleanProperty){
+      return ((IBooleanProperty) p).isTrue(pbw);
+    }
+    
+    return Boolean.parseBoolean(p.getValueAsString(pbw));
+  }
+  
+  /**
+   * Evaluates a property as <code>getDouble()</code> does, but without any cache.
+   */
+  public static double calculateDouble(IProperty p, PropertyBearerWrapper pbw) throws UndefinedPropertyException{
+    if(p instanceof INumericProperty){
+      return ((INumericProperty) p).getValueAsDouble(pbw);
+    }
+    
+    return Double.parseDouble(p.getValueAsString(pbw));
+  }
+  
+  /**
+   * 
+   * @return The valid entry of the specified property and bearer, or <code>null</code>
+   *         if the property is not registered (and thus cannot be cached).
+   */
+  private Entry entry(IProperty p, PropertyBearerWrapper pbw){
+    int i = indexRegistry.propertyIndex(p.getId());
+    if(i == IndexRegistry.NONE){
+      return null;
+    }
+    
+    Entry[] entries = bearers.get(pbw);
+    if(entries == null){
+      entries = new Entry[indexRegistry.getPropertyCount()];
+      bearers.put(pbw, entries);
+    }
+    
+    Entry e = entries[i];
+    if(e == null){
+      e = new Entry();
+      entries[i] = e;
+    }
+    
+    if(e.generation != generation){
+      e.reset(generation);
+    }
+    
+    return e;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * The value of a property for a bearer, in each of the forms calculated so far.
+   */
+  private static final class Entry {
+    
+    private int generation = 0;
+    
+    private boolean hasString;
+    
+    private String string;
+    
+    private boolean hasBoolean;
+    
+    private boolean bool;
+    
+    private boolean hasNumber;
+    
+    private double number;
+    
+    private boolean notANumber;
+    
+    private UndefinedPropertyException undefined;
+    
+    
+    private void reset(int generation){
+      this.generation = generation;
+      
+      hasString = false;
+      string = null;
+      hasBoolean = false;
+      hasNumber = false;
+      notANumber = false;
+      undefined = null;
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * A <code>SnapshotCodec</code> that relies entirely on standard Java serialization.
+ * It works with any <code>Serializable</code> component, but it is slow and
+ * produces large snapshots. It is kept mainly as a reference implementation.
+ * 
+ * @author Paulo Salem
+ */
+public class SerializationSnapshotCodec implements SnapshotCodec {
+  
+  public static final String NAME = "serialization";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] encode(SimulationState state) throws SnapshotException {
+    try{
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      
+      oos.writeObject(state);
+      oos.close();
+      
+      return baos.toByteArray();
+      
+    } catch(IOException e){
+      throw new SnapshotException("Could not serialize the simulation state.", e);
+    }
+  }
+
+  @Override
+  public SimulationState decode(byte[] data) throws SnapshotException {
+    try{
+      SimulatorObjectInputStream ois = new SimulatorObjectInputStream(new ByteArrayInputStream(data));
+      
+      return (SimulationState) ois.readObject();
+      
+    } catch(IOException e){
+      throw new SnapshotException("Could not deserialize the simulation state.", e);
+    } catch (ClassNotFoundException e) {
+      throw new SnapshotException("Could not deserialize the simulation state.", e);
+    }
+  }
+
+  @Override
+  public SimulationState copy(SimulationState state) throws SnapshotException {
+    return decode(encode(state));
+  }
+  
+  @Override
+  public SimulationState snapshot(SimulationState state, SimulationState previous) throws SnapshotException {
+    // Nothing is shared
+    return copy(state);
+  }
+
+}
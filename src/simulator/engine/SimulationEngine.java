@@ -31,8 +31,18 @@
  ******************************************************************************/
 package simulator.engine;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import simulator.Scenario;
 import simulator.analysis.UndefinedPropertyException;
@@ -41,11 +51,13 @@ import simulator.components.ComponentsRegistry;
 import simulator.engine.alevos.EMMASSimulatorConnector;
 import simulator.engine.runner.SimulationRunException;
 import simulator.engine.runner.SimulationRunner;
+import simulator.engine.runner.TraceSink;
 import simulator.engine.strategy.ALEVOSSimulationStrategy;
 import simulator.engine.strategy.SimulationStrategy;
 import simulator.environment.InvalidEnvironmentException;
 import simulator.ui.Messenger;
 import simulator.ui.SimulatorUI;
+import simulator.util.RandomStream;
 import simulator.visualization.StateVisualizer;
 
 
@@ -56,17 +68,28 @@ import simulator.visualization.StateVisualizer;
  */
 public class SimulationEngine {
   
-  // TODO Idea: there could be one SimulationRunner for each SimulationStrategy, and all of them
-  //            could run in parallel.
-  
+  /**
+   * The runner shared by the strategies, except by those executed concurrently
+   * with others, which get runners of their own.
+   */
   private SimulationRunner runner;
   
+  /**
+   * The runners created for strategies executed concurrently with others.
+   */
+  private List<SimulationRunner> groupRunners = new ArrayList<SimulationRunner>();
+  
   private Collection<SimulationStrategy> strategies = new LinkedList<SimulationStrategy>();
   
   private Scenario scenario = null;
   
   private ComponentsRegistry registry = null;
   
+  /**
+   * If <code>true</code>, the strategies of each group are executed at the same time.
+   */
+  private boolean concurrentGroups = false;
+  
   
   /**
    * Creates a new <code>SimulationEngine</code>.
@@ -77,9 +100,24 @@ public class SimulationEngine {
    * @throws ComponentInstantiationException If there are problems while building the initial state.
    */
   public SimulationEngine(Scenario scenario, Collection<SimulationStrategy> strategies, ComponentsRegistry registry) throws ComponentInstantiationException{
+    this(scenario, strategies, registry, new RandomStream(0));
+  }
+  
+  /**
+   * Creates a new <code>SimulationEngine</code>.
+   * 
+   * @param scenario The simulation scenario to be executed.
+   * 
+   * @param strategy The simulation strategy to be employed.
+   * @param random The stream from which the randomness of each strategy is split, 
+   *               according to the strategy's position.
+   * 
+   * @throws ComponentInstantiationException If there are problems while building the initial state.
+   */
+  public SimulationEngine(Scenario scenario, Collection<SimulationStrategy> strategies, ComponentsRegistry registry, RandomStream random) throws ComponentInstantiationException{
 
     // Check parameters
-    if(scenario == null || strategies == null || registry == null){
+    if(scenario == null || strategies == null || registry == null || random == null){
       throw new IllegalArgumentException();
     }
     
@@ -90,11 +128,17 @@ public class SimulationEngine {
     runner = new SimulationRunner(scenario.createInitialState(registry));
     
     // Setup strategies
+    int i = 0;
     for(SimulationStrategy ss: strategies){
       
       // Connect the strategy to the appropriate simulation runner
       ss.setSimulationRunner(runner);
       
+      // Each strategy has its own randomness, so that it does not depend on the 
+      // strategies executed before it
+      ss.setRandomStream(random.split(i));
+      i++;
+      
       // If it is an ALEVOS strategy, we shall also need a simulator connector
       if(ss instanceof ALEVOSSimulationStrategy){
         if(scenario.getEMMAS() != null){
@@ -116,13 +160,215 @@ public class SimulationEngine {
   public void executeStrategies() throws ComponentInstantiationException, UndefinedPropertyException, InvalidEnvironmentException, SimulationRunException{
     
     // Run all the strategies
+    if(!concurrentGroups){
+      for(SimulationStrategy ss: strategies){
+        executeStrategy(ss, runner);
+      }
+    }
+    else{
+      for(List<SimulationStrategy> group: groupStrategies()){
+        if(group.size() == 1){
+          executeStrategy(group.get(0), runner);
+        }
+        else if(sharesState(group)){
+          SimulatorUI.instance().getMessenger().printMsg("WARNING: Some strategies of group " + group.get(0).getGroup() + 
+                                                         " share their state, so the group will be executed one strategy after another.", Messenger.IMPORTANT_MSG);
+          for(SimulationStrategy ss: group){
+            executeStrategy(ss, runner);
+          }
+        }
+        else{
+          executeConcurrently(group);
+        }
+      }
+    }
+    
+  }
+  
+  private void executeStrategy(SimulationStrategy ss, SimulationRunner r) throws ComponentInstantiationException, UndefinedPropertyException, InvalidEnvironmentException, SimulationRunException{
+    SimulatorUI.instance().getMessenger().printMsg("\nRunning the " + ss.getName() + " strategy...", Messenger.IMPORTANT_MSG);
+    r.setRandomStream(ss.getRandomStream().split("runs"));
+    ss.startChronometer();
+    ss.execute();
+    ss.stopChronometer();
+  }
+  
+  /**
+   * Collects the strategies of each group, in the order in which groups first 
+   * appear. Strategies that belong to no group are left alone.
+   * 
+   * @return The strategies, by group.
+   */
+  private List<List<SimulationStrategy>> groupStrategies(){
+    List<List<SimulationStrategy>> groups = new LinkedList<List<SimulationStrategy>>();
+    Map<String, List<SimulationStrategy>> byName = new HashMap<String, List<SimulationStrategy>>();
+    
     for(SimulationStrategy ss: strategies){
-      SimulatorUI.instance().getMessenger().printMsg("\nRunning the " + ss.getName() + " strategy...", Messenger.IMPORTANT_MSG);
-      ss.startChronometer();
-      ss.execute();
-      ss.stopChronometer();
+      List<SimulationStrategy> group = null;
+      if(ss.getGroup() != null){
+        group = byName.get(ss.getGroup());
+      }
+      
+      if(group == null){
+        group = new ArrayList<SimulationStrategy>();
+        groups.add(group);
+        
+        if(ss.getGroup() != null){
+          byName.put(ss.getGroup(), group);
+        }
+      }
+      
+      group.add(ss);
+    }
+    
+    return groups;
+  }
+  
+  /**
+   * 
+   * @return <code>true</code> if any two of the specified strategies share their
+   *         state (see <code>SimulationStrategy.sharesStateWith()</code>); 
+   *         <code>false</code> otherwise.
+   */
+  private boolean sharesState(List<SimulationStrategy> group){
+    for(int i = 0; i < group.size(); i++){
+      for(int j = i + 1; j < group.size(); j++){
+        if(group.get(i).sharesStateWith(group.get(j))){
+          return true;
+        }
+      }
     }
     
+    return false;
+  }
+  
+  /**
+   * Executes the specified strategies, which belong to the same group, at the 
+   * same time. The first one uses the engine's runner (and, therefore, its trace 
+   * sinks), the others get runners and connectors of their own. Once a strategy 
+   * finishes the group, the others are canceled, so the group takes as long as 
+   * its quickest strategy.
+   * 
+   * Only strategies that are concurrent (see <code>SimulationStrategy.isConcurrent()</code>)
+   * actually run in parallel. The others hold the lock of ALEVOS throughout, and thus 
+   * run one after another, in which case a warning is given.
+   * 
+   * @param group The strategies.
+   */
+  private void executeConcurrently(List<SimulationStrategy> group) throws ComponentInstantiationException, UndefinedPropertyException, InvalidEnvironmentException, SimulationRunException{
+    
+    int serial = 0;
+    for(SimulationStrategy ss: group){
+      if(!ss.isConcurrent()){
+        serial++;
+      }
+    }
+    if(serial > 1){
+      SimulatorUI.instance().getMessenger().printMsg("WARNING: " + serial + " of the " + group.size() + " strategies of group " + group.get(0).getGroup() + 
+                                                     " use ALEVOS algorithms that are not concurrent, so they will be executed one after another. " + 
+                                                     "A state space (see -state-space) gives verifications concurrent algorithms.", Messenger.IMPORTANT_MSG);
+    }
+    
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(group.size());
+    for(final SimulationStrategy ss: group){
+      
+      final SimulationRunner r;
+      if(tasks.isEmpty()){
+        r = runner;
+      }
+      else{
+        r = new SimulationRunner(scenario.createInitialState(registry));
+        groupRunners.add(r);
+        ss.setSimulationRunner(r);
+        if(ss instanceof ALEVOSSimulationStrategy){
+          ((ALEVOSSimulationStrategy)ss).setSimulatorConnector(new EMMASSimulatorConnector(r));
+        }
+      }
+      
+      tasks.add(new Callable<Object>() {
+        public Object call() throws Exception {
+          try{
+            executeStrategy(ss, r);
+          }
+          catch (Exception e) {
+            // The others would probably fail as well
+            if(ss.getCancellationToken() != null){
+              ss.getCancellationToken().cancel();
+            }
+            
+            throw e;
+          }
+          
+          return null;
+        }
+      });
+    }
+    
+    ExecutorService pool = Executors.newFixedThreadPool(tasks.size(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "strategy");
+        
+        // Must not prevent the simulator from exiting
+        t.setDaemon(true);
+        
+        return t;
+      }
+    });
+    
+    try{
+      for(Future<Object> f: pool.invokeAll(tasks)){
+        f.get();
+      }
+    }
+    catch (ExecutionException e) {
+      if(e.getCause() instanceof ComponentInstantiationException){
+        throw (ComponentInstantiationException) e.getCause();
+      }
+      else if(e.getCause() instanceof UndefinedPropertyException){
+        throw (UndefinedPropertyException) e.getCause();
+      }
+      else if(e.getCause() instanceof InvalidEnvironmentException){
+        throw (InvalidEnvironmentException) e.getCause();
+      }
+      else if(e.getCause() instanceof SimulationRunException){
+        throw (SimulationRunException) e.getCause();
+      }
+      else if(e.getCause() instanceof RuntimeException){
+        throw (RuntimeException) e.getCause();
+      }
+      else if(e.getCause() instanceof Error){
+        throw (Error) e.getCause();
+      }
+      
+      throw new SimulationRunException("A strategy failed.", e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SimulationRunException("Interrupted while executing the strategies of a group.", e);
+    }
+    finally{
+      pool.shutdownNow();
+    }
+  }
+  
+  /**
+   * Defines whether the strategies of each group are to be executed at the same 
+   * time, each with its own runner, or one after another, as usual.
+   * 
+   * @param concurrentGroups <code>true</code> if they are to be executed at the 
+   *                         same time; <code>false</code> otherwise.
+   */
+  public void setConcurrentGroups(boolean concurrentGroups){
+    this.concurrentGroups = concurrentGroups;
+  }
+  
+  /**
+   * Registers a sink to receive the states reached while the strategies are executed.
+   * 
+   * @param sink The sink.
+   */
+  public void addTraceSink(TraceSink sink){
+    runner.addTraceSink(sink);
   }
   
   /**
@@ -148,5 +394,22 @@ public class SimulationEngine {
     return registry;
   }
   
+  /**
+   * Releases the resources held by the runners and by the results of the 
+   * strategies (e.g., the files of their traces). The results cannot be 
+   * inspected afterwards.
+   */
+  public void close(){
+    runner.close();
+    for(SimulationRunner r: groupRunners){
+      r.close();
+    }
+    groupRunners.clear();
+    
+    for(SimulationStrategy ss: strategies){
+      ss.dispose();
+    }
+  }
+  
 
 }
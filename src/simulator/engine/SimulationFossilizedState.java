@@ -31,8 +31,12 @@
  ******************************************************************************/
 package simulator.engine;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -109,6 +113,13 @@ public class SimulationFossilizedState {
 	  public boolean equals(Object o){
 	    return equals((SimulationFossilizedState) o);
 	  }
+	  
+	  /**
+	   * Consistent with <code>equals()</code>, since equal maps have equal hash codes.
+	   */
+	  public int hashCode(){
+	    return stringMap.hashCode() + 31 * integerMap.hashCode() + 961 * booleanMap.hashCode();
+	  }
 
 	  
 	  /**
@@ -182,4 +193,96 @@ public class SimulationFossilizedState {
 		  return true;
 	  }
 	  
+	  
+	  
+	  /////////////////////////////////////////////////////////////////////////////
+	  // Encoding methods
+	  /////////////////////////////////////////////////////////////////////////////
+	  
+	  /**
+	   * Writes this fossilized state in a compact binary form, which can be read 
+	   * back with <code>readFrom()</code>.
+	   * 
+	   * @param out Where to write.
+	   * 
+	   * @throws IOException If the data cannot be written.
+	   */
+	  public void writeTo(DataOutput out) throws IOException{
+	    out.writeInt(stringMap.size());
+	    for(Map.Entry<String, String> e: stringMap.entrySet()){
+	      writeString(out, e.getKey());
+	      writeString(out, e.getValue());
+	    }
+	    
+	    out.writeInt(integerMap.size());
+	    for(Map.Entry<String, Integer> e: integerMap.entrySet()){
+	      writeString(out, e.getKey());
+	      out.writeInt(e.getValue());
+	    }
+	    
+	    out.writeInt(booleanMap.size());
+	    for(Map.Entry<String, Boolean> e: booleanMap.entrySet()){
+	      writeString(out, e.getKey());
+	      out.writeBoolean(e.getValue());
+	    }
+	  }
+	  
+	  /**
+	   * Reads a fossilized state written by <code>writeTo()</code>.
+	   * 
+	   * @param in Where to read from.
+	   * 
+	   * @return The fossilized state.
+	   * 
+	   * @throws IOException If the data cannot be read.
+	   */
+	  public static SimulationFossilizedState readFrom(DataInput in) throws IOException{
+	    Map<String, String> stringMap = new HashMap<String, String>();
+	    Map<String, Integer> integerMap = new HashMap<String, Integer>();
+	    Map<String, Boolean> booleanMap = new HashMap<String, Boolean>();
+	    
+	    int size = in.readInt();
+	    for(int i = 0; i < size; i++){
+	      stringMap.put(readString(in), readString(in));
+	    }
+	    
+	    size = in.readInt();
+	    for(int i = 0; i < size; i++){
+	      integerMap.put(readString(in), in.readInt());
+	    }
+	    
+	    size = in.readInt();
+	    for(int i = 0; i < size; i++){
+	      booleanMap.put(readString(in), in.readBoolean());
+	    }
+	    
+	    return new SimulationFossilizedState(stringMap, integerMap, booleanMap);
+	  }
+	  
+	  /**
+	   * Writes a possibly <code>null</code> string of any length.
+	   */
+	  private static void writeString(DataOutput out, String s) throws IOException{
+	    if(s == null){
+	      out.writeInt(-1);
+	    }
+	    else{
+	      byte[] bytes = s.getBytes("UTF-8");
+	      out.writeInt(bytes.length);
+	      out.write(bytes);
+	    }
+	  }
+	  
+	  private static String readString(DataInput in) throws IOException{
+	    int length = in.readInt();
+	    if(length < 0){
+	      return null;
+	    }
+	    
+	    byte[] bytes = new byte[length];
+	    in.readFully(bytes);
+	    
+	    return new String(bytes, "UTF-8");
+	  }
+	  
 }
@@ -31,11 +31,10 @@
  ******************************************************************************/
  package simulator.engine;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -43,13 +42,13 @@ import java.util.Map;
 
 import simulator.agent.IAgent;
 import simulator.agent.IAgentControl;
+import simulator.agent.IChangeTracking;
 import simulator.agent.relation.IRelation;
 import simulator.analysis.IProperty;
 import simulator.analysis.PropertyBearerWrapper;
 import simulator.analysis.UndefinedPropertyException;
 import simulator.environment.IEnvironment;
 import simulator.util.Assert;
-import simulator.util.Cloning;
 
 
 /**
@@ -93,6 +92,36 @@ public class SimulationState implements Serializable{
    * The <code>PropertyBearerWrapper</code>s available in the state
    */
   private List<PropertyBearerWrapper> propertyBearerWrappers = new LinkedList<PropertyBearerWrapper>();
+  
+  /**
+   * The dense indexes of the agents, properties and relations of the state.
+   */
+  private IndexRegistry indexRegistry;
+  
+  /**
+   * The agents, properties and relations of the state, placed according to 
+   * <code>indexRegistry</code>. They are rebuilt whenever the state is deserialized.
+   */
+  private transient IAgentControl[] agentControlsByIndex;
+  
+  private transient IProperty[] propertiesByIndex;
+  
+  private transient IRelation<IAgent>[] relationsByIndex;
+  
+  /**
+   * The values of the properties in the current position. Created when first needed.
+   */
+  private transient PropertyValueCache propertyValues;
+  
+  /**
+   * The codec used to take snapshots (i.e., deep copies) of states.
+   */
+  private static SnapshotCodec snapshotCodec = new CompactSnapshotCodec();
+  
+  /**
+   * Whether snapshots may share unchanged components with previous snapshots.
+   */
+  private static boolean incrementalSnapshots = true;
 
   // TODO Necessary?
   /**
@@ -103,6 +132,16 @@ public class SimulationState implements Serializable{
   
   
   public SimulationState(int position, IEnvironment environment, List<IRelation<IAgent>> relations, List<IAgentControl> agentControls, List<IProperty> properties, List<PropertyBearerWrapper> propertyBearerWrappers){
+    this(position, environment, relations, agentControls, properties, propertyBearerWrappers, null);
+  }
+  
+  /**
+   * 
+   * @param indexRegistry The indexes of the state's components, or <code>null</code> if 
+   *                      they must be computed. A registry that does not cover all the
+   *                      components is replaced by a new one.
+   */
+  public SimulationState(int position, IEnvironment environment, List<IRelation<IAgent>> relations, List<IAgentControl> agentControls, List<IProperty> properties, List<PropertyBearerWrapper> propertyBearerWrappers, IndexRegistry indexRegistry){
 	  Assert.notNull(relations);
 	  Assert.notNull(agentControls);
 	  Assert.notNull(properties);
@@ -114,6 +153,9 @@ public class SimulationState implements Serializable{
     this.agentControls = agentControls;
     this.properties = properties;
     this.propertyBearerWrappers = propertyBearerWrappers;
+    this.indexRegistry = indexRegistry;
+    
+    buildIndexes();
     
     environment.setSimulationState(this);
     this.environment = environment;
@@ -141,30 +183,180 @@ public class SimulationState implements Serializable{
   
 
   
+  /**
+   * Copies this state through the current snapshot codec.
+   * 
+   * @throws IllegalStateException If the state cannot be copied, since 
+   *                               <code>clone()</code> cannot declare a 
+   *                               <code>SnapshotException</code>.
+   */
   public Object clone(){
+    try{
+      return snapshotCodec.copy(this);
     
-    Object clone = null;
+    } catch(SnapshotException e){
+      throw new IllegalStateException("The simulation state could not be copied.", e);
+    }
+  }
+  
+  /**
+   * Takes a read-only snapshot of this state. Components which implement 
+   * <code>IChangeTracking</code> and did not change since <code>previous</code> was taken
+   * are shared with it, unless incremental snapshots are disabled. Such 
+   * components continue to refer to the environment of the snapshot in which they 
+   * were first copied. The resulting snapshot must therefore never be modified; use
+   * <code>clone()</code> on it in order to obtain a state that can be simulated.
+   * 
+   * @param previous The last snapshot taken of this state, or <code>null</code>.
+   * 
+   * @return The snapshot.
+   * 
+   * @throws SnapshotException If the state cannot be copied.
+   */
+  public SimulationState snapshot(SimulationState previous) throws SnapshotException{
+    SimulationState snapshot = snapshotCodec.snapshot(this, incrementalSnapshots ? previous : null);
     
-    // TODO This works, but it is probably very inefficient. We may try to optimize.
+    resetChangeTracking();
     
-    try{
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      ObjectOutputStream oos = new ObjectOutputStream(baos);
+    return snapshot;
+  }
+  
+  /**
+   * Informs every component that tracks its changes that a snapshot has just been taken.
+   */
+  public void resetChangeTracking(){
+    for(IAgentControl ac: agentControls){
+      if(ac instanceof IChangeTracking){
+        ((IChangeTracking) ac).snapshotTaken();
+      }
+    }
+    
+    for(IProperty p: properties){
+      if(p instanceof IChangeTracking){
+        ((IChangeTracking) p).snapshotTaken();
+      }
+    }
+    
+    for(IRelation<IAgent> r: relations){
+      if(r instanceof IChangeTracking){
+        ((IChangeTracking) r).snapshotTaken();
+      }
+    }
+  }
+  
+  /**
+   * Restores the link between the environment and this state, which the 
+   * environment does not keep on its own.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+    in.defaultReadObject();
+    
+    buildIndexes();
+    
+    environment.setSimulationState(this);
+  }
+  
+  /**
+   * Places the agents, properties and relations in arrays, according to their indexes.
+   */
+  @SuppressWarnings("unchecked")
+  private void buildIndexes(){
+    if(indexRegistry == null || !isCovered(indexRegistry)){
+      List<Integer> agentIds = new ArrayList<Integer>(agentControls.size());
+      for(IAgentControl ac: agentControls){
+        agentIds.add(ac.getAgent().getId());
+      }
       
-      oos.writeObject(this);
+      List<Integer> propertyIds = new ArrayList<Integer>(properties.size());
+      for(IProperty p: properties){
+        propertyIds.add(p.getId());
+      }
       
-      ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-      SimulatorObjectInputStream ois = new SimulatorObjectInputStream(bais);
+      List<Integer> relationIds = new ArrayList<Integer>(relations.size());
+      for(IRelation<IAgent> r: relations){
+        relationIds.add(r.getId());
+      }
       
-      clone = ois.readObject();
+      indexRegistry = new IndexRegistry(agentIds, propertyIds, relationIds);
+    }
     
-    } catch(Exception e){
-      // TODO
-      e.printStackTrace();
+    agentControlsByIndex = new IAgentControl[indexRegistry.getAgentCount()];
+    for(IAgentControl ac: agentControls){
+      agentControlsByIndex[indexRegistry.agentIndex(ac.getAgent().getId())] = ac;
     }
-
-
-    return clone;
+    
+    propertiesByIndex = new IProperty[indexRegistry.getPropertyCount()];
+    for(IProperty p: properties){
+      propertiesByIndex[indexRegistry.propertyIndex(p.getId())] = p;
+    }
+    
+    relationsByIndex = new IRelation[indexRegistry.getRelationCount()];
+    for(IRelation<IAgent> r: relations){
+      relationsByIndex[indexRegistry.relationIndex(r.getId())] = r;
+    }
+  }
+  
+  /**
+   * 
+   * @return Whether every component of the state has an index in the specified registry.
+   */
+  private boolean isCovered(IndexRegistry registry){
+    for(IAgentControl ac: agentControls){
+      if(registry.agentIndex(ac.getAgent().getId()) == IndexRegistry.NONE){
+        return false;
+      }
+    }
+    
+    for(IProperty p: properties){
+      if(registry.propertyIndex(p.getId()) == IndexRegistry.NONE){
+        return false;
+      }
+    }
+    
+    for(IRelation<IAgent> r: relations){
+      if(registry.relationIndex(r.getId()) == IndexRegistry.NONE){
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  /**
+   * 
+   * @return The codec used to take snapshots of states.
+   */
+  public static SnapshotCodec getSnapshotCodec(){
+    return snapshotCodec;
+  }
+  
+  /**
+   * Defines the codec used to take snapshots of states.
+   * 
+   * @param codec The new codec.
+   */
+  public static void setSnapshotCodec(SnapshotCodec codec){
+    Assert.notNull(codec);
+    
+    snapshotCodec = codec;
+  }
+  
+  /**
+   * 
+   * @return Whether snapshots may share unchanged components with previous snapshots.
+   */
+  public static boolean isIncrementalSnapshots(){
+    return incrementalSnapshots;
+  }
+  
+  /**
+   * Defines whether snapshots may share unchanged components with previous snapshots.
+   * 
+   * @param incremental <code>true</code> to allow sharing; <code>false</code> to always 
+   *                    copy everything.
+   */
+  public static void setIncrementalSnapshots(boolean incremental){
+    incrementalSnapshots = incremental;
   }
   
   public int getPosition() {
@@ -177,6 +369,10 @@ public class SimulationState implements Serializable{
     Assert.nonNegative(position);
     
     this.position = position;
+    
+    if(propertyValues != null){
+      propertyValues.invalidate();
+    }
   }
 
   /**
@@ -203,14 +399,9 @@ public class SimulationState implements Serializable{
    *         <code>null<code> otherwise.
    */
   public IAgentControl getAgentControl(int id){
+    int i = indexRegistry.agentIndex(id);
     
-    for(IAgentControl ac: agentControls){
-      if(ac.getAgent().getId() == id){
-        return ac;
-      }
-    }
-    
-    return null;
+    return (i != IndexRegistry.NONE) ? agentControlsByIndex[i] : null;
   }
   
   /**
@@ -221,14 +412,49 @@ public class SimulationState implements Serializable{
    *         <code>null<code> otherwise.
    */
   public IProperty getProperty(int id){
+    int i = indexRegistry.propertyIndex(id);
     
-    for(IProperty p: properties){
-      if(p.getId() == id){
-        return p;
-      }
+    return (i != IndexRegistry.NONE) ? propertiesByIndex[i] : null;
+  }
+  
+  /**
+   * 
+   * @param id The ID of the desired relation.
+   * 
+   * @return The appropriate <code>IRelation</code>, if it exists;
+   *         <code>null<code> otherwise.
+   */
+  public IRelation<IAgent> getRelation(int id){
+    int i = indexRegistry.relationIndex(id);
+    
+    return (i != IndexRegistry.NONE) ? relationsByIndex[i] : null;
+  }
+  
+  /**
+   * 
+   * @return The values of the properties in the current position of the state.
+   */
+  public PropertyValueCache getPropertyValues(){
+    if(propertyValues == null){
+      propertyValues = new PropertyValueCache(indexRegistry);
     }
     
-    return null;
+    return propertyValues;
+  }
+  
+  /**
+   * 
+   * @return The indexes of the agents, properties and relations of the state.
+   */
+  public IndexRegistry getIndexRegistry(){
+    return indexRegistry;
+  }
+  
+  /**
+   * @return The <code>IProperty</code>s of the simulation state.
+   */
+  public List<IProperty> getProperties(){
+    return properties;
   }
   
   /**
@@ -258,10 +484,12 @@ public class SimulationState implements Serializable{
     Map<String, Integer> integerMap = new HashMap<String, Integer>();
     Map<String, Boolean> booleanMap = new HashMap<String, Boolean>();
     
+    PropertyValueCache values = getPropertyValues();
+    
     // Inspect each property bearer
     for(PropertyBearerWrapper pb: propertyBearerWrappers){
     	for(IProperty p: pb.getProperties()){
-    		stringMap.put(p.getName() + "@" + pb.getName(),p.getValueAsString(pb));
+    		stringMap.put(p.getName() + "@" + pb.getName(), values.getString(p, pb));
     	}
     	
     }
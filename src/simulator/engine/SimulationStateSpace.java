@@ -31,6 +31,301 @@
  ******************************************************************************/
 package simulator.engine;
 
-public class SimulationStateSpace {
+import simulator.util.Assert;
 
+/**
+ * Remembers which configurations a search over simulation states has already 
+ * visited, so that revisits can be pruned. A configuration is identified by a 
+ * 128-bit fingerprint, computed over the encoding of a <code>SimulationState</code>
+ * (see <code>SnapshotCodec</code>) and over whatever else the search considers 
+ * relevant (e.g., the states of the transition systems that guide the simulation). 
+ * Only the fingerprints are kept, in a <code>VisitedStateStore</code>, so that 
+ * each configuration costs a few bytes (or bits) regardless of the size of the 
+ * simulation.
+ * 
+ * Fingerprints may collide, in which case a configuration is wrongly taken 
+ * as visited. With 128 bits, however, this is so unlikely that it can be ignored 
+ * in practice.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class SimulationStateSpace {
+  
+  /**
+   * How search algorithms should keep track of the configurations visited.
+   */
+  public enum Mode {
+    
+    /**
+     * Configurations are not remembered, so nothing is pruned.
+     */
+    NONE,
+    
+    /**
+     * The fingerprints of the configurations are kept in memory 
+     * (see <code>ExactVisitedStateStore</code>).
+     */
+    EXACT,
+    
+    /**
+     * Only a few bits are kept per configuration, at the risk of omitting some
+     * of them (see <code>BitstateVisitedStateStore</code>).
+     */
+    BITSTATE,
+    
+    /**
+     * The fingerprints of the configurations are kept in memory and, once it 
+     * fills up, on disk (see <code>HybridVisitedStateStore</code>).
+     */
+    HYBRID
+  }
+  
+  /**
+   * Where the fingerprints are kept.
+   */
+  private VisitedStateStore store;
+  
+  /**
+   * Number of revisits detected since the last <code>clear()</code>.
+   */
+  private long revisits = 0;
+  
+  
+  public SimulationStateSpace(){
+    this(new ExactVisitedStateStore());
+  }
+  
+  /**
+   * 
+   * @param store Where the fingerprints are to be kept.
+   */
+  public SimulationStateSpace(VisitedStateStore store){
+    Assert.notNull(store);
+    
+    this.store = store;
+  }
+  
+  /**
+   * Forgets every configuration visited so far.
+   */
+  public void clear(){
+    store.clear();
+    revisits = 0;
+  }
+  
+  /**
+   * Starts the fingerprint of a configuration that involves the specified 
+   * simulation state. The position of the state is not taken into account,
+   * since it merely counts how many steps were taken to reach it.
+   * 
+   * @param state The simulation state.
+   * 
+   * @return A fingerprint to which further information may be added.
+   * 
+   * @throws SnapshotException If the state cannot be encoded.
+   */
+  public Fingerprint fingerprint(SimulationState state) throws SnapshotException{
+    Assert.notNull(state);
+    
+    SnapshotCodec codec = SimulationState.getSnapshotCodec();
+    
+    byte[] encoding;
+    if(codec instanceof CompactSnapshotCodec){
+      encoding = ((CompactSnapshotCodec) codec).encodeContents(state);
+    }
+    else{
+      // Other codecs include the position, so configurations that differ only
+      // on it will not be recognized as equal. This is safe, though.
+      encoding = codec.encode(state);
+    }
+    
+    Fingerprint f = new Fingerprint();
+    f.add(encoding, 0, encoding.length);
+    
+    return f;
+  }
+  
+  /**
+   * Records a visit to the configuration identified by the specified fingerprint.
+   * 
+   * @param fingerprint The fingerprint of the configuration.
+   * @param depth The depth at which the configuration was found.
+   * 
+   * @return <code>true</code> if the configuration had not been visited yet, 
+   *         and therefore must be explored; <code>false</code> if it is a revisit.
+   */
+  public boolean visit(Fingerprint fingerprint, int depth){
+    Assert.notNull(fingerprint);
+    
+    return visit(fingerprint.getHigh(), fingerprint.getLow(), depth);
+  }
+  
+  /**
+   * Records a visit to the configuration identified by the specified halves of 
+   * a fingerprint, which might have been calculated elsewhere.
+   * 
+   * @param high The high half of the fingerprint (see <code>Fingerprint.getHigh()</code>).
+   * @param low The low half of the fingerprint (see <code>Fingerprint.getLow()</code>).
+   * @param depth The depth at which the configuration was found.
+   * 
+   * @return <code>true</code> if the configuration had not been visited yet, 
+   *         and therefore must be explored; <code>false</code> if it is a revisit.
+   */
+  public boolean visit(long high, long low, int depth){
+    if(store.visit(high, low, depth)){
+      return true;
+    }
+    
+    revisits++;
+    
+    return false;
+  }
+  
+  /**
+   * 
+   * @param fingerprint The fingerprint of a configuration.
+   * 
+   * @return <code>true</code> if the configuration has already been visited; 
+   *         <code>false</code> otherwise.
+   */
+  public boolean contains(Fingerprint fingerprint){
+    Assert.notNull(fingerprint);
+    
+    return store.contains(fingerprint.getHigh(), fingerprint.getLow());
+  }
+  
+  /**
+   * 
+   * @return How many distinct configurations have been visited.
+   */
+  public long size(){
+    return store.size();
+  }
+  
+  /**
+   * 
+   * @return How many revisits have been detected (and therefore pruned).
+   */
+  public long getRevisits(){
+    return revisits;
+  }
+  
+  /**
+   * 
+   * @return The number of bytes used to keep the configurations visited.
+   */
+  public long getMemoryUsage(){
+    return store.getMemoryUsage();
+  }
+  
+  /**
+   * 
+   * @return Where the fingerprints are kept.
+   */
+  public VisitedStateStore getStore(){
+    return store;
+  }
+  
+  @Override
+  public String toString(){
+    return size() + " distinct configurations visited, " + revisits + " revisits pruned, " + 
+           (getMemoryUsage() / 1024) + " KB used (" + store + ")";
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * A 128-bit fingerprint, built incrementally. It is made of two independent
+   * 64-bit hashes, which are thoroughly mixed when read.
+   */
+  public static class Fingerprint {
+    
+    private long h1 = 0xcbf29ce484222325L;
+    
+    private long h2 = 0x9e3779b97f4a7c15L;
+    
+    private long length = 0;
+    
+    public Fingerprint add(byte[] data, int offset, int length){
+      long a = h1;
+      long b = h2;
+      
+      for(int i = offset; i < offset + length; i++){
+        int v = data[i] & 0xff;
+        
+        // FNV-1a and a multiplicative hash with a different constant
+        a = (a ^ v) * 0x100000001b3L;
+        b = (b + v) * 0xc6a4a7935bd1e995L;
+        b = b ^ (b >>> 47);
+      }
+      
+      h1 = a;
+      h2 = b;
+      this.length += length;
+      
+      return this;
+    }
+    
+    public Fingerprint add(long value){
+      for(int i = 0; i < 8; i++){
+        int v = (int) (value >>> (8 * i)) & 0xff;
+        h1 = (h1 ^ v) * 0x100000001b3L;
+        h2 = (h2 + v) * 0xc6a4a7935bd1e995L;
+        h2 = h2 ^ (h2 >>> 47);
+      }
+      length += 8;
+      
+      return this;
+    }
+    
+    public Fingerprint add(String value){
+      if(value == null){
+        return add(-1L);
+      }
+      
+      add(value.length());
+      for(int i = 0; i < value.length(); i++){
+        char c = value.charAt(i);
+        h1 = (h1 ^ c) * 0x100000001b3L;
+        h2 = (h2 + c) * 0xc6a4a7935bd1e995L;
+        h2 = h2 ^ (h2 >>> 47);
+      }
+      length += value.length();
+      
+      return this;
+    }
+    
+    public long getHigh(){
+      return mix(h1 ^ length);
+    }
+    
+    public long getLow(){
+      long l = mix(h2 + length);
+      
+      // Zeros in both halves mark empty slots, so we must avoid them
+      if(l == 0 && getHigh() == 0){
+        l = 1;
+      }
+      
+      return l;
+    }
+    
+    /**
+     * The finalization step of MurmurHash3.
+     */
+    private static long mix(long h){
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      
+      return h;
+    }
+  }
+  
 }
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+/**
+ * Translates <code>SimulationState</code>s to and from a self-contained binary
+ * representation. Snapshots are taken very often (e.g., after every simulation step
+ * and whenever a search algorithm needs to remember where it has been), so
+ * implementations are expected to be as cheap as possible.
+ * 
+ * Implementations must guarantee that a decoded state shares no mutable object with
+ * the state that was encoded, so that both may evolve independently.
+ * 
+ * @author Paulo Salem
+ */
+public interface SnapshotCodec {
+
+  /**
+   * 
+   * @return A short name that identifies the codec (e.g., in command line options).
+   */
+  public String getName();
+  
+  /**
+   * Encodes the specified state.
+   * 
+   * @param state The state to encode.
+   * 
+   * @return The binary representation of the state.
+   * 
+   * @throws SnapshotException If the state contains something that cannot be encoded.
+   */
+  public byte[] encode(SimulationState state) throws SnapshotException;
+  
+  /**
+   * Rebuilds a state from its binary representation.
+   * 
+   * @param data Bytes previously produced by <code>encode()</code>.
+   * 
+   * @return A new <code>SimulationState</code>.
+   * 
+   * @throws SnapshotException If the data cannot be decoded.
+   */
+  public SimulationState decode(byte[] data) throws SnapshotException;
+  
+  /**
+   * Builds a deep copy of the specified state. This is equivalent to decoding what
+   * <code>encode()</code> produces, but implementations may avoid intermediary
+   * copies.
+   * 
+   * @param state The state to copy.
+   * 
+   * @return A deep copy of the state.
+   * 
+   * @throws SnapshotException If the state cannot be copied.
+   */
+  public SimulationState copy(SimulationState state) throws SnapshotException;
+  
+  /**
+   * Builds a read-only snapshot of the specified state. Implementations may share 
+   * with <code>previous</code> the components that are known not to have changed
+   * since it was taken (see <code>IChangeTracking</code>), in which case the 
+   * resulting snapshot must never be modified. Those who need a state to modify
+   * must <code>copy()</code> the snapshot.
+   * 
+   * @param state The state to take a snapshot of.
+   * @param previous The last snapshot taken of the same state, or <code>null</code>
+   *                 if none is available.
+   * 
+   * @return A snapshot of the state.
+   * 
+   * @throws SnapshotException If the state cannot be copied.
+   */
+  public SimulationState snapshot(SimulationState state, SimulationState previous) throws SnapshotException;
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine;
+
+/**
+ * Where a <code>SimulationStateSpace</code> keeps the fingerprints of the 
+ * configurations visited. Implementations trade exactness for memory in 
+ * different ways.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public interface VisitedStateStore {
+  
+  /**
+   * Records a visit to the configuration identified by the specified fingerprint.
+   * 
+   * @param high The high half of the fingerprint.
+   * @param low The low half of the fingerprint. It is never zero when the high half is.
+   * @param depth The depth at which the configuration was found.
+   * 
+   * @return <code>true</code> if the configuration must be explored; 
+   *         <code>false</code> if it is taken as a revisit.
+   */
+  public boolean visit(long high, long low, int depth);
+  
+  /**
+   * 
+   * @param high The high half of the fingerprint.
+   * @param low The low half of the fingerprint.
+   * 
+   * @return <code>true</code> if the configuration is taken as visited; 
+   *         <code>false</code> otherwise.
+   */
+  public boolean contains(long high, long low);
+  
+  /**
+   * 
+   * @return How many distinct configurations have been stored.
+   */
+  public long size();
+  
+  /**
+   * 
+   * @return The number of bytes of memory used.
+   */
+  public long getMemoryUsage();
+  
+  /**
+   * Forgets every configuration visited so far.
+   */
+  public void clear();
+
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import simulator.ui.Messenger;
+import simulator.ui.SimulatorUI;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.Event;
+import alevos.ts.IOEvent;
+import alevos.ts.State;
+import alevos.util.Pair;
+import alevos.verification.TraceInfo;
+
+/**
+ * Simulates, one after another, the ATS transitions that depart from a 
+ * configuration, which is how the searches of this package expand it. After 
+ * each call to <code>next()</code>, the simulator is in the state reached 
+ * through the current transition, whose event may then be synchronized with 
+ * those of the simulation purpose.
+ * 
+ * Calls into ALEVOS hold <code>ALEVOS_LOCK</code> (see <code>IConcurrent</code>).
+ * 
+ * @author Paulo Salem
+ *
+ */
+class ATSExpansion {
+  
+  private final AnnotatedTransitionSystem ats;
+  
+  private final SimulatorConnector sc;
+  
+  /**
+   * The simulation state of the configuration expanded.
+   */
+  private final Object simState;
+  
+  /**
+   * The trace information of the configuration expanded.
+   */
+  private final TraceInfo ti;
+  
+  private final Iterator<Pair<Event, State>> transitions;
+  
+  private IOEvent event;
+  
+  private State next;
+  
+  private TraceInfo nextTi;
+  
+  
+  /**
+   * 
+   * @param ats The ATS, whose simulator connector must already be <code>sc</code>.
+   * @param transitions The ATS transitions, as calculated from the configuration 
+   *                    expanded. They are shuffled in place if a generator is given.
+   * @param simState The simulation state of the configuration.
+   * @param ti The trace information of the configuration.
+   * @param sc The simulator connector.
+   * @param random The generator from which transitions are shuffled, or 
+   *               <code>null</code> if they are to be simulated in the given order.
+   */
+  ATSExpansion(AnnotatedTransitionSystem ats, List<Pair<Event, State>> transitions, Object simState, TraceInfo ti, SimulatorConnector sc, Random random) {
+    this.ats = ats;
+    this.sc = sc;
+    this.simState = simState;
+    this.ti = ti;
+    
+    if(random != null){
+      Collections.shuffle(transitions, random);
+    }
+    this.transitions = transitions.iterator();
+  }
+  
+  /**
+   * Simulates the next ATS transition, starting from the simulation state of 
+   * the configuration expanded.
+   * 
+   * @return <code>true</code> if there was such a transition; <code>false</code>
+   *         if all of them have been simulated.
+   * 
+   * @throws InvalidSimulatorRequest If the simulator cannot perform the transition.
+   */
+  boolean next() throws InvalidSimulatorRequest {
+    if(!transitions.hasNext()){
+      return false;
+    }
+    
+    Pair<Event, State> transition = transitions.next();
+    event = (IOEvent) transition.getFirst();
+    next = transition.getSecond();
+    
+    sc.goToState(simState);
+    sc.scheduleStep(event);
+    synchronized(IConcurrent.ALEVOS_LOCK){
+      nextTi = (TraceInfo) ti.clone();
+      ats.eventScheduled(event, nextTi);
+    }
+    
+    if(sc.getCommitEvent().equals(event)){
+      sc.step();
+    }
+    
+    return true;
+  }
+  
+  /**
+   * 
+   * @return The event of the current ATS transition.
+   */
+  IOEvent getEvent(){
+    return event;
+  }
+  
+  /**
+   * 
+   * @return The ATS state reached through the current transition.
+   */
+  State getNext(){
+    return next;
+  }
+  
+  /**
+   * 
+   * @return The trace information once the current transition has been scheduled.
+   */
+  TraceInfo getNextTraceInfo(){
+    return nextTi;
+  }
+  
+  /**
+   * Informs that the current ATS transition has been synchronized with the 
+   * specified SP transition.
+   * 
+   * @param depth The depth of the configuration expanded.
+   * @param purpose How the simulation purpose is to be referred to (e.g., "SP").
+   */
+  void printSynch(int depth, String purpose, State spState, IOEvent spEvent, State spNext){
+    if(SimulatorUI.instance().getMessenger().isEnabled(Messenger.NORMAL_MSG)){
+      sc.printMsg("[depth = " + depth + "] Events synch'ed: (" + spEvent + ", " + event + "); States annotations synch'ed: (" + 
+                  spNext.getLiterals() + ", " + next.getLiterals() + "); " + purpose + " trans.: (" + spState.getName() + " -> " + spNext.getName() + ")", 2);
+    }
+  }
+
+}
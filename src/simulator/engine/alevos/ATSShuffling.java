@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.lang.reflect.Field;
+
+import alevos.expression.Expression;
+
+/**
+ * Keeps ALEVOS from shuffling the successors of ATS states while the searches of 
+ * this package, which shuffle them from their own generators, are under way. 
+ * Shuffling is a global setting of ALEVOS (see <code>Expression.setRandomize()</code>) 
+ * and such searches may run at the same time, so it is turned off when the first 
+ * of them begins and restored only once the last of them ends, rather than by 
+ * each search.
+ * 
+ * Algorithms that do not implement <code>IConcurrent</code> hold 
+ * <code>IConcurrent.ALEVOS_LOCK</code> throughout, so they may be given the 
+ * setting in force outside searches even while others are under way (see 
+ * <code>beginSerial()</code>).
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class ATSShuffling {
+  
+  /**
+   * How many searches are under way.
+   */
+  private static int searches = 0;
+  
+  /**
+   * The setting in force before the first search under way began.
+   */
+  private static boolean setting = true;
+  
+  
+  /**
+   * Turns shuffling off, if it is not already, for a search that begins. 
+   * Every call must be followed by one to <code>resume()</code>.
+   */
+  public static void suspend(){
+    synchronized(IConcurrent.ALEVOS_LOCK){
+      if(searches == 0){
+        setting = currentSetting();
+      }
+      searches++;
+      
+      // Algorithms may have been created in the meantime, which changes the setting
+      Expression.setRandomize(false);
+    }
+  }
+  
+  /**
+   * Restores shuffling, once the last search under way ends.
+   */
+  public static void resume(){
+    synchronized(IConcurrent.ALEVOS_LOCK){
+      searches--;
+      if(searches == 0){
+        Expression.setRandomize(setting);
+      }
+    }
+  }
+  
+  /**
+   * Restores the setting in force outside searches for an algorithm that does 
+   * not shuffle ATS successors by itself. It must be called while holding 
+   * <code>IConcurrent.ALEVOS_LOCK</code>, which must only be released after a 
+   * call to <code>endSerial()</code>, so that no search calls into ALEVOS in 
+   * the meantime.
+   */
+  public static void beginSerial(){
+    if(searches > 0){
+      Expression.setRandomize(setting);
+    }
+  }
+  
+  /**
+   * Turns shuffling off again, if searches are under way.
+   */
+  public static void endSerial(){
+    if(searches > 0){
+      Expression.setRandomize(false);
+    }
+  }
+  
+  /**
+   * ALEVOS offers no way of reading the setting, so it is read directly.
+   */
+  private static boolean currentSetting(){
+    try {
+      Field f = Expression.class.getDeclaredField("randomize");
+      f.setAccessible(true);
+      
+      return f.getBoolean(null);
+      
+    } catch (Exception e) {
+      // The default of ALEVOS
+      return true;
+    }
+  }
+
+}
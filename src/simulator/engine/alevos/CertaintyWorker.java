@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import simulator.engine.SimulationStateSpace;
+import simulator.ui.Messenger;
+import simulator.ui.SimulatorUI;
+import simulator.util.Assert;
+import alevos.IllegalSemanticsException;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.State;
+import alevos.ts.sp.SimulationPurpose;
+import alevos.verification.TraceInfo;
+
+/**
+ * Explores the units of certainty verifications distributed by a coordinator 
+ * (see <code>DistributedVerifyCertainty</code>), until no coordinator can be 
+ * found.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class CertaintyWorker {
+  
+  /**
+   * How long to wait for a coordinator, in milliseconds.
+   */
+  private static final long PATIENCE = 30000;
+  
+  /**
+   * How long to wait between attempts to connect to the coordinator, in milliseconds.
+   */
+  private static final long RETRY_INTERVAL = 500;
+  
+  private InetSocketAddress coordinator;
+  
+  /**
+   * The simulation purposes of the experiment, in the order in which they are
+   * verified.
+   */
+  private List<SimulationPurpose> purposes;
+  
+  private AnnotatedTransitionSystem ats;
+  
+  private SimulatorConnector sc;
+  
+  /**
+   * The experiment loaded, which the coordinator must be performing as well
+   * (see <code>Simulator.getExperimentIdentity()</code>).
+   */
+  private String identity;
+  
+  /**
+   * Only used to calculate fingerprints, configurations visited are kept by 
+   * the coordinator.
+   */
+  private SimulationStateSpace fingerprinter = new SimulationStateSpace();
+  
+  private int units = 0;
+  
+  
+  /**
+   * 
+   * @param coordinator Where the coordinator is.
+   * @param purposes The simulation purposes of the experiment, in the order in
+   *                 which they are verified.
+   * @param ats The transition system that coordinates the environment.
+   * @param sc The connector to the simulator to be used.
+   * @param identity The experiment loaded.
+   */
+  public CertaintyWorker(InetSocketAddress coordinator, List<SimulationPurpose> purposes, AnnotatedTransitionSystem ats, SimulatorConnector sc, String identity) {
+    Assert.notNull(coordinator);
+    Assert.notNull(purposes);
+    Assert.notNull(ats);
+    Assert.notNull(sc);
+    Assert.notNull(identity);
+    
+    this.coordinator = coordinator;
+    this.purposes = purposes;
+    this.ats = ats;
+    this.sc = sc;
+    this.identity = identity;
+  }
+  
+  /**
+   * Serves coordinators for as long as they can be found. 
+   * 
+   * @throws IllegalSemanticsException If the transition systems are incorrect.
+   * @throws InvalidSimulatorRequest If a unit cannot be explored, or if the 
+   *                                 coordinator is performing another experiment.
+   */
+  public void run() throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    Socket socket;
+    while((socket = connect()) != null){
+      
+      SimulatorUI.instance().getMessenger().printMsg("Connected to the coordinator at " + coordinator + ".", Messenger.IMPORTANT_MSG);
+      
+      try{
+        serve(socket);
+      }
+      catch (IOException e) {
+        SimulatorUI.instance().getMessenger().printMsg("Connection to the coordinator lost: " + e, Messenger.IMPORTANT_MSG);
+      }
+      finally{
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Nothing else to do
+        }
+      }
+    }
+    
+    SimulatorUI.instance().getMessenger().printMsg("No coordinator found, " + units + " units explored.", Messenger.IMPORTANT_MSG);
+  }
+  
+  /**
+   * 
+   * @return A connection to the coordinator, or <code>null</code> if none 
+   *         could be established in due time.
+   */
+  private Socket connect(){
+    long deadline = System.currentTimeMillis() + PATIENCE;
+    
+    while(true){
+      try {
+        return new Socket(coordinator.getAddress(), coordinator.getPort());
+      } catch (IOException e) {
+        if(System.currentTimeMillis() >= deadline){
+          return null;
+        }
+      }
+      
+      try {
+        TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+  }
+  
+  /**
+   * Explores the units given by the coordinator, until it has no more.
+   */
+  private void serve(Socket socket) throws IOException, IllegalSemanticsException, InvalidSimulatorRequest {
+    socket.setTcpNoDelay(true);
+    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+    out.flush();
+    ObjectInputStream in = WorkMessage.input(socket.getInputStream());
+    
+    Coordinator c = new Coordinator(in, out);
+    WorkMessage request = new WorkMessage(WorkMessage.Kind.REQUEST);
+    request.identity = identity;
+    WorkMessage reply = c.send(request);
+    
+    if(reply.kind == WorkMessage.Kind.REJECT){
+      throw new InvalidSimulatorRequest("The coordinator is performing '" + reply.identity + "', but this worker loaded '" + identity + "'.");
+    }
+    
+    while(reply.kind == WorkMessage.Kind.UNIT){
+      WorkUnit unit = reply.unit;
+      
+      if(unit.purpose < 0 || unit.purpose >= purposes.size()){
+        throw new InvalidSimulatorRequest("The coordinator asked for simulation purpose " + unit.purpose + ", but the experiment has only " + 
+                                          purposes.size() + ". Was the same experiment loaded?");
+      }
+      
+      SimulatorUI.instance().getMessenger().printMsg("Exploring unit at depth " + unit.depth() + "...", Messenger.NORMAL_MSG);
+      
+      DistributedVerifyCertainty algorithm = new DistributedVerifyCertainty(unit.maxDepth, unit.randomize, unit.maxSynchSteps, unit.purpose);
+      c.over = false;
+      c.depthLimitReached = false;
+      
+      WorkMessage result;
+      try{
+        result = algorithm.explore(unit, purposes.get(unit.purpose), ats, sc, c);
+      }
+      catch (InvalidSimulatorRequest e) {
+        // Communication problems are reported by the explorer this way
+        if(e.getCause() instanceof IOException){
+          throw (IOException) e.getCause();
+        }
+        throw e;
+      }
+      
+      // Stopped by the coordinator
+      if(result == null){
+        result = new WorkMessage(WorkMessage.Kind.RESULT);
+      }
+      else{
+        units++;
+      }
+      
+      reply = c.send(result);
+    }
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * Asks the coordinator which configurations are to be explored.
+   */
+  private final class Coordinator extends DistributedVerifyCertainty.Explorer {
+    
+    private final ObjectInputStream in;
+    
+    private final ObjectOutputStream out;
+    
+    private int synchs = 0;
+    
+    private boolean over = false;
+    
+    Coordinator(ObjectInputStream in, ObjectOutputStream out){
+      this.in = in;
+      this.out = out;
+    }
+    
+    boolean visit(Object simState, String atsForm, State spState, TraceInfo ti, int depth) throws InvalidSimulatorRequest {
+      SimulationStateSpace.Fingerprint f = Configurations.portableFingerprint(fingerprinter, simState, atsForm, spState, ti);
+      
+      WorkMessage request = new WorkMessage(WorkMessage.Kind.VISIT);
+      request.high = f.getHigh();
+      request.low = f.getLow();
+      request.depth = depth;
+      
+      WorkMessage reply;
+      try {
+        reply = send(request);
+      } catch (IOException e) {
+        throw new InvalidSimulatorRequest("The coordinator could not be reached.", e);
+      }
+      
+      if(reply.kind == WorkMessage.Kind.STOP){
+        over = true;
+        return false;
+      }
+      
+      synchs = reply.synchs;
+      
+      return reply.explore;
+    }
+    
+    int synchs(){
+      return synchs;
+    }
+    
+    boolean isOver(){
+      return over;
+    }
+    
+    WorkMessage send(WorkMessage request) throws IOException {
+      out.writeObject(request);
+      out.reset();
+      out.flush();
+      
+      try {
+        return WorkMessage.read(in);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Invalid message from the coordinator: " + e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,785 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.Stack;
+
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.SimulationStateSpace.Fingerprint;
+import simulator.util.Assert;
+import simulator.util.RandomStream;
+import alevos.IllegalSemanticsException;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.Event;
+import alevos.ts.IOEvent;
+import alevos.ts.State;
+import alevos.ts.sp.FailureState;
+import alevos.ts.sp.SimulationPurpose;
+import alevos.ts.sp.SuccessState;
+import alevos.util.Pair;
+import alevos.verification.SynchState;
+import alevos.verification.TraceInfo;
+import alevos.verification.VerificationAlgorithm;
+import alevos.verification.VerificationAlgorithm.Verdict;
+
+/**
+ * Verifies several simulation purposes over the same ATS in a single search.
+ * Separate searches (e.g., by <code>PruningVerifyFeasibility</code> and
+ * <code>PruningVerifyCertainty</code>) simulate the same ATS transitions over
+ * and over again, once for every simulation purpose. Here, instead, the
+ * product of the ATS and the simulation is explored depth-first only once, and
+ * each configuration of it carries, for every simulation purpose, the SP
+ * states with which it has been synchronized. Every ATS transition is thus
+ * simulated once, and then checked against the SP transitions of all of them.
+ * 
+ * Each simulation purpose is verified by a member of the combination (see
+ * <code>add()</code>), which is used just like any other
+ * <code>VerificationAlgorithm</code>. The first member asked to verify its
+ * simulation purpose performs the search for all the members that have no
+ * verdict yet, and the others merely take theirs afterwards. The search
+ * stops as soon as every simulation purpose has one. Verdicts are given as
+ * follows:
+ * 
+ *   - feasibility succeeds once some SP state is synchronized with success.
+ *     Under strong feasibility, SP states that can be synchronized with
+ *     failure are abandoned;
+ *   - certainty fails once some SP state is synchronized with failure, or
+ *     once the SP transition that <code>VerifyCertainty</code> would consider
+ *     first cannot be synchronized at all;
+ *   - reaching the maximum number of synchronizations allowed (counted for
+ *     each simulation purpose) makes the verification inconclusive;
+ *   - otherwise, once the search is exhausted, feasibility fails and certainty
+ *     succeeds, unless the depth limit was reached, in which case the
+ *     verification is inconclusive.
+ * 
+ * Since every synchronization is explored, and not only the first one found for
+ * each SP transition, feasibility may be established where
+ * <code>VerifyFeasibility</code> would give up. Conversely, the synchronizations
+ * of a simulation purpose are found in another order, so a limit on their 
+ * number may be reached here before success is found, or the other way around.
+ * Configurations visited are remembered for each simulation purpose separately, 
+ * if a <code>SimulationStateSpace</code> is given, so SP states are only pruned
+ * where a separate search would have pruned them.
+ * 
+ * Certainty verdicts are the same as those of separate searches only if 
+ * transitions are not randomized. When they are, the SP transition that must be
+ * matched is still chosen as <code>VerifyCertainty</code> chooses it, but from
+ * this algorithm's generator, whose draws cannot follow those of a separate 
+ * search. A failure found because that transition cannot be matched may then
+ * be missed, or another one found instead. Requiring every SP transition to be
+ * matched would make the verdict independent of randomization, but would no 
+ * longer be the certainty that <code>VerifyCertainty</code> verifies.
+ * 
+ * Calls into ALEVOS hold <code>ALEVOS_LOCK</code> (see <code>IConcurrent</code>).
+ * 
+ * @author Paulo Salem
+ * 
+ */
+public class CombinedVerification implements IRandomized, IConcurrent {
+  
+  /**
+   * The satisfiability relations that can be verified.
+   */
+  public enum Relation {
+    WEAK_FEASIBILITY,
+    STRONG_FEASIBILITY,
+    CERTAINTY
+  }
+  
+  private int maxDepth;
+  
+  private boolean randomize;
+  
+  private Integer maxSynchSteps;
+  
+  /**
+   * Where configurations visited are remembered, or <code>null</code> if no
+   * pruning is to take place.
+   */
+  private SimulationStateSpace stateSpace;
+  
+  /**
+   * Where the SP and ATS transitions are shuffled from, if randomization is requested.
+   */
+  private Random random = new RandomStream(0);
+  
+  private final List<Member> members = new ArrayList<Member>();
+  
+  //
+  // Statistics of the current search
+  //
+  
+  private long expansions;
+  
+  private long steps;
+  
+  
+  /**
+   * 
+   * @param maxDepth The maximum depth of the search.
+   * @param randomize Whether transitions should be considered in random order.
+   * @param maxSynchSteps The maximum number of synchronizations allowed for each
+   *                      simulation purpose, or <code>null</code> if there is no limit.
+   * @param stateSpace Where configurations visited are to be remembered, or
+   *                   <code>null</code> if they are not to be pruned.
+   */
+  public CombinedVerification(int maxDepth, boolean randomize, Integer maxSynchSteps, SimulationStateSpace stateSpace) {
+    this.maxDepth = maxDepth;
+    this.randomize = randomize;
+    this.maxSynchSteps = maxSynchSteps;
+    this.stateSpace = stateSpace;
+  }
+  
+  /**
+   * Adds a simulation purpose to be verified along with the others.
+   * 
+   * @param sp The simulation purpose.
+   * @param relation The relation to be verified.
+   * 
+   * @return The algorithm through which the simulation purpose is to be verified.
+   *         It accepts no other simulation purpose.
+   */
+  public synchronized VerificationAlgorithm add(SimulationPurpose sp, Relation relation){
+    Assert.notNull(sp);
+    Assert.notNull(relation);
+    
+    Member member = new Member(sp, relation);
+    members.add(member);
+    
+    return member;
+  }
+  
+  /**
+   * Defines the generator of the next search. Members give the combination the 
+   * generator of their strategies (see <code>Member.setRandom()</code>), so the 
+   * search is driven by that of the member that performs it.
+   */
+  public synchronized void setRandom(Random random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+  
+  /**
+   * Gives the verdict of the specified member, performing a search if it has
+   * none yet. A verdict is given only once, so that a member that is asked
+   * again (e.g., for another trial) causes a new search.
+   */
+  private synchronized Verdict verify(Member member, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    if(member.verdict == null){
+      List<Member> pending = new ArrayList<Member>();
+      for(Member m: members){
+        if(m.verdict == null){
+          pending.add(m);
+        }
+      }
+      
+      // ATS transitions are shuffled here, from this algorithm's generator, rather
+      // than by ALEVOS, which relies on a global one
+      ATSShuffling.suspend();
+      
+      try{
+        search(pending, ats, sc);
+      }
+      finally{
+        ATSShuffling.resume();
+      }
+    }
+    
+    Verdict verdict = member.verdict;
+    member.verdict = null;
+    
+    return verdict;
+  }
+  
+  private void search(List<Member> pending, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    synchronized(ALEVOS_LOCK){
+      ats.setSimulatorConnector(sc);
+      for(Member m: pending){
+        m.reset();
+      }
+    }
+    
+    if(randomize){
+      for(Member m: pending){
+        if(m.relation == Relation.CERTAINTY){
+          sc.printMsg("WARNING: Transitions are randomized, so certainty verdicts may differ from those of separate verifications.", 3);
+          break;
+        }
+      }
+    }
+    
+    if(stateSpace != null){
+      stateSpace.clear();
+    }
+    
+    expansions = 0;
+    steps = 0;
+    
+    Node root = new Node(sc.currentState(), ats.getInitialState(), ats.getInitialTraceInfo(), null, null, pending.size());
+    for(int i = 0; i < pending.size(); i++){
+      State initial = pending.get(i).sp.getInitialState();
+      if(visit(root, i, initial)){
+        root.tracked.get(i).put(initial, null);
+      }
+    }
+    
+    Stack<Node> stack = new Stack<Node>();
+    stack.push(root);
+    
+    while(!stack.empty() && !isOver(pending)){
+      Node node = stack.pop();
+      
+      // Members decided meanwhile no longer need it
+      if(!isLive(node, pending)){
+        continue;
+      }
+      
+      if(node.depth >= maxDepth){
+        for(int i = 0; i < pending.size(); i++){
+          Member m = pending.get(i);
+          if(m.verdict == null && !node.tracked.get(i).isEmpty() && !m.depthLimitReached){
+            m.depthLimitReached = true;
+            sc.printMsg("WARNING: Search depth limit (" + maxDepth + ") has been reached for simulation purpose #" + i + ".", 3);
+          }
+        }
+        continue;
+      }
+      
+      List<Node> children = expand(node, pending, ats, sc);
+      
+      // The most promising child is expanded first
+      for(int k = children.size() - 1; k >= 0; k--){
+        stack.push(children.get(k));
+      }
+    }
+    
+    for(Member m: pending){
+      if(m.verdict == null){
+        m.verdict = m.exhausted();
+      }
+    }
+    
+    printStatistics(pending, sc);
+  }
+  
+  /**
+   * Simulates every ATS transition of the specified configuration and checks it
+   * against the SP transitions of every state tracked there.
+   * 
+   * @return The configurations reached that are still of interest to some member,
+   *         closest to success first.
+   */
+  private List<Node> expand(Node node, List<Member> pending, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    expansions++;
+    
+    // ATS successors are calculated in the context of the simulation state they depart from
+    sc.goToState(node.simState);
+    
+    List<Pair<Event, State>> atsTransitions;
+    List<List<Branch>> branches = new ArrayList<List<Branch>>(pending.size());
+    synchronized(ALEVOS_LOCK){
+      ats.setSimulatorConnector(sc);
+      atsTransitions = new ArrayList<Pair<Event, State>>(ats.succ(node.atsState, node.ti));
+      
+      for(int i = 0; i < pending.size(); i++){
+        List<Branch> bs = new ArrayList<Branch>();
+        if(pending.get(i).verdict == null){
+          for(State spState: node.tracked.get(i).keySet()){
+            bs.add(pending.get(i).branch(spState));
+          }
+        }
+        branches.add(bs);
+      }
+    }
+    
+    ATSExpansion expansion = new ATSExpansion(ats, atsTransitions, node.simState, node.ti, sc, randomize ? random : null);
+    
+    List<Node> children = new ArrayList<Node>();
+    List<Synch> synchs = new ArrayList<Synch>();
+    List<Set<State>> abandoned = new ArrayList<Set<State>>(pending.size());
+    for(int i = 0; i < pending.size(); i++){
+      abandoned.add(new HashSet<State>());
+    }
+    
+    while(expansion.next()){
+      IOEvent atsEvent = expansion.getEvent();
+      State atsNext = expansion.getNext();
+      TraceInfo nextTi = expansion.getNextTraceInfo();
+      
+      steps++;
+      
+      Node child = null;
+      
+      for(int i = 0; i < pending.size(); i++){
+        Member m = pending.get(i);
+        
+        for(Branch b: branches.get(i)){
+          for(Pair<Event, State> spTransition: b.transitions){
+            
+            // A failure may have just decided it
+            if(m.verdict != null){
+              break;
+            }
+            
+            IOEvent spEvent = (IOEvent) spTransition.getFirst();
+            State spNext = spTransition.getSecond();
+            
+            boolean canSynch;
+            synchronized(ALEVOS_LOCK){
+              canSynch = m.canSynch(b.spState, spEvent, spNext, node.atsState, atsEvent, atsNext, sc);
+            }
+            
+            if(!canSynch){
+              continue;
+            }
+            
+            expansion.printSynch(node.depth, "SP #" + i, b.spState, spEvent, spNext);
+            
+            if(spTransition == b.first){
+              b.matched = true;
+            }
+            
+            if(child == null){
+              child = new Node(sc.currentState(), atsNext, nextTi, atsEvent, node, pending.size());
+              children.add(child);
+            }
+            
+            if(spNext.equals(FailureState.instance())){
+              if(m.relation == Relation.CERTAINTY){
+                decide(m, i, Verdict.FAILURE, child, spNext, new Origin(b.spState, spEvent));
+              }
+              else if(m.relation == Relation.STRONG_FEASIBILITY){
+                abandoned.get(i).add(b.spState);
+              }
+              continue;
+            }
+            
+            synchs.add(new Synch(child, i, new Origin(b.spState, spEvent), spNext));
+          }
+        }
+      }
+    }
+    
+    // The SP must be matched by the simulation
+    for(int i = 0; i < pending.size(); i++){
+      Member m = pending.get(i);
+      if(m.relation == Relation.CERTAINTY){
+        for(Branch b: branches.get(i)){
+          if(m.verdict == null && b.first != null && !b.matched){
+            decide(m, i, Verdict.FAILURE, node, b.spState, node.tracked.get(i).get(b.spState));
+          }
+        }
+      }
+    }
+    
+    for(Synch s: synchs){
+      Member m = pending.get(s.member);
+      
+      if(m.verdict != null){
+        continue;
+      }
+      
+      if(s.spNext.equals(SuccessState.instance())){
+        if(m.relation != Relation.CERTAINTY){
+          decide(m, s.member, Verdict.SUCCESS, s.child, s.spNext, s.origin);
+        }
+        continue;
+      }
+      
+      Map<State, Origin> tracked = s.child.tracked.get(s.member);
+      if(abandoned.get(s.member).contains(s.origin.spState) || tracked.containsKey(s.spNext)){
+        continue;
+      }
+      
+      // Have we been here before?
+      if(!visit(s.child, s.member, s.spNext)){
+        continue;
+      }
+      
+      tracked.put(s.spNext, s.origin);
+      m.synchs++;
+      
+      if(maxSynchSteps != null && m.synchs >= maxSynchSteps){
+        sc.printMsg("WARNING: The verification of simulation purpose #" + s.member + " has been aborted because the maximum number of synchronizations allowed (" + maxSynchSteps + ") has been reached.", 3);
+        decide(m, s.member, Verdict.INCONCLUSIVE, node, s.origin.spState, node.tracked.get(s.member).get(s.origin.spState));
+      }
+    }
+    
+    List<Node> live = new ArrayList<Node>();
+    for(Node child: children){
+      if(isLive(child, pending)){
+        live.add(child);
+      }
+    }
+    
+    sort(live, pending);
+    
+    return live;
+  }
+  
+  /**
+   * Gives a verdict to the specified member, along with the trace that ends in
+   * the specified configuration and SP state.
+   */
+  private void decide(Member m, int i, Verdict verdict, Node node, State spState, Origin origin){
+    LinkedList<SynchState> trace = new LinkedList<SynchState>();
+    
+    Node n = node;
+    State s = spState;
+    Origin o = origin;
+    while(n != null){
+      trace.addFirst(new SynchState(s, n.atsState, o == null ? null : o.spEvent, n.atsEvent, o == null ? null : o.spState, n.simState, n.ti, null, n.depth));
+      
+      if(o == null){
+        break;
+      }
+      
+      s = o.spState;
+      n = n.parent;
+      o = n.tracked.get(i).get(s);
+    }
+    
+    m.verdict = verdict;
+    m.setTrace(trace);
+  }
+  
+  /**
+   * Records a visit to the specified configuration, as seen by one of the members.
+   * 
+   * @return <code>true</code> if it must be explored; <code>false</code> if it
+   *         has already been visited.
+   */
+  private boolean visit(Node node, int member, State spState) throws InvalidSimulatorRequest {
+    if(stateSpace == null){
+      return true;
+    }
+    
+    // The configuration itself is fingerprinted only once for all members
+    if(node.fingerprint == null){
+      node.fingerprint = Configurations.fingerprint(stateSpace, node.simState, node.atsState, null, node.ti);
+    }
+    
+    return stateSpace.visit(Configurations.fingerprint(node.fingerprint, member, spState), node.depth);
+  }
+  
+  /**
+   * Orders the specified configurations according to how close the SP states
+   * they carry are to success, considering only the members that verify
+   * feasibility, which are the ones that may end the search early by finding it.
+   * Among equally close configurations, the ones reached by later ATS transitions
+   * come first, since that is the order in which <code>VerifyFeasibility</code>,
+   * which stacks every synchronization it finds, would explore them.
+   */
+  private void sort(List<Node> nodes, final List<Member> pending){
+    Collections.reverse(nodes);
+    Collections.sort(nodes, new Comparator<Node>() {
+      public int compare(Node n1, Node n2) {
+        int d1 = distance(n1, pending);
+        int d2 = distance(n2, pending);
+        
+        return d1 < d2 ? -1 : (d1 == d2 ? 0 : 1);
+      }
+    });
+  }
+  
+  private int distance(Node node, List<Member> pending){
+    int distance = Integer.MAX_VALUE;
+    
+    for(int i = 0; i < pending.size(); i++){
+      Member m = pending.get(i);
+      if(m.verdict == null && m.relation != Relation.CERTAINTY){
+        for(State spState: node.tracked.get(i).keySet()){
+          if(spState.getUtil1() != null){
+            distance = Math.min(distance, (Integer) spState.getUtil1());
+          }
+        }
+      }
+    }
+    
+    return distance;
+  }
+  
+  /**
+   * 
+   * @return <code>true</code> if some member without a verdict tracks some SP
+   *         state in the specified configuration.
+   */
+  private boolean isLive(Node node, List<Member> pending){
+    for(int i = 0; i < pending.size(); i++){
+      if(pending.get(i).verdict == null && !node.tracked.get(i).isEmpty()){
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  private boolean isOver(List<Member> pending){
+    for(Member m: pending){
+      if(m.verdict == null){
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  private void printStatistics(List<Member> pending, SimulatorConnector sc){
+    sc.printMsg("Simulation purposes verified together: " + pending.size() + ", " + expansions + " configurations expanded, " + steps + " ATS transitions simulated", 2);
+    if(stateSpace != null){
+      sc.printMsg("State space: " + stateSpace, 2);
+    }
+  }
+  
+  
+  
+  ///////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  ///////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * Verifies a single simulation purpose as part of the combination.
+   */
+  private class Member extends VerificationAlgorithm implements IRandomized, IConcurrent {
+    
+    private final SimulationPurpose sp;
+    
+    private final Relation relation;
+    
+    /**
+     * The verdict found, but not yet given, or <code>null</code> if there is none.
+     */
+    private Verdict verdict;
+    
+    private int synchs;
+    
+    private boolean depthLimitReached;
+    
+    private Member(SimulationPurpose sp, Relation relation) {
+      super(CombinedVerification.this.maxDepth, CombinedVerification.this.randomize, CombinedVerification.this.maxSynchSteps);
+      
+      this.sp = sp;
+      this.relation = relation;
+    }
+    
+    @Override
+    public Verdict verify(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+      if(sp != this.sp){
+        throw new IllegalArgumentException("Only the simulation purpose given to the combination can be verified.");
+      }
+      
+      return CombinedVerification.this.verify(this, ats, sc);
+    }
+    
+    public void setRandom(Random random){
+      CombinedVerification.this.setRandom(random);
+    }
+    
+    /**
+     * Prepares the member for a new search.
+     */
+    private void reset(){
+      preprocess(sp, SuccessState.instance());
+      
+      verdict = null;
+      synchs = 0;
+      depthLimitReached = false;
+      trace = new LinkedList<SynchState>();
+    }
+    
+    /**
+     * 
+     * @return The verdict once the search is exhausted without deciding it.
+     */
+    private Verdict exhausted(){
+      if(depthLimitReached){
+        return Verdict.INCONCLUSIVE;
+      }
+      
+      return relation == Relation.CERTAINTY ? Verdict.SUCCESS : Verdict.FAILURE;
+    }
+    
+    private boolean canSynch(State spState, IOEvent spEvent, State spNext, State atsState, IOEvent atsEvent, State atsNext, SimulatorConnector sc){
+      return canSynch(sp, spState, spEvent, spNext, atsState, atsEvent, atsNext, sc);
+    }
+    
+    /**
+     * Gathers the SP transitions of the specified state, along with the one
+     * that <code>VerifyCertainty</code> would consider first.
+     */
+    private Branch branch(State spState){
+      List<Pair<Event, State>> transitions = new ArrayList<Pair<Event, State>>(sp.succ(spState));
+      
+      Pair<Event, State> first = null;
+      if(!transitions.isEmpty()){
+        List<Pair<Event, State>> unexplored = new ArrayList<Pair<Event, State>>(transitions);
+        if(randomize){
+          Collections.shuffle(unexplored, random);
+          first = Configurations.removeClosest(unexplored);
+        }
+        else{
+          first = removeBest(spState, unexplored);
+        }
+      }
+      
+      return new Branch(spState, transitions, first);
+    }
+    
+    private void setTrace(LinkedList<SynchState> trace){
+      this.trace = trace;
+    }
+  }
+  
+  /**
+   * A configuration of the product of the ATS and the simulation.
+   */
+  private static class Node {
+    
+    private final Object simState;
+    
+    private final State atsState;
+    
+    private final TraceInfo ti;
+    
+    /**
+     * The ATS event through which the configuration was reached from its parent.
+     */
+    private final IOEvent atsEvent;
+    
+    private final Node parent;
+    
+    private final int depth;
+    
+    /**
+     * For each member, the SP states synchronized with the configuration, along
+     * with how they were reached.
+     */
+    private final List<Map<State, Origin>> tracked;
+    
+    /**
+     * The fingerprint of the configuration without SP state, once calculated.
+     */
+    private Fingerprint fingerprint;
+    
+    private Node(Object simState, State atsState, TraceInfo ti, IOEvent atsEvent, Node parent, int members) {
+      this.simState = simState;
+      this.atsState = atsState;
+      this.ti = ti;
+      this.atsEvent = atsEvent;
+      this.parent = parent;
+      this.depth = parent == null ? 0 : parent.depth + 1;
+      
+      this.tracked = new ArrayList<Map<State, Origin>>(members);
+      for(int i = 0; i < members; i++){
+        tracked.add(new LinkedHashMap<State, Origin>());
+      }
+    }
+  }
+  
+  /**
+   * The SP transition through which an SP state was reached, from the SP state
+   * tracked in the parent configuration.
+   */
+  private static class Origin {
+    
+    private final State spState;
+    
+    private final IOEvent spEvent;
+    
+    private Origin(State spState, IOEvent spEvent) {
+      this.spState = spState;
+      this.spEvent = spEvent;
+    }
+  }
+  
+  /**
+   * The SP transitions of an SP state tracked in the configuration being expanded.
+   */
+  private static class Branch {
+    
+    private final State spState;
+    
+    private final List<Pair<Event, State>> transitions;
+    
+    private final Pair<Event, State> first;
+    
+    /**
+     * Whether the first transition has been synchronized.
+     */
+    private boolean matched;
+    
+    private Branch(State spState, List<Pair<Event, State>> transitions, Pair<Event, State> first) {
+      this.spState = spState;
+      this.transitions = transitions;
+      this.first = first;
+    }
+  }
+  
+  /**
+   * A synchronization found while expanding a configuration, which is only
+   * recorded once all of them have been found.
+   */
+  private static class Synch {
+    
+    private final Node child;
+    
+    private final int member;
+    
+    private final Origin origin;
+    
+    private final State spNext;
+    
+    private Synch(Node child, int member, Origin origin, State spNext) {
+      this.child = child;
+      this.member = member;
+      this.origin = origin;
+      this.spNext = spNext;
+    }
+  }
+
+}
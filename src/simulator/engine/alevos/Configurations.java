@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import simulator.engine.SimulationState;
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.SimulationStateSpace.Fingerprint;
+import simulator.engine.SnapshotException;
+import simulator.util.RandomStream;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.ts.Event;
+import alevos.ts.State;
+import alevos.util.Pair;
+import alevos.verification.TraceInfo;
+
+/**
+ * Identifies the configurations reached by the ALEVOS algorithms, so that they
+ * can be stored in a <code>SimulationStateSpace</code>.
+ * 
+ * @author Paulo Salem
+ *
+ */
+class Configurations {
+  
+  /**
+   * How ALEVOS prefixes the names it creates when unfolding restrictions.
+   */
+  private static final String FRESH_NAME_PREFIX = "FRESH";
+  
+  /**
+   * Calculates the fingerprint of a configuration, which is made of a simulation 
+   * state, the state of the ATS that coordinates the environment, the trace 
+   * information that accompanies it and, possibly, the state of a simulation purpose.
+   * The expression of the ATS state is obtained while holding 
+   * <code>IConcurrent.ALEVOS_LOCK</code>, since it changes as successors are 
+   * calculated, so the rest may be calculated in parallel.
+   * 
+   * @param stateSpace The state space where the fingerprint will be used.
+   * @param simState The simulation state, as given by the connector.
+   * @param atsState The state of the ATS.
+   * @param spState The state of the SP, or <code>null</code> if there is no SP.
+   * @param ti The trace information that accompanies the ATS.
+   * 
+   * @return The fingerprint of the configuration.
+   * 
+   * @throws InvalidSimulatorRequest If the simulation state cannot be encoded.
+   */
+  static Fingerprint fingerprint(SimulationStateSpace stateSpace, Object simState, State atsState, State spState, TraceInfo ti) throws InvalidSimulatorRequest{
+    
+    // ATS states are created on demand, so they can only be told apart by their expressions
+    String expression;
+    synchronized(IConcurrent.ALEVOS_LOCK){
+      expression = atsState.toString();
+    }
+    
+    return fingerprint(stateSpace, simState, canonical(expression), spState, ti, false);
+  }
+  
+  /**
+   * Calculates the fingerprint of a configuration, just as 
+   * <code>fingerprint(SimulationStateSpace, Object, State, State, TraceInfo)</code> 
+   * does, but in a way that does not depend on the virtual machine in which it 
+   * is calculated, provided that the same experiment was loaded. SP states are 
+   * told apart by their names alone, which are unique within a simulation purpose.
+   * 
+   * @param atsForm The portable form of the expression of the ATS state (see 
+   *                <code>portable()</code>), taken as soon as the state was 
+   *                created, since expressions unfold their definitions as their 
+   *                successors are calculated.
+   */
+  static Fingerprint portableFingerprint(SimulationStateSpace stateSpace, Object simState, String atsForm, State spState, TraceInfo ti) throws InvalidSimulatorRequest{
+    return fingerprint(stateSpace, simState, atsForm, spState, ti, true);
+  }
+  
+  /**
+   * Calculates the fingerprint of a configuration made of another, which has no
+   * SP state, and the state of one of several simulation purposes. The fingerprint
+   * of the former may thus be calculated only once for all of them.
+   * 
+   * @param configuration The fingerprint of the configuration without SP state.
+   * @param purpose Identifies the simulation purpose among the others.
+   * @param spState The state of the simulation purpose.
+   * 
+   * @return The fingerprint of the whole configuration.
+   */
+  static Fingerprint fingerprint(Fingerprint configuration, int purpose, State spState){
+    Fingerprint f = new Fingerprint();
+    f.add(configuration.getHigh());
+    f.add(configuration.getLow());
+    f.add(purpose);
+    f.add(spState.getName());
+    f.add(System.identityHashCode(spState));
+    
+    return f;
+  }
+  
+  private static Fingerprint fingerprint(SimulationStateSpace stateSpace, Object simState, String atsForm, State spState, TraceInfo ti, boolean portable) throws InvalidSimulatorRequest{
+    try {
+      Fingerprint f = stateSpace.fingerprint((SimulationState) simState);
+      
+      f.add(atsForm);
+      
+      // SP states, on the other hand, are fixed
+      if(spState != null){
+        f.add(spState.getName());
+        if(!portable){
+          f.add(System.identityHashCode(spState));
+        }
+      }
+      
+      if(ti instanceof EMMASTraceInfo){
+        for(String d: ((EMMASTraceInfo) ti).digest()){
+          f.add(d);
+        }
+      }
+      else if(ti != null){
+        f.add(ti.hashCode());
+      }
+      
+      return f;
+      
+    } catch (SnapshotException e) {
+      throw new InvalidSimulatorRequest("The simulation state could not be fingerprinted.", e);
+    }
+  }
+  
+  /**
+   * Renames the fresh names that appear in the textual representation of a 
+   * pi-calculus expression according to the order in which they first appear. 
+   * Fresh names are created anew whenever a restriction is unfolded, so 
+   * otherwise equal expressions would never look the same.
+   * 
+   * @param expression The expression, as given by its <code>toString()</code>.
+   * 
+   * @return An equivalent expression, in which the n-th fresh name to appear is 
+   *         called <code>FRESH#n</code>.
+   */
+  static String canonical(String expression){
+    StringBuilder sb = new StringBuilder(expression.length());
+    Map<String, Integer> renaming = new HashMap<String, Integer>();
+    
+    int i = 0;
+    while(i < expression.length()){
+      int j = expression.indexOf(FRESH_NAME_PREFIX, i);
+      if(j < 0){
+        sb.append(expression, i, expression.length());
+        break;
+      }
+      
+      // Find where the number that follows the prefix ends
+      int k = j + FRESH_NAME_PREFIX.length();
+      while(k < expression.length() && Character.isDigit(expression.charAt(k))){
+        k++;
+      }
+      
+      sb.append(expression, i, j);
+      
+      String name = expression.substring(j, k);
+      Integer n = renaming.get(name);
+      if(n == null){
+        n = renaming.size();
+        renaming.put(name, n);
+      }
+      sb.append(FRESH_NAME_PREFIX).append('#').append(n);
+      
+      i = k;
+    }
+    
+    return sb.toString();
+  }
+
+  /**
+   * Puts the textual representation of a pi-calculus expression in a form that
+   * does not depend on the virtual machine in which it was obtained. Besides 
+   * renaming fresh names (see <code>canonical()</code>), the operands of parallel
+   * compositions are flattened and sorted, since their order depends on the 
+   * hash codes of the objects involved.
+   * 
+   * @param expression The expression, as given by its <code>toString()</code>.
+   * 
+   * @return An equivalent expression, in the same form for every virtual machine.
+   */
+  static String portable(String expression){
+    return canonical(join(parallel(expression, 0, expression.length())));
+  }
+  
+  /**
+   * 
+   * @return The operands of the parallel composition found between the specified 
+   *         positions, which are themselves put in portable form, in order.
+   */
+  private static List<String> parallel(String e, int from, int to){
+    List<String> operands = new ArrayList<String>();
+    
+    int depth = 0;
+    int start = from;
+    for(int i = from; i < to; i++){
+      char c = e.charAt(i);
+      if(c == '(' || c == '[' || c == '{'){
+        depth++;
+      }
+      else if(c == ')' || c == ']' || c == '}'){
+        depth--;
+      }
+      else if(c == '|' && depth == 0){
+        addOperand(operands, e, start, i);
+        start = i + 1;
+      }
+    }
+    addOperand(operands, e, start, to);
+    
+    // Fresh names cannot take part in the order, since they are renamed later
+    final Map<String, String> keys = new HashMap<String, String>();
+    for(String o: operands){
+      keys.put(o, o.replaceAll(FRESH_NAME_PREFIX + "\\d+", FRESH_NAME_PREFIX));
+    }
+    Collections.sort(operands, new Comparator<String>() {
+      public int compare(String o1, String o2) {
+        int c = keys.get(o1).compareTo(keys.get(o2));
+        
+        return c != 0 ? c : o1.compareTo(o2);
+      }
+    });
+    
+    return operands;
+  }
+  
+  private static void addOperand(List<String> operands, String e, int from, int to){
+    while(from < to && Character.isWhitespace(e.charAt(from))){
+      from++;
+    }
+    while(to > from && Character.isWhitespace(e.charAt(to - 1))){
+      to--;
+    }
+    
+    // A parenthesized parallel composition is merged with the one around it
+    if(from < to && e.charAt(from) == '(' && closing(e, from) == to - 1){
+      List<String> inner = parallel(e, from + 1, to - 1);
+      if(inner.size() > 1){
+        operands.addAll(inner);
+      }
+      else{
+        operands.add("(" + inner.get(0) + ")");
+      }
+      return;
+    }
+    
+    StringBuilder sb = new StringBuilder(to - from);
+    int i = from;
+    while(i < to){
+      char c = e.charAt(i);
+      if(c == '(' || c == '[' || c == '{'){
+        int j = closing(e, i);
+        if(j >= to){
+          // Unbalanced, so left as it is
+          sb.append(e, i, to);
+          break;
+        }
+        sb.append(c).append(join(parallel(e, i + 1, j))).append(e.charAt(j));
+        i = j + 1;
+      }
+      else{
+        sb.append(c);
+        i++;
+      }
+    }
+    
+    operands.add(sb.toString());
+  }
+  
+  /**
+   * 
+   * @return The position of the bracket that closes the one at the specified 
+   *         position, or the end of the expression if there is none.
+   */
+  private static int closing(String e, int open){
+    int depth = 0;
+    for(int i = open; i < e.length(); i++){
+      char c = e.charAt(i);
+      if(c == '(' || c == '[' || c == '{'){
+        depth++;
+      }
+      else if(c == ')' || c == ']' || c == '}'){
+        depth--;
+        if(depth == 0){
+          return i;
+        }
+      }
+    }
+    
+    return e.length();
+  }
+  
+  private static String join(List<String> operands){
+    StringBuilder sb = new StringBuilder();
+    for(String o: operands){
+      if(sb.length() > 0){
+        sb.append(" | ");
+      }
+      sb.append(o);
+    }
+    
+    return sb.toString();
+  }
+
+  /**
+   * Splits, from the specified generator, the stream to be used by one of 
+   * several searches (or parts of a search) that run at the same time.
+   * 
+   * @param random The generator of the whole.
+   * @param key Identifies the part.
+   * 
+   * @return The stream split with the key, if the generator is a <code>RandomStream</code>;
+   *         otherwise, a stream seeded from it.
+   */
+  static RandomStream split(Random random, int key){
+    if(random instanceof RandomStream){
+      return ((RandomStream) random).split(key);
+    }
+    
+    return new RandomStream(random.nextLong());
+  }
+  
+  /**
+   * Removes, from the specified SP transitions, the first one leading to the state 
+   * closest to success, just as <code>VerificationAlgorithm.removeBest()</code> does
+   * after shuffling them.
+   * 
+   * @param transitions The SP transitions, already in the order in which they are to
+   *                    be considered. Distances to success must have been calculated.
+   * 
+   * @return The transition removed.
+   */
+  static Pair<Event, State> removeClosest(List<Pair<Event, State>> transitions){
+    Pair<Event, State> best = transitions.get(0);
+    for(Pair<Event, State> t: transitions){
+      if((Integer) t.getSecond().getUtil1() < (Integer) best.getSecond().getUtil1()){
+        best = t;
+      }
+    }
+    
+    transitions.remove(best);
+    
+    return best;
+  }
+
+}
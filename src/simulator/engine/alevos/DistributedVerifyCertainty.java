@@ -0,0 +1,1050 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import simulator.engine.SimulationState;
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.SnapshotException;
+import simulator.ui.Messenger;
+import simulator.ui.SimulatorUI;
+import simulator.util.Assert;
+import simulator.util.RandomStream;
+import alevos.IllegalSemanticsException;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.Event;
+import alevos.ts.IOEvent;
+import alevos.ts.State;
+import alevos.ts.sp.FailureState;
+import alevos.ts.sp.SimulationPurpose;
+import alevos.ts.sp.SuccessState;
+import alevos.util.Pair;
+import alevos.verification.SynchState;
+import alevos.verification.TraceInfo;
+import alevos.verification.VerifyCertainty;
+
+/**
+ * Verifies certainty just as <code>PruningVerifyCertainty</code> does, but 
+ * distributes the search among workers running in other processes, possibly
+ * in other machines (see <code>CertaintyWorker</code>). 
+ * 
+ * This algorithm acts as the coordinator. It expands the synchronizations 
+ * breadth-first until it has found enough of them to be explored 
+ * independently, and then listens on a port for workers, each of which is 
+ * given one of these units at a time (see <code>WorkUnit</code>). Workers 
+ * explore their units depth-first, but ask the coordinator whether each 
+ * configuration they find has already been visited by anyone, so that the 
+ * configurations visited are the same as if the search was not distributed. 
+ * The first failure reported (or the exhaustion of the allowed 
+ * synchronizations) stops every worker. Units whose workers disconnect 
+ * before finishing them are given to others, which explore again the 
+ * configurations the lost workers had claimed.
+ * 
+ * Workers must have loaded the same scenario and experiment, and use the same
+ * kind of snapshots. Those that tell, when they connect, that they have loaded 
+ * another experiment are turned away. Their processes outlive the verification,
+ * so that they can help in the next one.
+ * 
+ * Synchronizations are counted just as <code>PruningVerifyCertainty</code> counts
+ * them: only once they are known to be worth exploring, that is, after it is 
+ * checked whether their configurations have already been visited. Pruned 
+ * synchronizations are thus not counted, nor are failures, which end the search,
+ * nor the configurations of lost workers that must be explored again.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class DistributedVerifyCertainty extends VerifyCertainty implements IRandomized, IConcurrent {
+  
+  /**
+   * Where configurations visited are remembered, or <code>null</code> if no 
+   * pruning is to take place.
+   */
+  private SimulationStateSpace stateSpace;
+  
+  /**
+   * The address and port on which workers are waited for.
+   */
+  private InetSocketAddress address;
+  
+  /**
+   * How many units the search should be split into.
+   */
+  private int units;
+  
+  /**
+   * The position of the simulation purpose verified among those of the experiment,
+   * which is how workers find it.
+   */
+  private int purpose;
+  
+  /**
+   * The experiment being performed, which workers must have loaded as well 
+   * (see <code>Simulator.getExperimentIdentity()</code>).
+   */
+  private String identity;
+  
+  private Random random = new RandomStream(0);
+  
+  //
+  // State of the current search
+  //
+  
+  /**
+   * How many synchronizations the whole search has found and not pruned.
+   */
+  private final AtomicInteger synchs = new AtomicInteger();
+  
+  private volatile boolean depthLimitReached;
+  
+  /**
+   * Guards the units and the outcome of the search, and is notified when 
+   * either changes.
+   */
+  private final Object session = new Object();
+  
+  private final LinkedList<WorkUnit> queue = new LinkedList<WorkUnit>();
+  
+  /**
+   * Units that have not been completely explored yet.
+   */
+  private int outstanding;
+  
+  private int workers;
+  
+  private Outcome decisive;
+  
+  private boolean over;
+  
+
+  /**
+   * 
+   * @param maxDepth The maximum depth of the search.
+   * @param randomize Whether transitions should be considered in random order.
+   * @param maxSynchSteps The maximum number of synchronizations allowed, or 
+   *                      <code>null</code> if there is no limit.
+   * @param stateSpace Where configurations visited are to be remembered, or 
+   *                   <code>null</code> if they are not to be pruned.
+   * @param address The address and port on which workers are to be waited for.
+   *                Only workers that can reach this address can help, so it
+   *                should not be exposed beyond the machines trusted.
+   * @param units How many units the search should be split into.
+   * @param purpose The position of the simulation purpose to be verified among 
+   *                those of the experiment.
+   * @param identity The experiment being performed, which workers must have 
+   *                 loaded as well.
+   */
+  public DistributedVerifyCertainty(int maxDepth, boolean randomize, Integer maxSynchSteps, SimulationStateSpace stateSpace, InetSocketAddress address, int units, int purpose, String identity) {
+    super(maxDepth, randomize, maxSynchSteps);
+    Assert.notNull(address);
+    Assert.nonNegativeNonZero(units);
+    Assert.notNull(identity);
+    
+    this.stateSpace = stateSpace;
+    this.address = address;
+    this.units = units;
+    this.purpose = purpose;
+    this.identity = identity;
+  }
+  
+  /**
+   * Builds an instance that only explores the units given to a worker (see 
+   * <code>explore()</code>).
+   */
+  DistributedVerifyCertainty(int maxDepth, boolean randomize, Integer maxSynchSteps, int purpose) {
+    super(maxDepth, randomize, maxSynchSteps);
+    
+    this.units = 1;
+    this.purpose = purpose;
+  }
+
+  @Override
+  public Verdict verify(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    // ATS transitions are shuffled here, rather than by ALEVOS, which relies 
+    // on a global generator
+    ATSShuffling.suspend();
+    
+    try{
+      return coordinate(sp, ats, sc);
+    }
+    finally{
+      ATSShuffling.resume();
+      
+      synchronized(session){
+        over = true;
+        queue.clear();
+        decisive = null;
+        session.notifyAll();
+      }
+    }
+  }
+  
+  private Verdict coordinate(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    synchs.set(0);
+    depthLimitReached = false;
+    synchronized(session){
+      queue.clear();
+      outstanding = 0;
+      workers = 0;
+      decisive = null;
+      over = false;
+    }
+    
+    synchronized(ALEVOS_LOCK){
+      ats.setSimulatorConnector(sc);
+      preprocess(sp, SuccessState.instance());
+    }
+    
+    if(stateSpace != null){
+      stateSpace.clear();
+    }
+    
+    // Find the units breadth-first
+    Object initialSimState = sc.currentState();
+    Node root = root(sp, ats, initialSimState);
+    if(stateSpace != null){
+      stateSpace.visit(Configurations.portableFingerprint(stateSpace, initialSimState, root.atsForm, sp.getInitialState(), ats.getInitialTraceInfo()), 0);
+    }
+    
+    Explorer local = new Explorer() {
+      boolean visit(Object simState, String atsForm, State spState, TraceInfo ti, int depth) throws InvalidSimulatorRequest {
+        long high = 0;
+        long low = 0;
+        if(stateSpace != null){
+          SimulationStateSpace.Fingerprint f = Configurations.portableFingerprint(stateSpace, simState, atsForm, spState, ti);
+          high = f.getHigh();
+          low = f.getLow();
+        }
+        
+        return DistributedVerifyCertainty.this.visit(high, low, depth);
+      }
+      
+      int synchs(){
+        return synchs.get();
+      }
+      
+      boolean isOver(){
+        return false;
+      }
+    };
+    LinkedList<Node> frontier = new LinkedList<Node>();
+    frontier.add(root);
+    Outcome outcome = null;
+    while(!frontier.isEmpty() && frontier.size() < units && outcome == null){
+      List<Node> children = new LinkedList<Node>();
+      outcome = expand(sp, ats, frontier.removeFirst(), sc, random, local, children);
+      frontier.addAll(children);
+    }
+    depthLimitReached = local.depthLimitReached;
+    
+    if(outcome == null && !frontier.isEmpty()){
+      outcome = distribute(frontier, encode(initialSimState), sc);
+    }
+    
+    // Combine the results
+    Verdict verdict = Verdict.SUCCESS;
+    if(outcome != null){
+      if(outcome.node == null){
+        // Found by a worker, so we must rebuild its trace here
+        outcome.node = replay(sp, ats, sc, initialSimState, outcome.path);
+      }
+      
+      buildTrace(outcome.node.path(), outcome.node.state.getStateSP(), outcome.node.state.getDepth());
+      verdict = outcome.verdict;
+    }
+    else if(depthLimitReached){
+      verdict = Verdict.INCONCLUSIVE;
+      sc.printMsg("WARNING: Search depth limit (" + maxDepth + ") has been reached.", 3);
+    }
+    
+    printStatistics(sc);
+    return verdict;
+  }
+  
+  /**
+   * Gives the specified synchronizations to the workers that connect, and 
+   * waits until all of them have been explored, or until the search is over.
+   * 
+   * @return The outcome that ended the search, if any.
+   */
+  private Outcome distribute(List<Node> frontier, byte[] initialState, SimulatorConnector sc) throws InvalidSimulatorRequest {
+    
+    String codec = SimulationState.getSnapshotCodec().getName();
+    
+    synchronized(session){
+      for(Node n: frontier){
+        WorkUnit unit = new WorkUnit();
+        unit.purpose = purpose;
+        unit.maxDepth = maxDepth;
+        unit.randomize = randomize;
+        unit.maxSynchSteps = maxSynchSteps;
+        unit.codec = codec;
+        unit.seed = random.nextLong();
+        unit.initialState = initialState;
+        unit.path = describe(n);
+        
+        queue.add(unit);
+      }
+      outstanding = queue.size();
+    }
+    
+    ServerSocket server = null;
+    try {
+      server = new ServerSocket();
+      server.setReuseAddress(true);
+      server.bind(address);
+    } catch (IOException e) {
+      throw new InvalidSimulatorRequest("Could not listen for workers on " + address + ".", e);
+    }
+    
+    sc.printMsg("Waiting for workers on " + address + " to explore " + frontier.size() + " units...", 3);
+    
+    Thread acceptor = new Thread(new Acceptor(server), "certainty-coordinator");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    
+    try{
+      synchronized(session){
+        while(outstanding > 0 && decisive == null){
+          session.wait();
+        }
+        
+        return decisive;
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InvalidSimulatorRequest("Interrupted while waiting for the workers of the search.", e);
+    }
+    finally{
+      synchronized(session){
+        // Whoever is still working will be told to stop
+        over = true;
+        queue.clear();
+        session.notifyAll();
+      }
+      
+      try {
+        server.close();
+      } catch (IOException e) {
+        // Nothing else to do
+      }
+    }
+  }
+  
+  /**
+   * Records a visit to the configuration identified by the specified fingerprint, 
+   * found either here or by a worker. Workers calculate fingerprints just as 
+   * they are calculated here (see <code>Configurations.fingerprint()</code>), 
+   * since the same experiment was loaded. The synchronization that reached it 
+   * is counted only if it is to be explored, just as in 
+   * <code>PruningVerifyCertainty</code>.
+   * 
+   * @return <code>true</code> if it must be explored; <code>false</code> if it 
+   *         has already been visited.
+   */
+  private boolean visit(long high, long low, int depth){
+    boolean explore = true;
+    
+    if(stateSpace != null){
+      synchronized(stateSpace){
+        explore = stateSpace.visit(high, low, depth);
+      }
+    }
+    
+    // Pruned synchronizations are not counted
+    if(explore){
+      synchs.incrementAndGet();
+    }
+    
+    return explore;
+  }
+  
+  /**
+   * Makes the specified outcome the one that ends the search, unless another 
+   * has already done so. A failure, however, takes precedence over an 
+   * inconclusive outcome.
+   */
+  private void decide(Outcome outcome){
+    synchronized(session){
+      if(decisive == null || (decisive.verdict != Verdict.FAILURE && outcome.verdict == Verdict.FAILURE)){
+        decisive = outcome;
+        session.notifyAll();
+      }
+    }
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Exploration, both here and in the workers
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * Explores the specified unit depth-first, in the manner of 
+   * <code>PruningVerifyCertainty</code>. This is what workers do.
+   * 
+   * @param explorer Decides which configurations are explored.
+   * 
+   * @return How the exploration ended, or <code>null</code> if it was stopped.
+   */
+  WorkMessage explore(WorkUnit unit, SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc, Explorer explorer) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    if(!unit.codec.equals(SimulationState.getSnapshotCodec().getName())){
+      throw new InvalidSimulatorRequest("The coordinator encodes simulation states with the '" + unit.codec + "' codec, but this worker uses the '" + 
+                                        SimulationState.getSnapshotCodec().getName() + "' one.");
+    }
+    
+    Random random = new RandomStream(unit.seed);
+    
+    ATSShuffling.suspend();
+    try{
+      synchronized(ALEVOS_LOCK){
+        ats.setSimulatorConnector(sc);
+        preprocess(sp, SuccessState.instance());
+      }
+      
+      Stack<Node> stack = new Stack<Node>();
+      stack.push(replay(sp, ats, sc, decode(unit.initialState), unit.path));
+      
+      while(!stack.empty()){
+        if(explorer.isOver()){
+          return null;
+        }
+        
+        List<Node> children = new LinkedList<Node>();
+        Outcome outcome = expand(sp, ats, stack.pop(), sc, random, explorer, children);
+        
+        if(outcome != null){
+          if(explorer.isOver()){
+            return null;
+          }
+          
+          WorkMessage result = new WorkMessage(WorkMessage.Kind.RESULT);
+          result.verdict = outcome.verdict;
+          result.path = describe(outcome.node);
+          result.depthLimitReached = explorer.depthLimitReached;
+          return result;
+        }
+        
+        stack.addAll(children);
+      }
+      
+      WorkMessage result = new WorkMessage(WorkMessage.Kind.RESULT);
+      result.verdict = Verdict.SUCCESS;
+      result.depthLimitReached = explorer.depthLimitReached;
+      return result;
+    }
+    finally{
+      ATSShuffling.resume();
+    }
+  }
+  
+  /**
+   * Expands all the SP transitions of the specified synchronization, just as
+   * <code>PruningVerifyCertainty</code> does when it finds it at the top of its
+   * stack.
+   * 
+   * @param explorer Decides which configurations are explored.
+   * @param children Where the new synchronizations are to be put.
+   * 
+   * @return The outcome that ends the search, if one was found.
+   */
+  private Outcome expand(SimulationPurpose sp, AnnotatedTransitionSystem ats, Node node, SimulatorConnector sc, Random random, 
+                         Explorer explorer, List<Node> children) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    SynchState ss = node.state;
+    State spState = ss.getStateSP();
+    State atsState = ss.getStateATS();
+    Object simState = ss.getSimulationState();
+    TraceInfo ti = ss.getTraceInfo();
+    List<Pair<Event, State>> unexplored = ss.getUnexplored();
+    int depth = ss.getDepth();
+    
+    boolean synched = false;
+    
+    while(!unexplored.isEmpty() && depth < maxDepth){
+      
+      if(explorer.isOver()){
+        return null;
+      }
+      
+      // ATS successors are calculated in the context of the simulation state they depart from
+      sc.goToState(simState);
+      
+      Pair<Event, State> spTransition;
+      List<Pair<Event, State>> atsTransitions;
+      synchronized(ALEVOS_LOCK){
+        spTransition = removeBest(spState, unexplored, random);
+        ats.setSimulatorConnector(sc);
+        atsTransitions = new ArrayList<Pair<Event, State>>(ats.succ(atsState, ti));
+      }
+      IOEvent spEvent = (IOEvent) spTransition.getFirst();
+      State spNext = spTransition.getSecond();
+      int nextDepth = depth + 1;
+      
+      ATSExpansion expansion = new ATSExpansion(ats, atsTransitions, simState, ti, sc, randomize ? random : null);
+      while(expansion.next()){
+        IOEvent atsEvent = expansion.getEvent();
+        State atsNext = expansion.getNext();
+        TraceInfo nextTi = expansion.getNextTraceInfo();
+        
+        boolean canSynch;
+        synchronized(ALEVOS_LOCK){
+          canSynch = canSynch(sp, spState, spEvent, spNext, atsState, atsEvent, atsNext, sc);
+        }
+        
+        if(canSynch){
+          expansion.printSynch(depth, "SP", spState, spEvent, spNext);
+          
+          Object nextSimState = sc.currentState();
+          String atsForm;
+          synchronized(ALEVOS_LOCK){
+            atsForm = Configurations.portable(atsNext.toString());
+          }
+          synched = true;
+          
+          // Have we (or anyone else) been here before? Failures are never pruned, since they end the search.
+          if(!spNext.equals(FailureState.instance()) && !explorer.visit(nextSimState, atsForm, spNext, nextTi, nextDepth)){
+            continue;
+          }
+          
+          List<Pair<Event, State>> nextUnexplored;
+          synchronized(ALEVOS_LOCK){
+            nextUnexplored = new LinkedList<Pair<Event, State>>(sp.succ(spNext));
+          }
+          Node child = new Node(new SynchState(spNext, atsNext, spEvent, atsEvent, spState, nextSimState, nextTi, nextUnexplored, nextDepth), atsForm, node);
+          
+          if(spNext.equals(FailureState.instance())){
+            return new Outcome(Verdict.FAILURE, child);
+          }
+          
+          if(maxSynchSteps != null && explorer.synchs() >= maxSynchSteps){
+            return new Outcome(Verdict.INCONCLUSIVE, node);
+          }
+          
+          children.add(child);
+        }
+      }
+      
+      // The SP must be matched by the simulation
+      if(!synched){
+        return new Outcome(Verdict.FAILURE, node);
+      }
+    }
+    
+    if(depth >= maxDepth){
+      explorer.depthLimitReached = true;
+    }
+    
+    return null;
+  }
+  
+  /**
+   * 
+   * @return The initial synchronization.
+   */
+  private Node root(SimulationPurpose sp, AnnotatedTransitionSystem ats, Object initialSimState){
+    List<Pair<Event, State>> unexplored;
+    String atsForm;
+    synchronized(ALEVOS_LOCK){
+      unexplored = new LinkedList<Pair<Event, State>>(sp.succ(sp.getInitialState()));
+      atsForm = Configurations.portable(ats.getInitialState().toString());
+    }
+    
+    return new Node(new SynchState(sp.getInitialState(), ats.getInitialState(), null, null, null, initialSimState, ats.getInitialTraceInfo(), unexplored, 0), atsForm, null);
+  }
+  
+  /**
+   * Rebuilds the synchronizations described by the specified steps, which 
+   * were found by another process. The simulation states reached are taken
+   * from the steps themselves, but ATS successors are still calculated in 
+   * their context.
+   * 
+   * @param initialSimState The initial simulation state.
+   * @param path The synchronizations that follow the initial one.
+   * 
+   * @return The last synchronization of the path.
+   * 
+   * @throws InvalidSimulatorRequest If some synchronization cannot be found, 
+   *                                 which means that the process that found 
+   *                                 them was not verifying the same thing.
+   */
+  private Node replay(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc, Object initialSimState, List<WorkUnit.Step> path) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    Node node = root(sp, ats, initialSimState);
+    
+    for(WorkUnit.Step step: path){
+      SynchState ss = node.state;
+      
+      sc.goToState(ss.getSimulationState());
+      
+      Pair<Event, State> spTransition = null;
+      Pair<Event, State> atsTransition = null;
+      String atsForm = null;
+      TraceInfo nextTi = null;
+      List<Pair<Event, State>> nextUnexplored = null;
+      synchronized(ALEVOS_LOCK){
+        for(Pair<Event, State> t: sp.succ(ss.getStateSP())){
+          if(t.getFirst().toString().equals(step.spEvent) && t.getSecond().getName().equals(step.spState)){
+            spTransition = t;
+            break;
+          }
+        }
+        
+        ats.setSimulatorConnector(sc);
+        for(Pair<Event, State> t: ats.succ(ss.getStateATS(), ss.getTraceInfo())){
+          if(t.getFirst().toString().equals(step.atsEvent)){
+            String form = Configurations.portable(t.getSecond().toString());
+            if(form.equals(step.atsState)){
+              atsTransition = t;
+              atsForm = form;
+              break;
+            }
+          }
+        }
+        
+        if(spTransition != null && atsTransition != null){
+          nextTi = (TraceInfo) ss.getTraceInfo().clone();
+          ats.eventScheduled((IOEvent) atsTransition.getFirst(), nextTi);
+          nextUnexplored = new LinkedList<Pair<Event, State>>(sp.succ(spTransition.getSecond()));
+        }
+      }
+      
+      if(spTransition == null || atsTransition == null){
+        throw new InvalidSimulatorRequest("The synchronization " + step + " at depth " + (ss.getDepth() + 1) + " could not be rebuilt.");
+      }
+      
+      node = new Node(new SynchState(spTransition.getSecond(), atsTransition.getSecond(), (IOEvent) spTransition.getFirst(), (IOEvent) atsTransition.getFirst(), 
+                                     ss.getStateSP(), decode(step.simulationState), nextTi, nextUnexplored, ss.getDepth() + 1), atsForm, node);
+    }
+    
+    return node;
+  }
+  
+  /**
+   * 
+   * @return The description of the synchronizations that lead to the specified 
+   *         one, from the initial one (exclusive).
+   */
+  private ArrayList<WorkUnit.Step> describe(Node node) throws InvalidSimulatorRequest {
+    LinkedList<WorkUnit.Step> path = new LinkedList<WorkUnit.Step>();
+    
+    for(Node n = node; n.parent != null; n = n.parent){
+      SynchState ss = n.state;
+      
+      WorkUnit.Step step = new WorkUnit.Step();
+      step.spEvent = ss.getEventSP().toString();
+      step.spState = ss.getStateSP().getName();
+      step.atsEvent = ss.getEventATS().toString();
+      step.atsState = n.atsForm;
+      step.simulationState = encode(ss.getSimulationState());
+      
+      path.addFirst(step);
+    }
+    
+    return new ArrayList<WorkUnit.Step>(path);
+  }
+  
+  private static byte[] encode(Object simState) throws InvalidSimulatorRequest {
+    try {
+      return SimulationState.getSnapshotCodec().encode((SimulationState) simState);
+    } catch (SnapshotException e) {
+      throw new InvalidSimulatorRequest("The simulation state could not be encoded.", e);
+    }
+  }
+  
+  private static Object decode(byte[] data) throws InvalidSimulatorRequest {
+    try {
+      return SimulationState.getSnapshotCodec().decode(data);
+    } catch (SnapshotException e) {
+      throw new InvalidSimulatorRequest("The simulation state could not be decoded.", e);
+    }
+  }
+  
+  private Pair<Event, State> removeBest(State spState, List<Pair<Event, State>> transitions, Random random){
+    if(randomize){
+      Collections.shuffle(transitions, random);
+      return Configurations.removeClosest(transitions);
+    }
+    
+    return super.removeBest(spState, transitions);
+  }
+  
+  public void setRandom(Random random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+  
+  private void printStatistics(SimulatorConnector sc){
+    synchronized(session){
+      sc.printMsg("Workers: " + workers + ", " + synchs.get() + " synch's", 2);
+    }
+    if(stateSpace != null){
+      sc.printMsg("State space: " + stateSpace, 2);
+    }
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * A synchronization, together with the one from which it was found, so that
+   * the trace that leads to it can be rebuilt.
+   */
+  private static final class Node {
+    
+    private final SynchState state;
+    
+    /**
+     * The portable form of the ATS state, taken when it was created (see 
+     * <code>Configurations.portableFingerprint()</code>).
+     */
+    private final String atsForm;
+    
+    private final Node parent;
+    
+    Node(SynchState state, String atsForm, Node parent){
+      this.state = state;
+      this.atsForm = atsForm;
+      this.parent = parent;
+    }
+    
+    /**
+     * 
+     * @return The synchronizations from the initial one to this one, the latter at the top.
+     */
+    Stack<SynchState> path(){
+      LinkedList<SynchState> path = new LinkedList<SynchState>();
+      for(Node n = this; n != null; n = n.parent){
+        path.addFirst(n.state);
+      }
+      
+      Stack<SynchState> stack = new Stack<SynchState>();
+      stack.addAll(path);
+      return stack;
+    }
+  }
+  
+  /**
+   * How (and where) the search ended. Outcomes reported by workers have only 
+   * the description of where they happened, until they are replayed.
+   */
+  private static final class Outcome {
+    
+    private final Verdict verdict;
+    
+    private Node node;
+    
+    private List<WorkUnit.Step> path;
+    
+    Outcome(Verdict verdict, Node node){
+      this.verdict = verdict;
+      this.node = node;
+    }
+    
+    Outcome(Verdict verdict, List<WorkUnit.Step> path){
+      this.verdict = verdict;
+      this.path = path;
+    }
+  }
+  
+  /**
+   * Decides which configurations are explored, and when to stop.
+   */
+  static abstract class Explorer {
+    
+    /**
+     * Whether some synchronization at the maximum depth still had SP transitions to explore.
+     */
+    boolean depthLimitReached = false;
+    
+    /**
+     * Records a visit to the specified configuration.
+     * 
+     * @param atsForm The portable form of the ATS state (see <code>Configurations.portable()</code>).
+     * 
+     * @return <code>true</code> if it must be explored; <code>false</code> if it 
+     *         has already been visited.
+     */
+    abstract boolean visit(Object simState, String atsForm, State spState, TraceInfo ti, int depth) throws InvalidSimulatorRequest;
+    
+    /**
+     * 
+     * @return How many synchronizations the whole search has found so far.
+     */
+    abstract int synchs();
+    
+    abstract boolean isOver();
+  }
+  
+  /**
+   * Accepts the connections of workers.
+   */
+  private final class Acceptor implements Runnable {
+    
+    private final ServerSocket server;
+    
+    Acceptor(ServerSocket server){
+      this.server = server;
+    }
+    
+    public void run() {
+      while(!server.isClosed()){
+        try {
+          Socket socket = server.accept();
+          
+          Thread t = new Thread(new Connection(socket), "certainty-coordinator-" + socket.getRemoteSocketAddress());
+          t.setDaemon(true);
+          t.start();
+          
+        } catch (IOException e) {
+          // Closed, we are done
+        }
+      }
+    }
+  }
+  
+  /**
+   * Serves a worker.
+   */
+  private final class Connection implements Runnable {
+    
+    private final Socket socket;
+    
+    /**
+     * The unit the worker is exploring, if any.
+     */
+    private WorkUnit current;
+    
+    /**
+     * The fingerprints of the configurations the worker was told to explore 
+     * within its unit.
+     */
+    private Set<WorkUnit.Claim> claimed = new HashSet<WorkUnit.Claim>();
+    
+    /**
+     * Whether the worker has told that it loaded the same experiment.
+     */
+    private boolean identified = false;
+    
+    Connection(Socket socket){
+      this.socket = socket;
+    }
+    
+    public void run() {
+      synchronized(session){
+        workers++;
+      }
+      SimulatorUI.instance().getMessenger().printMsg("Worker connected: " + socket.getRemoteSocketAddress(), Messenger.NORMAL_MSG);
+      
+      try {
+        socket.setTcpNoDelay(true);
+        ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+        out.flush();
+        ObjectInputStream in = WorkMessage.input(socket.getInputStream());
+        
+        while(true){
+          WorkMessage request = WorkMessage.read(in);
+          WorkMessage reply;
+          
+          // The first request must tell which experiment the worker loaded
+          if(!identified){
+            if(request.kind != WorkMessage.Kind.REQUEST || !identity.equals(request.identity)){
+              SimulatorUI.instance().getMessenger().printMsg("Worker " + socket.getRemoteSocketAddress() + " turned away, since it loaded '" + 
+                                                             request.identity + "' rather than '" + identity + "'.", Messenger.IMPORTANT_MSG);
+              
+              reply = new WorkMessage(WorkMessage.Kind.REJECT);
+              reply.identity = identity;
+              out.writeObject(reply);
+              out.flush();
+              break;
+            }
+            
+            identified = true;
+          }
+          
+          if(request.kind == WorkMessage.Kind.VISIT){
+            if(isOver()){
+              reply = new WorkMessage(WorkMessage.Kind.STOP);
+            }
+            else{
+              reply = new WorkMessage(WorkMessage.Kind.VISITED);
+              reply.explore = visit(request.high, request.low, request.depth);
+              reply.synchs = synchs.get();
+              
+              // Visited by a lost worker, which might not have explored it completely.
+              // It was counted when that worker claimed it, so it is not counted again.
+              WorkUnit.Claim claim = new WorkUnit.Claim(request.high, request.low);
+              if(!reply.explore && current != null && current.orphans.remove(claim)){
+                reply.explore = true;
+              }
+              if(reply.explore){
+                claimed.add(claim);
+              }
+            }
+          }
+          else if(request.kind == WorkMessage.Kind.RESULT || request.kind == WorkMessage.Kind.REQUEST){
+            if(request.kind == WorkMessage.Kind.RESULT){
+              finish(request);
+            }
+            
+            current = take();
+            claimed.clear();
+            if(current != null){
+              reply = new WorkMessage(WorkMessage.Kind.UNIT);
+              reply.unit = current;
+            }
+            else{
+              reply = new WorkMessage(WorkMessage.Kind.STOP);
+            }
+          }
+          else{
+            throw new IOException("Unexpected message from worker: " + request);
+          }
+          
+          out.writeObject(reply);
+          out.reset();
+          out.flush();
+          
+          if(reply.kind == WorkMessage.Kind.STOP && request.kind != WorkMessage.Kind.VISIT){
+            break;
+          }
+        }
+        
+      } catch (ClassNotFoundException e) {
+        SimulatorUI.instance().getMessenger().printMsg("Invalid message from worker " + socket.getRemoteSocketAddress() + ": " + e, Messenger.IMPORTANT_MSG);
+        
+      } catch (IOException e) {
+        if(!(e instanceof SocketException) || !isOver()){
+          SimulatorUI.instance().getMessenger().printMsg("Worker " + socket.getRemoteSocketAddress() + " lost: " + e, Messenger.IMPORTANT_MSG);
+        }
+      
+      } finally {
+        // Someone else will have to explore it
+        if(current != null){
+          current.orphans.addAll(claimed);
+          synchronized(session){
+            if(!over){
+              queue.addFirst(current);
+              session.notifyAll();
+            }
+          }
+        }
+        
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Nothing else to do
+        }
+      }
+    }
+    
+    /**
+     * 
+     * @return The next unit to be explored, or <code>null</code> if the search
+     *         is over. Waits while there are units being explored elsewhere, 
+     *         since their workers might be lost.
+     */
+    private WorkUnit take() throws IOException {
+      synchronized(session){
+        while(!over && queue.isEmpty() && decisive == null){
+          try {
+            session.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for units.");
+          }
+        }
+        
+        if(over || decisive != null){
+          return null;
+        }
+        
+        return queue.removeFirst();
+      }
+    }
+    
+    private void finish(WorkMessage result){
+      if(current == null){
+        return;
+      }
+      
+      if(result.depthLimitReached){
+        depthLimitReached = true;
+      }
+      
+      // Stopped workers report nothing
+      if(result.verdict != null){
+        if(result.verdict != Verdict.SUCCESS){
+          decide(new Outcome(result.verdict, result.path));
+        }
+        
+        synchronized(session){
+          outstanding--;
+          session.notifyAll();
+        }
+      }
+      
+      current = null;
+    }
+    
+    private boolean isOver(){
+      synchronized(session){
+        return over || decisive != null;
+      }
+    }
+  }
+  
+}
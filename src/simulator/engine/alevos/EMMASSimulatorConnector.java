@@ -35,13 +35,16 @@ import simulator.agent.IBehavioralAgent.ActionStatus;
 import simulator.agent.action.EnvironmentAction;
 import simulator.analysis.UndefinedPropertyException;
 import simulator.engine.SimulationState;
+import simulator.engine.runner.CancellationToken;
 import simulator.engine.runner.ExecutionMode;
+import simulator.engine.runner.SimulationRun;
 import simulator.engine.runner.SimulationRun.StorageMode;
 import simulator.engine.runner.SimulationRunException;
 import simulator.engine.runner.SimulationRunner;
 import simulator.environment.EMMASEnvironment;
 import simulator.ui.SimulatorUI;
 import simulator.util.Assert;
+import simulator.util.RandomStream;
 import alevos.simulation.InvalidSimulatorRequest;
 import alevos.simulation.SimulatorConnector;
 import alevos.simulation.SimulatorContext;
@@ -52,10 +55,15 @@ import alevos.ts.State;
 /**
  * Provides a way to control a simulation in which the environment is based on an EMMAS specification.
  */
-public class EMMASSimulatorConnector extends SimulatorConnector {
+public class EMMASSimulatorConnector extends SimulatorConnector implements IForkable, ICancelable {
   
   private SimulationRunner runner;
   
+  /**
+   * Checked before the simulation is advanced or restored, if present.
+   */
+  private volatile CancellationToken cancellationToken = null;
+  
   
   //
   // Variables for controlling pre- and post-simulation restrictions.
@@ -76,7 +84,7 @@ public class EMMASSimulatorConnector extends SimulatorConnector {
   @Override
   public void setup() throws InvalidSimulatorRequest{
     try {
-      runner.setupRun(StorageMode.FULL, ExecutionMode.VERIFICATION);
+      runner.setupRun(SimulationRun.getTraceStorageMode(), ExecutionMode.VERIFICATION);
       
     } catch (UndefinedPropertyException e) {
       throw new InvalidSimulatorRequest("An undefined property was referenced.", e);
@@ -88,6 +96,63 @@ public class EMMASSimulatorConnector extends SimulatorConnector {
 
 
 
+  /**
+   * The new connector has a runner of its own, over a copy of this connector's 
+   * initial state, and prepared for verification in the same storage mode as 
+   * the current run (or with no storage at all, if there is no current run).
+   * It checks the same cancellation token as this one.
+   */
+  @Override
+  public EMMASSimulatorConnector fork(RandomStream random) throws InvalidSimulatorRequest{
+    Assert.notNull(random);
+    
+    SimulationRunner r = new SimulationRunner(runner.getInitialStateClone());
+    r.setRandomStream(random);
+    
+    StorageMode mode = StorageMode.NONE;
+    if(runner.getCurrentRun() != null){
+      mode = runner.getCurrentRun().getMode();
+    }
+    
+    try {
+      r.setupRun(mode, ExecutionMode.VERIFICATION);
+      
+    } catch (UndefinedPropertyException e) {
+      throw new InvalidSimulatorRequest("An undefined property was referenced.", e);
+    } catch (SimulationRunException e) {
+      throw new InvalidSimulatorRequest("There was an error during the simulation run.", e);
+    }
+    
+    EMMASSimulatorConnector fork = new EMMASSimulatorConnector(r);
+    fork.setCancellationToken(cancellationToken);
+    
+    return fork;
+  }
+  
+  @Override
+  public void close(){
+    runner.close();
+  }
+  
+  public CancellationToken getCancellationToken() {
+    return cancellationToken;
+  }
+  
+  public void setCancellationToken(CancellationToken token) {
+    this.cancellationToken = token;
+  }
+  
+  /**
+   * 
+   * @throws SearchCanceledException If the cancellation token has been canceled.
+   */
+  private void checkCancellation() throws SearchCanceledException{
+    CancellationToken token = cancellationToken;
+    if(token != null && token.isCanceled()){
+      throw new SearchCanceledException();
+    }
+  }
+
   @Override
   public void reset() throws InvalidSimulatorRequest {
     try {
@@ -139,6 +204,8 @@ public class EMMASSimulatorConnector extends SimulatorConnector {
   
   @Override
   public void step() throws InvalidSimulatorRequest{
+    checkCancellation();
+    
     try {
       runner.runStep();
       
@@ -150,12 +217,14 @@ public class EMMASSimulatorConnector extends SimulatorConnector {
 
   @Override
   public long getCurrentPosition() {
-    return runner.getCurrentState().getPosition();
+    return runner.getCurrentPosition();
   }
 
 
   @Override
   public void goToState(Object state) throws InvalidSimulatorRequest {
+    checkCancellation();
+    
     try {
       runner.goToState((SimulationState) state);
     } catch (Exception e) {
@@ -165,7 +234,12 @@ public class EMMASSimulatorConnector extends SimulatorConnector {
 
   @Override
   public Object currentState() {
-    return runner.getCurrentState().clone();
+    try {
+      return runner.takeSnapshot();
+    
+    } catch (SimulationRunException e) {
+      throw new IllegalStateException("Could not take a snapshot of the current state.", e);
+    }
   }
 
 
@@ -43,6 +43,7 @@ import simulator.analysis.IBooleanProperty;
 import simulator.analysis.IProperty;
 import simulator.analysis.PropertyBearerWrapper;
 import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.PropertyValueCache;
 import simulator.engine.SimulationState;
 import simulator.environment.EMMASEnvironment;
 import simulator.ui.Messenger;
@@ -76,28 +77,39 @@ public class EMMASSimulatorContext extends SimulatorContext {
   public Set<Literal> getLiterals() {
     Set<Literal> literals = new HashSet<Literal>();
     
+    // Values are only shown, and therefore calculated as text, if requested 
+    boolean debug = SimulatorUI.instance().getMessenger().isDebugEnabled(Messenger.IMPORTANT_MSG);
+    
+    // Properties are shared with whoever else inspected the state in this step
+    PropertyValueCache values = currentSimState.getPropertyValues();
+    
     for(PropertyBearerWrapper pbw: currentSimState.getPropertyBearerWrappers()){
 
-      String msg = "Properties (for  " + pbw.getName() + "): ";
+      StringBuilder msg = null;
+      if(debug){
+        msg = new StringBuilder("Properties (for  " + pbw.getName() + "): ");
+      }
+      
       for(IProperty p: pbw.getProperties()){
 
         // Only propositions concern us here
         if(p instanceof IBooleanProperty){
-          IBooleanProperty bp = (IBooleanProperty)p;
-          
-          Literal l = null;
-          if(bp.isTrue(pbw)){
-            l = new Literal(p.getName(), Literal.Type.POSITIVE);
-          }
-          else{
-            l = new Literal(p.getName(), Literal.Type.NEGATIVE);
-          }
-          
-          literals.add(l);
-          
           
           try {
-            msg = msg + " [" + p.getName() + " = " + p.getValueAsString(pbw) + "]";
+            Literal l = null;
+            if(values.isTrue(p, pbw)){
+              l = new Literal(p.getName(), Literal.Type.POSITIVE);
+            }
+            else{
+              l = new Literal(p.getName(), Literal.Type.NEGATIVE);
+            }
+            
+            literals.add(l);
+            
+            
+            if(debug){
+              msg.append(" [").append(p.getName()).append(" = ").append(values.getString(p, pbw)).append("]");
+            }
           } catch (UndefinedPropertyException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -106,7 +118,9 @@ public class EMMASSimulatorContext extends SimulatorContext {
         }
       }
       
-      SimulatorUI.instance().getMessenger().printDebugMsg(msg, Messenger.IMPORTANT_MSG);
+      if(debug){
+        SimulatorUI.instance().getMessenger().printDebugMsg(msg.toString(), Messenger.IMPORTANT_MSG);
+      }
     }
 
     return literals;
@@ -31,9 +31,13 @@
  ******************************************************************************/
 package simulator.engine.alevos;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 
+import simulator.agent.IAgent;
 import simulator.agent.action.EnvironmentAction;
 import simulator.agent.stimuli.EnvironmentStimulus;
 import alevos.util.Pair;
@@ -91,6 +95,71 @@ public class EMMASTraceInfo extends TraceInfo {
     actionSafeguard.clear();
   }
   
+  /**
+   * Summarizes the safeguards in a canonical form, so that equal trace informations
+   * always result in the same digest, regardless of the order in which safeguards 
+   * were added. Each safeguard is described in full (agent ID, type, content and 
+   * referenced agents), rather than by its hash code, so that different trace 
+   * informations never result in the same digest.
+   * 
+   * @return The sorted descriptions of the stimulation safeguards, followed by 
+   *         <code>null</code> and by the sorted descriptions of the action safeguards.
+   */
+  public List<String> digest(){
+    List<String> stimulations = new ArrayList<String>(stimulationSafeguard.size());
+    for(Pair<Integer, EnvironmentStimulus> as: stimulationSafeguard){
+      StringBuilder sb = new StringBuilder();
+      sb.append(as.getFirst()).append(' ');
+      appendField(sb, as.getSecond().getType());
+      appendField(sb, as.getSecond().getContent());
+      for(IAgent a: as.getSecond().getReferencedAgents()){
+        sb.append(a.getId()).append(' ');
+      }
+      stimulations.add(sb.toString());
+    }
+    Collections.sort(stimulations);
+    
+    List<String> actions = new ArrayList<String>(actionSafeguard.size());
+    for(Pair<Integer, EnvironmentAction> aa: actionSafeguard){
+      StringBuilder sb = new StringBuilder();
+      sb.append(aa.getFirst()).append(' ');
+      appendField(sb, aa.getSecond().getType());
+      actions.add(sb.toString());
+    }
+    Collections.sort(actions);
+    
+    List<String> d = new ArrayList<String>(stimulations.size() + actions.size() + 1);
+    d.addAll(stimulations);
+    d.add(null);
+    d.addAll(actions);
+    
+    return d;
+  }
+  
+  /**
+   * Appends a field to a description, preceded by its length, so that it cannot be 
+   * confused with the fields that follow it.
+   */
+  private static void appendField(StringBuilder sb, String field){
+    sb.append(field.length()).append(':').append(field);
+  }
+  
+  @Override
+  public boolean equals(Object obj){
+    if(obj instanceof EMMASTraceInfo){
+      EMMASTraceInfo ti = (EMMASTraceInfo) obj;
+      
+      return stimulationSafeguard.equals(ti.stimulationSafeguard) && actionSafeguard.equals(ti.actionSafeguard);
+    }
+    
+    return false;
+  }
+  
+  @Override
+  public int hashCode(){
+    return stimulationSafeguard.hashCode() + 31 * actionSafeguard.hashCode();
+  }
+  
   public Object clone(){
     return new EMMASTraceInfo((HashSet<Pair<Integer, EnvironmentStimulus>>)stimulationSafeguard.clone(), 
         (HashSet<Pair<Integer, EnvironmentAction>>)actionSafeguard.clone());
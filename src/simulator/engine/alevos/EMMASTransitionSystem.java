@@ -38,6 +38,7 @@ import simulator.agent.IBehavioralAgent.ActionStatus;
 import simulator.agent.IBehavioralAgent.StimulationStatus;
 import simulator.agent.action.EnvironmentAction;
 import simulator.agent.stimuli.EnvironmentStimulus;
+import simulator.ui.LazyMessage;
 import simulator.ui.Messenger;
 import simulator.ui.SimulatorUI;
 import alevos.IllegalSemanticsException;
@@ -87,9 +88,13 @@ public class EMMASTransitionSystem extends DynamicTransitionSystem {
     
   }
   
-  protected void printDebugMsg(Expression exp){
+  protected void printDebugMsg(final Expression exp){
     SimulatorUI.instance().getMessenger().printDebugMsg("Using the following expression as the environment: ", Messenger.NORMAL_MSG);
-    SimulatorUI.instance().getMessenger().printDebugMsg("  " + exp.toString(), Messenger.NORMAL_MSG);
+    SimulatorUI.instance().getMessenger().printDebugMsg(new LazyMessage() {
+      public String build() {
+        return "  " + exp.toString();
+      }
+    }, Messenger.NORMAL_MSG);
   }
   
   @Override
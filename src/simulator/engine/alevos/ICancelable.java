@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import simulator.engine.runner.CancellationToken;
+
+/**
+ * An optional interface for simulator connectors whose requests may be 
+ * canceled. Once the token given is canceled, requests that advance or 
+ * restore the simulation fail with a <code>SearchCanceledException</code>, 
+ * which stops whatever search is using the connector.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public interface ICancelable {
+  
+  /**
+   * 
+   * @return The token checked by this connector, or <code>null</code> if 
+   *         there is none.
+   */
+  public CancellationToken getCancellationToken();
+  
+  /**
+   * 
+   * @param token The token to be checked by this connector, or <code>null</code>
+   *              if requests are never to be canceled.
+   */
+  public void setCancellationToken(CancellationToken token);
+
+}
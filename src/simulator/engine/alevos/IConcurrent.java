@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+/**
+ * An optional interface for the ALEVOS algorithms that may run at the same 
+ * time as others (e.g., in strategies executed concurrently), even if they 
+ * share transition systems. 
+ * 
+ * ALEVOS itself is not thread-safe: fresh names, for instance, are taken from 
+ * an unsynchronized global counter, and an ATS can only be bound to one 
+ * simulator connector at a time. Thus, such algorithms must hold 
+ * <code>ALEVOS_LOCK</code> whenever they call into ALEVOS (binding the ATS to 
+ * their own connector before calculating its successors), while the 
+ * simulations themselves may proceed in parallel. Algorithms that do not 
+ * implement this interface must be executed while holding the lock.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public interface IConcurrent {
+  
+  /**
+   * Serializes the calls into ALEVOS.
+   */
+  public static final Object ALEVOS_LOCK = new Object();
+
+}
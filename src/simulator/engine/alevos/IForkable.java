@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import simulator.util.RandomStream;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+
+/**
+ * An optional interface for simulator connectors that can create independent 
+ * copies of themselves, each controlling a simulator of its own, so that 
+ * different parts of a search may be simulated at the same time. The states 
+ * given by one copy (see <code>SimulatorConnector.currentState()</code>) can 
+ * be restored by any other.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public interface IForkable {
+
+  /**
+   * Creates a new connector, ready to be used, whose simulator starts from the 
+   * same initial state as this one's.
+   * 
+   * @param random The stream from which the randomness of the new simulator is 
+   *               to be taken.
+   * 
+   * @return The new connector.
+   * 
+   * @throws InvalidSimulatorRequest If the new simulator cannot be setup.
+   */
+  public SimulatorConnector fork(RandomStream random) throws InvalidSimulatorRequest;
+  
+  /**
+   * Releases the resources of this connector's simulator (e.g., the files of its 
+   * trace). The connector cannot be used afterwards, so this is meant for the 
+   * ones given by <code>fork()</code>, once their part of the search is over.
+   */
+  public void close();
+
+}
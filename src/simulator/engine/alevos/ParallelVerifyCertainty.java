@@ -0,0 +1,643 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simulator.engine.SimulationStateSpace;
+import simulator.util.Assert;
+import simulator.util.RandomStream;
+import alevos.IllegalSemanticsException;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.Event;
+import alevos.ts.IOEvent;
+import alevos.ts.State;
+import alevos.ts.sp.FailureState;
+import alevos.ts.sp.SimulationPurpose;
+import alevos.ts.sp.SuccessState;
+import alevos.util.Pair;
+import alevos.verification.SynchState;
+import alevos.verification.TraceInfo;
+import alevos.verification.VerifyCertainty;
+
+/**
+ * Verifies certainty just as <code>PruningVerifyCertainty</code> does, but 
+ * distributes the synchronizations still to be expanded among several workers.
+ * 
+ * Each worker has a simulator of its own, obtained by forking the connector 
+ * given (see <code>IForkable</code>), and a deque of synchronizations. A 
+ * worker expands the synchronizations it finds itself, most recent first, so 
+ * that it proceeds depth-first; when it runs out of them, it steals the oldest 
+ * ones of another worker, which tend to be the roots of the largest subtrees. 
+ * Since certainty requires every branch to be explored, the order in which this 
+ * happens does not change the verdict.
+ * 
+ * The first failure found (or the exhaustion of the allowed synchronizations)
+ * stops every worker, and its trace is the one reported. Otherwise, the search 
+ * succeeds, unless some worker reached the depth limit, in which case it is 
+ * inconclusive. Configurations visited are shared by all workers, if a 
+ * <code>SimulationStateSpace</code> is given.
+ * 
+ * Calls into ALEVOS are serialized (see <code>IConcurrent</code>), 
+ * so the speedup comes from the simulations, which usually dominate the search.
+ * If the connector cannot be forked, a single worker is used.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class ParallelVerifyCertainty extends VerifyCertainty implements IRandomized, IConcurrent {
+  
+  /**
+   * Where configurations visited are remembered, or <code>null</code> if no 
+   * pruning is to take place.
+   */
+  private SimulationStateSpace stateSpace;
+  
+  /**
+   * How many workers are to be used.
+   */
+  private int workers;
+  
+  /**
+   * Where the randomness of each worker is split from.
+   */
+  private Random random = new RandomStream(0);
+  
+  //
+  // State of the current search
+  //
+  
+  private SimulationPurpose sp;
+  
+  private AnnotatedTransitionSystem ats;
+  
+  private List<Worker> team;
+  
+  /**
+   * Synchronizations that have been found but not yet completely expanded.
+   * When it reaches zero, there is nothing left to explore.
+   */
+  private final AtomicInteger pending = new AtomicInteger();
+  
+  private final AtomicInteger synchs = new AtomicInteger();
+  
+  private final AtomicLong steals = new AtomicLong();
+  
+  /**
+   * The outcome that ended the search, if any.
+   */
+  private final AtomicReference<Outcome> decisive = new AtomicReference<Outcome>();
+  
+  private volatile boolean depthLimitReached;
+  
+  private volatile boolean aborted;
+  
+  /**
+   * Idle workers wait on this monitor until they are signaled (see <code>signal()</code>).
+   */
+  private final Object work = new Object();
+  
+  /**
+   * How many signals have been given, so that idle workers can tell whether 
+   * they missed one before starting to wait. Guarded by <code>work</code>.
+   */
+  private long signals = 0;
+  
+
+  /**
+   * 
+   * @param maxDepth The maximum depth of the search.
+   * @param randomize Whether transitions should be considered in random order.
+   * @param maxSynchSteps The maximum number of synchronizations allowed, or 
+   *                      <code>null</code> if there is no limit.
+   * @param stateSpace Where configurations visited are to be remembered, or 
+   *                   <code>null</code> if they are not to be pruned.
+   * @param workers How many workers are to be used.
+   */
+  public ParallelVerifyCertainty(int maxDepth, boolean randomize, Integer maxSynchSteps, SimulationStateSpace stateSpace, int workers) {
+    super(maxDepth, randomize, maxSynchSteps);
+    Assert.nonNegativeNonZero(workers);
+    
+    this.stateSpace = stateSpace;
+    this.workers = workers;
+  }
+
+  @Override
+  public Verdict verify(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    // ATS transitions are shuffled here, from the generator of each worker, 
+    // rather than by ALEVOS, which relies on a global one
+    ATSShuffling.suspend();
+    
+    try{
+      return search(sp, ats, sc);
+    }
+    finally{
+      ATSShuffling.resume();
+      
+      this.sp = null;
+      this.ats = null;
+      this.team = null;
+    }
+  }
+  
+  private Verdict search(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    this.sp = sp;
+    this.ats = ats;
+    pending.set(0);
+    synchs.set(0);
+    steals.set(0);
+    decisive.set(null);
+    depthLimitReached = false;
+    aborted = false;
+    
+    synchronized(ALEVOS_LOCK){
+      ats.setSimulatorConnector(sc);
+      preprocess(sp, SuccessState.instance());
+    }
+    
+    if(stateSpace != null){
+      stateSpace.clear();
+    }
+    
+    // The connector given is used by the first worker, the others get forks of it
+    team = new ArrayList<Worker>(workers);
+    team.add(new Worker(sc, Configurations.split(random, 0)));
+    if(sc instanceof IForkable){
+      for(int i = 1; i < workers; i++){
+        RandomStream r = Configurations.split(random, i);
+        team.add(new Worker(((IForkable) sc).fork(r.split("runs")), r));
+      }
+    }
+    else if(workers > 1){
+      sc.printMsg("WARNING: The simulator connector cannot be forked, so a single worker will be used.", 3);
+    }
+    
+    // The initial synchronization is given to the first worker
+    Object initialSimState = sc.currentState();
+    List<Pair<Event, State>> unexplored;
+    synchronized(ALEVOS_LOCK){
+      unexplored = new LinkedList<Pair<Event, State>>(sp.succ(sp.getInitialState()));
+    }
+    SynchState root = new SynchState(sp.getInitialState(), ats.getInitialState(), null, null, null, initialSimState, ats.getInitialTraceInfo(), unexplored, 0);
+    visit(initialSimState, ats.getInitialState(), sp.getInitialState(), ats.getInitialTraceInfo(), 0);
+    pending.incrementAndGet();
+    team.get(0).deque.addLast(new Node(root, null));
+    
+    // Work
+    ExecutorService pool = Executors.newFixedThreadPool(team.size(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "certainty-worker");
+        
+        // Must not prevent the simulator from exiting
+        t.setDaemon(true);
+        
+        return t;
+      }
+    });
+    
+    List<Future<Object>> results = null;
+    try{
+      results = pool.invokeAll(team);
+      for(Future<Object> f: results){
+        f.get();
+      }
+    }
+    catch (ExecutionException e) {
+      if(e.getCause() instanceof IllegalSemanticsException){
+        throw (IllegalSemanticsException) e.getCause();
+      }
+      else if(e.getCause() instanceof InvalidSimulatorRequest){
+        throw (InvalidSimulatorRequest) e.getCause();
+      }
+      else if(e.getCause() instanceof RuntimeException){
+        throw (RuntimeException) e.getCause();
+      }
+      else if(e.getCause() instanceof Error){
+        throw (Error) e.getCause();
+      }
+      
+      throw new InvalidSimulatorRequest("A worker of the search failed.", e.getCause());
+    }
+    catch (InterruptedException e) {
+      abort();
+      Thread.currentThread().interrupt();
+      throw new InvalidSimulatorRequest("Interrupted while waiting for the workers of the search.", e);
+    }
+    finally{
+      pool.shutdownNow();
+      
+      // Forks are released only once no worker uses them anymore
+      if(results != null && sc instanceof IForkable){
+        for(int i = 1; i < team.size(); i++){
+          ((IForkable) team.get(i).sc).close();
+        }
+      }
+    }
+    
+    // Combine the results of the workers
+    Verdict verdict = Verdict.SUCCESS;
+    Outcome outcome = decisive.get();
+    if(outcome != null){
+      buildTrace(outcome.path, outcome.spState, outcome.depth);
+      verdict = outcome.verdict;
+    }
+    else if(depthLimitReached){
+      verdict = Verdict.INCONCLUSIVE;
+    }
+    
+    printStatistics(sc);
+    return verdict;
+  }
+  
+  /**
+   * Expands all the SP transitions of the specified synchronization, just as
+   * <code>PruningVerifyCertainty</code> does when it finds it at the top of its
+   * stack. New synchronizations are given to the worker.
+   */
+  private void expand(Node node, Worker w) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    SynchState ss = node.state;
+    State spState = ss.getStateSP();
+    State atsState = ss.getStateATS();
+    Object simState = ss.getSimulationState();
+    TraceInfo ti = ss.getTraceInfo();
+    List<Pair<Event, State>> unexplored = ss.getUnexplored();
+    int depth = ss.getDepth();
+    SimulatorConnector sc = w.sc;
+    
+    boolean synched = false;
+    
+    while(!unexplored.isEmpty() && depth < maxDepth){
+      
+      if(isOver()){
+        return;
+      }
+      
+      // ATS successors are calculated in the context of the simulation state they depart from
+      sc.goToState(simState);
+      
+      Pair<Event, State> spTransition;
+      List<Pair<Event, State>> atsTransitions;
+      synchronized(ALEVOS_LOCK){
+        spTransition = removeBest(spState, unexplored, w.random);
+        ats.setSimulatorConnector(sc);
+        atsTransitions = new ArrayList<Pair<Event, State>>(ats.succ(atsState, ti));
+      }
+      IOEvent spEvent = (IOEvent) spTransition.getFirst();
+      State spNext = spTransition.getSecond();
+      int nextDepth = depth + 1;
+      
+      ATSExpansion expansion = new ATSExpansion(ats, atsTransitions, simState, ti, sc, randomize ? w.random : null);
+      while(expansion.next()){
+        IOEvent atsEvent = expansion.getEvent();
+        State atsNext = expansion.getNext();
+        TraceInfo nextTi = expansion.getNextTraceInfo();
+        
+        boolean canSynch;
+        synchronized(ALEVOS_LOCK){
+          canSynch = canSynch(sp, spState, spEvent, spNext, atsState, atsEvent, atsNext, sc);
+        }
+        
+        if(canSynch){
+          expansion.printSynch(depth, "SP", spState, spEvent, spNext);
+          
+          Object nextSimState = sc.currentState();
+          synched = true;
+          
+          // Have we been here before? Failures are never pruned, since they end the search.
+          if(!spNext.equals(FailureState.instance()) && !visit(nextSimState, atsNext, spNext, nextTi, nextDepth)){
+            continue;
+          }
+          
+          List<Pair<Event, State>> nextUnexplored;
+          synchronized(ALEVOS_LOCK){
+            nextUnexplored = new LinkedList<Pair<Event, State>>(sp.succ(spNext));
+          }
+          Node child = new Node(new SynchState(spNext, atsNext, spEvent, atsEvent, spState, nextSimState, nextTi, nextUnexplored, nextDepth), node);
+          
+          if(spNext.equals(FailureState.instance())){
+            decide(new Outcome(Verdict.FAILURE, child, spNext, nextDepth));
+            return;
+          }
+          
+          int n = synchs.incrementAndGet();
+          
+          if(maxSynchSteps != null && n >= maxSynchSteps){
+            decide(new Outcome(Verdict.INCONCLUSIVE, node, spState, depth));
+            return;
+          }
+          
+          pending.incrementAndGet();
+          w.deque.addLast(child);
+          signal();
+        }
+      }
+      
+      // The SP must be matched by the simulation
+      if(!synched){
+        decide(new Outcome(Verdict.FAILURE, node, spState, depth));
+        return;
+      }
+    }
+    
+    if(depth >= maxDepth){
+      depthLimitReached = true;
+      sc.printMsg("WARNING: Search depth limit (" + maxDepth + ") has been reached.", 3);
+    }
+  }
+  
+  /**
+   * Records a visit to the specified configuration.
+   * 
+   * @return <code>true</code> if it must be explored; <code>false</code> if it 
+   *         has already been visited.
+   */
+  private boolean visit(Object simState, State atsState, State spState, TraceInfo ti, int depth) throws InvalidSimulatorRequest{
+    if(stateSpace == null){
+      return true;
+    }
+    
+    // Fingerprints are calculated in parallel (except for the expression of the 
+    // ATS state), only the store is shared
+    SimulationStateSpace.Fingerprint f = Configurations.fingerprint(stateSpace, simState, atsState, spState, ti);
+    synchronized(stateSpace){
+      return stateSpace.visit(f, depth);
+    }
+  }
+  
+  /**
+   * Makes the specified outcome the one that ends the search, unless another 
+   * has already done so. A failure, however, takes precedence over an 
+   * inconclusive outcome.
+   */
+  private void decide(Outcome outcome){
+    while(true){
+      Outcome current = decisive.get();
+      if(current != null && (current.verdict == Verdict.FAILURE || outcome.verdict != Verdict.FAILURE)){
+        return;
+      }
+      if(decisive.compareAndSet(current, outcome)){
+        signal();
+        return;
+      }
+    }
+  }
+  
+  private boolean isOver(){
+    return aborted || decisive.get() != null;
+  }
+  
+  private void abort(){
+    aborted = true;
+    signal();
+  }
+  
+  /**
+   * Wakes the idle workers up, since there might be work for them, or the 
+   * search might be over.
+   */
+  private void signal(){
+    synchronized(work){
+      signals++;
+      work.notifyAll();
+    }
+  }
+  
+  private Pair<Event, State> removeBest(State spState, List<Pair<Event, State>> transitions, Random random){
+    if(randomize){
+      Collections.shuffle(transitions, random);
+      return Configurations.removeClosest(transitions);
+    }
+    
+    return super.removeBest(spState, transitions);
+  }
+  
+  public void setRandom(Random random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+  
+  private void printStatistics(SimulatorConnector sc){
+    sc.printMsg("Workers: " + team.size() + ", " + steals.get() + " synch's stolen", 2);
+    if(stateSpace != null){
+      sc.printMsg("State space: " + stateSpace, 2);
+    }
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * A synchronization, together with the one from which it was found, so that
+   * the trace that leads to it can be rebuilt.
+   */
+  private static final class Node {
+    
+    private final SynchState state;
+    
+    private final Node parent;
+    
+    Node(SynchState state, Node parent){
+      this.state = state;
+      this.parent = parent;
+    }
+    
+    /**
+     * 
+     * @return The synchronizations from the initial one to this one, the latter at the top.
+     */
+    Stack<SynchState> path(){
+      LinkedList<SynchState> path = new LinkedList<SynchState>();
+      for(Node n = this; n != null; n = n.parent){
+        path.addFirst(n.state);
+      }
+      
+      Stack<SynchState> stack = new Stack<SynchState>();
+      stack.addAll(path);
+      return stack;
+    }
+  }
+  
+  /**
+   * How (and where) the search ended.
+   */
+  private static final class Outcome {
+    
+    private final Verdict verdict;
+    
+    private final Stack<SynchState> path;
+    
+    private final State spState;
+    
+    private final int depth;
+    
+    Outcome(Verdict verdict, Node node, State spState, int depth){
+      this.verdict = verdict;
+      this.path = node.path();
+      this.spState = spState;
+      this.depth = depth;
+    }
+  }
+  
+  /**
+   * Expands synchronizations until there are none left, or the search is over.
+   */
+  private final class Worker implements Callable<Object> {
+    
+    private final SimulatorConnector sc;
+    
+    private final Random random;
+    
+    /**
+     * The synchronizations to be expanded. The worker takes them from the end, 
+     * thieves from the beginning.
+     */
+    private final LinkedBlockingDeque<Node> deque = new LinkedBlockingDeque<Node>();
+    
+    Worker(SimulatorConnector sc, Random random){
+      this.sc = sc;
+      this.random = random;
+    }
+    
+    public Object call() throws IllegalSemanticsException, InvalidSimulatorRequest {
+      try{
+        Node node;
+        while((node = next()) != null){
+          try{
+            expand(node, this);
+          }
+          finally{
+            if(pending.decrementAndGet() == 0){
+              signal();
+            }
+          }
+        }
+      }
+      catch (IllegalSemanticsException e) {
+        abort();
+        throw e;
+      }
+      catch (InvalidSimulatorRequest e) {
+        abort();
+        throw e;
+      }
+      catch (RuntimeException e) {
+        abort();
+        throw e;
+      }
+      
+      return null;
+    }
+    
+    /**
+     * 
+     * @return The next synchronization to be expanded, or <code>null</code> if 
+     *         the search is over.
+     */
+    private Node next(){
+      while(!isOver()){
+        long seen;
+        synchronized(work){
+          seen = signals;
+        }
+        
+        Node node = deque.pollLast();
+        if(node == null){
+          node = steal();
+        }
+        if(node != null){
+          return node;
+        }
+        
+        // Someone is still expanding, which might give us more work, so we wait 
+        // until something changes (unless it already has)
+        synchronized(work){
+          while(signals == seen && !isOver() && pending.get() > 0){
+            try {
+              work.wait();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              return null;
+            }
+          }
+        }
+        
+        // Nothing left anywhere, not even being expanded
+        if(pending.get() == 0){
+          return null;
+        }
+      }
+      
+      return null;
+    }
+    
+    private Node steal(){
+      // Victims are tried starting from a random one, so that thieves spread out
+      int start = random.nextInt(team.size());
+      for(int i = 0; i < team.size(); i++){
+        Worker victim = team.get((start + i) % team.size());
+        if(victim != this){
+          Node node = victim.deque.pollFirst();
+          if(node != null){
+            steals.incrementAndGet();
+            return node;
+          }
+        }
+      }
+      
+      return null;
+    }
+  }
+  
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.runner.CancellationToken;
+import simulator.util.Assert;
+import simulator.util.RandomStream;
+import alevos.IllegalSemanticsException;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.sp.SimulationPurpose;
+import alevos.verification.SynchState;
+import alevos.verification.VerifyFeasibility;
+import alevos.verification.VerifyFeasibility.Variant;
+
+/**
+ * Verifies feasibility by racing several <code>PruningVerifyFeasibility</code> 
+ * searches against each other. Since a single trace suffices, a search that 
+ * is lucky in the order in which it considers transitions may succeed long 
+ * before the others, so each search takes its choices from a different random 
+ * stream. The first one is randomized only if requested, so that it performs 
+ * the same search as a single <code>PruningVerifyFeasibility</code> would, 
+ * while the others always are.
+ * 
+ * Each search has a simulator of its own, obtained by forking the connector 
+ * given (see <code>IForkable</code>), and a state space of its own, since a 
+ * configuration visited by one search is not necessarily explored to the end 
+ * by it. The first search to succeed, or to fail (which, being exhaustive, 
+ * settles the matter as well), cancels the others through a shared 
+ * <code>CancellationToken</code> (see <code>ICancelable</code>). If none does, 
+ * the search is inconclusive.
+ * 
+ * If the connector cannot be forked, only the first search is performed.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class PortfolioVerifyFeasibility extends VerifyFeasibility implements IRandomized, IConcurrent {
+  
+  /**
+   * The searches raced.
+   */
+  private List<PruningVerifyFeasibility> members;
+  
+  /**
+   * Where the randomness of each search is split from.
+   */
+  private Random random = new RandomStream(0);
+  
+  
+  /**
+   * 
+   * @param maxDepth The maximum depth of each search.
+   * @param randomize Whether the first search should consider transitions in random order.
+   * @param maxSynchSteps The maximum number of synchronizations allowed to each search, 
+   *                      or <code>null</code> if there is no limit.
+   * @param variant The variant of feasibility to be verified.
+   * @param stateSpaces The state spaces of the searches, one per search to be
+   *                    raced. An entry may be <code>null</code>, in which case 
+   *                    the corresponding search does not prune configurations.
+   */
+  public PortfolioVerifyFeasibility(int maxDepth, boolean randomize, Integer maxSynchSteps, Variant variant, List<SimulationStateSpace> stateSpaces) {
+    super(maxDepth, randomize, maxSynchSteps, variant);
+    Assert.notNull(stateSpaces);
+    Assert.nonNegativeNonZero(stateSpaces.size());
+    
+    members = new ArrayList<PruningVerifyFeasibility>(stateSpaces.size());
+    for(SimulationStateSpace stateSpace: stateSpaces){
+      members.add(new PruningVerifyFeasibility(maxDepth, members.isEmpty() ? randomize : true, maxSynchSteps, variant, stateSpace));
+    }
+  }
+  
+  @Override
+  public Verdict verify(final SimulationPurpose sp, final AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    // Configure the searches
+    for(int i = 0; i < members.size(); i++){
+      members.get(i).setRandom(Configurations.split(random, i));
+    }
+    
+    // Each search gets its own simulator, which is canceled along with the others
+    CancellationToken parent = null;
+    if(sc instanceof ICancelable){
+      parent = ((ICancelable) sc).getCancellationToken();
+    }
+    final CancellationToken token = new CancellationToken(parent);
+    
+    final List<SimulatorConnector> connectors = new ArrayList<SimulatorConnector>(members.size());
+    if(sc instanceof IForkable && sc instanceof ICancelable){
+      for(int i = 0; i < members.size(); i++){
+        SimulatorConnector fork = ((IForkable) sc).fork(Configurations.split(random, i).split("runs"));
+        ((ICancelable) fork).setCancellationToken(token);
+        connectors.add(fork);
+      }
+    }
+    else{
+      if(members.size() > 1){
+        sc.printMsg("WARNING: The simulator connector cannot be forked, so a single search will be performed.", 3);
+      }
+      connectors.add(sc);
+    }
+    
+    // Race
+    final AtomicReference<PruningVerifyFeasibility> winner = new AtomicReference<PruningVerifyFeasibility>();
+    List<Callable<Verdict>> tasks = new ArrayList<Callable<Verdict>>(connectors.size());
+    for(int i = 0; i < connectors.size(); i++){
+      final PruningVerifyFeasibility member = members.get(i);
+      final SimulatorConnector connector = connectors.get(i);
+      
+      tasks.add(new Callable<Verdict>() {
+        public Verdict call() throws IllegalSemanticsException, InvalidSimulatorRequest {
+          try{
+            Verdict verdict = member.search(sp, ats, connector);
+            if(verdict != Verdict.INCONCLUSIVE && winner.compareAndSet(null, member)){
+              token.cancel();
+            }
+            return verdict;
+          }
+          catch (SearchCanceledException e) {
+            // Someone else settled the matter (or we all have been canceled)
+            return Verdict.INCONCLUSIVE;
+          }
+          catch (IllegalSemanticsException e) {
+            token.cancel();
+            throw e;
+          }
+          catch (InvalidSimulatorRequest e) {
+            token.cancel();
+            throw e;
+          }
+          catch (RuntimeException e) {
+            token.cancel();
+            throw e;
+          }
+        }
+      });
+    }
+    
+    ExecutorService pool = Executors.newFixedThreadPool(tasks.size(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "feasibility-search");
+        
+        // Must not prevent the simulator from exiting
+        t.setDaemon(true);
+        
+        return t;
+      }
+    });
+    
+    // ATS transitions are shuffled by each search, from its own generator, 
+    // rather than by ALEVOS, which relies on a global one
+    ATSShuffling.suspend();
+    
+    List<Verdict> verdicts = new ArrayList<Verdict>(tasks.size());
+    List<Future<Verdict>> results = null;
+    try{
+      results = pool.invokeAll(tasks);
+      for(Future<Verdict> f: results){
+        verdicts.add(f.get());
+      }
+    }
+    catch (ExecutionException e) {
+      if(e.getCause() instanceof IllegalSemanticsException){
+        throw (IllegalSemanticsException) e.getCause();
+      }
+      else if(e.getCause() instanceof InvalidSimulatorRequest){
+        throw (InvalidSimulatorRequest) e.getCause();
+      }
+      else if(e.getCause() instanceof RuntimeException){
+        throw (RuntimeException) e.getCause();
+      }
+      else if(e.getCause() instanceof Error){
+        throw (Error) e.getCause();
+      }
+      
+      throw new InvalidSimulatorRequest("A search failed.", e.getCause());
+    }
+    catch (InterruptedException e) {
+      token.cancel();
+      Thread.currentThread().interrupt();
+      throw new InvalidSimulatorRequest("Interrupted while waiting for the searches.", e);
+    }
+    finally{
+      pool.shutdownNow();
+      ATSShuffling.resume();
+      
+      // Forks are released only once no search uses them anymore
+      if(results != null && connectors.get(0) != sc){
+        for(SimulatorConnector fork: connectors){
+          ((IForkable) fork).close();
+        }
+      }
+    }
+    
+    // Combine the results of the searches
+    PruningVerifyFeasibility result = winner.get();
+    if(result == null){
+      if(parent != null && parent.isCanceled()){
+        throw new SearchCanceledException();
+      }
+      
+      // Inconclusive, as given by the first search
+      result = members.get(0);
+    }
+    
+    trace = new LinkedList<SynchState>(result.traceFound());
+    
+    sc.printMsg("Searches raced: " + connectors.size() + ", decided by search " + members.indexOf(result), 2);
+    
+    return verdicts.get(members.indexOf(result));
+  }
+  
+  public void setRandom(Random random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+
+}
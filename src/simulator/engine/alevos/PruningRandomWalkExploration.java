@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import simulator.engine.SimulationStateSpace;
+import simulator.ui.Messenger;
+import simulator.ui.SimulatorUI;
+import simulator.util.Assert;
+import simulator.util.RandomStream;
+import alevos.IllegalSemanticsException;
+import alevos.exploration.RandomWalkExploration;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.Event;
+import alevos.ts.State;
+import alevos.util.Pair;
+import alevos.verification.TraceInfo;
+
+/**
+ * The same random walks performed by <code>RandomWalkExploration</code>, but 
+ * which avoid the configurations already visited (in the current walk or in 
+ * previous ones). At each step, the transitions of the ATS are tried in random 
+ * order until one leads somewhere new. If none does, the walk ends early, since 
+ * it could only repeat what has already been seen.
+ * 
+ * Calls into ALEVOS hold <code>ALEVOS_LOCK</code> (see <code>IConcurrent</code>).
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class PruningRandomWalkExploration extends RandomWalkExploration implements IRandomized, IConcurrent {
+
+  private SimulationStateSpace stateSpace;
+  
+  /**
+   * Where the transitions to try are chosen from.
+   */
+  private Random random = new RandomStream(0);
+  
+  
+  public PruningRandomWalkExploration(int runs, int iterationsPerRun, SimulationStateSpace stateSpace) {
+    super(runs, iterationsPerRun);
+    Assert.notNull(stateSpace);
+    
+    this.stateSpace = stateSpace;
+  }
+  
+  @Override
+  public void explore(AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    stateSpace.clear();
+    
+    // Transitions are chosen from this algorithm's generator, so ALEVOS must not 
+    // shuffle them from its global one
+    ATSShuffling.suspend();
+    
+    try{
+      super.explore(ats, sc);
+    }
+    finally{
+      ATSShuffling.resume();
+    }
+    
+    sc.printMsg("State space: " + stateSpace, 2);
+  }
+  
+  @Override
+  public void exploreTrace(AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    State atsState;
+    TraceInfo ti;
+    synchronized(ALEVOS_LOCK){
+      ats.setSimulatorConnector(sc);
+      atsState = ats.getInitialState();
+      ti = (TraceInfo) ats.getInitialTraceInfo().clone();
+    }
+    
+    sc.printMsg("Trace begin.\n\n", 3);
+    
+    stateSpace.visit(Configurations.fingerprint(stateSpace, sc.currentState(), atsState, null, ti), 0);
+    
+    for(int depth = 1; depth <= iterationsPerRun; depth++){
+      
+      List<Pair<Event, State>> transitions;
+      synchronized(ALEVOS_LOCK){
+        ats.setSimulatorConnector(sc);
+        transitions = new ArrayList<Pair<Event, State>>(ats.succ(atsState, ti));
+      }
+      if(transitions.isEmpty()){
+        break;
+      }
+      
+      Object simState = sc.currentState();
+      boolean moved = false;
+      boolean firstAttempt = true;
+      
+      while(!transitions.isEmpty() && !moved){
+        Pair<Event, State> t = transitions.remove(random.nextInt(transitions.size()));
+        
+        if(!firstAttempt){
+          sc.goToState(simState);
+        }
+        firstAttempt = false;
+        
+        sc.scheduleStep(t.getFirst());
+        TraceInfo nextTi;
+        synchronized(ALEVOS_LOCK){
+          nextTi = (TraceInfo) ti.clone();
+          ats.eventScheduled(t.getFirst(), nextTi);
+        }
+        
+        if(sc.getCommitEvent().equals(t.getFirst())){
+          sc.step();
+        }
+        
+        if(stateSpace.visit(Configurations.fingerprint(stateSpace, sc.currentState(), t.getSecond(), null, nextTi), depth)){
+          if(SimulatorUI.instance().getMessenger().isEnabled(Messenger.IMPORTANT_MSG)){
+            sc.printMsg("  ---" + t.getFirst().toString() + "--->", 3);
+          }
+          
+          atsState = t.getSecond();
+          ti = nextTi;
+          moved = true;
+        }
+        else{
+          if(SimulatorUI.instance().getMessenger().isDebugEnabled(Messenger.UNINPORTANT_MSG)){
+            sc.printDebugMsg("  Configuration already visited, transition " + t.getFirst() + " pruned.", 1);
+          }
+        }
+      }
+      
+      if(!moved){
+        sc.printMsg("  Every transition leads to configurations already visited.", 3);
+        break;
+      }
+    }
+    
+    sc.printMsg("Trace finished.\n\n", 3);
+  }
+  
+  public void setRandom(Random random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+  
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Stack;
+
+import simulator.engine.SimulationStateSpace;
+import simulator.util.Assert;
+import simulator.util.RandomStream;
+import alevos.IllegalSemanticsException;
+import alevos.simulation.InvalidSimulatorRequest;
+import alevos.simulation.SimulatorConnector;
+import alevos.ts.AnnotatedTransitionSystem;
+import alevos.ts.Event;
+import alevos.ts.IOEvent;
+import alevos.ts.State;
+import alevos.ts.sp.FailureState;
+import alevos.ts.sp.SimulationPurpose;
+import alevos.ts.sp.SuccessState;
+import alevos.util.Pair;
+import alevos.verification.SynchState;
+import alevos.verification.TraceInfo;
+import alevos.verification.VerifyFeasibility;
+
+/**
+ * The same depth-first search performed by <code>VerifyFeasibility</code>, but 
+ * which remembers the configurations (i.e., simulation state, ATS state, SP state 
+ * and trace information) already visited in a <code>SimulationStateSpace</code>. 
+ * A synchronization that leads to a configuration already visited is not
+ * explored again, since whatever could be found from it has already been (or 
+ * is being) searched.
+ * 
+ * Calls into ALEVOS hold <code>ALEVOS_LOCK</code> (see <code>IConcurrent</code>), 
+ * so that several of these searches may run at the same time over the same ATS 
+ * (e.g., in a <code>PortfolioVerifyFeasibility</code>), each with its own connector.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class PruningVerifyFeasibility extends VerifyFeasibility implements IRandomized, IConcurrent {
+  
+  private Variant variant;
+  
+  /**
+   * Where configurations visited are remembered, or <code>null</code> if no 
+   * pruning is to take place.
+   */
+  private SimulationStateSpace stateSpace;
+  
+  /**
+   * Where the SP and ATS transitions are shuffled from, if randomization is requested.
+   */
+  private Random random = new RandomStream(0);
+  
+
+  public PruningVerifyFeasibility(int maxDepth, boolean randomize, Integer maxSynchSteps, Variant variant, SimulationStateSpace stateSpace) {
+    super(maxDepth, randomize, maxSynchSteps, variant);
+    
+    this.variant = variant;
+    this.stateSpace = stateSpace;
+  }
+  
+  @Override
+  public Verdict verify(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    // ATS transitions are shuffled here, from this algorithm's generator, rather
+    // than by ALEVOS, which relies on a global one
+    ATSShuffling.suspend();
+    
+    try{
+      return search(sp, ats, sc);
+    }
+    finally{
+      ATSShuffling.resume();
+    }
+  }
+  
+  /**
+   * Performs the search. ALEVOS's own randomization must have been disabled
+   * by the caller (see <code>verify()</code>).
+   */
+  Verdict search(SimulationPurpose sp, AnnotatedTransitionSystem ats, SimulatorConnector sc) throws IllegalSemanticsException, InvalidSimulatorRequest {
+    
+    synchronized(ALEVOS_LOCK){
+      ats.setSimulatorConnector(sc);
+      preprocess(sp, SuccessState.instance());
+      
+      if(variant == Variant.Strong){
+        FailureState.instance().setUtil1(-1);
+      }
+    }
+    
+    if(stateSpace != null){
+      stateSpace.clear();
+    }
+    
+    int synchs = 0;
+    int depth = 0;
+    Stack<SynchState> stack = new Stack<SynchState>();
+    
+    Object initialSimState = sc.currentState();
+    List<Pair<Event, State>> unexplored;
+    synchronized(ALEVOS_LOCK){
+      unexplored = new LinkedList<Pair<Event, State>>(sp.succ(sp.getInitialState()));
+    }
+    stack.push(new SynchState(sp.getInitialState(), ats.getInitialState(), null, null, null, initialSimState, ats.getInitialTraceInfo(), unexplored, depth));
+    visit(initialSimState, ats.getInitialState(), sp.getInitialState(), ats.getInitialTraceInfo(), depth);
+    
+    Verdict verdict = Verdict.FAILURE;
+    
+    while(!stack.empty()){
+      SynchState ss = stack.peek();
+      State spState = ss.getStateSP();
+      State atsState = ss.getStateATS();
+      Object simState = ss.getSimulationState();
+      TraceInfo ti = ss.getTraceInfo();
+      unexplored = ss.getUnexplored();
+      depth = ss.getDepth();
+      
+      boolean pushed = false;
+      
+      while(!unexplored.isEmpty() && !pushed && depth < maxDepth){
+        Pair<Event, State> spTransition;
+        List<Pair<Event, State>> atsTransitions;
+        synchronized(ALEVOS_LOCK){
+          spTransition = removeBest(spState, unexplored);
+          ats.setSimulatorConnector(sc);
+          atsTransitions = new ArrayList<Pair<Event, State>>(ats.succ(atsState, ti));
+        }
+        IOEvent spEvent = (IOEvent) spTransition.getFirst();
+        State spNext = spTransition.getSecond();
+        int nextDepth = depth + 1;
+        
+        ATSExpansion expansion = new ATSExpansion(ats, atsTransitions, simState, ti, sc, randomize ? random : null);
+        while(expansion.next()){
+          IOEvent atsEvent = expansion.getEvent();
+          State atsNext = expansion.getNext();
+          TraceInfo nextTi = expansion.getNextTraceInfo();
+          
+          boolean canSynch;
+          synchronized(ALEVOS_LOCK){
+            canSynch = canSynch(sp, spState, spEvent, spNext, atsState, atsEvent, atsNext, sc);
+          }
+          
+          if(canSynch){
+            expansion.printSynch(depth, "SP", spState, spEvent, spNext);
+            
+            if(spNext.equals(FailureState.instance()) && variant == Variant.Strong){
+              stack.pop();
+              pushed = true;
+              break;
+            }
+            
+            Object nextSimState = sc.currentState();
+            
+            // Have we been here before?
+            if(!visit(nextSimState, atsNext, spNext, nextTi, nextDepth)){
+              continue;
+            }
+            
+            List<Pair<Event, State>> nextUnexplored;
+            synchronized(ALEVOS_LOCK){
+              nextUnexplored = new LinkedList<Pair<Event, State>>(sp.succ(spNext));
+            }
+            stack.push(new SynchState(spNext, atsNext, spEvent, atsEvent, spState, nextSimState, nextTi, nextUnexplored, nextDepth));
+            pushed = true;
+            
+            if(spNext.equals(SuccessState.instance())){
+              buildTrace(stack, spNext, nextDepth);
+              printStatistics(sc);
+              return Verdict.SUCCESS;
+            }
+            
+            synchs++;
+            
+            if(maxSynchSteps != null && synchs >= maxSynchSteps){
+              sc.printMsg("WARNING: The search has been aborted because the maximum number of synchronizations allowed (" + maxSynchSteps + ") has been reached.", 3);
+              buildTrace(stack, spState, depth);
+              printStatistics(sc);
+              return Verdict.INCONCLUSIVE;
+            }
+          }
+        }
+      }
+      
+      if(depth >= maxDepth){
+        verdict = Verdict.INCONCLUSIVE;
+        sc.printMsg("WARNING: Search depth limit (" + maxDepth + ") has been reached.", 3);
+      }
+      
+      if(!pushed){
+        stack.pop();
+      }
+    }
+    
+    printStatistics(sc);
+    return verdict;
+  }
+  
+  /**
+   * Records a visit to the specified configuration.
+   * 
+   * @return <code>true</code> if it must be explored; <code>false</code> if it 
+   *         has already been visited.
+   */
+  private boolean visit(Object simState, State atsState, State spState, TraceInfo ti, int depth) throws InvalidSimulatorRequest{
+    if(stateSpace == null){
+      return true;
+    }
+    
+    return stateSpace.visit(Configurations.fingerprint(stateSpace, simState, atsState, spState, ti), depth);
+  }
+  
+  @Override
+  protected Pair<Event, State> removeBest(State spState, List<Pair<Event, State>> transitions){
+    if(randomize){
+      Collections.shuffle(transitions, random);
+      return Configurations.removeClosest(transitions);
+    }
+    
+    return super.removeBest(spState, transitions);
+  }
+  
+  public void setRandom(Random random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+  
+  private void printStatistics(SimulatorConnector sc){
+    if(stateSpace != null){
+      sc.printMsg("State space: " + stateSpace, 2);
+    }
+  }
+
+}
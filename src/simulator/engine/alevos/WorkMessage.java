@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import alevos.verification.VerificationAlgorithm.Verdict;
+
+/**
+ * What the coordinator of a distributed certainty verification and its 
+ * workers tell each other (see <code>DistributedVerifyCertainty</code>).
+ * 
+ * A worker asks for a unit (<code>REQUEST</code>), telling which experiment
+ * it has loaded, and is given one (<code>UNIT</code>), told that there is 
+ * nothing else to do (<code>STOP</code>) or, if the coordinator is performing 
+ * another experiment, turned away (<code>REJECT</code>). While exploring it, the worker asks whether each 
+ * configuration it finds must be explored (<code>VISIT</code>), which the 
+ * coordinator answers (<code>VISITED</code>) unless the search is over 
+ * (<code>STOP</code>). Finally, the worker reports what it found 
+ * (<code>RESULT</code>) and is answered as if it had asked for another unit.
+ * 
+ * Messages are only read by means of <code>input()</code>, which refuses 
+ * every class that is not part of them, since anyone may connect to a 
+ * coordinator (or pretend to be one).
+ * 
+ * @author Paulo Salem
+ *
+ */
+class WorkMessage implements Serializable {
+  
+  private static final long serialVersionUID = 1L;
+  
+  enum Kind {REQUEST, UNIT, VISIT, VISITED, RESULT, STOP, REJECT};
+  
+  /**
+   * The classes that messages are made of. Arrays of them, or of primitives,
+   * are accepted as well. <code>Object</code> is only there because 
+   * <code>ArrayList</code> checks the array it allocates for its elements.
+   */
+  private static final Set<Class<?>> ACCEPTED = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+      WorkMessage.class, Kind.class, WorkUnit.class, WorkUnit.Step.class, Verdict.class, 
+      Enum.class, ArrayList.class, Object.class, String.class, Number.class, Integer.class, Long.class, Boolean.class));
+  
+  /**
+   * How deep the graph of objects of a message may be.
+   */
+  private static final long MAX_DEPTH = 16;
+  
+  Kind kind;
+  
+  /**
+   * The experiment loaded by the worker (<code>REQUEST</code>) or performed 
+   * by the coordinator (<code>REJECT</code>), as given by 
+   * <code>Simulator.getExperimentIdentity()</code>.
+   */
+  String identity;
+  
+  /**
+   * The unit to be explored (<code>UNIT</code>).
+   */
+  WorkUnit unit;
+  
+  /**
+   * The fingerprint of the configuration found, and its depth (<code>VISIT</code>).
+   */
+  long high;
+  
+  long low;
+  
+  int depth;
+  
+  /**
+   * Whether the configuration must be explored (<code>VISITED</code>).
+   */
+  boolean explore;
+  
+  /**
+   * How many synchronizations have been found by the whole search (<code>VISITED</code>).
+   */
+  int synchs;
+  
+  /**
+   * How the exploration of the unit ended (<code>RESULT</code>). Failures and 
+   * inconclusive outcomes are accompanied by the synchronizations that lead 
+   * to where they happened, from the initial one (exclusive).
+   */
+  Verdict verdict;
+  
+  ArrayList<WorkUnit.Step> path;
+  
+  boolean depthLimitReached;
+  
+  
+  WorkMessage(Kind kind){
+    this.kind = kind;
+  }
+  
+  @Override
+  public String toString(){
+    return kind.toString();
+  }
+  
+  /**
+   * 
+   * @param in Where messages are to be read from.
+   * 
+   * @return A stream that reads the messages, refusing anything else.
+   * 
+   * @throws IOException If the stream cannot be read.
+   */
+  static ObjectInputStream input(InputStream in) throws IOException {
+    ObjectInputStream ois = new ObjectInputStream(in);
+    ois.setObjectInputFilter(new Filter());
+    
+    return ois;
+  }
+  
+  /**
+   * 
+   * @param in A stream given by <code>input()</code>.
+   * 
+   * @return The next message.
+   * 
+   * @throws IOException If the stream cannot be read, or does not contain a message.
+   * @throws ClassNotFoundException If the message refers to an unknown class.
+   */
+  static WorkMessage read(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    Object o = in.readObject();
+    if(!(o instanceof WorkMessage)){
+      throw new IOException("Not a message: " + (o == null ? null : o.getClass().getName()));
+    }
+    
+    return (WorkMessage) o;
+  }
+  
+  /**
+   * Accepts only the classes messages are made of.
+   */
+  private static final class Filter implements ObjectInputFilter {
+    
+    public Status checkInput(FilterInfo info) {
+      if(info.depth() > MAX_DEPTH){
+        return Status.REJECTED;
+      }
+      
+      Class<?> c = info.serialClass();
+      if(c == null){
+        return Status.UNDECIDED;
+      }
+      
+      while(c.isArray()){
+        c = c.getComponentType();
+      }
+      
+      if(c.isPrimitive() || ACCEPTED.contains(c)){
+        return Status.ALLOWED;
+      }
+      
+      return Status.REJECTED;
+    }
+  }
+}
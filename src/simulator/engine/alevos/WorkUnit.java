@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.alevos;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A part of a certainty verification that is given to a worker in another 
+ * process (see <code>DistributedVerifyCertainty</code>): the subtree rooted at 
+ * a synchronization found by the coordinator.
+ * 
+ * ALEVOS states cannot be serialized, so the synchronization is described by
+ * the synchronizations that lead to it from the initial one. Each of them 
+ * carries the encoded simulation state it reached, so that the worker can 
+ * rebuild the ATS states (whose successors depend on the simulation) and the 
+ * trace information without having to simulate anything.
+ * 
+ * @author Paulo Salem
+ *
+ */
+class WorkUnit implements Serializable {
+  
+  private static final long serialVersionUID = 1L;
+  
+  /**
+   * The position of the simulation purpose among those verified by the experiment.
+   */
+  int purpose;
+  
+  int maxDepth;
+  
+  boolean randomize;
+  
+  Integer maxSynchSteps;
+  
+  /**
+   * The name of the codec that encoded the simulation states (see <code>SnapshotCodec</code>).
+   */
+  String codec;
+  
+  /**
+   * Where the worker's randomness for this unit is to be taken from.
+   */
+  long seed;
+  
+  /**
+   * The encoded initial simulation state.
+   */
+  byte[] initialState;
+  
+  /**
+   * The synchronizations from the initial one (exclusive) to the root of the unit. 
+   */
+  ArrayList<Step> path = new ArrayList<Step>();
+  
+  /**
+   * The fingerprints of the configurations claimed by workers lost while 
+   * exploring the unit, which must be explored again even though they have 
+   * been visited. Only known to the coordinator.
+   */
+  transient Set<Claim> orphans = new HashSet<Claim>();
+  
+  
+  /**
+   * A synchronization, as described to (or by) another process.
+   */
+  static class Step implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    String spEvent;
+    
+    String spState;
+    
+    String atsEvent;
+    
+    /**
+     * The portable form of the expression of the ATS state (see 
+     * <code>Configurations.portable()</code>).
+     */
+    String atsState;
+    
+    /**
+     * The encoded simulation state reached.
+     */
+    byte[] simulationState;
+    
+    @Override
+    public String toString(){
+      return "(" + spEvent + ", " + atsEvent + ") -> " + spState;
+    }
+  }
+  
+  /**
+   * The whole fingerprint of a configuration, as told by a worker, so that
+   * configurations whose fingerprints share a half are not mistaken for 
+   * one another.
+   */
+  static final class Claim {
+    
+    private final long high;
+    
+    private final long low;
+    
+    Claim(long high, long low){
+      this.high = high;
+      this.low = low;
+    }
+    
+    @Override
+    public boolean equals(Object o){
+      if(!(o instanceof Claim)){
+        return false;
+      }
+      
+      Claim c = (Claim) o;
+      
+      return high == c.high && low == c.low;
+    }
+    
+    @Override
+    public int hashCode(){
+      return (int) (high ^ (high >>> 32) ^ low ^ (low >>> 32));
+    }
+  }
+  
+  /**
+   * 
+   * @return The depth of the root of the unit.
+   */
+  int depth(){
+    return path.size();
+  }
+}
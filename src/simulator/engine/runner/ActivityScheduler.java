@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import simulator.agent.IActivityScheduling;
+import simulator.agent.IAgent;
+import simulator.agent.IAgentControl;
+import simulator.agent.IStimulationListener;
+import simulator.engine.SimulationState;
+import simulator.util.Assert;
+
+/**
+ * Decides which agents of a simulation state must be stepped at each position, so that 
+ * agents with nothing to do are left alone. Agents that implement 
+ * <code>IActivityScheduling</code> are kept in a calendar, ordered by the position at which
+ * they asked to be stepped again, and are also woken up whenever they receive a stimulus. 
+ * All other agents are stepped at every position.
+ * 
+ * The scheduler keeps nothing that cannot be recalculated from the agents themselves, 
+ * so a new one must be built whenever the current state is replaced.
+ * 
+ * @author Paulo Salem
+ *
+ */
+class ActivityScheduler implements IStimulationListener {
+  
+  /**
+   * The agents of the state, in the order in which they must be stepped.
+   */
+  private List<IAgentControl> agents;
+  
+  /**
+   * A map from agents' IDs to their indexes in <code>agents</code>.
+   */
+  private Map<Integer, Integer> indexes = new HashMap<Integer, Integer>();
+  
+  /**
+   * The agents that are stepped at every position.
+   */
+  private BitSet unscheduled = new BitSet();
+  
+  /**
+   * The position at which each agent is to be stepped next.
+   */
+  private int[] activations;
+  
+  /**
+   * Pending activations, each one made of a position (in the high 32 bits) and the index of
+   * an agent. Entries that no longer match <code>activations</code> are obsolete and ignored.
+   */
+  private PriorityQueue<Long> calendar = new PriorityQueue<Long>();
+  
+  /**
+   * Agents stimulated since the last time the due agents were calculated.
+   */
+  private BitSet stimulated = new BitSet();
+  
+  /**
+   * Agents stimulated while agents were being stepped, which must be stepped at
+   * the following position, since they may have already been stepped at this one.
+   */
+  private BitSet lateStimulated = new BitSet();
+  
+  /**
+   * The position at which agents are being stepped, or -1 if agents are not being
+   * stepped at the moment.
+   */
+  private int steppingPosition = -1;
+  
+  
+  /**
+   * Builds a scheduler for the agents of the specified state, asking each one when 
+   * it is to be stepped next.
+   * 
+   * @param state The state.
+   */
+  public ActivityScheduler(SimulationState state) {
+    Assert.notNull(state);
+    
+    this.agents = state.getAgentControls();
+    this.activations = new int[agents.size()];
+    
+    for(int i = 0; i < agents.size(); i++){
+      IAgentControl ac = agents.get(i);
+      indexes.put(ac.getId(), i);
+      
+      if(ac instanceof IActivityScheduling){
+        schedule(i, ((IActivityScheduling) ac).nextActivation(state.getPosition()));
+      }
+      else{
+        unscheduled.set(i);
+      }
+    }
+  }
+  
+  /**
+   * 
+   * @param state A simulation state.
+   * 
+   * @return <code>true</code> if some agent of the state may be left alone, so
+   *         that a scheduler is useful; <code>false</code> otherwise.
+   */
+  public static boolean isUseful(SimulationState state){
+    for(IAgentControl ac: state.getAgentControls()){
+      if(ac instanceof IActivityScheduling){
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  /**
+   * Removes from the calendar the agents that must be stepped at the specified position,
+   * and marks that they are being stepped.
+   * 
+   * @param position The position.
+   * 
+   * @return The agents due, in the order of the simulation state.
+   */
+  public List<IAgentControl> beginStep(int position){
+    BitSet due = (BitSet) unscheduled.clone();
+    due.or(stimulated);
+    stimulated.clear();
+    
+    while(!calendar.isEmpty() && (int) (calendar.peek() >>> 32) <= position){
+      long entry = calendar.poll();
+      int i = (int) entry;
+      
+      if(activations[i] == (int) (entry >>> 32)){
+        due.set(i);
+      }
+    }
+    
+    List<IAgentControl> result = new ArrayList<IAgentControl>(due.cardinality());
+    for(int i = due.nextSetBit(0); i >= 0; i = due.nextSetBit(i + 1)){
+      result.add(agents.get(i));
+    }
+    
+    steppingPosition = position;
+    
+    return result;
+  }
+  
+  /**
+   * Asks each of the specified agents, which have just been stepped, when they must 
+   * be stepped again.
+   * 
+   * @param stepped The agents given by the last call to <code>beginStep()</code>.
+   */
+  public void endStep(List<IAgentControl> stepped){
+    int position = steppingPosition;
+    steppingPosition = -1;
+    
+    for(IAgentControl ac: stepped){
+      if(ac instanceof IActivityScheduling){
+        schedule(indexes.get(ac.getId()), ((IActivityScheduling) ac).nextActivation(position));
+      }
+    }
+    
+    lateStimulated.andNot(unscheduled);
+    for(int i = lateStimulated.nextSetBit(0); i >= 0; i = lateStimulated.nextSetBit(i + 1)){
+      if(activations[i] > position + 1){
+        schedule(i, position + 1);
+      }
+    }
+    lateStimulated.clear();
+  }
+  
+  /**
+   * 
+   * @return The next position at which some agent must be stepped, regardless of stimuli,
+   *         or <code>IActivityScheduling.NEVER</code> if there is none. If some agent
+   *         is stepped at every position, or has already been stimulated, it is 0.
+   */
+  public int nextActivation(){
+    if(!unscheduled.isEmpty() || !stimulated.isEmpty()){
+      return 0;
+    }
+    
+    // Discard obsolete entries
+    while(!calendar.isEmpty()){
+      long entry = calendar.peek();
+      if(activations[(int) entry] == (int) (entry >>> 32)){
+        return (int) (entry >>> 32);
+      }
+      
+      calendar.poll();
+    }
+    
+    return IActivityScheduling.NEVER;
+  }
+
+  @Override
+  public void stimulated(IAgent agent) {
+    Integer i = indexes.get(agent.getId());
+    if(i == null){
+      return;
+    }
+    
+    if(steppingPosition >= 0){
+      lateStimulated.set(i);
+    }
+    else{
+      stimulated.set(i);
+    }
+  }
+  
+  private void schedule(int i, int position){
+    activations[i] = position;
+    
+    if(position != IActivityScheduling.NEVER){
+      calendar.add(((long) position << 32) | i);
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+/**
+ * Tells work that is carried out concurrently with other work that it is no 
+ * longer needed (e.g., because some other search has already found what was 
+ * being looked for). Cancellation is cooperative: whoever holds a token must 
+ * check it from time to time and stop by itself. 
+ * 
+ * A token may have a parent, in which case it is also canceled whenever the 
+ * parent is. Thus, work that is itself split in concurrent parts can cancel 
+ * them without affecting its siblings, while still being canceled along with 
+ * them.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class CancellationToken {
+  
+  private final CancellationToken parent;
+  
+  private volatile boolean canceled = false;
+  
+  public CancellationToken(){
+    this(null);
+  }
+  
+  /**
+   * 
+   * @param parent The token whose cancellation also cancels this one, or 
+   *               <code>null</code> if there is none.
+   */
+  public CancellationToken(CancellationToken parent){
+    this.parent = parent;
+  }
+  
+  /**
+   * Requests the work associated with this token (and with the tokens that 
+   * have it as an ancestor) to stop.
+   */
+  public void cancel(){
+    canceled = true;
+  }
+  
+  /**
+   * 
+   * @return <code>true</code> if this token, or one of its ancestors, has 
+   *         been canceled; <code>false</code> otherwise.
+   */
+  public boolean isCanceled(){
+    return canceled || (parent != null && parent.isCanceled());
+  }
+  
+  /**
+   * 
+   * @return The parent of this token, or <code>null</code> if there is none.
+   */
+  public CancellationToken getParent(){
+    return parent;
+  }
+
+}
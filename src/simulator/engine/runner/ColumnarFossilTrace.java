@@ -0,0 +1,598 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simulator.analysis.IProperty;
+import simulator.analysis.PropertyBearerWrapper;
+import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.PropertyValueCache;
+import simulator.engine.SimulationFossilizedState;
+import simulator.engine.SimulationState;
+
+/**
+ * Stores the fossilized states of a simulation run by columns, one for each 
+ * property of each property bearer, instead of one map per state. The columns are 
+ * discovered once, from the first state's <code>PropertyBearerWrapper</code>s, and 
+ * extended if later states bring new ones. 
+ * 
+ * Property values are only available as strings, but each column is kept in the most 
+ * compact type that represents all of its values exactly: <code>long</code>, 
+ * <code>double</code>, <code>boolean</code> or dictionary-encoded strings. A column 
+ * that receives a value which does not fit its type is converted to strings. Hence, 
+ * the original strings can always be obtained back, and 
+ * <code>getFossilizedStates()</code> provides the usual <code>SimulationFossilizedState</code>s.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class ColumnarFossilTrace {
+  
+  /**
+   * The types a column may have.
+   * 
+   * @author Paulo Salem
+   *
+   */
+  public enum ColumnType {
+    LONG, DOUBLE, BOOLEAN, STRING
+  }
+  
+  /**
+   * The columns, in the order they were discovered.
+   */
+  private ArrayList<Column> columns = new ArrayList<Column>();
+  
+  /**
+   * The columns indexed by their names (i.e., <code>property@bearer</code>).
+   */
+  private Map<String, Integer> columnsByName = new HashMap<String, Integer>();
+  
+  /**
+   * How many states (i.e., rows) are stored.
+   */
+  private int rows = 0;
+  
+  
+  /**
+   * Appends the values of the properties in the specified state.
+   * 
+   * @param state The state to fossilize.
+   * 
+   * @throws UndefinedPropertyException
+   */
+  public void append(SimulationState state) throws UndefinedPropertyException{
+    
+    // Properties are usually found in the same order as before, so their
+    // columns can be found without building their names.
+    int expected = 0;
+    
+    PropertyValueCache values = state.getPropertyValues();
+    
+    for(PropertyBearerWrapper pbw: state.getPropertyBearerWrappers()){
+      for(IProperty p: pbw.getProperties()){
+        Column c;
+        
+        if(expected < columns.size() && columns.get(expected).matches(p.getName(), pbw.getName())){
+          c = columns.get(expected);
+        }
+        else{
+          c = column(p.getName(), pbw.getName());
+        }
+        
+        c.set(rows, values.getString(p, pbw));
+        expected = c.index + 1;
+      }
+    }
+    
+    rows++;
+    
+    // Properties absent from this state
+    for(Column c: columns){
+      c.ensureSize(rows);
+    }
+  }
+  
+  /**
+   * Discards every state from the specified position on.
+   * 
+   * @param size The number of states to keep.
+   */
+  public void truncate(int size){
+    if(size < 0 || size > rows){
+      throw new IndexOutOfBoundsException("Size: " + size + ", rows: " + rows);
+    }
+    
+    rows = size;
+    
+    for(Column c: columns){
+      c.truncate(size);
+    }
+  }
+  
+  public void clear(){
+    truncate(0);
+  }
+  
+  /**
+   * 
+   * @return How many states are stored.
+   */
+  public int getRowCount(){
+    return rows;
+  }
+  
+  /**
+   * 
+   * @return How many columns there are.
+   */
+  public int getColumnCount(){
+    return columns.size();
+  }
+  
+  /**
+   * 
+   * @param name The name of a column (i.e., <code>property@bearer</code>).
+   * 
+   * @return The index of the column, or -1 if there is no such column.
+   */
+  public int getColumnIndex(String name){
+    Integer i = columnsByName.get(name);
+    
+    return (i != null) ? i : -1;
+  }
+  
+  public String getColumnName(int column){
+    return columns.get(column).name;
+  }
+  
+  public ColumnType getColumnType(int column){
+    return columns.get(column).type;
+  }
+  
+  /**
+   * 
+   * @return Whether the property of the column was not present in the specified state.
+   */
+  public boolean isAbsent(int row, int column){
+    checkRow(row);
+    
+    return columns.get(column).absent.get(row);
+  }
+  
+  /**
+   * 
+   * @return The values of a <code>LONG</code> column, indexed by position. The array
+   *         may be longer than the number of rows, and must not be modified.
+   */
+  public long[] getLongs(int column){
+    return columns.get(column).asType(ColumnType.LONG).longs;
+  }
+  
+  /**
+   * 
+   * @return The values of a <code>DOUBLE</code> column, indexed by position. The array
+   *         may be longer than the number of rows, and must not be modified.
+   */
+  public double[] getDoubles(int column){
+    return columns.get(column).asType(ColumnType.DOUBLE).doubles;
+  }
+  
+  /**
+   * 
+   * @return The value of a <code>BOOLEAN</code> column in the specified state.
+   */
+  public boolean getBoolean(int row, int column){
+    checkRow(row);
+    
+    return columns.get(column).asType(ColumnType.BOOLEAN).booleans.get(row);
+  }
+  
+  /**
+   * Provides the value of any column as the property gave it.
+   * 
+   * @return The value, or <code>null</code> if absent.
+   */
+  public String getString(int row, int column){
+    checkRow(row);
+    
+    return columns.get(column).get(row);
+  }
+  
+  /**
+   * 
+   * @return A view of the stored states as <code>SimulationFossilizedState</code>s, 
+   *         which are built as they are accessed.
+   */
+  public List<SimulationFossilizedState> getFossilizedStates(){
+    return new AbstractList<SimulationFossilizedState>() {
+
+      @Override
+      public SimulationFossilizedState get(int row) {
+        return getFossilizedState(row);
+      }
+
+      @Override
+      public int size() {
+        return rows;
+      }
+    };
+  }
+  
+  /**
+   * 
+   * @return The specified state as a <code>SimulationFossilizedState</code>.
+   */
+  public SimulationFossilizedState getFossilizedState(int row){
+    checkRow(row);
+    
+    Map<String, String> stringMap = new HashMap<String, String>();
+    for(Column c: columns){
+      if(!c.absent.get(row)){
+        stringMap.put(c.name, c.get(row));
+      }
+    }
+    
+    Map<String, Integer> integerMap = Collections.emptyMap();
+    Map<String, Boolean> booleanMap = Collections.emptyMap();
+    
+    return new SimulationFossilizedState(stringMap, integerMap, booleanMap);
+  }
+  
+  private void checkRow(int row){
+    if(row < 0 || row >= rows){
+      throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rows);
+    }
+  }
+  
+  /**
+   * Finds a column by name, creating it if necessary.
+   */
+  private Column column(String propertyName, String bearerName){
+    String name = propertyName + "@" + bearerName;
+    Integer i = columnsByName.get(name);
+    
+    if(i == null){
+      i = columns.size();
+      
+      Column c = new Column(i, name, propertyName, bearerName);
+      c.ensureSize(rows);
+      
+      columns.add(c);
+      columnsByName.put(name, i);
+    }
+    
+    return columns.get(i);
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Columns
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private static final class Column {
+    
+    final int index;
+    
+    final String name;
+    
+    final String propertyName;
+    
+    final String bearerName;
+    
+    /**
+     * The type is only decided when the first value arrives.
+     */
+    ColumnType type = null;
+    
+    /**
+     * How many rows have been filled.
+     */
+    int size = 0;
+    
+    /**
+     * The rows in which the property was absent.
+     */
+    BitSet absent = new BitSet();
+    
+    long[] longs;
+    
+    double[] doubles;
+    
+    BitSet booleans;
+    
+    /**
+     * For strings, the index of each value in the dictionary.
+     */
+    int[] codes;
+    
+    List<String> dictionary;
+    
+    Map<String, Integer> dictionaryCodes;
+    
+    
+    Column(int index, String name, String propertyName, String bearerName){
+      this.index = index;
+      this.name = name;
+      this.propertyName = propertyName;
+      this.bearerName = bearerName;
+    }
+    
+    boolean matches(String propertyName, String bearerName){
+      return this.propertyName.equals(propertyName) && this.bearerName.equals(bearerName);
+    }
+    
+    Column asType(ColumnType expected){
+      if(type != expected){
+        throw new IllegalStateException("Column " + name + " is of type " + type + ", not " + expected + ".");
+      }
+      
+      return this;
+    }
+    
+    /**
+     * Marks the rows not filled so far as absent.
+     */
+    void ensureSize(int rows){
+      if(size < rows){
+        absent.set(size, rows);
+        
+        // Absent rows still take space in arrays
+        if(type != null){
+          reserve(rows);
+        }
+        
+        size = rows;
+      }
+    }
+    
+    void truncate(int rows){
+      if(size > rows){
+        absent.clear(rows, size);
+        size = rows;
+      }
+    }
+    
+    void set(int row, String value){
+      ensureSize(row);
+      
+      if(type == null){
+        type = inferType(value);
+        reserve(row + 1);
+      }
+      
+      if(!store(row, value)){
+        // The value does not fit, so everything becomes a string
+        toStrings();
+        store(row, value);
+      }
+      
+      absent.clear(row);
+      size = row + 1;
+    }
+    
+    /**
+     * Stores the value if it fits the column's type exactly.
+     */
+    boolean store(int row, String value){
+      reserve(row + 1);
+      
+      switch(type){
+        case LONG:
+          Long l = parseLong(value);
+          if(l == null){
+            return false;
+          }
+          longs[row] = l;
+          return true;
+          
+        case DOUBLE:
+          Double d = parseDouble(value);
+          if(d == null){
+            return false;
+          }
+          doubles[row] = d;
+          return true;
+          
+        case BOOLEAN:
+          if("true".equals(value)){
+            booleans.set(row);
+            return true;
+          }
+          else if("false".equals(value)){
+            booleans.clear(row);
+            return true;
+          }
+          return false;
+          
+        default:
+          Integer code = dictionaryCodes.get(value);
+          if(code == null){
+            code = dictionary.size();
+            dictionary.add(value);
+            dictionaryCodes.put(value, code);
+          }
+          codes[row] = code;
+          return true;
+      }
+    }
+    
+    String get(int row){
+      if(absent.get(row)){
+        return null;
+      }
+      
+      switch(type){
+        case LONG:
+          return Long.toString(longs[row]);
+        case DOUBLE:
+          return Double.toString(doubles[row]);
+        case BOOLEAN:
+          return Boolean.toString(booleans.get(row));
+        default:
+          return dictionary.get(codes[row]);
+      }
+    }
+    
+    /**
+     * Converts the column to dictionary-encoded strings.
+     */
+    void toStrings(){
+      String[] values = new String[size];
+      for(int i = 0; i < size; i++){
+        values[i] = get(i);
+      }
+      
+      type = ColumnType.STRING;
+      longs = null;
+      doubles = null;
+      booleans = null;
+      reserve(size);
+      
+      for(int i = 0; i < size; i++){
+        if(!absent.get(i)){
+          store(i, values[i]);
+        }
+      }
+    }
+    
+    void reserve(int rows){
+      switch(type){
+        case LONG:
+          if(longs == null || longs.length < rows){
+            long[] a = new long[capacity(rows)];
+            if(longs != null){
+              System.arraycopy(longs, 0, a, 0, longs.length);
+            }
+            longs = a;
+          }
+          break;
+        case DOUBLE:
+          if(doubles == null || doubles.length < rows){
+            double[] a = new double[capacity(rows)];
+            if(doubles != null){
+              System.arraycopy(doubles, 0, a, 0, doubles.length);
+            }
+            doubles = a;
+          }
+          break;
+        case BOOLEAN:
+          if(booleans == null){
+            booleans = new BitSet();
+          }
+          break;
+        default:
+          if(codes == null || codes.length < rows){
+            int[] a = new int[capacity(rows)];
+            if(codes != null){
+              System.arraycopy(codes, 0, a, 0, codes.length);
+            }
+            codes = a;
+          }
+          if(dictionary == null){
+            dictionary = new ArrayList<String>();
+            dictionaryCodes = new HashMap<String, Integer>();
+          }
+      }
+    }
+    
+    private static int capacity(int rows){
+      return Math.max(16, rows + (rows >> 1));
+    }
+    
+    private static ColumnType inferType(String value){
+      if("true".equals(value) || "false".equals(value)){
+        return ColumnType.BOOLEAN;
+      }
+      else if(parseLong(value) != null){
+        return ColumnType.LONG;
+      }
+      else if(parseDouble(value) != null){
+        return ColumnType.DOUBLE;
+      }
+      
+      return ColumnType.STRING;
+    }
+    
+    /**
+     * 
+     * @return The value as a <code>long</code>, provided that it is written exactly as
+     *         <code>Long.toString()</code> would write it; <code>null</code> otherwise.
+     */
+    private static Long parseLong(String value){
+      if(value == null || value.length() == 0 || value.length() > 20){
+        return null;
+      }
+      
+      try{
+        long l = Long.parseLong(value);
+        return Long.toString(l).equals(value) ? l : null;
+      
+      } catch(NumberFormatException e){
+        return null;
+      }
+    }
+    
+    /**
+     * 
+     * @return The value as a <code>double</code>, provided that it is written exactly as
+     *         <code>Double.toString()</code> would write it; <code>null</code> otherwise.
+     */
+    private static Double parseDouble(String value){
+      if(value == null || value.length() == 0){
+        return null;
+      }
+      
+      // Quickly rule out most non-numeric strings
+      char c = value.charAt(0);
+      if(!(Character.isDigit(c) || c == '-' || c == 'N' || c == 'I')){
+        return null;
+      }
+      
+      try{
+        double d = Double.parseDouble(value);
+        return Double.toString(d).equals(value) ? d : null;
+      
+      } catch(NumberFormatException e){
+        return null;
+      }
+    }
+  }
+
+}
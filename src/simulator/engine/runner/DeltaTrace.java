@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import simulator.engine.SimulationState;
+import simulator.engine.SnapshotCodec;
+import simulator.engine.SnapshotException;
+import simulator.util.Assert;
+import simulator.util.BinaryDelta;
+
+/**
+ * A trace of simulation states stored in a compressed form. Every 
+ * <code>keyframeInterval</code> states, the complete encoding of a state (i.e., a 
+ * keyframe) is kept. The states in between are kept only as binary deltas w.r.t. 
+ * the encoding of their predecessors. Both are further deflated, since state 
+ * encodings are very repetitive. States are reconstructed on demand, and the 
+ * most recently used ones are kept materialized.
+ * 
+ * The states obtained from the trace must not be modified, since they may be 
+ * handed out again later.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class DeltaTrace extends AbstractList<SimulationState> {
+  
+  /**
+   * The codec used to encode and decode states.
+   */
+  private SnapshotCodec codec;
+  
+  /**
+   * How many states there are from one keyframe to the next.
+   */
+  private int keyframeInterval;
+  
+  /**
+   * Either keyframes or deltas, according to the position.
+   */
+  private ArrayList<byte[]> entries = new ArrayList<byte[]>();
+  
+  /**
+   * The encoding of the last state, from which the next delta is computed.
+   */
+  private byte[] lastEncoding = null;
+  
+  /**
+   * The materialized states, from the least to the most recently used.
+   */
+  private LinkedHashMap<Integer, SimulationState> cache;
+  
+  private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  
+  private Inflater inflater = new Inflater();
+  
+  private byte[] buffer = new byte[8192];
+  
+  
+  public DeltaTrace(SnapshotCodec codec, int keyframeInterval, final int cacheSize){
+    Assert.notNull(codec);
+    Assert.nonNegativeNonZero(keyframeInterval);
+    Assert.nonNegative(cacheSize);
+    
+    this.codec = codec;
+    this.keyframeInterval = keyframeInterval;
+    
+    this.cache = new LinkedHashMap<Integer, SimulationState>(cacheSize * 2, 0.75f, true){
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, SimulationState> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+  
+  /**
+   * Appends a state to the trace.
+   * 
+   * @param state The state to append. It must not be modified afterwards.
+   * 
+   * @throws SnapshotException If the state cannot be encoded.
+   */
+  public void append(SimulationState state) throws SnapshotException{
+    Assert.notNull(state);
+    
+    int position = entries.size();
+    byte[] encoding = codec.encode(state);
+    
+    if(isKeyframe(position)){
+      entries.add(deflate(encoding));
+    }
+    else{
+      entries.add(deflate(BinaryDelta.create(lastEncoding, encoding)));
+    }
+    
+    lastEncoding = encoding;
+    cache.put(position, state);
+  }
+  
+  /**
+   * Replaces the state at the specified position, discarding every state after it, 
+   * since they no longer follow from it.
+   * 
+   * @param position The position of the state to replace.
+   * @param state The new state.
+   * 
+   * @throws SnapshotException If the state cannot be encoded or if the previous 
+   *                           states cannot be reconstructed.
+   */
+  public void replace(int position, SimulationState state) throws SnapshotException{
+    truncate(position);
+    append(state);
+  }
+  
+  /**
+   * Discards every state from the specified position on.
+   * 
+   * @param size The number of states to keep.
+   * 
+   * @throws SnapshotException If the last state kept cannot be reconstructed.
+   */
+  public void truncate(int size) throws SnapshotException{
+    Assert.isInInterval(size, 0, entries.size());
+    
+    if(size == entries.size()){
+      return;
+    }
+    
+    while(entries.size() > size){
+      entries.remove(entries.size() - 1);
+    }
+    
+    Iterator<Integer> it = cache.keySet().iterator();
+    while(it.hasNext()){
+      if(it.next() >= size){
+        it.remove();
+      }
+    }
+    
+    lastEncoding = null;
+    if(size > 0){
+      lastEncoding = encodingAt(size - 1);
+    }
+  }
+  
+  @Override
+  public void clear() {
+    entries.clear();
+    cache.clear();
+    lastEncoding = null;
+  }
+  
+  /**
+   * Releases the native buffers used for compression. The trace cannot be used 
+   * afterwards.
+   */
+  public void dispose() {
+    clear();
+    
+    deflater.end();
+    inflater.end();
+  }
+  
+  /**
+   * Reconstructs the state at the specified position, unless it is already materialized.
+   * 
+   * @throws IllegalStateException If the state cannot be decoded.
+   */
+  @Override
+  public SimulationState get(int position) {
+    if(position < 0 || position >= entries.size()){
+      throw new IndexOutOfBoundsException("Position: " + position + ", size: " + entries.size());
+    }
+    
+    SimulationState state = cache.get(position);
+    
+    if(state == null){
+      try {
+        state = codec.decode(encodingAt(position));
+      
+      } catch (SnapshotException e) {
+        throw new IllegalStateException("Could not reconstruct the state at position " + position + ".", e);
+      }
+      
+      cache.put(position, state);
+    }
+    
+    return state;
+  }
+
+  @Override
+  public int size() {
+    return entries.size();
+  }
+  
+  /**
+   * 
+   * @return How many bytes are used by the (compressed) keyframes and deltas.
+   */
+  public long getEncodedSize(){
+    long total = 0;
+    for(byte[] e: entries){
+      total += e.length;
+    }
+    
+    return total;
+  }
+  
+  private boolean isKeyframe(int position){
+    return position % keyframeInterval == 0;
+  }
+  
+  /**
+   * Rebuilds the encoding of the state at the specified position, starting from
+   * the closest keyframe before it.
+   */
+  private byte[] encodingAt(int position) throws SnapshotException{
+    if(position == entries.size() - 1 && lastEncoding != null){
+      return lastEncoding;
+    }
+    
+    int keyframe = position - (position % keyframeInterval);
+    
+    try{
+      byte[] encoding = inflate(entries.get(keyframe));
+      
+      for(int i = keyframe + 1; i <= position; i++){
+        encoding = BinaryDelta.apply(encoding, inflate(entries.get(i)));
+      }
+      
+      return encoding;
+    
+    } catch(IllegalArgumentException e){
+      throw new SnapshotException("The trace is corrupted at position " + position + ".", e);
+    } catch (DataFormatException e) {
+      throw new SnapshotException("The trace is corrupted at position " + position + ".", e);
+    }
+  }
+  
+  /**
+   * Compresses the specified data, prefixing it with its original length.
+   */
+  private byte[] deflate(byte[] data){
+    deflater.reset();
+    deflater.setInput(data);
+    deflater.finish();
+    
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 16);
+    out.write(data.length >>> 24);
+    out.write(data.length >>> 16);
+    out.write(data.length >>> 8);
+    out.write(data.length);
+    
+    while(!deflater.finished()){
+      int n = deflater.deflate(buffer);
+      out.write(buffer, 0, n);
+    }
+    
+    return out.toByteArray();
+  }
+  
+  private byte[] inflate(byte[] data) throws DataFormatException{
+    int length = ((data[0] & 0xff) << 24) | ((data[1] & 0xff) << 16) | ((data[2] & 0xff) << 8) | (data[3] & 0xff);
+    
+    inflater.reset();
+    inflater.setInput(data, 4, data.length - 4);
+    
+    byte[] result = new byte[length];
+    int n = 0;
+    while(n < length){
+      int read = inflater.inflate(result, n, length - n);
+      if(read == 0 && (inflater.finished() || inflater.needsInput())){
+        throw new DataFormatException("Truncated data.");
+      }
+      n += read;
+    }
+    
+    return result;
+  }
+
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.SimulationState;
+import simulator.util.Assert;
+
+/**
+ * Writes the fossilized states of simulation runs to a text file, one per line,
+ * preceded by their positions. Since states are fossilized as soon as they are
+ * received, no snapshot is ever needed.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class FileTraceSink implements TraceSink {
+  
+  private File file;
+  
+  private BufferedWriter out;
+  
+  /**
+   * How many runs have been written so far.
+   */
+  private int runs = 0;
+  
+  /**
+   * An error that happened where it could not be reported, to be reported
+   * on the next opportunity.
+   */
+  private IOException pendingError = null;
+  
+  
+  /**
+   * Creates a sink that writes to the specified file, replacing its contents.
+   * 
+   * @param file The file.
+   * 
+   * @throws IOException If the file cannot be created.
+   */
+  public FileTraceSink(File file) throws IOException{
+    Assert.notNull(file);
+    
+    this.file = file;
+    this.out = new BufferedWriter(new FileWriter(file));
+  }
+
+  @Override
+  public boolean needsSnapshot(int position) {
+    return false;
+  }
+
+  @Override
+  public void append(SimulationState state) throws UndefinedPropertyException, SimulationRunException {
+    write(state.getPosition() + "\t" + state.fossilize());
+  }
+
+  @Override
+  public void restartFrom(SimulationState state) throws UndefinedPropertyException, SimulationRunException {
+    write("# Restarted from position " + state.getPosition());
+    append(state);
+  }
+
+  @Override
+  public void clear() {
+    runs++;
+    
+    try {
+      out.write("# Run " + runs);
+      out.newLine();
+      out.flush();
+    
+    } catch (IOException e) {
+      pendingError = e;
+    }
+  }
+
+  @Override
+  public void dispose() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      // Nothing else to do
+    }
+  }
+  
+  public File getFile(){
+    return file;
+  }
+  
+  private void write(String line) throws SimulationRunException{
+    try {
+      if(pendingError != null){
+        throw pendingError;
+      }
+      
+      out.write(line);
+      out.newLine();
+    
+    } catch (IOException e) {
+      throw new SimulationRunException("Could not write to the trace file " + file + ".", e);
+    }
+  }
+
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import simulator.util.Assert;
+import simulator.util.MappedBuffers;
+
+/**
+ * A sequence of binary records (e.g., encoded simulation states) kept in a 
+ * memory-mapped file, so that traces far larger than the heap can be stored. 
+ * Records are appended one after the other and an in-memory index of their 
+ * offsets gives constant-time access by position. Which parts of the file are 
+ * actually resident is left to the operating system.
+ * 
+ * The file is mapped in segments of fixed size, which are created as needed. A 
+ * record may span more than one segment.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class MappedTrace {
+  
+  /**
+   * The default size of each mapped segment.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  
+  /**
+   * The file where records are kept.
+   */
+  private File file;
+  
+  private RandomAccessFile raf;
+  
+  private FileChannel channel;
+  
+  /**
+   * The size of each mapped segment.
+   */
+  private int segmentSize;
+  
+  /**
+   * The segments mapped so far, in the order they appear in the file.
+   */
+  private ArrayList<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+  
+  /**
+   * Where each record begins in the file.
+   */
+  private long[] offsets = new long[1024];
+  
+  /**
+   * The length of each record.
+   */
+  private int[] lengths = new int[1024];
+  
+  /**
+   * How many records there are.
+   */
+  private int size = 0;
+  
+  /**
+   * Where the next record is to be written.
+   */
+  private long end = 0;
+  
+  
+  /**
+   * Creates a trace in a new temporary file, which is deleted when the
+   * trace is closed.
+   * 
+   * @param directory The directory where the file shall be created, or <code>null</code>
+   *                  for the default temporary directory.
+   * @param segmentSize The size of each mapped segment.
+   * 
+   * @throws IOException If the file cannot be created.
+   */
+  public MappedTrace(File directory, int segmentSize) throws IOException{
+    Assert.nonNegativeNonZero(segmentSize);
+    
+    this.segmentSize = segmentSize;
+    
+    this.file = File.createTempFile("fgs-trace-", ".bin", directory);
+    
+    this.raf = new RandomAccessFile(file, "rw");
+    this.channel = raf.getChannel();
+  }
+  
+  /**
+   * Appends a record.
+   * 
+   * @param record The record's bytes.
+   * 
+   * @throws IOException If the file cannot be extended.
+   */
+  public void append(byte[] record) throws IOException{
+    Assert.notNull(record);
+    
+    if(size == offsets.length){
+      long[] newOffsets = new long[size * 2];
+      int[] newLengths = new int[size * 2];
+      System.arraycopy(offsets, 0, newOffsets, 0, size);
+      System.arraycopy(lengths, 0, newLengths, 0, size);
+      offsets = newOffsets;
+      lengths = newLengths;
+    }
+    
+    transfer(end, record, true);
+    
+    offsets[size] = end;
+    lengths[size] = record.length;
+    size++;
+    end += record.length;
+  }
+  
+  /**
+   * Retrieves a record.
+   * 
+   * @param position The record's position.
+   * 
+   * @return A copy of the record's bytes.
+   * 
+   * @throws IOException If the file cannot be read.
+   */
+  public byte[] get(int position) throws IOException{
+    if(position < 0 || position >= size){
+      throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+    }
+    
+    byte[] record = new byte[lengths[position]];
+    transfer(offsets[position], record, false);
+    
+    return record;
+  }
+  
+  /**
+   * Discards every record from the specified position on. The space they used
+   * is reused by subsequent records.
+   * 
+   * @param newSize The number of records to keep.
+   */
+  public void truncate(int newSize){
+    Assert.isInInterval(newSize, 0, size);
+    
+    size = newSize;
+    end = (size > 0) ? offsets[size - 1] + lengths[size - 1] : 0;
+  }
+  
+  public int size(){
+    return size;
+  }
+  
+  /**
+   * 
+   * @return How many bytes are used by the records.
+   */
+  public long getStoredSize(){
+    return end;
+  }
+  
+  public File getFile(){
+    return file;
+  }
+  
+  /**
+   * Discards every record, unmapping the segments and giving the space of the 
+   * file back to the file system.
+   * 
+   * @throws IOException If the file cannot be truncated.
+   */
+  public void clear() throws IOException{
+    boolean unmapped = unmapSegments();
+    
+    // A file cannot be truncated while still mapped on some platforms
+    if(unmapped){
+      channel.truncate(0);
+    }
+  }
+  
+  /**
+   * Unmaps the segments and deletes the file. The trace cannot be used afterwards.
+   * 
+   * @throws IOException If the file cannot be closed.
+   */
+  public void close() throws IOException{
+    unmapSegments();
+    
+    try{
+      channel.close();
+      raf.close();
+    }
+    finally{
+      file.delete();
+    }
+  }
+  
+  /**
+   * Copies bytes between the file and the specified array, mapping new segments 
+   * as needed.
+   * 
+   * @param offset Where in the file the transfer begins.
+   * @param data The bytes to write or the array to read into.
+   * @param write <code>true</code> to write to the file; <code>false</code> to read 
+   *              from it.
+   */
+  private void transfer(long offset, byte[] data, boolean write) throws IOException{
+    int done = 0;
+    
+    while(done < data.length){
+      int index = (int) (offset / segmentSize);
+      int segmentOffset = (int) (offset % segmentSize);
+      int n = Math.min(data.length - done, segmentSize - segmentOffset);
+      
+      MappedByteBuffer segment = segment(index);
+      
+      // Positioning a duplicate keeps the segment itself untouched
+      ByteBuffer view = segment.duplicate();
+      view.position(segmentOffset);
+      
+      if(write){
+        view.put(data, done, n);
+      }
+      else{
+        view.get(data, done, n);
+      }
+      
+      done += n;
+      offset += n;
+    }
+  }
+  
+  /**
+   * Discards every record and unmaps the segments.
+   * 
+   * @return <code>true</code> if every segment was actually unmapped; otherwise,
+   *         some are left to the collector.
+   */
+  private boolean unmapSegments(){
+    boolean unmapped = true;
+    for(MappedByteBuffer segment: segments){
+      unmapped &= MappedBuffers.unmap(segment);
+    }
+    segments.clear();
+    size = 0;
+    end = 0;
+    
+    return unmapped;
+  }
+  
+  private MappedByteBuffer segment(int index) throws IOException{
+    while(segments.size() <= index){
+      long start = (long) segments.size() * segmentSize;
+      segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize));
+    }
+    
+    return segments.get(index);
+  }
+
+}
@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.SimulationFossilizedState;
+import simulator.engine.SimulationState;
+import simulator.util.Assert;
+
+/**
+ * A representative subset of the states of a simulation run, which never holds
+ * more than a fixed number of them, no matter how long the run is. The states 
+ * are selected in one of the following ways:
+ * 
+ *   - <code>INTERVAL</code>: one of every <code>interval</code> states. Whenever 
+ *     the capacity is exceeded, every other sample is discarded and the interval
+ *     is doubled, so that samples remain evenly spaced over the whole run.
+ *     
+ *   - <code>RESERVOIR</code>: the run is divided in as many strata (i.e., 
+ *     intervals of positions) as the capacity allows, and a state is chosen at 
+ *     random from each of them. Whenever the capacity is exceeded, adjacent strata 
+ *     are merged, keeping one of their states with the appropriate probability.
+ *     
+ *   - <code>CHANGES</code>: the states whose properties differ from those of 
+ *     the previous state. Whenever the capacity is exceeded, every other sample 
+ *     is discarded and, from then on, only one of every two changes is kept.
+ * 
+ * Either the states themselves or their fossilized versions are kept. In the 
+ * first case, the states obtained from the trace must not be modified. The 
+ * selection is not meant for runs that go back to previous states often: it
+ * remains correct, but may become less representative.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class SampledTrace {
+  
+  /**
+   * How states are selected.
+   */
+  public enum Selection {
+    INTERVAL, RESERVOIR, CHANGES
+  }
+  
+  private Selection selection;
+  
+  /**
+   * Whether fossilized states are kept instead of the states themselves.
+   */
+  private boolean fossilized;
+  
+  /**
+   * How many samples may be kept.
+   */
+  private int capacity;
+  
+  /**
+   * Either the number of positions between samples (<code>INTERVAL</code>), the
+   * number of positions in each stratum (<code>RESERVOIR</code>) or the number of
+   * changes between samples (<code>CHANGES</code>).
+   */
+  private int interval;
+  
+  /**
+   * The interval the trace started with.
+   */
+  private int initialInterval;
+  
+  /**
+   * Used to choose the states of the strata.
+   */
+  private Random random = new Random(0);
+  
+  /**
+   * The samples, ordered by position.
+   */
+  private ArrayList<Sample> samples;
+  
+  /**
+   * In <code>RESERVOIR</code> selection, the position for which it was decided in
+   * advance (i.e., when a snapshot was asked for) whether its state is kept.
+   */
+  private int decidedPosition = -1;
+  
+  private boolean decision = false;
+  
+  /**
+   * In <code>CHANGES</code> selection, the properties of the previous state.
+   */
+  private SimulationFossilizedState lastFossil = null;
+  
+  /**
+   * In <code>CHANGES</code> selection, how many changes have been seen so far.
+   */
+  private int changes = 0;
+  
+  
+  /**
+   * 
+   * @param selection How states are selected.
+   * @param fossilized Whether fossilized states are kept instead of the states themselves.
+   * @param interval The initial interval, if the selection is <code>INTERVAL</code> or
+   *                 <code>CHANGES</code>. It is ignored otherwise.
+   * @param capacity How many samples may be kept.
+   */
+  public SampledTrace(Selection selection, boolean fossilized, int interval, int capacity){
+    Assert.notNull(selection);
+    Assert.nonNegativeNonZero(interval);
+    Assert.nonNegativeNonZero(capacity);
+    
+    this.selection = selection;
+    this.fossilized = fossilized;
+    this.initialInterval = (selection == Selection.RESERVOIR) ? 1 : interval;
+    this.interval = initialInterval;
+    this.capacity = capacity;
+    this.samples = new ArrayList<Sample>(capacity + 1);
+  }
+  
+  /**
+   * Defines the randomness used to choose states in <code>RESERVOIR</code> selection.
+   */
+  public void setRandom(Random random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+  
+  /**
+   * Informs whether the state at the specified position will be kept as is, and
+   * must therefore be a snapshot. States selected according to their properties 
+   * are copied only if they are actually kept, so they never need to be snapshots.
+   */
+  public boolean needsSnapshot(int position){
+    if(fossilized){
+      return false;
+    }
+    
+    switch(selection){
+      case INTERVAL:
+        return position % interval == 0;
+      case RESERVOIR:
+        return decide(position);
+      default:
+        return false;
+    }
+  }
+  
+  /**
+   * Considers the next state of the run.
+   * 
+   * @param state The state, which is a snapshot if <code>needsSnapshot()</code> 
+   *              asked for one.
+   * 
+   * @throws UndefinedPropertyException If the state cannot be fossilized.
+   */
+  public void append(SimulationState state) throws UndefinedPropertyException{
+    int position = state.getPosition();
+    
+    switch(selection){
+      case INTERVAL:
+        if(position % interval == 0){
+          samples.add(new Sample(position, position, payload(state)));
+          
+          if(samples.size() > capacity){
+            decimate();
+          }
+        }
+        break;
+        
+      case RESERVOIR:
+        boolean keep = decide(position);
+        decidedPosition = -1;
+        
+        Sample last = samples.isEmpty() ? null : samples.get(samples.size() - 1);
+        
+        if(last != null && last.ordinal == position / interval){
+          last.weight++;
+          
+          if(keep){
+            last.position = position;
+            last.payload = payload(state);
+          }
+        }
+        else{
+          samples.add(new Sample(position, position / interval, payload(state)));
+          
+          if(samples.size() > capacity){
+            merge();
+          }
+        }
+        break;
+        
+      case CHANGES:
+        SimulationFossilizedState fossil = state.fossilize();
+        
+        if(lastFossil == null || !fossil.equals(lastFossil)){
+          if(changes % interval == 0){
+            // The state is not a snapshot, so it must be copied to be kept
+            samples.add(new Sample(position, changes, fossilized ? fossil : state.clone()));
+            
+            if(samples.size() > capacity){
+              decimate();
+            }
+          }
+          
+          changes++;
+        }
+        
+        lastFossil = fossil;
+        break;
+    }
+  }
+  
+  /**
+   * Discards the samples from the specified position on, so that the run may 
+   * go on from a previous state.
+   */
+  public void truncate(int position){
+    while(!samples.isEmpty() && samples.get(samples.size() - 1).position >= position){
+      samples.remove(samples.size() - 1);
+    }
+    
+    decidedPosition = -1;
+    lastFossil = null;
+    
+    if(selection == Selection.RESERVOIR && !samples.isEmpty()){
+      // The last stratum may have lost some of the positions it had seen
+      Sample last = samples.get(samples.size() - 1);
+      if(last.ordinal == position / interval){
+        last.weight = Math.max(1, Math.min(last.weight, position - last.ordinal * interval));
+      }
+    }
+  }
+  
+  public void clear(){
+    samples.clear();
+    decidedPosition = -1;
+    lastFossil = null;
+    changes = 0;
+    interval = initialInterval;
+  }
+  
+  /**
+   * 
+   * @return The positions of the samples, in increasing order.
+   */
+  public List<Integer> getPositions(){
+    List<Integer> positions = new ArrayList<Integer>(samples.size());
+    for(Sample s: samples){
+      positions.add(s.position);
+    }
+    
+    return positions;
+  }
+  
+  /**
+   * 
+   * @return The states kept, in the order of their positions.
+   */
+  public List<SimulationState> getStates(){
+    if(fossilized){
+      throw new IllegalStateException("Only fossilized states were kept.");
+    }
+    
+    List<SimulationState> states = new ArrayList<SimulationState>(samples.size());
+    for(Sample s: samples){
+      states.add((SimulationState) s.payload);
+    }
+    
+    return Collections.unmodifiableList(states);
+  }
+  
+  /**
+   * 
+   * @return The fossilized states kept, in the order of their positions.
+   * 
+   * @throws UndefinedPropertyException If some state cannot be fossilized.
+   */
+  public List<SimulationFossilizedState> getFossilizedStates() throws UndefinedPropertyException{
+    List<SimulationFossilizedState> fossils = new ArrayList<SimulationFossilizedState>(samples.size());
+    for(Sample s: samples){
+      if(fossilized){
+        fossils.add((SimulationFossilizedState) s.payload);
+      }
+      else{
+        fossils.add(((SimulationState) s.payload).fossilize());
+      }
+    }
+    
+    return Collections.unmodifiableList(fossils);
+  }
+  
+  public int size(){
+    return samples.size();
+  }
+  
+  public boolean isFossilized(){
+    return fossilized;
+  }
+  
+  public Selection getSelection(){
+    return selection;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary methods
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private Object payload(SimulationState state) throws UndefinedPropertyException{
+    return fossilized ? state.fossilize() : state;
+  }
+  
+  /**
+   * Decides, once per position, whether the state at the specified position 
+   * replaces the one chosen so far for its stratum. The first state of a stratum 
+   * is always kept, and the n-th one replaces it with probability 1/n.
+   */
+  private boolean decide(int position){
+    if(decidedPosition != position){
+      Sample last = samples.isEmpty() ? null : samples.get(samples.size() - 1);
+      
+      if(last != null && last.ordinal == position / interval){
+        decision = random.nextInt(last.weight + 1) == 0;
+      }
+      else{
+        decision = true;
+      }
+      
+      decidedPosition = position;
+    }
+    
+    return decision;
+  }
+  
+  /**
+   * Doubles the interval, keeping only the samples that are still selected by it.
+   */
+  private void decimate(){
+    interval = interval * 2;
+    
+    ArrayList<Sample> kept = new ArrayList<Sample>(capacity + 1);
+    for(Sample s: samples){
+      if(s.ordinal % interval == 0){
+        kept.add(s);
+      }
+    }
+    
+    samples = kept;
+  }
+  
+  /**
+   * Doubles the size of the strata, keeping a single sample from each of the new 
+   * ones. A sample is kept with a probability proportional to the number of positions 
+   * it stands for, so that every position of the new stratum is equally likely.
+   */
+  private void merge(){
+    interval = interval * 2;
+    
+    ArrayList<Sample> kept = new ArrayList<Sample>(capacity + 1);
+    for(Sample s: samples){
+      s.ordinal = s.position / interval;
+      
+      Sample last = kept.isEmpty() ? null : kept.get(kept.size() - 1);
+      if(last != null && last.ordinal == s.ordinal){
+        int weight = last.weight + s.weight;
+        
+        if(random.nextInt(weight) >= last.weight){
+          last.position = s.position;
+          last.payload = s.payload;
+        }
+        
+        last.weight = weight;
+      }
+      else{
+        kept.add(s);
+      }
+    }
+    
+    samples = kept;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary classes
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * A state kept by the trace.
+   */
+  private static class Sample {
+    
+    /**
+     * The position of the state in the run.
+     */
+    private int position;
+    
+    /**
+     * What decides whether the sample survives a thinning: its position, its stratum
+     * or the number of its change, according to the selection.
+     */
+    private int ordinal;
+    
+    /**
+     * In <code>RESERVOIR</code> selection, how many positions the sample stands for.
+     */
+    private int weight = 1;
+    
+    /**
+     * Either the state or its fossilized version.
+     */
+    private Object payload;
+    
+    public Sample(int position, int ordinal, Object payload){
+      this.position = position;
+      this.ordinal = ordinal;
+      this.payload = payload;
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.SimulationState;
+import simulator.util.Assert;
+
+/**
+ * Forwards to another sink only one of every so many states. Since the states
+ * received by that sink are not contiguous, it must not require them to be (as
+ * <code>SimulationRun</code> does, for instance).
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class SamplingTraceSink implements TraceSink {
+  
+  /**
+   * The sink that receives the sampled states.
+   */
+  private TraceSink sink;
+  
+  /**
+   * Only states whose positions are multiples of this are forwarded.
+   */
+  private int interval;
+  
+  
+  public SamplingTraceSink(TraceSink sink, int interval){
+    Assert.notNull(sink);
+    Assert.nonNegativeNonZero(interval);
+    
+    this.sink = sink;
+    this.interval = interval;
+  }
+
+  @Override
+  public boolean needsSnapshot(int position) {
+    return isSampled(position) && sink.needsSnapshot(position);
+  }
+
+  @Override
+  public void append(SimulationState state) throws UndefinedPropertyException, SimulationRunException {
+    if(isSampled(state.getPosition())){
+      sink.append(state);
+    }
+  }
+
+  @Override
+  public void restartFrom(SimulationState state) throws UndefinedPropertyException, SimulationRunException {
+    sink.restartFrom(state);
+  }
+
+  @Override
+  public void clear() {
+    sink.clear();
+  }
+
+  @Override
+  public void dispose() {
+    sink.dispose();
+  }
+  
+  private boolean isSampled(int position){
+    return position % interval == 0;
+  }
+
+}
@@ -31,23 +31,35 @@
  ******************************************************************************/
 package simulator.engine.runner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Vector;
 
 import simulator.analysis.UndefinedPropertyException;
 import simulator.engine.SimulationFossilizedState;
 import simulator.engine.SimulationState;
+import simulator.engine.SnapshotException;
+import simulator.ui.Messenger;
+import simulator.ui.SimulatorUI;
 import simulator.util.Assert;
 
 /**
- * A simulation run containing the states that have been explored.
+ * A simulation run containing the states that have been explored. It is the 
+ * main <code>TraceSink</code> of a <code>SimulationRunner</code>.
  * 
  * @author Paulo Salem
  */
-public class SimulationRun {
+public class SimulationRun implements TraceSink {
 
   /**
    * How the states can to be saved.
@@ -56,8 +68,71 @@ public class SimulationRun {
    * 
    */
   public enum StorageMode {
-    FULL, FOSSILIZED, NONE
+    FULL, DELTA, MAPPED, WINDOWED, FOSSILIZED, MAPPED_FOSSILIZED, 
+    SAMPLED, SAMPLED_FOSSILIZED, RESERVOIR, RESERVOIR_FOSSILIZED, CHANGES, CHANGES_FOSSILIZED, 
+    NONE
   }
+  
+  /**
+   * The mode used by those who need the complete states of the trace (i.e., 
+   * <code>FULL</code>, <code>DELTA</code>, <code>MAPPED</code> or <code>WINDOWED</code>).
+   */
+  private static StorageMode traceStorageMode = StorageMode.FULL;
+  
+  /**
+   * The mode used by standard simulations, which only need a representative subset
+   * of the states of their runs (i.e., one of the sampled modes or <code>NONE</code>).
+   */
+  private static StorageMode sampleStorageMode = StorageMode.NONE;
+  
+  /**
+   * In <code>SAMPLED</code> and <code>CHANGES</code> modes, the initial number of 
+   * positions or changes between samples.
+   */
+  private static int sampleInterval = 16;
+  
+  /**
+   * In sampled modes, how many states may be kept.
+   */
+  private static int sampleCapacity = 1024;
+  
+  /**
+   * In <code>DELTA</code> mode, how many states there are from one keyframe to the next.
+   */
+  private static int keyframeInterval = 32;
+  
+  /**
+   * In <code>DELTA</code> mode, how many reconstructed states are kept in memory.
+   */
+  private static int materializedStates = 16;
+  
+  /**
+   * In <code>WINDOWED</code> mode, how many of the most recent states are kept in memory.
+   */
+  private static int window = 256;
+  
+  /**
+   * In <code>WINDOWED</code> mode, what happens to the states that leave the window.
+   */
+  private static WindowedTrace.OverflowPolicy windowOverflowPolicy = WindowedTrace.OverflowPolicy.EVICT;
+  
+  /**
+   * The directory where <code>MAPPED</code> and <code>MAPPED_FOSSILIZED</code> modes 
+   * keep their files, or <code>null</code> for the default temporary directory.
+   */
+  private static File traceDirectory = null;
+  
+  /**
+   * How many bytes <code>FULL</code> and <code>DELTA</code> traces may take before 
+   * being moved to a memory-mapped file. Zero means no limit.
+   */
+  private static long heapBudget = 0;
+  
+  /**
+   * In <code>FULL</code> mode, the size of the states is estimated by encoding
+   * one of every so many states appended.
+   */
+  private static final int SIZE_SAMPLING_INTERVAL = 64;
 
   /**
    * The sequence of successive states during a simulation run (i.e., the
@@ -67,9 +142,44 @@ public class SimulationRun {
 
   /**
    * The fossilized sequence of successive states during a simulation run (i.e.,
-   * the simulation run's trace).
+   * the simulation run's trace), as computed from the complete states.
    */
   private ArrayList<SimulationFossilizedState> fossilizedTrace = new ArrayList<SimulationFossilizedState>();
+  
+  /**
+   * The fossilized sequence of successive states, stored by columns, used in 
+   * <code>FOSSILIZED</code> mode.
+   */
+  private ColumnarFossilTrace columnarTrace = new ColumnarFossilTrace();
+  
+  /**
+   * The compressed sequence of successive states during a simulation run, used
+   * in <code>DELTA</code> mode.
+   */
+  private DeltaTrace deltaTrace = null;
+  
+  /**
+   * The encoded states or fossils of the simulation run, kept in a memory-mapped file 
+   * in <code>MAPPED</code> and <code>MAPPED_FOSSILIZED</code> modes.
+   */
+  private MappedTrace mappedTrace = null;
+  
+  /**
+   * The most recent states of the simulation run, used in <code>WINDOWED</code> mode.
+   */
+  private WindowedTrace windowedTrace = null;
+  
+  /**
+   * The representative subset of the states of the simulation run, used in 
+   * sampled modes.
+   */
+  private SampledTrace sampledTrace = null;
+  
+  /**
+   * In <code>FULL</code> mode, the last encoded size of a state, used to estimate 
+   * how much memory the trace takes.
+   */
+  private long sampledStateSize = 0;
 
   /**
    * How the states should be stored.
@@ -89,8 +199,32 @@ public class SimulationRun {
     this.mode = mode;
     
     // Setup some minimal initial capacity for the traces
-    trace.ensureCapacity(1000);
-    fossilizedTrace.ensureCapacity(1000);
+    if (mode == StorageMode.FULL) {
+      trace.ensureCapacity(1000);
+    } else if (mode == StorageMode.DELTA) {
+      deltaTrace = new DeltaTrace(SimulationState.getSnapshotCodec(), keyframeInterval, materializedStates);
+    } else if (mode == StorageMode.WINDOWED) {
+      windowedTrace = new WindowedTrace(window, windowOverflowPolicy, SimulationState.getSnapshotCodec(), traceDirectory);
+    } else if (isSampled(mode)) {
+      sampledTrace = createSampledTrace(mode);
+    }
+    
+    // Files are only created when the first state is stored
+  }
+
+  /**
+   * Only <code>FULL</code>, <code>DELTA</code> and <code>WINDOWED</code> modes keep 
+   * the states themselves, as do sampled modes for the states they select. The 
+   * others keep either nothing or what they extract from the states as soon as 
+   * they are appended.
+   */
+  @Override
+  public boolean needsSnapshot(int position) {
+    if (sampledTrace != null) {
+      return sampledTrace.needsSnapshot(position);
+    }
+    
+    return mode == StorageMode.FULL || mode == StorageMode.DELTA || mode == StorageMode.WINDOWED;
   }
 
   public void append(SimulationState state) throws UndefinedPropertyException,
@@ -105,16 +239,32 @@ public class SimulationRun {
     currentPosition++;
     
     if (mode == StorageMode.FULL) {
-      trace.ensureCapacity(currentPosition + 2); 
-      //trace.set(currentPosition, state);
       trace.add(state);
       
+    } else if (mode == StorageMode.DELTA) {
+      try {
+        deltaTrace.append(state);
+      } catch (SnapshotException e) {
+        throw new SimulationRunException("Could not store the specified state.", e);
+      }
+      
+    } else if (mode == StorageMode.MAPPED) {
+      appendMapped(encode(state));
+      
+    } else if (mode == StorageMode.WINDOWED) {
+      windowedTrace.append(state);
+      
+    } else if (sampledTrace != null) {
+      sampledTrace.append(state);
+      
     } else if (mode == StorageMode.FOSSILIZED) {
-      fossilizedTrace.ensureCapacity(currentPosition + 2);
-      //fossilizedTrace.set(currentPosition, state.fossilize());
-      fossilizedTrace.add(state.fossilize());
+      columnarTrace.append(state);
+      
+    } else if (mode == StorageMode.MAPPED_FOSSILIZED) {
+      appendMapped(encode(state.fossilize()));
     }
-
+    
+    checkHeapBudget();
   }
   
 
@@ -148,16 +298,12 @@ public class SimulationRun {
     
     // Redefines the current position
     currentPosition = state.getPosition();
-    
-    // Note: it is not necessary to actually remove the states after the new current position
-    // because they will naturally be replaced as new states are appended
-    
   }
 
   /**
    * The specified state defines its on position on the simulation run. This
    * method replaces the state currently on that position with the one
-   * specified.
+   * specified, and discards the states after it, which no longer follow from it.
    * 
    * @param state
    *          The state to be put in place.
@@ -172,10 +318,37 @@ public class SimulationRun {
           "The specified state's position ("+state.getPosition() +") cannot be greater than the current position ("+currentPosition+").");
     }
 
+    int position = state.getPosition();
+
     if (mode == StorageMode.FULL) {
-      trace.set(state.getPosition(), state);
+      trace.subList(position + 1, trace.size()).clear();
+      trace.set(position, state);
+      
+    } else if (mode == StorageMode.DELTA) {
+      try {
+        deltaTrace.replace(position, state);
+      } catch (SnapshotException e) {
+        throw new SimulationRunException("Could not store the specified state.", e);
+      }
+      
+    } else if (mode == StorageMode.MAPPED) {
+      mappedTrace.truncate(position);
+      appendMapped(encode(state));
+      
+    } else if (mode == StorageMode.WINDOWED) {
+      windowedTrace.replace(position, state);
+      
+    } else if (sampledTrace != null) {
+      sampledTrace.truncate(position);
+      sampledTrace.append(state);
+      
     } else if (mode == StorageMode.FOSSILIZED) {
-      fossilizedTrace.set(state.getPosition(), state.fossilize());
+      columnarTrace.truncate(position);
+      columnarTrace.append(state);
+      
+    } else if (mode == StorageMode.MAPPED_FOSSILIZED) {
+      mappedTrace.truncate(position);
+      appendMapped(encode(state.fossilize()));
     }
   }
 
@@ -185,16 +358,88 @@ public class SimulationRun {
   public void clear() {
     trace.clear();
     fossilizedTrace.clear();
+    columnarTrace.clear();
+    
+    if (deltaTrace != null) {
+      deltaTrace.clear();
+    }
+    
+    if (mappedTrace != null) {
+      try {
+        mappedTrace.clear();
+      } catch (IOException e) {
+        // The space is given back when the trace is closed
+      }
+    }
+    
+    if (windowedTrace != null) {
+      windowedTrace.clear();
+    }
+    
+    if (sampledTrace != null) {
+      sampledTrace.clear();
+    }
+  }
+  
+  /**
+   * Releases the resources held by this run (e.g., the file of the 
+   * <code>MAPPED</code> modes, which is deleted, or the compressors of the 
+   * <code>DELTA</code> mode). The run cannot be used afterwards.
+   */
+  public void dispose() {
+    clear();
+    
+    if (deltaTrace != null) {
+      deltaTrace.dispose();
+      deltaTrace = null;
+    }
+    
+    if (mappedTrace != null) {
+      try {
+        mappedTrace.close();
+      } catch (IOException e) {
+        // Nothing else can be done, the file was deleted if possible
+      }
+      mappedTrace = null;
+    }
+    
+    if (windowedTrace != null) {
+      try {
+        windowedTrace.close();
+      } catch (IOException e) {
+        // Nothing else can be done, the file was deleted if possible
+      }
+      windowedTrace = null;
+    }
   }
 
   public List<SimulationFossilizedState> getFossilizedTrace()
       throws SimulationRunException, UndefinedPropertyException {
 
-    if (mode == StorageMode.FULL) {
+    if (mode == StorageMode.FOSSILIZED) {
+      return columnarTrace.getFossilizedStates();
+    }
+    else if (mode == StorageMode.MAPPED_FOSSILIZED) {
+      return new MappedView<SimulationFossilizedState>() {
+        @Override
+        protected SimulationFossilizedState decode(byte[] record) throws IOException, SnapshotException {
+          return SimulationFossilizedState.readFrom(new DataInputStream(new ByteArrayInputStream(record)));
+        }
+      };
+    }
+    else if (sampledTrace != null) {
+      return sampledTrace.getFossilizedStates();
+    }
+    else if (mode == StorageMode.FULL || mode == StorageMode.DELTA || mode == StorageMode.MAPPED || mode == StorageMode.WINDOWED) {
 
+      if (mode == StorageMode.WINDOWED && windowedTrace.getFirstAvailable() > 0) {
+        throw new SimulationRunException(
+            "Cannot get a fossilized trace because the states before position " + windowedTrace.getFirstAvailable() + " left the trace window.");
+      }
+      
       fossilizedTrace = new ArrayList<SimulationFossilizedState>();
 
-      Iterator<SimulationState> it = trace.iterator();
+      Iterator<SimulationState> it = getTrace().iterator();
       while (it.hasNext()) {
         fossilizedTrace.add(it.next().fossilize());
       }
@@ -207,17 +452,403 @@ public class SimulationRun {
     return fossilizedTrace;
   }
 
-  public ArrayList<SimulationState> getTrace() throws SimulationRunException {
-    if (mode != StorageMode.FULL) {
+  /**
+   * Provides direct access to the columns of a trace stored in <code>FOSSILIZED</code> 
+   * mode, which is much faster than inspecting each fossilized state.
+   * 
+   * @return The columnar trace.
+   * 
+   * @throws SimulationRunException If the run is not in <code>FOSSILIZED</code> mode.
+   */
+  public ColumnarFossilTrace getColumnarTrace() throws SimulationRunException {
+    if (mode != StorageMode.FOSSILIZED) {
       throw new SimulationRunException(
-          "Cannot get a full trace because it was not being stored.");
+          "Cannot get a columnar trace because fossilized states were not being stored.");
     }
+    
+    return columnarTrace;
+  }
 
-    return trace;
+  /**
+   * In <code>DELTA</code> and <code>MAPPED</code> modes, states are reconstructed as 
+   * they are accessed, and the states returned must not be modified. In 
+   * <code>WINDOWED</code> mode, the states that left the window and were evicted 
+   * cannot be obtained. In sampled modes, only the states selected are given 
+   * (see <code>getSampledPositions()</code>).
+   * 
+   * @return The states of the run.
+   * 
+   * @throws SimulationRunException If states were not being stored.
+   */
+  public List<SimulationState> getTrace() throws SimulationRunException {
+    if (mode == StorageMode.FULL) {
+      return trace;
+    } else if (mode == StorageMode.DELTA) {
+      return deltaTrace;
+    } else if (mode == StorageMode.WINDOWED) {
+      return windowedTrace;
+    } else if (mode == StorageMode.SAMPLED || mode == StorageMode.RESERVOIR || mode == StorageMode.CHANGES) {
+      return sampledTrace.getStates();
+    } else if (mode == StorageMode.MAPPED) {
+      return new MappedView<SimulationState>() {
+        @Override
+        protected SimulationState decode(byte[] record) throws IOException, SnapshotException {
+          return SimulationState.getSnapshotCodec().decode(record);
+        }
+      };
+    }
+    
+    throw new SimulationRunException(
+        "Cannot get a full trace because it was not being stored.");
   }
 
   public StorageMode getMode() {
     return mode;
   }
+  
+  /**
+   * 
+   * @return The positions of the states kept in sampled modes, which correspond to 
+   *         the elements of both <code>getTrace()</code> and <code>getFossilizedTrace()</code>.
+   * 
+   * @throws SimulationRunException If the run is not in a sampled mode.
+   */
+  public List<Integer> getSampledPositions() throws SimulationRunException {
+    if (sampledTrace == null) {
+      throw new SimulationRunException(
+          "Cannot get the sampled positions because states were not being sampled.");
+    }
+    
+    return sampledTrace.getPositions();
+  }
+  
+  /**
+   * Defines the randomness used, in <code>RESERVOIR</code> modes, to choose the 
+   * states that are kept.
+   */
+  public void setRandom(Random random) {
+    if (sampledTrace != null) {
+      sampledTrace.setRandom(random);
+    }
+  }
+  
+  /**
+   * 
+   * @return Whether the specified mode keeps only a representative subset of the states.
+   */
+  public static boolean isSampled(StorageMode mode) {
+    return mode == StorageMode.SAMPLED || mode == StorageMode.SAMPLED_FOSSILIZED
+        || mode == StorageMode.RESERVOIR || mode == StorageMode.RESERVOIR_FOSSILIZED
+        || mode == StorageMode.CHANGES || mode == StorageMode.CHANGES_FOSSILIZED;
+  }
+  
+  private static SampledTrace createSampledTrace(StorageMode mode) {
+    SampledTrace.Selection selection;
+    if (mode == StorageMode.SAMPLED || mode == StorageMode.SAMPLED_FOSSILIZED) {
+      selection = SampledTrace.Selection.INTERVAL;
+    } else if (mode == StorageMode.RESERVOIR || mode == StorageMode.RESERVOIR_FOSSILIZED) {
+      selection = SampledTrace.Selection.RESERVOIR;
+    } else {
+      selection = SampledTrace.Selection.CHANGES;
+    }
+    
+    boolean fossilized = mode == StorageMode.SAMPLED_FOSSILIZED || mode == StorageMode.RESERVOIR_FOSSILIZED 
+        || mode == StorageMode.CHANGES_FOSSILIZED;
+    
+    return new SampledTrace(selection, fossilized, sampleInterval, sampleCapacity);
+  }
+  
+  /**
+   * 
+   * @return The mode used by those who need the complete states of the trace.
+   */
+  public static StorageMode getTraceStorageMode() {
+    return traceStorageMode;
+  }
+
+  /**
+   * Defines the mode used by those who need the complete states of the trace.
+   * 
+   * @param mode Either <code>FULL</code>, <code>DELTA</code>, <code>MAPPED</code> or 
+   *             <code>WINDOWED</code>.
+   */
+  public static void setTraceStorageMode(StorageMode mode) {
+    Assert.notNull(mode);
+    if (mode != StorageMode.FULL && mode != StorageMode.DELTA && mode != StorageMode.MAPPED && mode != StorageMode.WINDOWED) {
+      throw new IllegalArgumentException("The trace storage mode must keep complete states.");
+    }
+    
+    traceStorageMode = mode;
+  }
+
+  /**
+   * 
+   * @return The mode used by standard simulations.
+   */
+  public static StorageMode getSampleStorageMode() {
+    return sampleStorageMode;
+  }
+
+  /**
+   * Defines the mode used by standard simulations.
+   * 
+   * @param mode Either one of the sampled modes or <code>NONE</code>.
+   */
+  public static void setSampleStorageMode(StorageMode mode) {
+    Assert.notNull(mode);
+    if (!isSampled(mode) && mode != StorageMode.NONE) {
+      throw new IllegalArgumentException("The sample storage mode must keep only some of the states.");
+    }
+    
+    sampleStorageMode = mode;
+  }
+
+  public static int getSampleInterval() {
+    return sampleInterval;
+  }
+
+  /**
+   * Defines, for runs created afterwards in <code>SAMPLED</code> and <code>CHANGES</code> 
+   * modes, the initial number of positions or changes between samples.
+   */
+  public static void setSampleInterval(int interval) {
+    Assert.nonNegativeNonZero(interval);
+    
+    sampleInterval = interval;
+  }
+
+  public static int getSampleCapacity() {
+    return sampleCapacity;
+  }
+
+  /**
+   * Defines, for runs created afterwards in sampled modes, how many states may be kept.
+   */
+  public static void setSampleCapacity(int states) {
+    Assert.nonNegativeNonZero(states);
+    
+    sampleCapacity = states;
+  }
+
+  public static int getKeyframeInterval() {
+    return keyframeInterval;
+  }
+
+  /**
+   * Defines, for runs created afterwards in <code>DELTA</code> mode, how many states
+   * there are from one keyframe to the next.
+   */
+  public static void setKeyframeInterval(int interval) {
+    Assert.nonNegativeNonZero(interval);
+    
+    keyframeInterval = interval;
+  }
+
+  public static int getMaterializedStates() {
+    return materializedStates;
+  }
+
+  /**
+   * Defines, for runs created afterwards in <code>DELTA</code> mode, how many 
+   * reconstructed states are kept in memory.
+   */
+  public static void setMaterializedStates(int states) {
+    Assert.nonNegative(states);
+    
+    materializedStates = states;
+  }
+
+  public static int getWindow() {
+    return window;
+  }
+
+  /**
+   * Defines, for runs created afterwards in <code>WINDOWED</code> mode, how many 
+   * of the most recent states are kept in memory. Searches cannot go back further 
+   * than that, unless the states that leave the window are spilled.
+   */
+  public static void setWindow(int states) {
+    Assert.nonNegativeNonZero(states);
+    
+    window = states;
+  }
+
+  public static WindowedTrace.OverflowPolicy getWindowOverflowPolicy() {
+    return windowOverflowPolicy;
+  }
+
+  /**
+   * Defines, for runs created afterwards in <code>WINDOWED</code> mode, what 
+   * happens to the states that leave the window.
+   */
+  public static void setWindowOverflowPolicy(WindowedTrace.OverflowPolicy policy) {
+    Assert.notNull(policy);
+    
+    windowOverflowPolicy = policy;
+  }
+
+  public static File getTraceDirectory() {
+    return traceDirectory;
+  }
+
+  /**
+   * Defines where the files of the <code>MAPPED</code> and <code>MAPPED_FOSSILIZED</code> 
+   * modes, as well as the states spilled in <code>WINDOWED</code> mode, are created.
+   * 
+   * @param directory The directory, or <code>null</code> for the default temporary 
+   *                  directory.
+   */
+  public static void setTraceDirectory(File directory) {
+    traceDirectory = directory;
+  }
+
+  public static long getHeapBudget() {
+    return heapBudget;
+  }
+
+  /**
+   * Defines how many bytes <code>FULL</code> and <code>DELTA</code> traces may take. 
+   * Traces estimated to take more are moved to a memory-mapped file, as if they were 
+   * in <code>MAPPED</code> mode from the beginning.
+   * 
+   * @param bytes The budget, or zero for no limit.
+   */
+  public static void setHeapBudget(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("A non-negative parameter must be specified.");
+    }
+    
+    heapBudget = bytes;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Memory-mapped storage
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private MappedTrace createMappedTrace() throws SimulationRunException {
+    try {
+      return new MappedTrace(traceDirectory, MappedTrace.DEFAULT_SEGMENT_SIZE);
+    } catch (IOException e) {
+      throw new SimulationRunException("Could not create the file to store the simulation run.", e);
+    }
+  }
+  
+  private void appendMapped(byte[] record) throws SimulationRunException {
+    if (mappedTrace == null) {
+      mappedTrace = createMappedTrace();
+    }
+    
+    try {
+      mappedTrace.append(record);
+    } catch (IOException e) {
+      throw new SimulationRunException("Could not store the specified state.", e);
+    }
+  }
+  
+  private byte[] encode(SimulationState state) throws SimulationRunException {
+    try {
+      return SimulationState.getSnapshotCodec().encode(state);
+    } catch (SnapshotException e) {
+      throw new SimulationRunException("Could not encode the specified state.", e);
+    }
+  }
+  
+  private byte[] encode(SimulationFossilizedState fossil) throws SimulationRunException {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      fossil.writeTo(out);
+      out.flush();
+      
+      return bytes.toByteArray();
+    
+    } catch (IOException e) {
+      throw new SimulationRunException("Could not encode the specified fossilized state.", e);
+    }
+  }
+  
+  /**
+   * Moves the trace to a memory-mapped file if it is estimated to take more 
+   * memory than allowed.
+   */
+  private void checkHeapBudget() throws SimulationRunException {
+    if (heapBudget <= 0) {
+      return;
+    }
+    
+    long estimate = 0;
+    
+    if (mode == StorageMode.FULL) {
+      if (trace.size() % SIZE_SAMPLING_INTERVAL == 1) {
+        sampledStateSize = encode(trace.get(trace.size() - 1)).length;
+      }
+      estimate = sampledStateSize * trace.size();
+      
+    } else if (mode == StorageMode.DELTA) {
+      estimate = deltaTrace.getEncodedSize();
+    }
+    
+    if (estimate > heapBudget) {
+      spill();
+    }
+  }
+  
+  /**
+   * Moves the states kept in memory to a memory-mapped file, switching to 
+   * <code>MAPPED</code> mode.
+   */
+  private void spill() throws SimulationRunException {
+    MappedTrace mapped = createMappedTrace();
+    
+    try {
+      for (SimulationState s : getTrace()) {
+        mapped.append(encode(s));
+      }
+      
+    } catch (IOException e) {
+      throw new SimulationRunException("Could not store the simulation run in a file.", e);
+    }
+    
+    SimulatorUI.instance().getMessenger().printDebugMsg("The simulation run exceeded the heap budget and was moved to " + mapped.getFile() + ".", Messenger.NORMAL_MSG);
+    
+    trace = new ArrayList<SimulationState>();
+    if (deltaTrace != null) {
+      deltaTrace.dispose();
+      deltaTrace = null;
+    }
+    mappedTrace = mapped;
+    mode = StorageMode.MAPPED;
+  }
+  
+  /**
+   * A view of the records kept in the memory-mapped file, decoded as they are 
+   * accessed.
+   */
+  private abstract class MappedView<T> extends AbstractList<T> {
+
+    @Override
+    public T get(int index) {
+      if (mappedTrace == null) {
+        throw new IndexOutOfBoundsException("Position: " + index + ", size: 0");
+      }
+      
+      try {
+        return decode(mappedTrace.get(index));
+        
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not read position " + index + " of the simulation run.", e);
+      } catch (SnapshotException e) {
+        throw new IllegalStateException("Could not decode position " + index + " of the simulation run.", e);
+      }
+    }
+
+    @Override
+    public int size() {
+      return (mappedTrace != null) ? mappedTrace.size() : 0;
+    }
+    
+    protected abstract T decode(byte[] record) throws IOException, SnapshotException;
+  }
 
 }
@@ -31,17 +31,34 @@
  ******************************************************************************/
 package simulator.engine.runner;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import simulator.agent.AbstractAgent;
 import simulator.agent.IAgentControl;
+import simulator.agent.ISynchronousStepping;
+import simulator.agent.SynchronousStepping;
+import simulator.agent.StimulationBuffer;
 import simulator.agent.relation.IRelation;
 import simulator.analysis.IProperty;
 import simulator.analysis.PropertyBearerWrapper;
 import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.PropertyValueCache;
 import simulator.engine.SimulationState;
+import simulator.engine.SnapshotException;
 import simulator.engine.runner.SimulationRun.StorageMode;
 import simulator.environment.IEnvironment;
 import simulator.ui.Messenger;
 import simulator.ui.SimulatorUI;
 import simulator.util.Assert;
+import simulator.util.RandomStream;
 
 /**
  * Implements the mechanisms necessary for controlling the execution of the simulation. Simulation strategies
@@ -51,6 +68,18 @@ import simulator.util.Assert;
  */
 public class SimulationRunner {
   
+  /**
+   * How many threads may be used to prepare the steps of agents that implement 
+   * <code>ISynchronousStepping</code>. If 1, all agents are stepped sequentially.
+   */
+  private static int agentThreads = 1;
+  
+  /**
+   * The workers that prepare the steps of agents for this runner. Created only 
+   * when needed, and released by <code>close()</code>.
+   */
+  private ExecutorService agentPool = null;
+  
   /**
    * The simulation's initial state.
    */
@@ -65,6 +94,23 @@ public class SimulationRunner {
    * Simulation's current run.
    */
   private SimulationRun currentRun;
+  
+  /**
+   * The last snapshot taken of the current state, with which the next snapshot
+   * may share unchanged components.
+   */
+  private SimulationState lastSnapshot;
+  
+  /**
+   * Whether <code>lastSnapshot</code> is a snapshot of the current state as it is,
+   * in which case it may be reused.
+   */
+  private boolean snapshotIsCurrent = false;
+  
+  /**
+   * Sinks that receive the states reached, besides the current run.
+   */
+  private List<TraceSink> sinks = new ArrayList<TraceSink>();
 
   /**
    * The desired execution mode.
@@ -77,6 +123,23 @@ public class SimulationRunner {
    * but no simulation step has been given yet..
    */
   private int currentPosition = -1;
+  
+  /**
+   * The stream from which the randomness of each run is split.
+   */
+  private RandomStream random = new RandomStream(0);
+  
+  /**
+   * How many runs have been setup since the stream was defined. Each run
+   * gets the stream split with its index.
+   */
+  private int runs = 0;
+  
+  /**
+   * Decides which agents of the current state must be stepped, or <code>null</code>
+   * if all of them are to be stepped at every position.
+   */
+  private ActivityScheduler scheduler = null;
 
   
   public SimulationRunner(SimulationState initialState){
@@ -113,6 +176,21 @@ public class SimulationRunner {
     
     // Simulation loop
     for(int i = 0; i < steps; i++){
+      
+      // If nothing is going to happen for a while, jump directly to when it does
+      if(currentPosition > -1 && scheduler != null && currentState.getEnvironment().isQuiescent()){
+        int idle = Math.min(scheduler.nextActivation() - currentPosition - 1, steps - i);
+        
+        if(idle > 0){
+          skipSteps(idle);
+          i = i + idle;
+          
+          if(i >= steps){
+            break;
+          }
+        }
+      }
+      
       runStep();
     }
     
@@ -133,6 +211,8 @@ public class SimulationRunner {
       setupRun();
     }
     
+    snapshotIsCurrent = false;
+    
     // Increments the current position
     currentPosition++;
     currentState.setPosition(currentPosition);
@@ -144,11 +224,28 @@ public class SimulationRunner {
     currentState.getEnvironment().step(executionMode);
     
     
-    // Supervise agents
-    for(IAgentControl ac: currentState.getAgentControls()){
-      ac.step();
-      
+    // Supervise agents (either all of them or only those with something to do)
+    List<IAgentControl> acs = currentState.getAgentControls();
+    if(scheduler != null){
+      acs = scheduler.beginStep(currentPosition);
+    }
+    
+    if(agentThreads > 1){
+      stepAgentsSynchronously(acs);
+    }
+    else{
+      for(IAgentControl ac: acs){
+        ac.step();
+        markChanged(ac);
+      }
+    }
+    
+    if(scheduler != null){
+      scheduler.endStep(acs);
     }
+    
+    // Whatever was calculated about properties before the agents acted is outdated
+    currentState.getPropertyValues().invalidate();
  
     
     // Supervise relations
@@ -157,23 +254,293 @@ public class SimulationRunner {
     }
 
     
-    // Supervise property bearers
-    for(PropertyBearerWrapper pbw: currentState.getPropertyBearerWrappers()){
-
-      String msg = "Properties (for  " + pbw.getName() + "): ";
-      for(IProperty p: pbw.getProperties()){
+    // Supervise property bearers. For now, this only means showing their values, 
+    // so there is nothing to do unless they are going to be shown.
+    if(SimulatorUI.instance().getMessenger().isDebugEnabled(Messenger.IMPORTANT_MSG)){
+      PropertyValueCache values = currentState.getPropertyValues();
+      
+      for(PropertyBearerWrapper pbw: currentState.getPropertyBearerWrappers()){
+  
+        StringBuilder msg = new StringBuilder("Properties (for  " + pbw.getName() + "): ");
+        for(IProperty p: pbw.getProperties()){
+          
+          // TODO represent the property somehow if required
+          
+          msg.append(" [").append(p.getName()).append(" = ").append(values.getString(p, pbw)).append("]");
+        }
         
-        // TODO represent the property somehow if required
+        SimulatorUI.instance().getMessenger().printDebugMsg(msg.toString(), Messenger.IMPORTANT_MSG);
+      }
+    }
+
+    // Store current state after the modifications
+    publish();
+    
+  }
+  
+  /**
+   * Steps the agents in two phases. First, the agents that implement 
+   * <code>ISynchronousStepping</code>, or whose classes were audited (see 
+   * <code>SynchronousStepping</code>), prepare their steps in parallel, all of them 
+   * reading the state reached in the previous step. Then, in the order of the 
+   * simulation state, these agents are committed and the others are stepped as usual.
+   * The stimuli sent while preparing are held back, and delivered in that same 
+   * order, right after the agent that sent them is committed.
+   * 
+   * @param acs The agents to be stepped.
+   * 
+   * @throws SimulationRunException If some agent fails to prepare its step.
+   */
+  private void stepAgentsSynchronously(List<IAgentControl> acs) throws SimulationRunException{
+    
+    // Phase 1: prepare, in parallel
+    ISynchronousStepping[] steppings = new ISynchronousStepping[acs.size()];
+    final List<ISynchronousStepping> synchronous = new ArrayList<ISynchronousStepping>(acs.size());
+    int k = 0;
+    for(IAgentControl ac: acs){
+      steppings[k] = SynchronousStepping.of(ac);
+      if(steppings[k] != null){
+        synchronous.add(steppings[k]);
+      }
+      k++;
+    }
+    
+    // The stimuli sent by each of these agents while preparing its step
+    final StimulationBuffer[] buffers = new StimulationBuffer[synchronous.size()];
+    
+    if(!synchronous.isEmpty()){
+      
+      // Agents are divided in contiguous chunks, one per thread, to avoid creating
+      // a task for each of them
+      int chunks = Math.min(agentThreads, synchronous.size());
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+      for(int i = 0; i < chunks; i++){
+        final int begin = (int) ((long) synchronous.size() * i / chunks);
+        final int end = (int) ((long) synchronous.size() * (i + 1) / chunks);
         
-        msg = msg + " [" + p.getName() + " = " + p.getValueAsString(pbw) + "]";
+        tasks.add(new Callable<Object>() {
+          public Object call() {
+            for(int j = begin; j < end; j++){
+              StimulationBuffer.open();
+              try{
+                synchronous.get(j).prepareStep();
+              }
+              finally{
+                buffers[j] = StimulationBuffer.close();
+              }
+            }
+            
+            return null;
+          }
+        });
       }
       
-      SimulatorUI.instance().getMessenger().printDebugMsg(msg, Messenger.IMPORTANT_MSG);
+      try{
+        for(Future<Object> f: getAgentPool().invokeAll(tasks)){
+          f.get();
+        }
+      }
+      catch (ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException){
+          throw (RuntimeException) e.getCause();
+        }
+        else if(e.getCause() instanceof Error){
+          throw (Error) e.getCause();
+        }
+        
+        throw new SimulationRunException("Could not prepare the step of an agent.", e.getCause());
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SimulationRunException("Interrupted while preparing the step of agents.", e);
+      }
     }
+    
+    // Phase 2: commit, sequentially and in a fixed order, delivering the stimuli
+    // that each agent sent as if it had been stepped at this point
+    k = 0;
+    int j = 0;
+    for(IAgentControl ac: acs){
+      if(steppings[k] != null){
+        steppings[k].commitStep();
+        buffers[j].flush();
+        j++;
+      }
+      else{
+        ac.step();
+      }
+      markChanged(ac);
+      k++;
+    }
+  }
+  
+  /**
+   * Informs an agent that has just been stepped that it might have changed, 
+   * if it keeps track of its changes (see <code>AbstractAgent.markChanged()</code>).
+   */
+  private static void markChanged(IAgentControl ac){
+    if(ac instanceof AbstractAgent){
+      ((AbstractAgent) ac).markChanged();
+    }
+  }
+  
+  private ExecutorService getAgentPool(){
+    if(agentPool == null){
+      agentPool = Executors.newFixedThreadPool(agentThreads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "agent-stepper");
+          
+          // Must not prevent the simulator from exiting
+          t.setDaemon(true);
+          
+          return t;
+        }
+      });
+    }
+    
+    return agentPool;
+  }
+  
+  /**
+   * Defines the stream from which the randomness of the following runs is
+   * to be split. The first of these runs gets the stream split with 0, the 
+   * second, with 1, and so on.
+   * 
+   * @param random The stream.
+   */
+  public void setRandomStream(RandomStream random){
+    Assert.notNull(random);
+    
+    this.random = random;
+    this.runs = 0;
+  }
+  
+  public static int getAgentThreads() {
+    return agentThreads;
+  }
 
-    // Store current state after the modifications
-    currentRun.append((SimulationState) currentState.clone());
+  /**
+   * Defines how many threads may be used to prepare the steps of agents that implement
+   * <code>ISynchronousStepping</code>. If 1, the default, all agents are stepped 
+   * sequentially, as if none implemented it.
+   * 
+   * @param threads The number of threads.
+   */
+  public static void setAgentThreads(int threads) {
+    Assert.nonNegativeNonZero(threads);
     
+    agentThreads = threads;
+  }
+  
+  /**
+   * Advances the simulation through steps in which neither the environment nor
+   * any agent has something to do. Since traces must be contiguous, the (unchanged) 
+   * state is still published at each position. The environment's <code>step()</code> 
+   * is not called either, which is why it must be quiescent, in the sense of 
+   * <code>IEnvironment.isQuiescent()</code>.
+   * 
+   * @param steps How many steps to skip.
+   */
+  private void skipSteps(int steps) throws UndefinedPropertyException, SimulationRunException{
+    for(int i = 0; i < steps; i++){
+      snapshotIsCurrent = false;
+      
+      currentPosition++;
+      currentState.setPosition(currentPosition);
+      
+      publish();
+    }
+  }
+  
+  /**
+   * Builds a scheduler for the current state, if useful, and makes sure it is
+   * informed of the stimuli delivered to agents.
+   */
+  private void setupScheduler(){
+    if(ActivityScheduler.isUseful(currentState)){
+      scheduler = new ActivityScheduler(currentState);
+    }
+    else{
+      scheduler = null;
+    }
+    
+    currentState.getEnvironment().setStimulationListener(scheduler);
+  }
+  
+  /**
+   * Gives the current state to the current run and to the other sinks, taking
+   * a snapshot only if some of them needs one.
+   */
+  private void publish() throws UndefinedPropertyException, SimulationRunException{
+    publish(currentRun);
+    
+    for(TraceSink sink: sinks){
+      publish(sink);
+    }
+  }
+  
+  private void publish(TraceSink sink) throws UndefinedPropertyException, SimulationRunException{
+    if(sink.needsSnapshot(currentState.getPosition())){
+      sink.append(takeSnapshot());
+    }
+    else{
+      sink.append(currentState);
+    }
+  }
+  
+  /**
+   * Takes a read-only snapshot of the current state, sharing with the previous 
+   * snapshot whatever did not change since then.
+   * 
+   * @return The snapshot.
+   * 
+   * @throws SimulationRunException If the current state cannot be copied.
+   */
+  public SimulationState takeSnapshot() throws SimulationRunException{
+    
+    // Nothing happened since the last snapshot
+    if(snapshotIsCurrent){
+      return lastSnapshot;
+    }
+    
+    try {
+      lastSnapshot = currentState.snapshot(lastSnapshot);
+      snapshotIsCurrent = true;
+    
+    } catch (SnapshotException e) {
+      throw new SimulationRunException("Could not take a snapshot of the current state.", e);
+    }
+    
+    return lastSnapshot;
+  }
+  
+  /**
+   * Registers a sink to receive the states reached from now on, besides the 
+   * current run.
+   * 
+   * @param sink The sink.
+   */
+  public void addTraceSink(TraceSink sink){
+    Assert.notNull(sink);
+    
+    sinks.add(sink);
+  }
+  
+  /**
+   * Stops giving states to the specified sink.
+   * 
+   * @param sink The sink.
+   */
+  public void removeTraceSink(TraceSink sink){
+    sinks.remove(sink);
+  }
+  
+  /**
+   * 
+   * @return The sinks that receive the states reached, besides the current run.
+   */
+  public List<TraceSink> getTraceSinks(){
+    return Collections.unmodifiableList(sinks);
   }
   
   /**
@@ -200,6 +567,9 @@ public class SimulationRunner {
     Assert.notNull(executionMode);
     
     // We need a new run
+    if(currentRun != null){
+      currentRun.dispose();
+    }
     currentRun = new SimulationRun(storageMode);
     
     // Define how to execute the simulation
@@ -208,9 +578,19 @@ public class SimulationRunner {
     
     // Clone the initial state to become the current one
     currentState = (SimulationState) initialState.clone();
+    RandomStream runRandom = random.split(runs);
+    currentState.getEnvironment().setRandomStream(runRandom);
+    currentRun.setRandom(runRandom.split("trace"));
+    runs++;
+    setupScheduler();
+    lastSnapshot = null;
+    snapshotIsCurrent = false;
     
-    // Store a initial state clone as well
-    currentRun.append((SimulationState) initialState.clone());
+    // Publish the initial state as well
+    for(TraceSink sink: sinks){
+      sink.clear();
+    }
+    publish();
     
     
     // Define that the initial state has been properly set by specifying 
@@ -230,11 +610,26 @@ public class SimulationRunner {
    */
   public void goToState(SimulationState state) throws UndefinedPropertyException, SimulationRunException{
     
+    // The run keeps the (immutable) state given, not the one to be simulated. Since 
+    // the current state will be equal to it, the next snapshot may share with it. The run
+    // goes first, since it refuses positions it cannot reach, and the current state 
+    // must not be replaced in that case.
+    currentRun.restartFrom(state);
+    
     // Clone the state and make it the current one
     currentState = (SimulationState) state.clone();
-
-    currentRun.restartFrom(currentState);
+    
+    for(TraceSink sink: sinks){
+      sink.restartFrom(state);
+    }
+    
+    lastSnapshot = state;
+    snapshotIsCurrent = true;
+    currentState.resetChangeTracking();
+    
     currentPosition = currentState.getPosition();
+    
+    setupScheduler();
   }
   
   
@@ -252,7 +647,33 @@ public class SimulationRunner {
     
     setupRun(currentRun.getMode(), executionMode);
   }
+
+  /**
+   * Releases the resources held by the current run (e.g., its files), which is
+   * replaced by an empty one in the same storage mode, and the workers that 
+   * prepare the steps of agents. The runner may still be setup again afterwards.
+   */
+  public void close(){
+    if(currentRun != null){
+      StorageMode mode = currentRun.getMode();
+      currentRun.dispose();
+      currentRun = new SimulationRun(mode);
+    }
+    
+    releaseAgentPool();
+  }
   
+  /**
+   * Stops the workers that prepare the steps of agents, if any, keeping the 
+   * current run. They are created again if the runner is used afterwards.
+   */
+  public void releaseAgentPool(){
+    if(agentPool != null){
+      agentPool.shutdown();
+      agentPool = null;
+    }
+  }
+
   
   /**
    *
@@ -264,16 +685,45 @@ public class SimulationRunner {
 
 
   /**
+   * Since the state returned may be modified, the last snapshot taken is no longer 
+   * assumed to correspond to it.
+   * 
    * @return  The current state of the simulation.
    */
   public SimulationState getCurrentState(){
+    snapshotIsCurrent = false;
+    
     return currentState;
   }
   
+  /**
+   * 
+   * @return The current simulation run.
+   */
+  public SimulationRun getCurrentRun(){
+    return currentRun;
+  }
+  
+  /**
+   * Since the environment returned may be modified, the last snapshot taken is no 
+   * longer assumed to correspond to the current state.
+   * 
+   * @return The environment of the current state.
+   */
   public IEnvironment getCurrentEnvironment(){
+    snapshotIsCurrent = false;
+    
     return currentState.getEnvironment(); 
   }
   
+  /**
+   * 
+   * @return The position of the current state.
+   */
+  public int getCurrentPosition(){
+    return currentPosition;
+  }
+  
   public IEnvironment getInitialEnvironment(){
     return initialState.getEnvironment();
   }
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.SimulationState;
+
+/**
+ * Receives the states reached by a <code>SimulationRunner</code>, in order to 
+ * store them, record them or analyze them. The runner only takes snapshots of its 
+ * current state (which is expensive) if some sink actually needs to keep one.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public interface TraceSink {
+  
+  /**
+   * Informs whether the sink will need to keep the state reached at the specified
+   * position. If so, it receives a read-only snapshot; otherwise, it receives the 
+   * runner's current state itself, which it must neither modify nor keep.
+   * 
+   * @param position The position of the state that is about to be published.
+   * 
+   * @return <code>true</code> if a snapshot is required; <code>false</code> otherwise.
+   */
+  public boolean needsSnapshot(int position);
+  
+  /**
+   * Receives the next state of the simulation run.
+   * 
+   * @param state The state, which is a snapshot only if <code>needsSnapshot()</code>
+   *              required it.
+   *              
+   * @throws UndefinedPropertyException
+   * @throws SimulationRunException
+   */
+  public void append(SimulationState state) throws UndefinedPropertyException, SimulationRunException;
+  
+  /**
+   * Informs that the simulation run went back to the specified state, which is 
+   * always a read-only snapshot. 
+   * 
+   * @param state The state that became the current one.
+   * 
+   * @throws UndefinedPropertyException
+   * @throws SimulationRunException
+   */
+  public void restartFrom(SimulationState state) throws UndefinedPropertyException, SimulationRunException;
+  
+  /**
+   * Informs that a new simulation run is about to begin.
+   */
+  public void clear();
+  
+  /**
+   * Releases the resources held by the sink. It cannot be used afterwards.
+   */
+  public void dispose();
+
+}
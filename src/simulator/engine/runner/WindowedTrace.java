@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import simulator.engine.SimulationState;
+import simulator.engine.SnapshotCodec;
+import simulator.engine.SnapshotException;
+import simulator.util.Assert;
+
+/**
+ * A trace of simulation states that keeps in memory only the most recent ones, 
+ * in a ring buffer allocated beforehand. Searches usually go back only a few steps, 
+ * so this suffices for them while memory remains constant no matter how deep they go. 
+ * Older states are either discarded or spilled to a memory-mapped file, according to
+ * the overflow policy. Positions in the list correspond to positions in the run,
+ * but discarded states can no longer be obtained nor returned to.
+ * 
+ * The states obtained from the trace must not be modified.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class WindowedTrace extends AbstractList<SimulationState> {
+  
+  /**
+   * What happens to the states that leave the window.
+   */
+  public enum OverflowPolicy {
+    /** They are discarded. */
+    EVICT,
+    
+    /** They are encoded and kept in a memory-mapped file. */
+    SPILL
+  }
+  
+  /**
+   * The most recent states. The state at position p is at index p % ring.length.
+   */
+  private SimulationState[] ring;
+  
+  /**
+   * The first position still in the ring.
+   */
+  private int first = 0;
+  
+  /**
+   * The number of positions stored, either in the ring or before it.
+   */
+  private int size = 0;
+  
+  private OverflowPolicy policy;
+  
+  /**
+   * The codec used to encode spilled states.
+   */
+  private SnapshotCodec codec;
+  
+  /**
+   * Where spilled states are created, or <code>null</code> for the default 
+   * temporary directory.
+   */
+  private File directory;
+  
+  /**
+   * The states before <code>first</code>, under the <code>SPILL</code> policy.
+   * It is created when first needed.
+   */
+  private MappedTrace spilled = null;
+  
+  
+  public WindowedTrace(int window, OverflowPolicy policy, SnapshotCodec codec, File directory){
+    Assert.nonNegativeNonZero(window);
+    Assert.notNull(policy);
+    Assert.notNull(codec);
+    
+    this.ring = new SimulationState[window];
+    this.policy = policy;
+    this.codec = codec;
+    this.directory = directory;
+  }
+  
+  /**
+   * Appends a state to the trace, making the oldest one leave the window if it is full.
+   * 
+   * @param state The state to append. It must not be modified afterwards.
+   * 
+   * @throws SimulationRunException If the oldest state cannot be spilled.
+   */
+  public void append(SimulationState state) throws SimulationRunException{
+    Assert.notNull(state);
+    
+    if(size - first == ring.length){
+      evict();
+    }
+    
+    ring[size % ring.length] = state;
+    size++;
+  }
+  
+  /**
+   * Replaces the state at the specified position, discarding every state after it, 
+   * since they no longer follow from it.
+   * 
+   * @param position The position of the state to replace.
+   * @param state The new state.
+   * 
+   * @throws SimulationRunException If the position has left the window and was
+   *                                evicted, or if it cannot be restored from the file.
+   */
+  public void replace(int position, SimulationState state) throws SimulationRunException{
+    Assert.isInInterval(position, 0, size);
+    
+    if(position >= first){
+      truncateRing(position);
+    }
+    else if(policy == OverflowPolicy.SPILL){
+      // The window restarts at the position, so the states in it are no longer needed
+      Arrays.fill(ring, null);
+      spilled.truncate(position);
+      first = position;
+      size = position;
+    }
+    else{
+      throw new SimulationRunException("Cannot go back to position " + position + ", since the trace window only keeps positions " 
+          + first + " to " + (size - 1) + ". Either enlarge the window or spill the states that leave it.");
+    }
+    
+    append(state);
+  }
+  
+  /**
+   * Discards the states in the ring from the specified position on.
+   */
+  private void truncateRing(int position){
+    for(int p = position; p < size; p++){
+      ring[p % ring.length] = null;
+    }
+    
+    size = position;
+  }
+  
+  /**
+   * Makes the oldest state in the ring leave the window.
+   */
+  private void evict() throws SimulationRunException{
+    int i = first % ring.length;
+    
+    if(policy == OverflowPolicy.SPILL){
+      try{
+        if(spilled == null){
+          spilled = new MappedTrace(directory, MappedTrace.DEFAULT_SEGMENT_SIZE);
+        }
+        
+        spilled.append(codec.encode(ring[i]));
+        
+      } catch(IOException e){
+        throw new SimulationRunException("Could not spill the simulation run to a file.", e);
+      } catch(SnapshotException e){
+        throw new SimulationRunException("Could not encode a state leaving the trace window.", e);
+      }
+    }
+    
+    ring[i] = null;
+    first++;
+  }
+  
+  @Override
+  public void clear() {
+    Arrays.fill(ring, null);
+    first = 0;
+    size = 0;
+    
+    if(spilled != null){
+      try {
+        spilled.clear();
+      } catch (IOException e) {
+        // The space is given back when the trace is closed
+      }
+    }
+  }
+  
+  /**
+   * Deletes the file of spilled states, if any. The trace cannot be used afterwards.
+   */
+  public void close() throws IOException{
+    clear();
+    
+    if(spilled != null){
+      spilled.close();
+      spilled = null;
+    }
+  }
+  
+  /**
+   * Returns the state at the specified position, decoding it if it was spilled.
+   * 
+   * @throws IllegalStateException If the state was evicted or cannot be decoded.
+   */
+  @Override
+  public SimulationState get(int position) {
+    if(position < 0 || position >= size){
+      throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+    }
+    
+    if(position >= first){
+      return ring[position % ring.length];
+    }
+    
+    if(spilled == null){
+      throw new IllegalStateException("The state at position " + position + " left the trace window and was evicted.");
+    }
+    
+    try {
+      return codec.decode(spilled.get(position));
+      
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read position " + position + " of the simulation run.", e);
+    } catch (SnapshotException e) {
+      throw new IllegalStateException("Could not decode position " + position + " of the simulation run.", e);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+  
+  /**
+   * 
+   * @return The first position whose state can still be obtained.
+   */
+  public int getFirstAvailable(){
+    return (policy == OverflowPolicy.SPILL) ? 0 : first;
+  }
+  
+  /**
+   * 
+   * @return How many states fit in the window.
+   */
+  public int getWindow(){
+    return ring.length;
+  }
+
+}
@@ -33,6 +33,12 @@ package simulator.engine.strategy;
 
 import simulator.analysis.UndefinedPropertyException;
 import simulator.components.ComponentInstantiationException;
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.alevos.ATSShuffling;
+import simulator.engine.alevos.IConcurrent;
+import simulator.engine.alevos.IRandomized;
+import simulator.engine.alevos.PruningRandomWalkExploration;
+import simulator.engine.alevos.SearchCanceledException;
 import simulator.engine.runner.SimulationRunException;
 import simulator.environment.IALEVOSEnvironment;
 import simulator.environment.IEnvironment;
@@ -68,8 +74,11 @@ public class ALEVOSRandomExploration extends ALEVOSSimulationStrategy {
    * 
    * @param runs The maximum number of simulation runs to be executed.
    * @param iterationsPerRun The maximum number of iterations per simulation run.
+   * @param stateSpace Where to keep track of the configurations visited, so that 
+   *                   revisits are avoided. If <code>null</code>, the walks are 
+   *                   completely random.
    */
-  public ALEVOSRandomExploration(int runs, int iterationsPerRun, String group) {
+  public ALEVOSRandomExploration(int runs, int iterationsPerRun, String group, SimulationStateSpace stateSpace) {
     super(group);
     Assert.nonNegativeNonZero(runs);
     Assert.nonNegativeNonZero(iterationsPerRun);
@@ -77,7 +86,13 @@ public class ALEVOSRandomExploration extends ALEVOSSimulationStrategy {
     this.name = "ALEVOS Random Exploration";
     this.runs = runs;
     this.iterationsPerRun = iterationsPerRun;
-    this.rwe = new RandomWalkExploration(runs, iterationsPerRun);
+    
+    if(stateSpace != null){
+      this.rwe = new PruningRandomWalkExploration(runs, iterationsPerRun, stateSpace);
+    }
+    else{
+      this.rwe = new RandomWalkExploration(runs, iterationsPerRun);
+    }
   }
   
   
@@ -89,8 +104,34 @@ public class ALEVOSRandomExploration extends ALEVOSSimulationStrategy {
     IEnvironment environment = this.runner.getInitialEnvironment();
     AnnotatedTransitionSystem ats = ((IALEVOSEnvironment) environment).getATS();
     
+    if(rwe instanceof IRandomized){
+      ((IRandomized) rwe).setRandom(random.split("search"));
+    }
+    
     try {
-      rwe.explore(ats, simulatorConnector);
+      if(rwe instanceof IConcurrent){
+        rwe.explore(ats, simulatorConnector);
+      }
+      else{
+        // Other strategies might be using ALEVOS at the same time, so the 
+        // whole exploration is serialized with theirs
+        synchronized(IConcurrent.ALEVOS_LOCK){
+          ATSShuffling.beginSerial();
+          try{
+            rwe.explore(ats, simulatorConnector);
+          }
+          finally{
+            ATSShuffling.endSerial();
+          }
+        }
+      }
+      
+    } catch (SearchCanceledException e) {
+      
+      // Another strategy of the group has finished it
+      if(!isGroupFinished(group)){
+        throw new SimulationRunException("The exploration was canceled.", e);
+      }
       
     } catch (IllegalSemanticsException e) {
       
@@ -102,6 +143,15 @@ public class ALEVOSRandomExploration extends ALEVOSSimulationStrategy {
     }
 
   }
+  
+  /**
+   * Only explorations performed by <code>IConcurrent</code> algorithms run in 
+   * parallel with other strategies.
+   */
+  @Override
+  public boolean isConcurrent(){
+    return rwe instanceof IConcurrent;
+  }
 
   @Override
   public String toString() {
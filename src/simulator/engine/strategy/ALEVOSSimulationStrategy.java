@@ -34,6 +34,7 @@ package simulator.engine.strategy;
 import alevos.simulation.SimulatorConnector;
 import simulator.analysis.UndefinedPropertyException;
 import simulator.components.ComponentInstantiationException;
+import simulator.engine.alevos.ICancelable;
 import simulator.engine.runner.SimulationRunException;
 import simulator.environment.InvalidEnvironmentException;
 
@@ -44,8 +45,19 @@ public abstract class ALEVOSSimulationStrategy extends SimulationStrategy {
    */
   protected SimulatorConnector simulatorConnector;
 
+  /**
+   * Defines the connector to be used. If it can be canceled, it is made to 
+   * check the cancellation token of the strategy's group, so that the strategy
+   * stops once a sibling finishes the group.
+   * 
+   * @param simulatorConnector The connector.
+   */
   public void setSimulatorConnector(SimulatorConnector simulatorConnector) {
     this.simulatorConnector = simulatorConnector;
+    
+    if(simulatorConnector instanceof ICancelable){
+      ((ICancelable) simulatorConnector).setCancellationToken(getCancellationToken());
+    }
   }
   
   public ALEVOSSimulationStrategy(String group){
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import simulator.util.Assert;
 
@@ -60,9 +61,19 @@ public class RandomCombinationIterator<T> implements Iterator<List<T>>{
    */
   private int generated = 0;
   
+  /**
+   * Where the combinations are drawn from.
+   */
+  private Random random;
+  
   
   public RandomCombinationIterator(List<T> elements, int k, int trials){
+    this(elements, k, trials, new Random());
+  }
+  
+  public RandomCombinationIterator(List<T> elements, int k, int trials, Random random){
     Assert.notNull(elements);
+    Assert.notNull(random);
     
     if(elements.size() < k){
       throw new IllegalArgumentException ("The combination size must be less than or equal to the number of elements in the sequence.");
@@ -71,6 +82,7 @@ public class RandomCombinationIterator<T> implements Iterator<List<T>>{
     this.elements = elements;
     this.k = k;
     this.trials = trials;
+    this.random = random;
     
   }
   
@@ -94,7 +106,7 @@ public class RandomCombinationIterator<T> implements Iterator<List<T>>{
       // For each combination position, choose a random element
       for(int i = 0; i < k; i++){
         
-        double p = Math.random();
+        double p = random.nextDouble();
         
         // The last possible index for the elements
         double n = (elements.size() - 1);
@@ -36,6 +36,10 @@ import java.util.List;
 import java.util.ListIterator;
 
 import simulator.analysis.UndefinedPropertyException;
+import simulator.engine.alevos.ATSShuffling;
+import simulator.engine.alevos.IConcurrent;
+import simulator.engine.alevos.IRandomized;
+import simulator.engine.alevos.SearchCanceledException;
 import simulator.engine.runner.ExecutionMode;
 import simulator.engine.runner.SimulationRun.StorageMode;
 import simulator.engine.runner.SimulationRunException;
@@ -112,9 +116,39 @@ public class SimulationPurposeVerification extends ALEVOSSimulationStrategy {
       // Get the transition system that specifies the environment coordination
       AnnotatedTransitionSystem ats = ((IALEVOSEnvironment) environment).getATS();
       
+      if(va instanceof IRandomized){
+        ((IRandomized) va).setRandom(random.split("search"));
+      }
+      
       try {
         
-        verdict = va.verify(sp, ats, simulatorConnector);
+        if(va instanceof IConcurrent){
+          verdict = va.verify(sp, ats, simulatorConnector);
+        }
+        else{
+          // Other strategies might be using ALEVOS at the same time, so the 
+          // whole verification is serialized with theirs
+          synchronized(IConcurrent.ALEVOS_LOCK){
+            ATSShuffling.beginSerial();
+            try{
+              verdict = va.verify(sp, ats, simulatorConnector);
+            }
+            finally{
+              ATSShuffling.endSerial();
+            }
+          }
+        }
+        
+      } catch (SearchCanceledException e) {
+        // Another strategy of the group has finished it
+        if(!isGroupFinished(group)){
+          throw new SimulationRunException("The verification was canceled.", e);
+        }
+        
+        this.va = null;
+        this.sp = null;
+        this.runner = null;
+        return;
         
       } catch (IllegalSemanticsException e) {
         throw new SimulationRunException("The underlying transition systems used for the simulation are incorrect.", e);
@@ -133,13 +167,40 @@ public class SimulationPurposeVerification extends ALEVOSSimulationStrategy {
 
       // If the algorithm was successful, the group of strategies is finished.
       if(verdict == Verdict.SUCCESS){
-        addFinishedGroup(group);
-        iFoundTheSolution = true;
+        iFoundTheSolution = addFinishedGroup(group);
       }
     }
     
   }
 
+  /**
+   * Only verifications performed by <code>IConcurrent</code> algorithms run in 
+   * parallel with other strategies; the others hold <code>IConcurrent.ALEVOS_LOCK</code> 
+   * from start to finish.
+   */
+  @Override
+  public boolean isConcurrent(){
+    return va instanceof IConcurrent;
+  }
+
+  /**
+   * Verifications share their state if they are performed by the same algorithm, 
+   * as the trials of a combined or distributed verification are.
+   */
+  @Override
+  public boolean sharesStateWith(SimulationStrategy other){
+    return va != null && other instanceof SimulationPurposeVerification && ((SimulationPurposeVerification) other).va == va;
+  }
+
+  /**
+   * 
+   * @return The simulation purpose to be verified, or <code>null</code> if it 
+   *         has already been.
+   */
+  public SimulationPurpose getSimulationPurpose(){
+    return sp;
+  }
+
   @Override
   public String toString() {
     String s = "";
@@ -33,15 +33,17 @@ package simulator.engine.strategy;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import simulator.analysis.UndefinedPropertyException;
 import simulator.components.ComponentInstantiationException;
+import simulator.engine.runner.CancellationToken;
 import simulator.engine.runner.SimulationRunException;
 import simulator.engine.runner.SimulationRunner;
 import simulator.environment.InvalidEnvironmentException;
 import simulator.util.Assert;
+import simulator.util.RandomStream;
 
 /**
  * @author    Paulo Salem
@@ -63,14 +65,19 @@ public abstract class SimulationStrategy {
    */
   protected String group = null;
   
+  /**
+   * The stream from which the randomness of this strategy is taken.
+   */
+  protected RandomStream random = new RandomStream(0);
+  
  /**
-  * The elements in this set denote groups of strategies that do not need to be performed
-  * anymore. This is useful when many strategies are created in order to address
-  * the same question, one of them suceeds in doing this, and therefore the
-  * remaining ones are no longer necessary. Concrete strategies are responsible
+  * The groups of strategies, by name. A finished group denotes strategies that do not 
+  * need to be performed anymore. This is useful when many strategies are created in 
+  * order to address the same question, one of them suceeds in doing this, and therefore 
+  * the remaining ones are no longer necessary. Concrete strategies are responsible
   * for managing this.
   */
-  protected static Set<String> finishedGroups = new HashSet<String>();
+  private static ConcurrentMap<String, StrategyGroup> groups = new ConcurrentHashMap<String, StrategyGroup>();
   
 
   public SimulationStrategy(){
@@ -84,15 +91,57 @@ public abstract class SimulationStrategy {
   }
   
   protected boolean isGroupFinished(String group){
-    if(finishedGroups.contains(group)){
-      return true;
+    return groupNamed(group).isFinished();
+  }
+  
+  /**
+   * Finishes the specified group, canceling the strategies of it that are still
+   * being executed.
+   * 
+   * @param group The name of the group.
+   * 
+   * @return <code>true</code> if the group was finished by this call; <code>false</code>
+   *         if another strategy had already finished it.
+   */
+  protected boolean addFinishedGroup(String group){
+    return groupNamed(group).finish();
+  }
+  
+  private static StrategyGroup groupNamed(String group){
+    Assert.notNull(group);
+    
+    StrategyGroup g = groups.get(group);
+    if(g == null){
+      StrategyGroup created = new StrategyGroup(group);
+      g = groups.putIfAbsent(group, created);
+      if(g == null){
+        g = created;
+      }
     }
     
-    return false;
+    return g;
   }
   
-  protected void addFinishedGroup(String group){
-    finishedGroups.add(group);
+  /**
+   * 
+   * @return The group of this strategy, or <code>null</code> if it belongs to none.
+   */
+  public String getGroup(){
+    return group;
+  }
+  
+  /**
+   * 
+   * @return The token that tells this strategy that it should stop, because its 
+   *         group has been finished (or canceled), or <code>null</code> if the 
+   *         strategy belongs to no group.
+   */
+  public CancellationToken getCancellationToken(){
+    if(group == null){
+      return null;
+    }
+    
+    return groupNamed(group).getCancellationToken();
   }
   
 
@@ -148,6 +197,50 @@ public abstract class SimulationStrategy {
   public void setSimulationRunner(SimulationRunner runner){
     this.runner = runner;
   }
+  
+  public RandomStream getRandomStream(){
+    return random;
+  }
+  
+  public void setRandomStream(RandomStream random){
+    Assert.notNull(random);
+    
+    this.random = random;
+  }
+  
+  /**
+   * Tells whether this strategy may actually run in parallel with the others of its 
+   * group, when groups are executed concurrently. Strategies based on ALEVOS 
+   * algorithms that do not implement <code>IConcurrent</code> hold 
+   * <code>IConcurrent.ALEVOS_LOCK</code> throughout, and thus run one after another.
+   * 
+   * @return <code>true</code>, by default.
+   */
+  public boolean isConcurrent(){
+    return true;
+  }
+  
+  /**
+   * Tells whether this strategy shares something mutable with the specified one 
+   * (e.g., the same verification algorithm), in which case they must not run at 
+   * the same time, not even if both are concurrent.
+   * 
+   * @param other The other strategy.
+   * 
+   * @return <code>false</code>, by default.
+   */
+  public boolean sharesStateWith(SimulationStrategy other){
+    return false;
+  }
+  
+  /**
+   * Releases the resources held by the results of this strategy (e.g., the files 
+   * of the runs it kept), which cannot be inspected afterwards. By default, 
+   * nothing is held.
+   */
+  public void dispose(){
+    
+  }
 
  
 
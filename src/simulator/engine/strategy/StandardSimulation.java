@@ -31,11 +31,28 @@
  ******************************************************************************/
 package simulator.engine.strategy;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 import simulator.analysis.UndefinedPropertyException;
 import simulator.components.ComponentInstantiationException;
 import simulator.engine.SimulationState;
+import simulator.engine.runner.ExecutionMode;
+import simulator.engine.runner.SimulationRun;
+import simulator.engine.runner.SimulationRun.StorageMode;
 import simulator.engine.runner.SimulationRunException;
+import simulator.engine.runner.SimulationRunner;
+import simulator.engine.runner.TraceSink;
 import simulator.util.Assert;
+import simulator.util.RandomStream;
 
 
 
@@ -43,6 +60,21 @@ import simulator.util.Assert;
  * A simple simulation strategy. It just runs the model and present
  * the final result.
  * 
+ * Each run is an independent replication: it gets its own runner, starting 
+ * from a copy of the initial state, and the stream of the strategy split with 
+ * the index of the run. If more than one thread is allowed, replications are 
+ * executed by a fixed pool of workers; otherwise, one after the other. The final
+ * states are kept in the order of the runs, regardless of which worker
+ * finished first, so the number of threads only changes how fast they are 
+ * obtained. Only replications executed one after the other give their states
+ * to the trace sinks of the strategy's runner, though, since those of 
+ * different runs would otherwise be mixed.
+ * 
+ * Runs keep a representative subset of their states if a sampled storage
+ * mode was chosen for standard simulations (see 
+ * <code>SimulationRun.setSampleStorageMode()</code>), so that their memory
+ * is bounded no matter how long they are.
+ * 
  * @author  Paulo Salem
  */
 public class StandardSimulation extends SimulationStrategy{
@@ -58,6 +90,22 @@ public class StandardSimulation extends SimulationStrategy{
    */
   protected int iterationsPerRun = 10;
   
+  /**
+   * The maximum number of runs to be executed at the same time.
+   */
+  protected int threads = 1;
+  
+  /**
+   * The final state of each run, indexed by run, or <code>null</code> if the 
+   * strategy was not executed yet.
+   */
+  protected SimulationState[] finalStates = null;
+  
+  /**
+   * The simulation runs executed, indexed by run, if their states were sampled.
+   */
+  protected SimulationRun[] sampledRuns = null;
+  
   /**
    * Builds a new instance.
    * 
@@ -65,33 +113,139 @@ public class StandardSimulation extends SimulationStrategy{
    * @param iterationsPerRun The maximum number of iterations per simulation run.
    */
   public StandardSimulation(int runs, int iterationsPerRun) {
+    this(runs, iterationsPerRun, 1);
+  }
+  
+  /**
+   * Builds a new instance.
+   * 
+   * @param runs The maximum number of simulation runs to be executed.
+   * @param iterationsPerRun The maximum number of iterations per simulation run.
+   * @param threads The maximum number of runs to be executed at the same time.
+   */
+  public StandardSimulation(int runs, int iterationsPerRun, int threads) {
     super();
     Assert.nonNegativeNonZero(runs);
     Assert.nonNegativeNonZero(iterationsPerRun);
+    Assert.nonNegativeNonZero(threads);
     
     this.name = "Standard Simulation";
     this.runs = runs;
     this.iterationsPerRun = iterationsPerRun;
-    
+    this.threads = threads;
 
   }
   
   @Override
   public void execute() throws ComponentInstantiationException, UndefinedPropertyException, SimulationRunException{
     
+    // The results of a previous execution are replaced
+    dispose();
+    
+    executeReplications();
+  }
+  
+  /**
+   * Executes each run independently, using a fixed pool of workers if more than
+   * one thread is allowed. 
+   */
+  private void executeReplications() throws UndefinedPropertyException, SimulationRunException{
+    
+    // Each replication gets its own copy of the initial state. Copies are made 
+    // here, before any worker starts, so that the original is never shared.
+    StorageMode mode = SimulationRun.getSampleStorageMode();
+    
+    List<TraceSink> sinks = Collections.emptyList();
+    if(threads == 1){
+      sinks = runner.getTraceSinks();
+    }
+    
+    List<Callable<SimulationRunner>> replications = new ArrayList<Callable<SimulationRunner>>(runs);
     for(int i = 0; i < runs; i++){
-      runner.runSteps(iterationsPerRun);
+      replications.add(new Replication(runner.getInitialStateClone(), random.split(i), iterationsPerRun, mode, sinks));
     }
     
-
+    ExecutorService pool = null;
+    if(threads > 1){
+      pool = Executors.newFixedThreadPool(Math.min(threads, runs));
+    }
+    
+    try{
+      List<Future<SimulationRunner>> results;
+      if(pool != null){
+        results = pool.invokeAll(replications);
+      }
+      else{
+        // Executed right here, but collected just like those of the workers
+        results = new ArrayList<Future<SimulationRunner>>(runs);
+        for(Callable<SimulationRunner> replication: replications){
+          FutureTask<SimulationRunner> task = new FutureTask<SimulationRunner>(replication);
+          task.run();
+          results.add(task);
+        }
+      }
+      
+      // Merge by run index
+      finalStates = new SimulationState[runs];
+      if(mode != StorageMode.NONE){
+        sampledRuns = new SimulationRun[runs];
+      }
+      
+      for(int i = 0; i < runs; i++){
+        try {
+          SimulationRunner r = results.get(i).get();
+          finalStates[i] = r.getCurrentState();
+          
+          if(sampledRuns != null){
+            sampledRuns[i] = r.getCurrentRun();
+          }
+        } 
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          
+          if(cause instanceof UndefinedPropertyException){
+            throw (UndefinedPropertyException) cause;
+          }
+          else if(cause instanceof SimulationRunException){
+            throw (SimulationRunException) cause;
+          }
+          else if(cause instanceof RuntimeException){
+            throw (RuntimeException) cause;
+          }
+          else if(cause instanceof Error){
+            throw (Error) cause;
+          }
+          
+          throw new SimulationRunException("Run " + i + " failed.", cause);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SimulationRunException("Interrupted while waiting for the runs to finish.", e);
+    }
+    finally{
+      if(pool != null){
+        pool.shutdownNow();
+      }
+    }
     
   }
 
-@Override
+  @Override
   public String toString() {
     String s = "Standard simulation strategy                           \n";
     s = s +    "====================================================== \n";
-    s = s + runner.getCurrentState().toString() + "\n";
+    
+    if(finalStates != null){
+      for(int i = 0; i < finalStates.length; i++){
+        s = s + "Run " + i + ": \n";
+        s = s + finalStates[i].toString() + "\n";
+      }
+    }
+    else{
+      s = s + runner.getCurrentState().toString() + "\n";
+    }
     
     return s;
   }
@@ -102,8 +256,102 @@ public class StandardSimulation extends SimulationStrategy{
    * @return The last simulation state.
    */
   public SimulationState getLastState(){
+    if(finalStates != null){
+      return finalStates[finalStates.length - 1];
+    }
+    
     return runner.getCurrentState();
   }
+  
+  /**
+   * 
+   * @return The final state of each run, in the order of the runs. If the strategy
+   *         was not executed yet, only the current state of its runner is given.
+   */
+  public List<SimulationState> getFinalStates(){
+    if(finalStates != null){
+      return Collections.unmodifiableList(Arrays.asList(finalStates));
+    }
+    
+    return Collections.singletonList(runner.getCurrentState());
+  }
+  
+  /**
+   * 
+   * @return The simulation runs executed, in order, whose representative states 
+   *         can be inspected; or an empty list if states were not sampled.
+   */
+  public List<SimulationRun> getSampledRuns(){
+    if(sampledRuns != null){
+      return Collections.unmodifiableList(Arrays.asList(sampledRuns));
+    }
+    
+    return Collections.emptyList();
+  }
+  
+  
+  /**
+   * Releases the files of the runs sampled, if any.
+   */
+  @Override
+  public void dispose(){
+    if(sampledRuns != null){
+      for(SimulationRun run: sampledRuns){
+        if(run != null){
+          run.dispose();
+        }
+      }
+      sampledRuns = null;
+    }
+  }
+  
+  
+  /**
+   * An independent simulation run, to be executed by a worker.
+   */
+  private static class Replication implements Callable<SimulationRunner> {
+    
+    private SimulationState initialState;
+    
+    private RandomStream random;
+    
+    private int steps;
+    
+    private StorageMode mode;
+    
+    private List<TraceSink> sinks;
+    
+    public Replication(SimulationState initialState, RandomStream random, int steps, StorageMode mode, List<TraceSink> sinks) {
+      this.initialState = initialState;
+      this.random = random;
+      this.steps = steps;
+      this.mode = mode;
+      this.sinks = sinks;
+    }
+
+    public SimulationRunner call() throws Exception {
+      SimulationRunner r = new SimulationRunner(initialState);
+      r.setRandomStream(random);
+      
+      for(TraceSink sink: sinks){
+        r.addTraceSink(sink);
+      }
+      
+      if(mode != StorageMode.NONE){
+        r.setupRun(mode, ExecutionMode.EXPLORATION);
+      }
+      
+      try{
+        r.runSteps(steps);
+      }
+      finally{
+        r.releaseAgentPool();
+      }
+      
+      return r;
+    }
+    
+  }
 
   
 }
@@ -144,7 +144,7 @@ public class StimulusDeliveryOptimization extends SimulationStrategy {
     // size less then or equal to the specified for this strategy
     //Iterator<List<Integer>> targets = new CombinationIterator<Integer>(ids, numberOfAgents);
     
-    Iterator<List<Integer>> targets = new RandomCombinationIterator<Integer>(ids, numberOfAgents, 200);
+    Iterator<List<Integer>> targets = new RandomCombinationIterator<Integer>(ids, numberOfAgents, 200, random);
 
     
     // Temporary values for the best target sequence
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.engine.strategy;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import simulator.engine.runner.CancellationToken;
+
+/**
+ * A group of strategies that address the same question, so that once one of 
+ * them answers it, the others are no longer necessary. Strategies of a group 
+ * may be executed at the same time, so the group works as a latch: only the 
+ * first strategy to finish it succeeds in doing so, and its siblings are then 
+ * canceled through the group's <code>CancellationToken</code>.
+ * 
+ * @author Paulo Salem
+ *
+ */
+class StrategyGroup {
+  
+  private final String name;
+  
+  private final AtomicBoolean finished = new AtomicBoolean(false);
+  
+  private final CancellationToken cancellationToken = new CancellationToken();
+  
+  StrategyGroup(String name){
+    this.name = name;
+  }
+  
+  /**
+   * Finishes the group, unless it has already been finished, and cancels 
+   * whatever its strategies are still doing.
+   * 
+   * @return <code>true</code> if the group was finished by this call; 
+   *         <code>false</code> if it had already been.
+   */
+  boolean finish(){
+    if(finished.compareAndSet(false, true)){
+      cancellationToken.cancel();
+      return true;
+    }
+    
+    return false;
+  }
+  
+  boolean isFinished(){
+    return finished.get();
+  }
+  
+  /**
+   * 
+   * @return The token checked by the strategies of the group. It is canceled 
+   *         when the group is finished, but may also be canceled without 
+   *         finishing it (e.g., if a strategy fails).
+   */
+  CancellationToken getCancellationToken(){
+    return cancellationToken;
+  }
+  
+  String getName(){
+    return name;
+  }
+
+}
@@ -32,12 +32,23 @@
 package simulator.environment;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import simulator.Scenario;
+import simulator.agent.AgentProxy;
 import simulator.agent.IAgent;
+import simulator.agent.IStimulationListener;
+import simulator.agent.relation.IRelation;
+import simulator.agent.relation.RelationProxy;
+import simulator.engine.IndexRegistry;
 import simulator.engine.SimulationState;
 import simulator.util.Assert;
+import simulator.util.RandomStream;
 
 /**
  * Implements the most general methods from the <code>IEnvironment</code> interface.
@@ -58,10 +69,45 @@ public abstract class AbstractEnvironment implements IEnvironment, Serializable
   protected Scenario scenario = null;
   
   /**
-   * The simulation state that this environment gives access to.
+   * The simulation state that this environment gives access to. It is not
+   * serialized, since the state itself restores it.
    */
-  protected SimulationState currentState = null;
+  protected transient SimulationState currentState = null;
   // TODO update currentState during the simulation...
+  
+  /**
+   * A map from agents' IDs to proxies. Proxies belong to the environment, and not 
+   * to the (shared) scenario, because they must refer to the agents of a particular
+   * simulation state.
+   */
+  private Map<Integer, AgentProxy> agentProxies = new HashMap<Integer, AgentProxy>();
+  
+  /**
+   * A map from relations' IDs to proxies.
+   */
+  private Map<Integer, RelationProxy> relationProxies = new HashMap<Integer, RelationProxy>();
+  
+  /**
+   * The indexes of the current simulation state, according to which proxies are 
+   * also kept in arrays, for fast lookup. They are rebuilt whenever the state is set.
+   */
+  private transient IndexRegistry indexRegistry = null;
+  
+  private transient AgentProxy[] agentProxiesByIndex = null;
+  
+  private transient RelationProxy[] relationProxiesByIndex = null;
+  
+  /**
+   * The randomness of the current simulation run. Since it is part of the
+   * environment, it is restored along with the simulation state.
+   */
+  private RandomStream random = new RandomStream(0);
+  
+  /**
+   * A map from agents' IDs to their random streams, which are split from 
+   * <code>random</code> when first requested. Agents may request them concurrently.
+   */
+  private ConcurrentHashMap<Integer, RandomStream> agentRandoms = new ConcurrentHashMap<Integer, RandomStream>();
 
   
   public AbstractEnvironment(Scenario scenario){
@@ -69,6 +115,96 @@ public abstract class AbstractEnvironment implements IEnvironment, Serializable
     
     this.scenario = scenario;
   }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Proxies support
+  /////////////////////////////////////////////////////////////////////////////
+  
+  /**
+   * Creates a proxy associated with the specified agent. If such a proxy
+   * already exists, the existing instance is returned.
+   * 
+   * @param agent The agent for whom a proxy is to be built.
+   * 
+   * @return A new <code>AgentProxy</code> associated with the specified agent, if
+   *         none exist; the existing <code>AgentProxy</code> otherwise.
+   */
+  public AgentProxy createAgentProxy(IAgent agent){
+    // If there is already a proxy for the specified agent
+    if(agentProxies.containsKey(agent.getId())){
+      return agentProxies.get(agent.getId());
+    }
+
+    AgentProxy proxy = new AgentProxy(agent);
+    
+    // Save the proxy
+    agentProxies.put(agent.getId(), proxy);
+    
+    if(indexRegistry != null){
+      int i = indexRegistry.agentIndex(agent.getId());
+      if(i != IndexRegistry.NONE){
+        agentProxiesByIndex[i] = proxy;
+      }
+    }
+    
+    return proxy;
+  }
+  
+  /**
+   * Creates a proxy associated with the specified agent relation. If such a proxy
+   * already exists, the existing instance is returned.
+   * 
+   * @param relation The relation for whom a proxy is to be built.
+   * 
+   * @return A new <code>RelationProxy</code> associated with the specified relation, if
+   *         none exist; the existing <code>RelationProxy</code> otherwise.
+   */  
+  public RelationProxy createRelationProxy(IRelation<IAgent> relation){
+    // If there is already a proxy for the specified relation
+    if(relationProxies.containsKey(relation.getId())){
+      return relationProxies.get(relation.getId());
+    }
+
+    RelationProxy proxy = new RelationProxy(relation, this);
+    
+    // Save the proxy
+    relationProxies.put(relation.getId(), proxy);
+    
+    if(indexRegistry != null){
+      int i = indexRegistry.relationIndex(relation.getId());
+      if(i != IndexRegistry.NONE){
+        relationProxiesByIndex[i] = proxy;
+      }
+    }
+    
+    return proxy;  
+  }
+  
+  public List<IAgent> getAgentProxies(){
+    return new LinkedList<IAgent>(agentProxies.values());
+  }
+
+  public List<IRelation> getRelationProxies(){
+    return new LinkedList<IRelation>(relationProxies.values());
+  }
+  
+  /**
+   * 
+   * @param id The ID of the desired relation.
+   * 
+   * @return The proxy of the relation, if it exists; <code>null</code> otherwise.
+   */
+  public RelationProxy getRelationProxy(int id){
+    if(indexRegistry != null){
+      int i = indexRegistry.relationIndex(id);
+      if(i != IndexRegistry.NONE && relationProxiesByIndex[i] != null){
+        return relationProxiesByIndex[i];
+      }
+    }
+    
+    return relationProxies.get(id);
+  }
 
   /////////////////////////////////////////////////////////////////////////////
   // IEnvironment methods
@@ -76,26 +212,92 @@ public abstract class AbstractEnvironment implements IEnvironment, Serializable
 
   @Override
   public List<IAgent> getAgents(){
-    return scenario.getAgentProxies(); 
+    return getAgentProxies(); 
   }
   
   @Override
   public IAgent getAgent(int id){
-    
-    for(IAgent a: scenario.getAgentProxies()){
-      if(a.getId() == id){
-        return a;
+    if(indexRegistry != null){
+      int i = indexRegistry.agentIndex(id);
+      if(i != IndexRegistry.NONE && agentProxiesByIndex[i] != null){
+        return agentProxiesByIndex[i];
       }
     }
     
-    return null;
+    return agentProxies.get(id);
   }
 
   @Override
   public void setSimulationState(SimulationState state){
       Assert.notNull(state);
       
-      this.currentState = state;   
+      this.currentState = state;
+      
+      // Index the proxies as the state indexes its components
+      indexRegistry = state.getIndexRegistry();
+      
+      agentProxiesByIndex = new AgentProxy[indexRegistry.getAgentCount()];
+      for(AgentProxy proxy: agentProxies.values()){
+        int i = indexRegistry.agentIndex(proxy.getId());
+        if(i != IndexRegistry.NONE){
+          agentProxiesByIndex[i] = proxy;
+        }
+      }
+      
+      relationProxiesByIndex = new RelationProxy[indexRegistry.getRelationCount()];
+      for(RelationProxy proxy: relationProxies.values()){
+        int i = indexRegistry.relationIndex(proxy.getId());
+        if(i != IndexRegistry.NONE){
+          relationProxiesByIndex[i] = proxy;
+        }
+      }
+  }
+  
+  @Override
+  public void setStimulationListener(IStimulationListener listener){
+    for(AgentProxy proxy: agentProxies.values()){
+      proxy.setStimulationListener(listener);
+    }
+  }
+  
+  /**
+   * By default, environments are assumed to always have something to do. 
+   */
+  @Override
+  public boolean isQuiescent(){
+    return false;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Randomness
+  /////////////////////////////////////////////////////////////////////////////
+  
+  @Override
+  public void setRandomStream(RandomStream random){
+    Assert.notNull(random);
+    
+    this.random = random.split("environment");
+    this.agentRandoms = new ConcurrentHashMap<Integer, RandomStream>();
+  }
+  
+  @Override
+  public Random getRandom(){
+    return random;
+  }
+  
+  @Override
+  public Random getRandom(IAgent agent){
+    RandomStream r = agentRandoms.get(agent.getId());
+    
+    if(r == null){
+      // The stream only depends on the agent, so it does not matter which
+      // of two concurrent requests creates it
+      agentRandoms.putIfAbsent(agent.getId(), random.split(agent.getId()));
+      r = agentRandoms.get(agent.getId());
+    }
+    
+    return r;
   }
 
 }
@@ -32,6 +32,9 @@
 package simulator.environment;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -39,6 +42,7 @@ import simulator.Scenario;
 import simulator.agent.IBehavioralAgent;
 import simulator.agent.IBehavioralAgent.ActionStatus;
 import simulator.agent.IBehavioralAgent.StimulationStatus;
+import simulator.agent.StimulationBuffer;
 import simulator.agent.action.EnvironmentAction;
 import simulator.agent.stimuli.EnvironmentStimulus;
 import alevos.ts.AnnotatedTransitionSystem;
@@ -62,7 +66,7 @@ public class EMMASEnvironment extends ALEVOSEnvironment {
    * Stores all the stimulation to deliver at the same time. Each triple
    * contains the target agent id, a stimulus, and its status. 
    */
-  private List<Triple<Integer, EnvironmentStimulus, StimulationStatus>> stimulationBuffer = new LinkedList<Triple<Integer, EnvironmentStimulus, StimulationStatus>>();
+  private transient List<Triple<Integer, EnvironmentStimulus, StimulationStatus>> stimulationBuffer = new LinkedList<Triple<Integer, EnvironmentStimulus, StimulationStatus>>();
 
   public EMMASEnvironment(Scenario scenario, AnnotatedTransitionSystem ats) {
     super(scenario, ats);
@@ -103,11 +107,65 @@ public class EMMASEnvironment extends ALEVOSEnvironment {
   }
 
   
-   public void deliverStimulation(Integer agentId, EnvironmentStimulus stimulus, StimulationStatus status){
+   public void deliverStimulation(final Integer agentId, final EnvironmentStimulus stimulus, final StimulationStatus status){
+     
+     // Requested while some agent prepares its step, so it must wait for the commit
+     if(StimulationBuffer.isOpen()){
+       StimulationBuffer.defer(new Runnable() {
+         public void run() {
+           deliverStimulation(agentId, stimulus, status);
+         }
+       });
+       return;
+     }
      
      // Put on a buffer. We shall deliver it in the next update cycle.
      stimulationBuffer.add(new Triple<Integer, EnvironmentStimulus, StimulationStatus>(agentId, stimulus, status));
    }
+   
+   /**
+    * Updates only deliver the buffered stimulation, so there is nothing to do 
+    * if the buffer is empty.
+    */
+   @Override
+   public boolean isQuiescent(){
+     return stimulationBuffer.isEmpty();
+   }
+
+
+  /////////////////////////////////////////////////////////////////////////////
+  // Serialization methods
+  /////////////////////////////////////////////////////////////////////////////
+   
+  /**
+   * Writes the stimulation buffer by hand, since environments are copied
+   * whenever the simulation state is.
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException{
+    out.defaultWriteObject();
+    
+    out.writeInt(stimulationBuffer.size());
+    for(Triple<Integer, EnvironmentStimulus, StimulationStatus> ies: stimulationBuffer){
+      out.writeInt(ies.getFirst());
+      out.writeObject(ies.getSecond());
+      out.writeByte(ies.getThird().ordinal());
+    }
+  }
+  
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+    in.defaultReadObject();
+    
+    stimulationBuffer = new LinkedList<Triple<Integer, EnvironmentStimulus, StimulationStatus>>();
+    
+    int size = in.readInt();
+    for(int i = 0; i < size; i++){
+      Integer agentId = in.readInt();
+      EnvironmentStimulus stimulus = (EnvironmentStimulus) in.readObject();
+      StimulationStatus status = StimulationStatus.values()[in.readByte()];
+      
+      stimulationBuffer.add(new Triple<Integer, EnvironmentStimulus, StimulationStatus>(agentId, stimulus, status));
+    }
+  }
 
 
   
@@ -32,10 +32,13 @@
 package simulator.environment;
 
 import java.util.List;
+import java.util.Random;
 
 import simulator.agent.IAgent;
+import simulator.agent.IStimulationListener;
 import simulator.engine.SimulationState;
 import simulator.engine.runner.ExecutionMode;
+import simulator.util.RandomStream;
 
 /**
  * An environment defines the elements that exist in a simulation and how they interact.
@@ -55,5 +58,53 @@ public abstract interface IEnvironment {
   public IAgent getAgent(int id);
   
   public void setSimulationState(SimulationState state);
+  
+  /**
+   * Defines who must be informed whenever an agent receives a stimulus.
+   * 
+   * @param listener The listener, or <code>null</code> if no one is to be informed.
+   */
+  public void setStimulationListener(IStimulationListener listener);
+  
+  /**
+   * Tells whether the environment may be left alone. When it is quiescent and 
+   * no agent is due (see <code>IActivityScheduling</code>), the simulator does not 
+   * call <code>step()</code> at all until some agent is due again, so an 
+   * environment may only claim to be quiescent if skipping any number of its 
+   * steps is indistinguishable from performing them. In particular, those steps 
+   * must not deliver stimuli, draw random numbers, advance clocks of its own or 
+   * change anything that is part of the simulation state. The answer may only 
+   * change as a result of something done to the environment from the outside 
+   * (e.g., by agents or by the verification algorithms).
+   * 
+   * @return <code>true</code> if a step of the environment would change nothing 
+   *         (e.g., because there is nothing to deliver to the agents);
+   *         <code>false</code> otherwise.
+   */
+  public boolean isQuiescent();
+  
+  /**
+   * Defines the stream from which the randomness of the current simulation run is 
+   * to be taken. The streams of the agents are split from it.
+   * 
+   * @param random The stream of the run.
+   */
+  public void setRandomStream(RandomStream random);
+  
+  /**
+   * 
+   * @return The generator reserved for the environment itself.
+   */
+  public Random getRandom();
+  
+  /**
+   * Gives each agent a generator of its own, so that agents neither contend for
+   * a shared one nor depend on the order in which the others use it.
+   * 
+   * @param agent The agent.
+   * 
+   * @return The generator reserved for the specified agent.
+   */
+  public Random getRandom(IAgent agent);
 
 }
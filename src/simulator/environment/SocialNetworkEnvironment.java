@@ -76,6 +76,11 @@ public class SocialNetworkEnvironment extends AbstractEnvironment implements ISo
     // Nothing to be done
     
   }
+  
+  @Override
+  public boolean isQuiescent(){
+    return true;
+  }
 
   
   /////////////////////////////////////////////////////////////////////////////
@@ -89,7 +94,7 @@ public class SocialNetworkEnvironment extends AbstractEnvironment implements ISo
     // Create a proxy for each neighbor
     for(IRelation<IAgent> r: currentState.getRelations()){
       for(IAgent a: r.relationalImage(agent)){
-        AgentProxy proxy = scenario.createAgentProxy(a);
+        AgentProxy proxy = createAgentProxy(a);
         neighbors.add(proxy);
       }
     }
@@ -108,7 +113,7 @@ public class SocialNetworkEnvironment extends AbstractEnvironment implements ISo
       // Check the ID
       if(r.getId() == relationId){
         for(IAgent a: r.relationalImage(agent)){
-          AgentProxy proxy = scenario.createAgentProxy(a);
+          AgentProxy proxy = createAgentProxy(a);
           neighbors.add(proxy);
         }
       }
@@ -121,18 +126,11 @@ public class SocialNetworkEnvironment extends AbstractEnvironment implements ISo
   
   
   public List<IRelation> getRelations(){
-    return scenario.getRelationProxies(); 
+    return getRelationProxies(); 
   }
   
   public IRelation<IAgent> getRelation(int id){
-    
-    for(IRelation r: scenario.getRelationProxies()){
-      if(r.getId() == id){
-        return r;
-      }
-    }
-    
-    return null;
+    return getRelationProxy(id);
   }
   
   
@@ -51,7 +51,14 @@ import simulator.agent.IBehavioralAgent.StimulationStatus;
 import simulator.agent.action.EnvironmentAction;
 import simulator.agent.stimuli.EnvironmentStimulus;
 import simulator.analysis.PropertyBearerWrapper;
+import simulator.engine.SimulationStateSpace;
+import simulator.engine.alevos.CombinedVerification;
+import simulator.engine.alevos.DistributedVerifyCertainty;
 import simulator.engine.alevos.EMMASEvent;
+import simulator.engine.alevos.ParallelVerifyCertainty;
+import simulator.engine.alevos.PortfolioVerifyFeasibility;
+import simulator.engine.alevos.PruningVerifyCertainty;
+import simulator.engine.alevos.PruningVerifyFeasibility;
 import simulator.environment.IEnvironment;
 import simulator.ui.Messenger;
 import simulator.ui.SimulatorUI;
@@ -222,7 +229,7 @@ public class XMLExperimentLoader extends ExperimentLoader {
   }
   
   
-  private void loadStandardSimStrategies(Experiment experiment, List<Element> es){
+  private void loadStandardSimStrategies(Experiment experiment, List<Element> es) throws FileNotFoundException, IOException, ClassNotFoundException, IllegalAccessException, InstantiationException {
     
     for(Element e: es){
       
@@ -233,7 +240,7 @@ public class XMLExperimentLoader extends ExperimentLoader {
       SimulatorUI.instance().getMessenger().printDebugMsg("  Runs = " + runs, Messenger.NORMAL_MSG);
       SimulatorUI.instance().getMessenger().printDebugMsg("  Iterations per Run = " + iterations, Messenger.NORMAL_MSG);
 
-      experiment.addStandardSimulationStrategy(Integer.parseInt(runs), Integer.parseInt(iterations));
+      experiment.addStandardSimulationStrategy(Integer.parseInt(runs), Integer.parseInt(iterations), Simulator.instance().getThreads());
       
     }
     
@@ -358,6 +365,12 @@ public class XMLExperimentLoader extends ExperimentLoader {
     Map<String, State> id2State = new HashMap<String, State>();
     Map<String, Event> id2Event = new HashMap<String, Event>();
     
+    // The simulation purposes may all be verified in a single search
+    CombinedVerification combination = null;
+    if(Simulator.instance().getCombinePurposes()){
+      combination = new CombinedVerification(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), Simulator.instance().createStateSpace());
+    }
+    
     for(Element e: es){
       
       // Read verification task
@@ -366,20 +379,22 @@ public class XMLExperimentLoader extends ExperimentLoader {
       SimulatorUI.instance().getMessenger().printDebugMsg("Found simulation purpose verification strategy declaration: ", Messenger.NORMAL_MSG);
       SimulatorUI.instance().getMessenger().printDebugMsg("  Satisfiability relation = " + relation, Messenger.NORMAL_MSG);
 
-      VerificationAlgorithm va = null;
+      if(!relation.equals("feasibility") && !relation.equals("weak feasibility") && !relation.equals("strong feasibility") && !relation.equals("certainty")){
+        throw new ExperimentLoadingException("Ther requested verification relation, " + relation + ", does not exist.");
+      }
       
       // By default, feasibility verification uses weak feasibility
-      if(relation.equals("feasibility") || relation.equals("weak feasibility")){
-        va = new VerifyFeasibility(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), VerifyFeasibility.Variant.Weak);
-      }
-      else if(relation.equals("strong feasibility")){
-        va = new VerifyFeasibility(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), VerifyFeasibility.Variant.Strong);
-      }
-      else if(relation.equals("certainty")){
-        va = new VerifyCertainty(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps());
-      }
-      else{
-        throw new ExperimentLoadingException("Ther requested verification relation, " + relation + ", does not exist.");
+      CombinedVerification.Relation combined = null;
+      if(combination != null){
+        if(relation.equals("strong feasibility")){
+          combined = CombinedVerification.Relation.STRONG_FEASIBILITY;
+        }
+        else if(relation.equals("certainty")){
+          combined = CombinedVerification.Relation.CERTAINTY;
+        }
+        else{
+          combined = CombinedVerification.Relation.WEAK_FEASIBILITY;
+        }
       }
       
 
@@ -527,13 +542,30 @@ public class XMLExperimentLoader extends ExperimentLoader {
         // Add the transition
         sp.addTransition(id2State.get(stateId1), id2Event.get(eventId), id2State.get(stateId2));
       }
+      
+      // Now that the simulation purpose is known, it can join the others
+      VerificationAlgorithm va = null;
+      if(combined != null){
+        va = combination.add(sp, combined);
+      }
+      else if(relation.equals("certainty") && Simulator.instance().getCoordinatorAddress() != null){
+        // There is a single coordinator port, so every trial uses the same coordinator
+        va = createVerificationAlgorithm(relation, es.indexOf(e));
+      }
 
       
       // How many times to repeat this experiment?
       int trials = Integer.parseInt(e.getAttributeValue(ATTR_TRIALS, "1"));
       String group = e.getAttributeValue(ATTR_GROUP, freshGroupName());
       
+      // Trials may run at the same time (see -concurrent-groups), so each one 
+      // gets an algorithm, and a state space, of its own where possible. Those 
+      // that share one are executed one after another.
+      boolean shared = va != null;
       for(int i = 0; i < trials; i++){
+        if(!shared){
+          va = createVerificationAlgorithm(relation, es.indexOf(e));
+        }
         experiment.addSimPurpVerifStrategy(sp, va, group);  
       }
       
@@ -591,7 +623,7 @@ public class XMLExperimentLoader extends ExperimentLoader {
   */
   
   
-  private void loadALEVOSRandomExplorationStrategies(Experiment experiment, List<Element> es) throws ExperimentLoadingException {
+  private void loadALEVOSRandomExplorationStrategies(Experiment experiment, List<Element> es) throws ExperimentLoadingException, FileNotFoundException, IOException, ClassNotFoundException, IllegalAccessException, InstantiationException {
     
     for(Element e: es){
       
@@ -604,13 +636,79 @@ public class XMLExperimentLoader extends ExperimentLoader {
       
       String group = e.getAttributeValue(ATTR_GROUP, freshGroupName());
       
-      experiment.addALEVOSRandomExplorationStrategy(Integer.parseInt(runs), Integer.parseInt(iterationsPerRun), group);
+      experiment.addALEVOSRandomExplorationStrategy(Integer.parseInt(runs), Integer.parseInt(iterationsPerRun), group, Simulator.instance().createStateSpace());
       
     }
     
   }
   
   
+  /**
+   * Creates the algorithm that verifies a simulation purpose on its own, as 
+   * requested by the options of the simulator, along with its state space.
+   * 
+   * @param relation The satisfiability relation to be verified.
+   * @param purpose The position of the simulation purpose among those of the 
+   *                experiment.
+   * 
+   * @return The algorithm.
+   */
+  private VerificationAlgorithm createVerificationAlgorithm(String relation, int purpose) throws FileNotFoundException, IOException, ClassNotFoundException, IllegalAccessException, InstantiationException {
+    SimulationStateSpace stateSpace = Simulator.instance().createStateSpace();
+    
+    // By default, feasibility verification uses weak feasibility
+    if(relation.equals("feasibility") || relation.equals("weak feasibility") || relation.equals("strong feasibility")){
+      VerifyFeasibility.Variant variant = relation.equals("strong feasibility") ? VerifyFeasibility.Variant.Strong : VerifyFeasibility.Variant.Weak;
+      
+      if(Simulator.instance().getVerificationThreads() > 1){
+        return new PortfolioVerifyFeasibility(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), variant, createStateSpaces(stateSpace));
+      }
+      else if(stateSpace != null){
+        return new PruningVerifyFeasibility(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), variant, stateSpace);
+      }
+      else{
+        return new VerifyFeasibility(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), variant);
+      }
+    }
+    else{
+      if(Simulator.instance().getCoordinatorAddress() != null){
+        // Workers find the simulation purpose by its position
+        return new DistributedVerifyCertainty(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), stateSpace, 
+                                              Simulator.instance().getCoordinatorAddress(), Simulator.instance().getWorkUnits(), purpose, 
+                                              Simulator.instance().getExperimentIdentity());
+      }
+      else if(Simulator.instance().getVerificationThreads() > 1){
+        return new ParallelVerifyCertainty(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), stateSpace, Simulator.instance().getVerificationThreads());
+      }
+      else if(stateSpace != null){
+        return new PruningVerifyCertainty(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps(), stateSpace);
+      }
+      else{
+        return new VerifyCertainty(Simulator.instance().getMaxDepth(), Simulator.instance().getRandomize(), Simulator.instance().getMaxSynchSteps());
+      }
+    }
+  }
+  
+  /**
+   * Creates the state spaces of the searches raced by a portfolio, one per
+   * verification thread.
+   * 
+   * @param first The state space of the first search.
+   * 
+   * @return The state spaces, some of which may be <code>null</code> (see 
+   *         <code>Simulator.createStateSpace()</code>).
+   */
+  private List<SimulationStateSpace> createStateSpaces(SimulationStateSpace first) throws FileNotFoundException, IOException, ClassNotFoundException, IllegalAccessException, InstantiationException {
+    List<SimulationStateSpace> stateSpaces = new LinkedList<SimulationStateSpace>();
+    stateSpaces.add(first);
+    
+    for(int i = 1; i < Simulator.instance().getVerificationThreads(); i++){
+      stateSpaces.add(Simulator.instance().createStateSpace());
+    }
+    
+    return stateSpaces;
+  }
+  
   private String freshGroupName(){
     String name = "GROUP_" + groupCounter;
     groupCounter++;
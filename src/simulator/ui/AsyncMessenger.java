@@ -0,0 +1,444 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.ui;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import simulator.util.Assert;
+
+/**
+ * Shows messages in the command line, just like <code>CLMessenger</code>, but without
+ * making the simulation wait for the output. Messages are put in a bounded, lock-free 
+ * ring buffer and written, in batches, by a single background thread. Whoever prints 
+ * a message never takes a lock, so several simulation threads may print at the same
+ * time without being serialized on the output.
+ * 
+ * If messages are produced faster than they can be written, the buffer eventually 
+ * fills up, and what happens then depends on the overflow policy. Since messages may 
+ * still be in the buffer when the simulation ends, <code>close()</code> must be called
+ * to write them.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class AsyncMessenger extends Messenger {
+  
+  /**
+   * What to do with a message when the buffer is full.
+   */
+  public enum OverflowPolicy {
+    
+    /**
+     * Waits until there is room for the message.
+     */
+    BLOCK, 
+    
+    /**
+     * Discards the message.
+     */
+    DROP, 
+    
+    /**
+     * Waits for room for one in every <code>SAMPLING_INTERVAL</code> messages, 
+     * and discards the others.
+     */
+    SAMPLE
+  }
+  
+  /**
+   * The default number of messages that the buffer holds.
+   */
+  public static final int DEFAULT_CAPACITY = 8192;
+  
+  /**
+   * Under the <code>SAMPLE</code> policy, how many messages that find the buffer 
+   * full are discarded for each one kept.
+   */
+  public static final int SAMPLING_INTERVAL = 64;
+  
+  /**
+   * The maximum number of messages written before the output is flushed.
+   */
+  private static final int BATCH_SIZE = 1024;
+  
+  /**
+   * How long the writer waits for messages before checking again, in nanoseconds.
+   */
+  private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+  
+  /**
+   * How long a producer waits for room in the buffer before checking again, in nanoseconds.
+   */
+  private static final long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos(50);
+  
+  
+  private final OverflowPolicy policy;
+  
+  /**
+   * The messages, already prefixed if they are debug messages.
+   */
+  private final AtomicReferenceArray<String> slots;
+  
+  /**
+   * For each slot, the sequence number of the next operation expected on it: the slot 
+   * holding the n-th message may be written when its sequence is n and read when it 
+   * is n + 1. 
+   */
+  private final AtomicLongArray sequences;
+  
+  private final int mask;
+  
+  /**
+   * The sequence number of the next message to be put in the buffer.
+   */
+  private final AtomicLong tail = new AtomicLong();
+  
+  /**
+   * The sequence number of the next message to be written. Only changed by the writer.
+   */
+  private volatile long head = 0;
+  
+  /**
+   * How many messages have been discarded because the buffer was full.
+   */
+  private final AtomicLong dropped = new AtomicLong();
+  
+  /**
+   * How many messages have found the buffer full, used for sampling.
+   */
+  private final AtomicLong overflows = new AtomicLong();
+  
+  private final Writer out;
+  
+  private final Thread writer;
+  
+  /**
+   * Whether the writer is (or is about to be) parked, waiting for messages.
+   */
+  private volatile boolean writerIdle = false;
+  
+  /**
+   * Whether the writer has been asked to stop.
+   */
+  private volatile boolean closing = false;
+  
+  /**
+   * Whether messages are to be written directly. Only set once the writer has 
+   * stopped, so that it never writes at the same time as someone else.
+   */
+  private volatile boolean closed = false;
+  
+  /**
+   * Whether the writer stopped because it could not write. If so, messages are
+   * written directly.
+   */
+  private volatile boolean failed = false;
+  
+  
+  /**
+   * Builds a messenger that writes to the standard output, with a buffer of
+   * <code>DEFAULT_CAPACITY</code> messages.
+   * 
+   * @param policy What to do with messages when the buffer is full.
+   */
+  public AsyncMessenger(OverflowPolicy policy) {
+    this(System.out, DEFAULT_CAPACITY, policy);
+  }
+  
+  /**
+   * Builds a new messenger.
+   * 
+   * @param out Where messages are written to.
+   * @param capacity How many messages the buffer holds. It is rounded up to a power of 2.
+   * @param policy What to do with messages when the buffer is full.
+   */
+  public AsyncMessenger(OutputStream out, int capacity, OverflowPolicy policy) {
+    super();
+    Assert.notNull(out);
+    Assert.nonNegativeNonZero(capacity);
+    Assert.notNull(policy);
+    
+    int size = Integer.highestOneBit(capacity);
+    if(size < capacity){
+      size = size << 1;
+    }
+    
+    this.policy = policy;
+    this.slots = new AtomicReferenceArray<String>(size);
+    this.sequences = new AtomicLongArray(size);
+    for(int i = 0; i < size; i++){
+      sequences.set(i, i);
+    }
+    this.mask = size - 1;
+    this.out = new BufferedWriter(new OutputStreamWriter(out), 64 * 1024);
+    
+    this.writer = new Thread(new Runnable() {
+      public void run() {
+        write();
+      }
+    }, "messenger");
+    
+    // Messages are drained by close(), so the writer must not keep the simulator alive
+    writer.setDaemon(true);
+    writer.start();
+  }
+  
+  
+  @Override
+  protected void printMsg(String msg) {
+    enqueue(msg);
+  }
+
+  @Override
+  protected void printDebugMsg(String msg) {
+    enqueue("DEBUG INFO: " + msg);
+  }
+  
+  /**
+   * Stops the writer and then writes all the messages still in the buffer. Messages 
+   * printed afterwards are written directly, without buffering.
+   */
+  @Override
+  public void close() {
+    if(closing){
+      return;
+    }
+    
+    closing = true;
+    LockSupport.unpark(writer);
+    
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    
+    // Messages put in the buffer after the writer stopped (or failed) are left
+    synchronized(this){
+      closed = true;
+      drain();
+      
+      if(dropped.get() > 0){
+        writeDirectly("WARNING: " + dropped.get() + " messages were discarded because they were produced faster than they could be shown.");
+      }
+    }
+  }
+  
+  /**
+   * 
+   * @return How many messages have been discarded so far because the buffer was full.
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Ring buffer
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private void enqueue(String msg){
+    
+    if(closed || failed){
+      writeDirectly(msg);
+      return;
+    }
+    
+    if(!offer(msg)){
+      
+      boolean wait = (policy == OverflowPolicy.BLOCK) || 
+                     (policy == OverflowPolicy.SAMPLE && overflows.getAndIncrement() % SAMPLING_INTERVAL == 0);
+      
+      if(!wait){
+        dropped.incrementAndGet();
+        return;
+      }
+      
+      while(!offer(msg)){
+        if(closed || failed){
+          writeDirectly(msg);
+          return;
+        }
+        
+        LockSupport.unpark(writer);
+        LockSupport.parkNanos(FULL_WAIT);
+      }
+    }
+    
+    if(closed || failed){
+      // Nobody else might take it from the buffer
+      synchronized(this){
+        drain();
+      }
+    }
+    else if(writerIdle){
+      LockSupport.unpark(writer);
+    }
+  }
+  
+  /**
+   * Tries to put a message in the buffer.
+   * 
+   * @return <code>true</code> if the message was put; <code>false</code> if the
+   *         buffer is full.
+   */
+  private boolean offer(String msg){
+    while(true){
+      long t = tail.get();
+      int i = (int) t & mask;
+      long diff = sequences.get(i) - t;
+      
+      if(diff == 0){
+        // The slot is free: claim it
+        if(tail.compareAndSet(t, t + 1)){
+          slots.set(i, msg);
+          sequences.set(i, t + 1);
+          return true;
+        }
+      }
+      else if(diff < 0){
+        // The slot still holds a message that has not been written
+        return false;
+      }
+      
+      // Otherwise, another producer got there first
+    }
+  }
+  
+  /**
+   * Takes the next message from the buffer. Only called by the writer or, once 
+   * it has stopped, while holding this messenger's monitor.
+   * 
+   * @return The message, or <code>null</code> if there is none ready.
+   */
+  private String poll(){
+    long h = head;
+    int i = (int) h & mask;
+    
+    if(sequences.get(i) != h + 1){
+      return null;
+    }
+    
+    String msg = slots.get(i);
+    slots.set(i, null);
+    sequences.set(i, h + mask + 1);
+    head = h + 1;
+    
+    return msg;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Writer
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private void write(){
+    try{
+      while(true){
+        
+        // Write a batch
+        int written = 0;
+        String msg;
+        while(written < BATCH_SIZE && (msg = poll()) != null){
+          out.write(msg);
+          out.write('\n');
+          written++;
+        }
+        
+        if(written == BATCH_SIZE){
+          // There may be more right away
+          continue;
+        }
+        
+        if(written > 0){
+          out.flush();
+        }
+        
+        if(closing){
+          // Whatever is left is written by close()
+          break;
+        }
+        
+        // Wait for more messages
+        writerIdle = true;
+        if(head == tail.get() && !closing){
+          LockSupport.parkNanos(IDLE_WAIT);
+        }
+        writerIdle = false;
+      }
+      
+      out.flush();
+    }
+    catch(IOException e){
+      // Messages are written directly from now on, which may still work
+      failed = true;
+      e.printStackTrace();
+    }
+  }
+  
+  /**
+   * Writes the messages still in the buffer, once the writer has stopped, waiting 
+   * for the ones that have been claimed but not put yet. Must be called while 
+   * holding this messenger's monitor.
+   */
+  private void drain(){
+    while(head != tail.get()){
+      String msg = poll();
+      if(msg == null){
+        Thread.yield();
+        continue;
+      }
+      
+      writeDirectly(msg);
+    }
+  }
+  
+  private synchronized void writeDirectly(String msg){
+    try {
+      out.write(msg);
+      out.write('\n');
+      out.flush();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+}
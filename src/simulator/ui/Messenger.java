@@ -65,6 +65,28 @@ public abstract class Messenger {
   }
   
   
+  /**
+   * 
+   * @param msgImportance The importance of a message.
+   * 
+   * @return <code>true</code> if a message with the specified importance would be shown;
+   *         <code>false</code> otherwise.
+   */
+  public boolean isEnabled(int msgImportance){
+    return msgImportance >= minMsgImportance;
+  }
+  
+  /**
+   * 
+   * @param msgImportance The importance of a debug message.
+   * 
+   * @return <code>true</code> if a debug message with the specified importance would be shown;
+   *         <code>false</code> otherwise.
+   */
+  public boolean isDebugEnabled(int msgImportance){
+    return showDebugMsgs && msgImportance >= minMsgImportance;
+  }
+  
   public void printMsg(String msg, int msgImportance){
     Assert.isInInterval(msgImportance, TRIVIAL_MSG, CRUCIAL_MSG);
     
@@ -73,6 +95,29 @@ public abstract class Messenger {
     }
   }
   
+  /**
+   * Prints a message, building it only if it is going to be shown.
+   */
+  public void printMsg(LazyMessage msg, int msgImportance){
+    Assert.isInInterval(msgImportance, TRIVIAL_MSG, CRUCIAL_MSG);
+    
+    if (msgImportance >= minMsgImportance){
+      printMsg(msg.build());
+    }
+  }
+  
+  /**
+   * Prints a message, formatting it (as in <code>String.format()</code>) only if 
+   * it is going to be shown.
+   */
+  public void printMsg(int msgImportance, String format, Object... args){
+    Assert.isInInterval(msgImportance, TRIVIAL_MSG, CRUCIAL_MSG);
+    
+    if (msgImportance >= minMsgImportance){
+      printMsg(String.format(format, args));
+    }
+  }
+  
   abstract protected void printMsg(String msg);
   
   
@@ -84,9 +129,40 @@ public abstract class Messenger {
     }
   }
   
+  /**
+   * Prints a debug message, building it only if it is going to be shown.
+   */
+  public void printDebugMsg(LazyMessage msg, int msgImportance){
+    Assert.isInInterval(msgImportance, TRIVIAL_MSG, CRUCIAL_MSG);
+    
+    if(showDebugMsgs && msgImportance >= minMsgImportance){
+      printDebugMsg(msg.build());
+    }
+  }
+  
+  /**
+   * Prints a debug message, formatting it (as in <code>String.format()</code>) only if 
+   * it is going to be shown.
+   */
+  public void printDebugMsg(int msgImportance, String format, Object... args){
+    Assert.isInInterval(msgImportance, TRIVIAL_MSG, CRUCIAL_MSG);
+    
+    if(showDebugMsgs && msgImportance >= minMsgImportance){
+      printDebugMsg(String.format(format, args));
+    }
+  }
+  
   abstract protected void printDebugMsg(String msg);
 
 
+  /**
+   * Makes sure that every message printed so far has been shown, and releases
+   * whatever resources the messenger uses. By default, there is nothing to do. 
+   */
+  public void close(){
+    
+  }
+
   public void setShowDebugMsgs(boolean showDebugMsgs) {
     this.showDebugMsgs = showDebugMsgs;
   }
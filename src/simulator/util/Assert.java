@@ -64,6 +64,12 @@ public class Assert {
     }
   }
   
+  public static void nonNegativeNonZero(long i){
+    if(i <= 0){
+      throw new IllegalArgumentException("A non-negative parameter must be specified.");
+    }
+  }
+  
   public static void isInInterval(int i, int min, int max){
     if(i < min || i > max){
       throw new IllegalArgumentException("The specified number must be in the specified interval.");
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Computes and applies binary deltas, which describe how to obtain a target array
+ * of bytes from a source array. Deltas are made of instructions that either copy a 
+ * range of the source or insert literal bytes. Copies are found by indexing the 
+ * source in fixed-size blocks and searching the target for them with a rolling hash,
+ * so that similar arrays (e.g., encodings of successive simulation states) produce 
+ * small deltas regardless of where the differences are.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class BinaryDelta {
+  
+  /**
+   * The size of the blocks in which the source is indexed. Matches shorter than 
+   * this are not searched for.
+   */
+  private static final int BLOCK = 16;
+  
+  /**
+   * The base of the rolling hash.
+   */
+  private static final int BASE = 31;
+  
+  /**
+   * <code>BASE</code> raised to <code>BLOCK - 1</code>.
+   */
+  private static final int BASE_POWER;
+  
+  static{
+    int p = 1;
+    for(int i = 0; i < BLOCK - 1; i++){
+      p = p * BASE;
+    }
+    BASE_POWER = p;
+  }
+  
+  private static final byte COPY = 0;
+  
+  private static final byte INSERT = 1;
+  
+  
+  /**
+   * Computes a delta that transforms <code>source</code> into <code>target</code>.
+   * 
+   * @param source The array the delta will be applied to.
+   * @param target The array the delta must produce.
+   * 
+   * @return The delta.
+   */
+  public static byte[] create(byte[] source, byte[] target){
+    Assert.notNull(source);
+    Assert.notNull(target);
+    
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64 + target.length / 8);
+    writeVarInt(out, target.length);
+    
+    // Index the source's blocks. Collisions simply keep the first block, since 
+    // candidates are always verified anyway.
+    int blocks = source.length / BLOCK;
+    int[] index = new int[tableSize(blocks)];
+    int mask = index.length - 1;
+    
+    for(int b = 0; b < blocks; b++){
+      int slot = mix(hash(source, b * BLOCK)) & mask;
+      if(index[slot] == 0){
+        index[slot] = b * BLOCK + 1;
+      }
+    }
+    
+    // Search the target for indexed blocks
+    int literalStart = 0;
+    int i = 0;
+    int h = (target.length >= BLOCK) ? hash(target, 0) : 0;
+    
+    while(blocks > 0 && i + BLOCK <= target.length){
+      int candidate = index[mix(h) & mask] - 1;
+      
+      if(candidate >= 0 && matches(source, candidate, target, i, BLOCK)){
+        
+        // Extend the match backwards, over the pending literals...
+        int s = candidate;
+        int t = i;
+        while(s > 0 && t > literalStart && source[s - 1] == target[t - 1]){
+          s--;
+          t--;
+        }
+        
+        // ... and forwards
+        int end = i + BLOCK;
+        int sourceEnd = candidate + BLOCK;
+        while(end < target.length && sourceEnd < source.length && source[sourceEnd] == target[end]){
+          end++;
+          sourceEnd++;
+        }
+        
+        writeInsert(out, target, literalStart, t);
+        writeCopy(out, s, end - t);
+        
+        i = end;
+        literalStart = end;
+        
+        if(i + BLOCK <= target.length){
+          h = hash(target, i);
+        }
+      }
+      else{
+        if(i + BLOCK < target.length){
+          h = (h - (target[i] & 0xff) * BASE_POWER) * BASE + (target[i + BLOCK] & 0xff);
+        }
+        i++;
+      }
+    }
+    
+    writeInsert(out, target, literalStart, target.length);
+    
+    return out.toByteArray();
+  }
+  
+  /**
+   * Applies a delta to the array from which it was computed.
+   * 
+   * @param source The array used to compute the delta.
+   * @param delta A delta produced by <code>create()</code>.
+   * 
+   * @return The target array.
+   */
+  public static byte[] apply(byte[] source, byte[] delta){
+    Assert.notNull(source);
+    Assert.notNull(delta);
+    
+    int[] pos = new int[]{0};
+    byte[] target = new byte[readVarInt(delta, pos)];
+    int t = 0;
+    
+    while(pos[0] < delta.length){
+      byte op = delta[pos[0]++];
+      
+      if(op == COPY){
+        int offset = readVarInt(delta, pos);
+        int length = readVarInt(delta, pos);
+        System.arraycopy(source, offset, target, t, length);
+        t += length;
+      }
+      else if(op == INSERT){
+        int length = readVarInt(delta, pos);
+        System.arraycopy(delta, pos[0], target, t, length);
+        pos[0] += length;
+        t += length;
+      }
+      else{
+        throw new IllegalArgumentException("The specified delta is malformed.");
+      }
+    }
+    
+    if(t != target.length){
+      throw new IllegalArgumentException("The specified delta does not apply to the specified source.");
+    }
+    
+    return target;
+  }
+  
+  
+  /////////////////////////////////////////////////////////////////////////////
+  // Auxiliary methods
+  /////////////////////////////////////////////////////////////////////////////
+  
+  private static int tableSize(int blocks){
+    int size = 16;
+    while(size < blocks * 2){
+      size = size << 1;
+    }
+    
+    return size;
+  }
+  
+  private static int hash(byte[] data, int offset){
+    int h = 0;
+    for(int k = 0; k < BLOCK; k++){
+      h = h * BASE + (data[offset + k] & 0xff);
+    }
+    
+    return h;
+  }
+  
+  /**
+   * Spreads the bits of a rolling hash, whose lower bits are rather poor.
+   */
+  private static int mix(int h){
+    h = h * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+  
+  private static boolean matches(byte[] a, int aOffset, byte[] b, int bOffset, int length){
+    for(int k = 0; k < length; k++){
+      if(a[aOffset + k] != b[bOffset + k]){
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  private static void writeCopy(ByteArrayOutputStream out, int offset, int length){
+    out.write(COPY);
+    writeVarInt(out, offset);
+    writeVarInt(out, length);
+  }
+  
+  private static void writeInsert(ByteArrayOutputStream out, byte[] data, int from, int to){
+    if(to > from){
+      out.write(INSERT);
+      writeVarInt(out, to - from);
+      out.write(data, from, to - from);
+    }
+  }
+  
+  private static void writeVarInt(ByteArrayOutputStream out, int value){
+    while((value & ~0x7f) != 0){
+      out.write((value & 0x7f) | 0x80);
+      value = value >>> 7;
+    }
+    out.write(value);
+  }
+  
+  private static int readVarInt(byte[] data, int[] pos){
+    int value = 0;
+    int shift = 0;
+    
+    while(true){
+      byte b = data[pos[0]++];
+      value = value | ((b & 0x7f) << shift);
+      
+      if((b & 0x80) == 0){
+        return value;
+      }
+      
+      shift += 7;
+    }
+  }
+
+}
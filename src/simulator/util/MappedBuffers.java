@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases mapped byte buffers explicitly. Otherwise, they are only unmapped 
+ * when collected, which prevents the deletion of the underlying files on 
+ * some platforms.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class MappedBuffers {
+
+  /**
+   * Unmaps the specified buffer, if the virtual machine allows it. The buffer 
+   * (and any view of it) must not be used afterwards.
+   * 
+   * @param buffer A direct buffer, or <code>null</code>.
+   * 
+   * @return <code>true</code> if the buffer was unmapped.
+   */
+  public static boolean unmap(ByteBuffer buffer){
+    if(buffer == null || !buffer.isDirect()){
+      return false;
+    }
+    
+    // Java 9 on
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field f = unsafeClass.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(f.get(null), buffer);
+      
+      return true;
+      
+    } catch (Exception e) {
+      // Try the older mechanism
+    }
+    
+    // Java 8
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if(cleaner != null){
+        Method clean = cleaner.getClass().getMethod("clean");
+        clean.setAccessible(true);
+        clean.invoke(cleaner);
+        
+        return true;
+      }
+      
+    } catch (Exception e) {
+      // Left to the collector
+    }
+    
+    return false;
+  }
+  
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * FGS - Formally Guided Simulator
+ * 
+ * This software was developed by Paulo Salem da Silva for his doctoral thesis, 
+ * which is entitled
+ *   
+ *   "Verification of Behaviourist Multi-Agent Systems by means of 
+ *    Formally Guided Simulations"
+ * 
+ * This software, therefore, constitutes a companion to the thesis. As such, 
+ * it should be seen as an experimental product, suitable for research purposes,
+ * but not ready for production.
+ * 
+ * 
+ * Copyright (c) 2008 - 2012, Paulo Salem da Silva
+ * All rights reserved.
+ * 
+ * This software may be used, modified and distributed freely, provided that the 
+ * following rules are followed:
+ * 
+ *   (i)   this copyright notice must be maintained in any redistribution, in both 
+ *         original and modified form,  of this software;
+ *   (ii)  this software must be provided free of charge, although services which 
+ *         require the software may be charged;
+ *   (iii) for non-commercial purposes, this software may be used, modified and 
+ *         distributed free of charge;
+ *   (iv)  for commercial purposes, only the original, unmodified, version of this 
+ *         software may be used.
+ * 
+ * For other uses of the software, please contact the author.
+ ******************************************************************************/
+package simulator.util;
+
+import java.util.Random;
+
+/**
+ * A stream of pseudo-random numbers from which independent streams may be split,
+ * so that each consumer of randomness (e.g., a strategy, a simulation run, an agent) 
+ * has a generator of its own. Streams are derived from a seed and a key, and not from
+ * the order in which they are requested, so the same seed always gives every consumer
+ * the same numbers, regardless of how many threads are used.
+ * 
+ * Numbers are generated by the SplitMix64 algorithm. Being a <code>Random</code>, a 
+ * stream may be used wherever one is expected (e.g., <code>Collections.shuffle()</code>),
+ * but, unlike <code>Random</code>, it is not safe to share among threads.
+ * 
+ * @author Paulo Salem
+ *
+ */
+public class RandomStream extends Random {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The increment of the generator (the odd integer closest to 2^64 divided by the
+   * golden ratio).
+   */
+  private static final long GAMMA = 0x9E3779B97F4A7C15L;
+  
+  /**
+   * The seed from which this stream (and the streams split from it) was derived.
+   */
+  private long seed;
+  
+  /**
+   * The current state of the generator.
+   */
+  private long state;
+  
+  
+  /**
+   * Builds a new stream.
+   * 
+   * @param seed The seed of the stream.
+   */
+  public RandomStream(long seed) {
+    super(seed);
+  }
+  
+  /**
+   * Derives a new stream, identified by the specified key. Splitting with the same key 
+   * always gives the same stream, regardless of how many numbers have been generated. 
+   * 
+   * @param key The key that identifies the new stream among those split from this one.
+   * 
+   * @return The new stream.
+   */
+  public RandomStream split(long key){
+    return new RandomStream(mix(seed + mix(key + GAMMA)));
+  }
+  
+  /**
+   * Derives a new stream, identified by the specified key.
+   * 
+   * @param key The key that identifies the new stream among those split from this one.
+   * 
+   * @return The new stream.
+   * 
+   * @see #split(long)
+   */
+  public RandomStream split(String key){
+    
+    // FNV-1a
+    long h = 0xcbf29ce484222325L;
+    for(int i = 0; i < key.length(); i++){
+      h = (h ^ key.charAt(i)) * 0x100000001b3L;
+    }
+    
+    return split(h);
+  }
+  
+  /**
+   * 
+   * @return The seed from which this stream was derived.
+   */
+  public long getSeed() {
+    return seed;
+  }
+  
+  @Override
+  public synchronized void setSeed(long seed) {
+    
+    // Called by the constructor of Random as well
+    this.seed = seed;
+    this.state = seed;
+  }
+  
+  @Override
+  public long nextLong() {
+    state = state + GAMMA;
+    
+    return mix(state);
+  }
+  
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> (64 - bits));
+  }
+  
+  /**
+   * The finalizer of MurmurHash3, with the constants of SplitMix64.
+   */
+  private static long mix(long z){
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    
+    return z ^ (z >>> 31);
+  }
+
+}